@@ -0,0 +1,207 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.os.Build;
+import android.os.Debug;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentCurrencyAmount;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentDetailsModifier;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentItem;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks on a device that {@link PaymentJsonEncoder} produces the same strings as the
+ * android.util.JsonWriter based serialization that it replaced, and that it allocates less.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PaymentJsonEncoderEquivalenceTest {
+    private static final String TAG = "PaymentJsonEncoder";
+    private static final int RANDOM_CASES = 500;
+    private static final int BENCHMARK_ITERATIONS = 2000;
+    // Every character class that JsonWriter treats differently.
+    private static final String ALPHABET =
+            "aZ09 -.{}[]:,\"\\/\t\b\n\r\f\u0000\u0001\u001f\u007fé  😀";
+
+    @Test
+    public void matchesJsonWriterOnRandomInput() throws IOException {
+        Random random = new Random(/*seed=*/1411);
+        for (int i = 0; i < RANDOM_CASES; i++) {
+            PaymentItem total = random.nextInt(4) == 0 ? null : randomItem(random);
+            List<PaymentItem> displayItems = random.nextBoolean() ? null : new ArrayList<>();
+            List<PaymentDetailsModifier> modifiers = null;
+            if (random.nextBoolean()) {
+                modifiers = new ArrayList<>();
+                for (int j = random.nextInt(4); j > 0; j--) {
+                    PaymentItem modifierTotal = random.nextInt(3) == 0
+                            ? null
+                            : random.nextBoolean() ? total : randomItem(random);
+                    modifiers.add(new PaymentDetailsModifier(modifierTotal,
+                            new PaymentMethodData(
+                                    randomString(random), randomNullableString(random))));
+                }
+            }
+
+            PaymentJsonEncoder encoder = PaymentJsonEncoder.get();
+            encoder.encode(total, displayItems, modifiers);
+
+            assertEquals(legacyDeprecatedSerializeDetails(total, displayItems),
+                    encoder.getDeprecatedDetails());
+            assertEquals(total == null ? null : legacySerializeTotalAmount(total.amount),
+                    encoder.getTotalAmount());
+            assertEquals(modifiers == null ? null : legacySerializeModifiers(modifiers),
+                    encoder.getModifiers());
+        }
+    }
+
+    @Test
+    public void allocatesLessThanJsonWriter() throws IOException {
+        assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M);
+        assumeTrue(Debug.getRuntimeStat("art.gc.bytes-allocated") != null);
+
+        PaymentItem total = new PaymentItem(new PaymentCurrencyAmount("CAD", "50"));
+        List<PaymentItem> displayItems = new ArrayList<>();
+        List<PaymentDetailsModifier> modifiers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            modifiers.add(new PaymentDetailsModifier(
+                    total, new PaymentMethodData("https://pay" + i + ".example", "{\"a\":1}")));
+        }
+
+        // Warm up both implementations.
+        runLegacy(total, displayItems, modifiers, BENCHMARK_ITERATIONS);
+        runEncoder(total, displayItems, modifiers, BENCHMARK_ITERATIONS);
+
+        long legacyBytes = allocatedBytes();
+        runLegacy(total, displayItems, modifiers, BENCHMARK_ITERATIONS);
+        legacyBytes = allocatedBytes() - legacyBytes;
+
+        long encoderBytes = allocatedBytes();
+        runEncoder(total, displayItems, modifiers, BENCHMARK_ITERATIONS);
+        encoderBytes = allocatedBytes() - encoderBytes;
+
+        Log.i(TAG,
+                "Bytes allocated per request: JsonWriter " + legacyBytes / BENCHMARK_ITERATIONS
+                        + ", PaymentJsonEncoder " + encoderBytes / BENCHMARK_ITERATIONS);
+        assertTrue(encoderBytes < legacyBytes);
+    }
+
+    private static void runLegacy(PaymentItem total, List<PaymentItem> displayItems,
+            List<PaymentDetailsModifier> modifiers, int iterations) throws IOException {
+        for (int i = 0; i < iterations; i++) {
+            legacySerializeTotalAmount(total.amount);
+            legacySerializeModifiers(modifiers);
+            legacyDeprecatedSerializeDetails(total, displayItems);
+        }
+    }
+
+    private static void runEncoder(PaymentItem total, List<PaymentItem> displayItems,
+            List<PaymentDetailsModifier> modifiers, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            PaymentJsonEncoder.get().encode(total, displayItems, modifiers);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+    }
+
+    private static PaymentItem randomItem(Random random) {
+        return new PaymentItem(new PaymentCurrencyAmount(
+                randomNullableString(random), randomNullableString(random)));
+    }
+
+    private static String randomNullableString(Random random) {
+        return random.nextInt(8) == 0 ? null : randomString(random);
+    }
+
+    private static String randomString(Random random) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = random.nextInt(12); i > 0; i--) {
+            builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return builder.toString();
+    }
+
+    // The serialization that WebPaymentIntentHelper used before PaymentJsonEncoder.
+
+    private static String legacyDeprecatedSerializeDetails(
+            PaymentItem total, List<PaymentItem> displayItems) throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        JsonWriter json = new JsonWriter(stringWriter);
+        json.beginObject();
+        if (total != null) {
+            json.name("total");
+            legacySerializeTotal(total, json);
+        }
+        if (displayItems != null) {
+            json.name("displayItems").beginArray();
+            json.endArray();
+        }
+        json.endObject();
+        return stringWriter.toString();
+    }
+
+    private static String legacySerializeTotalAmount(PaymentCurrencyAmount totalAmount)
+            throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        JsonWriter json = new JsonWriter(stringWriter);
+        json.beginObject();
+        json.name("currency").value(totalAmount.currency);
+        json.name("value").value(totalAmount.value);
+        json.endObject();
+        return stringWriter.toString();
+    }
+
+    private static void legacySerializeTotal(PaymentItem item, JsonWriter json)
+            throws IOException {
+        json.beginObject();
+        json.name("label").value("");
+        json.name("amount").beginObject();
+        json.name("currency").value(item.amount.currency);
+        json.name("value").value(item.amount.value);
+        json.endObject();
+        json.endObject();
+    }
+
+    private static String legacySerializeModifiers(Collection<PaymentDetailsModifier> modifiers)
+            throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        JsonWriter json = new JsonWriter(stringWriter);
+        json.beginArray();
+        for (PaymentDetailsModifier modifier : modifiers) {
+            json.beginObject();
+            if (modifier.total != null) {
+                json.name("total");
+                legacySerializeTotal(modifier.total, json);
+            } else {
+                json.name("total").nullValue();
+            }
+            json.name("supportedMethods").beginArray();
+            json.value(modifier.methodData.supportedMethod);
+            json.endArray();
+            json.name("data").value(modifier.methodData.stringifiedData);
+            json.endObject();
+        }
+        json.endArray();
+        return stringWriter.toString();
+    }
+}
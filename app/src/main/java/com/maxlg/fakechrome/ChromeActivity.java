@@ -11,6 +11,12 @@ import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
 
 import org.chromium.components.payments.intent.IsReadyToPayServiceHelper;
+import org.chromium.components.payments.intent.PayIntentTemplate;
+import org.chromium.components.payments.intent.PaymentAmount;
+import org.chromium.components.payments.intent.PaymentAppIndex;
+import org.chromium.components.payments.intent.PaymentAppPrewarmer;
+import org.chromium.components.payments.intent.PaymentResponse;
+import org.chromium.components.payments.intent.PaymentTrace;
 import org.chromium.components.payments.intent.WebPaymentIntentHelper;
 import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentCurrencyAmount;
 import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentDetailsModifier;
@@ -23,12 +29,20 @@ import java.util.List;
 import java.util.Map;
 
 public class ChromeActivity extends AppCompatActivity {
-    // TODO: correct the package name after moving maxpay into another package.
-    private static final String MAX_PAY_PACKAGE = "com.maxlg.fakechrome";
+    private static final String MAX_PAY_METHOD_NAME =
+            "https://skilful-reserve-239412.appspot.com/static/max-payment-method";
 
     private static final int PAYMENT_INTENT_REQUEST_CODE = 123;
+    // Also the correlation id of the trace sections of the checkout, from the IsReadyToPay query to
+    // the payment response, which MaxPay traces with the same id.
+    private static final String PAYMENT_REQUEST_ID = "pay_request_id_1411";
+    private static final String IS_READY_TO_PAY_TRACE_SECTION_NAME = "PaymentRequest.isReadyToPay";
+    private static final String PAYMENT_TRACE_SECTION_NAME = "PaymentRequest.pay";
     private TextView mDescriptionView;
     private Button mPayButton;
+    private PaymentAppIndex mPaymentAppIndex;
+    private PaymentAppIndex.App mMaxPay;
+    private PaymentAppPrewarmer mPaymentAppPrewarmer;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -39,27 +53,61 @@ public class ChromeActivity extends AppCompatActivity {
         mPayButton = findViewById(R.id.button);
 
         mDescriptionView.setMovementMethod(new ScrollingMovementMethod());
+        mPayButton.setEnabled(false);
+        mPaymentAppIndex = PaymentAppIndex.getInstance(getApplicationContext());
+        mPaymentAppPrewarmer = new PaymentAppPrewarmer(getApplicationContext());
+
+        // The index is loaded once per process on its own thread, and then outlives the activity.
+        mPaymentAppIndex.runWhenLoaded(this::runOnUiThread, () -> {
+            if (isDestroyed()) return;
+            List<PaymentAppIndex.App> apps = mPaymentAppIndex.getApps(MAX_PAY_METHOD_NAME);
+            onMaxPayResolved(apps.isEmpty() ? null : apps.get(0));
+        });
 
-        new IsReadyToPayServiceHelper(this,
-                createIsReadyToPayIntent(), new IsReadyToPayServiceHelper.ResultHandler() {
-            @Override
-            public void onIsReadyToPayServiceResponse(boolean isReadyToPay) {
-                mPayButton.setEnabled(isReadyToPay);
-                mDescriptionView.setText("Max pay is " + (isReadyToPay?"ready":"unready") + " to pay.");
-                mDescriptionView.setTextColor(isReadyToPay?Color.BLACK:Color.RED);
+        mPayButton.setOnClickListener((view)->{
+            PaymentTrace.beginAsyncSection(PAYMENT_TRACE_SECTION_NAME, PAYMENT_REQUEST_ID);
+            PaymentTrace.beginSection("ChromeActivity.startPayment");
+            try {
+                Intent intent = createIntent();
+                startActivityForResult(intent, PAYMENT_INTENT_REQUEST_CODE);
+            } finally {
+                PaymentTrace.endSection();
             }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        mPaymentAppPrewarmer.cancelAll();
+        super.onDestroy();
+    }
 
-            @Override
-            public void onIsReadyToPayServiceError() {
+    private void onMaxPayResolved(PaymentAppIndex.App maxPay) {
+        if (maxPay == null || maxPay.getServiceName() == null) {
+            mDescriptionView.setText("MaxPay is not installed.");
+            mDescriptionView.setTextColor(Color.RED);
+            return;
+        }
+        mMaxPay = maxPay;
+
+        // Warm up MaxPay's process now, so that the click on the pay button does not wait for it.
+        mPaymentAppPrewarmer.prewarm(createIsReadyToPayIntent(), createPayIntentTemplate());
+
+        // The query runs on a background thread, and only its result is posted to the UI thread.
+        PaymentTrace.beginAsyncSection(IS_READY_TO_PAY_TRACE_SECTION_NAME, PAYMENT_REQUEST_ID);
+        IsReadyToPayServiceHelper.queryAsync(getApplicationContext(), createIsReadyToPayIntent())
+                .addCallback(this::runOnUiThread, (result)->{
+            PaymentTrace.endAsyncSection(IS_READY_TO_PAY_TRACE_SECTION_NAME, PAYMENT_REQUEST_ID);
+            if (result.isError()) {
                 mPayButton.setEnabled(false);
                 mDescriptionView.setText("MaxPay's IsReadyToPay service has an error.");
                 mDescriptionView.setTextColor(Color.RED);
+                return;
             }
-        });
-
-        mPayButton.setOnClickListener((view)->{
-            Intent intent = createIntent();
-            startActivityForResult(intent, PAYMENT_INTENT_REQUEST_CODE);
+            boolean isReadyToPay = result.isReadyToPay();
+            mPayButton.setEnabled(isReadyToPay);
+            mDescriptionView.setText("Max pay is " + (isReadyToPay?"ready":"unready") + " to pay.");
+            mDescriptionView.setTextColor(isReadyToPay?Color.BLACK:Color.RED);
         });
     }
 
@@ -68,48 +116,63 @@ public class ChromeActivity extends AppCompatActivity {
         super.onActivityResult(requestCode, resultCode, data);
 
         if (requestCode == PAYMENT_INTENT_REQUEST_CODE) {
-            WebPaymentIntentHelper.parsePaymentResponse(resultCode, data, (errorString)->{
+            PaymentResponse response = PaymentResponse.parse(resultCode, data, (errorString)->{
                 mDescriptionView.setText(errorString);
                 mDescriptionView.setTextColor(Color.RED);
-            }, (methodName, details)->{
-                String description = "methodName: " + methodName + ", details: "+details;
+            });
+            if (response != null) {
+                String description = "methodName: " + response.getMethodName()
+                        + ", status: " + response.getDetailsField("status")
+                        + ", details: " + response.getDetails();
                 mDescriptionView.setText(description);
                 mDescriptionView.setTextColor(Color.BLACK);
-            });
+            }
+            PaymentTrace.endAsyncSection(PAYMENT_TRACE_SECTION_NAME, PAYMENT_REQUEST_ID);
         }
     }
 
     private Intent createIsReadyToPayIntent() {
         Map<String, PaymentMethodData> methodDataMap = new HashMap<>();
-        PaymentMethodData maxPayMethodData = new PaymentMethodData("maxPayMethod", "{}");
+        PaymentMethodData maxPayMethodData = new PaymentMethodData("maxPay", "{}");
         methodDataMap.put("maxPay", maxPayMethodData);
 
         byte[][] certificateChain = new byte[][]{{0}};
 
-        return WebPaymentIntentHelper.createIsReadyToPayIntent(MAX_PAY_PACKAGE, "com.maxlg.maxpay.MaxPayIsReadyToPayService",
+        return WebPaymentIntentHelper.createIsReadyToPayIntent(mMaxPay.getPackageName(), mMaxPay.getServiceName(),
                 "maxlgu.github.io",
-                "maxlgu.github.io", certificateChain, methodDataMap);
+                "maxlgu.github.io", certificateChain, methodDataMap,
+                !mMaxPay.skipsDeprecatedExtras());
     }
 
-    private Intent createIntent() {
+    private PayIntentTemplate createPayIntentTemplate() {
         Map<String, PaymentMethodData> methodDataMap = new HashMap<>();
-        PaymentMethodData maxPayMethodData = new PaymentMethodData("maxPayMethod", "{}");
+        PaymentMethodData maxPayMethodData = new PaymentMethodData("maxPay", "{}");
         methodDataMap.put("maxPay", maxPayMethodData);
 
-        PaymentItem total = new PaymentItem(new PaymentCurrencyAmount("CAD", "50"));
+        byte[][] certificateChain = new byte[][]{{0}};
+
+        return PayIntentTemplate.create(mMaxPay.getPackageName(), mMaxPay.getActivityName(),
+                "Linda's Bakery", "maxlgu.github.io", "maxlgu.github.io", certificateChain,
+                methodDataMap, !mMaxPay.skipsDeprecatedExtras());
+    }
+
+    private Intent createIntent() {
+        PaymentMethodData maxPayMethodData = new PaymentMethodData("maxPay", "{}");
+
+        // Parsed once, and shared by the total, the display item and the modifier.
+        PaymentCurrencyAmount amount = new PaymentCurrencyAmount(PaymentAmount.parse("CAD", "50"));
+        PaymentItem total = new PaymentItem(amount);
 
         List<PaymentItem> displayItems = new ArrayList<>();
-        displayItems.add(new PaymentItem(new PaymentCurrencyAmount("CAD", "50")));
+        displayItems.add(new PaymentItem(amount));
 
         Map<String, PaymentDetailsModifier> modifiers = new HashMap<>();
         PaymentDetailsModifier maxPayModifier = new PaymentDetailsModifier(total, maxPayMethodData);
         modifiers.put("maxPay", maxPayModifier);
 
-        byte[][] certificateChain = new byte[][]{{0}};
-
-        return WebPaymentIntentHelper.createPayIntent(MAX_PAY_PACKAGE, "com.maxlg.maxpay.MaxPayActivity",
-                "pay_request_id_1411", "Linda's Bakery", "maxlgu.github.io",
-                "maxlgu.github.io", certificateChain, methodDataMap, total,
-                displayItems, modifiers);
+        PaymentAppPrewarmer.Prewarm prewarm = mPaymentAppPrewarmer.get(mMaxPay.getPackageName());
+        PayIntentTemplate template =
+                prewarm == null ? createPayIntentTemplate() : prewarm.getPayIntentTemplate();
+        return template.createPayIntent(PAYMENT_REQUEST_ID, total, displayItems, modifiers);
     }
 }
@@ -0,0 +1,214 @@
+package com.maxlg.maxpay;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.Signature;
+import android.os.Build;
+
+import androidx.annotation.Nullable;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifies that the caller of the IsReadyToPay service or of the Pay activity is a trusted browser,
+ * i.e., a package on the allowlist that is signed with one of the allowlisted certificates. The
+ * app itself, which contains the demo browser, is always trusted.
+ *
+ * Reading the signatures of a package is an IPC to the package manager, so the verdicts are cached
+ * per uid and per package, and dropped whenever a package is installed, updated or removed. A
+ * verdict that is being computed when they are dropped is returned, but not cached.
+ */
+public final class CallerVerifier {
+    /** The lowercase hex SHA-256 digest of the certificate that signs Chrome's releases. */
+    private static final String CHROME_CERTIFICATE_SHA256 =
+            "f0fd6c5b410f25cb25c3b53346c8972fae30f8ee7411df910480ad6b2d60db83";
+
+    private static final Map<String, Set<String>> DEFAULT_TRUSTED_BROWSERS =
+            Collections.singletonMap("com.android.chrome",
+                    Collections.singleton(CHROME_CERTIFICATE_SHA256));
+
+    // The verdict of a package or a uid that is not trusted.
+    private static final String UNTRUSTED = "";
+
+    private static CallerVerifier sInstance;
+
+    private final String mOwnPackageName;
+    private final PackageManager mPackageManager;
+    private final Map<String, Set<String>> mTrustedBrowsers;
+    // The trusted package name of each uid, or UNTRUSTED.
+    private final ConcurrentHashMap<Integer, String> mUidVerdicts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Boolean> mPackageVerdicts = new ConcurrentHashMap<>();
+    // Incremented by every invalidate(), so that a verdict computed before it is not cached.
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    // Runs between a verification and the caching of its verdict, in tests.
+    @Nullable
+    private Runnable mOnVerifiedForTesting;
+
+    /**
+     * @return The process-wide verifier of the default trusted browsers, which follows the package
+     *         changes for the lifetime of the process.
+     */
+    public static synchronized CallerVerifier getInstance(Context context) {
+        if (sInstance == null) {
+            Context applicationContext = context.getApplicationContext();
+            sInstance = new CallerVerifier(applicationContext, DEFAULT_TRUSTED_BROWSERS);
+            sInstance.registerPackageReceiver(applicationContext);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param context The application context. Should not be null.
+     * @param trustedBrowsers The lowercase hex SHA-256 digests of the allowed signing certificates,
+     *         by package name.
+     */
+    public CallerVerifier(Context context, Map<String, Set<String>> trustedBrowsers) {
+        assert context != null;
+        mOwnPackageName = context.getPackageName();
+        mPackageManager = context.getPackageManager();
+        mTrustedBrowsers = new HashMap<>(trustedBrowsers);
+    }
+
+    /**
+     * @param uid The uid of the caller, e.g., Binder.getCallingUid().
+     * @return The package name of the trusted browser that runs as the uid, or null if the caller
+     *         is not trusted.
+     */
+    @Nullable
+    public String getTrustedPackage(int uid) {
+        String verdict = mUidVerdicts.get(uid);
+        if (verdict == null) {
+            int generation = mGeneration.get();
+            verdict = verifyUid(uid);
+            putIfCurrent(mUidVerdicts, uid, verdict, generation);
+        }
+        return verdict.isEmpty() ? null : verdict;
+    }
+
+    /**
+     * @param packageName The package of the caller, e.g., Activity.getCallingPackage(), or null.
+     * @return Whether the package is a trusted browser.
+     */
+    public boolean isTrustedPackage(@Nullable String packageName) {
+        if (packageName == null) return false;
+        Boolean verdict = mPackageVerdicts.get(packageName);
+        if (verdict == null) {
+            int generation = mGeneration.get();
+            verdict = verifyPackage(packageName);
+            putIfCurrent(mPackageVerdicts, packageName, verdict, generation);
+        }
+        return verdict;
+    }
+
+    /** Drops all of the cached verdicts, e.g., when a package has changed. */
+    public void invalidate() {
+        // Incremented first, so that a verification in flight either sees it or is cleared.
+        mGeneration.incrementAndGet();
+        // Uids can be reassigned and shared, so all of them are dropped.
+        mUidVerdicts.clear();
+        mPackageVerdicts.clear();
+    }
+
+    /* package */ void setOnVerifiedForTesting(@Nullable Runnable onVerified) {
+        mOnVerifiedForTesting = onVerified;
+    }
+
+    // Caches a verdict that was computed since the given generation, unless it is stale. The
+    // verdict is removed again if an invalidate() ran between the check and the put, which may
+    // have cleared the verdicts before it was put.
+    private <K, V> void putIfCurrent(
+            ConcurrentHashMap<K, V> verdicts, K key, V verdict, int generation) {
+        if (mOnVerifiedForTesting != null) mOnVerifiedForTesting.run();
+        if (mGeneration.get() != generation) return;
+        verdicts.put(key, verdict);
+        if (mGeneration.get() != generation) verdicts.remove(key, verdict);
+    }
+
+    private void registerPackageReceiver(Context context) {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addDataScheme("package");
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        }, filter);
+    }
+
+    private String verifyUid(int uid) {
+        String[] packageNames = mPackageManager.getPackagesForUid(uid);
+        if (packageNames == null || packageNames.length == 0) return UNTRUSTED;
+        for (String packageName : packageNames) {
+            if (isTrustedPackage(packageName)) return packageName;
+        }
+        return UNTRUSTED;
+    }
+
+    // Every current signer of the package has to be allowlisted, so that a package signed by an
+    // allowlisted and another certificate is not trusted.
+    private boolean verifyPackage(String packageName) {
+        if (packageName.equals(mOwnPackageName)) return true;
+        Set<String> trustedDigests = mTrustedBrowsers.get(packageName);
+        if (trustedDigests == null) return false;
+
+        Signature[] signers;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                PackageInfo info = mPackageManager.getPackageInfo(
+                        packageName, PackageManager.GET_SIGNING_CERTIFICATES);
+                signers = info.signingInfo == null ? null
+                                                   : info.signingInfo.getApkContentsSigners();
+            } else {
+                signers = getSignersBeforeP(packageName);
+            }
+        } catch (PackageManager.NameNotFoundException e) {
+            return false;
+        }
+        if (signers == null || signers.length == 0) return false;
+
+        Set<String> digests = new HashSet<>();
+        for (Signature signer : signers) digests.add(sha256Hex(signer.toByteArray()));
+        return trustedDigests.containsAll(digests);
+    }
+
+    // GET_SIGNATURES and PackageInfo.signatures are deprecated, but they are the only way to read
+    // the signers before API 28, which uses GET_SIGNING_CERTIFICATES above.
+    @SuppressWarnings("deprecation")
+    private Signature[] getSignersBeforeP(String packageName)
+            throws PackageManager.NameNotFoundException {
+        return mPackageManager.getPackageInfo(packageName, PackageManager.GET_SIGNATURES)
+                .signatures;
+    }
+
+    private static String sha256Hex(byte[] bytes) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has SHA-256.
+            throw new IllegalStateException(e);
+        }
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = Character.forDigit((digest[i] >> 4) & 0xF, 16);
+            hex[2 * i + 1] = Character.forDigit(digest[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+}
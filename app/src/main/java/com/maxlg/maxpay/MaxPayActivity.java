@@ -11,65 +11,119 @@ import android.widget.TextView;
 
 import com.maxlg.fakechrome.R;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.Set;
+import org.chromium.components.payments.intent.PaymentTrace;
+import org.chromium.components.payments.paymentapp.PayRequest;
+import org.chromium.components.payments.paymentapp.PaymentResponseBuilder;
 
 public class MaxPayActivity extends AppCompatActivity {
+    // The asynchronous trace section from the launch to the result, which lines up with the
+    // browser's section of the same PaymentRequest id.
+    private static final String TRACE_SECTION_NAME = "MaxPay.PaymentRequest";
+
+    // The correlation id of the trace section, or null if it has ended or was never begun.
+    private String mTraceId;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // The payment details are only for the browser that started the payment.
+        if (!CallerVerifier.getInstance(this).isTrustedPackage(getCallingPackage())) {
+            setResult(Activity.RESULT_CANCELED, new Intent());
+            finish();
+            return;
+        }
         setContentView(R.layout.activity_maxpay);
-        Intent intent = getIntent();
+        // Only the total is decoded before the first frame.
+        PayRequest request = PayRequest.from(getIntent());
+        mTraceId = request.getPaymentRequestId();
+        if (mTraceId == null && PaymentTrace.isEnabled()) {
+            mTraceId = PaymentTrace.newCorrelationId(getPackageName());
+        }
+        if (mTraceId != null) PaymentTrace.beginAsyncSection(TRACE_SECTION_NAME, mTraceId);
 
         TextView descriptionView = findViewById(R.id.description);
         descriptionView.setMovementMethod(new ScrollingMovementMethod());
-        descriptionView.setText(parseIntentExtras(intent));
+        // The large parameters may have been sent out of band, which takes blocking reads. The
+        // request restores them while the main thread reads the other parameters.
+        new Thread(() -> {
+            PaymentTrace.beginSection("MaxPayActivity.describe");
+            String description;
+            try {
+                description = request.restorePayload()
+                        ? describe(request) : "Failed to read the payment parameters.";
+            } finally {
+                PaymentTrace.endSection();
+            }
+            runOnUiThread(() -> descriptionView.setText(description));
+        }).start();
 
-        String merchantName = intent.getStringExtra("merchantName");
         TextView merchantView = findViewById(R.id.merchant);
-        merchantView.setText("merchant: " + merchantName);
-        String stringifiedTotal = intent.getStringExtra("total");
+        merchantView.setText("merchant: " + request.getMerchantName());
+        PayRequest.Amount total = request.getTotal();
         TextView totalView = findViewById(R.id.total);
-        totalView.setText("total: " +stringifiedTotal);
+        totalView.setText("total: "
+                + (total == null ? "" : total.getCurrency() + " " + total.getValue()));
 
         Button payButton = findViewById(R.id.pay_button);
         payButton.setOnClickListener((v)->{
             setResult(Activity.RESULT_OK, createResultIntent());
+            endTraceSection();
             finish();
         });
         Button declineButton = findViewById(R.id.decline_button);
         declineButton.setOnClickListener((v)->{
             setResult(Activity.RESULT_CANCELED, new Intent());
+            endTraceSection();
             finish();
         });
     }
 
-    private Intent createResultIntent() {
-        Intent resultIntent = new Intent();
-        Bundle result = new Bundle();
-        result.putString("methodName", "maxPay");
-        Long timeStamp = System.currentTimeMillis();
-        result.putString("details", "{\"status\":\"success\",\"amount\":50,\"currency\":\"CAD\",\"timestamp\":"+timeStamp.toString()+"}");
-        resultIntent.putExtras(result);
-        return resultIntent;
+    @Override
+    protected void onDestroy() {
+        // E.g., when the user leaves with the back button.
+        endTraceSection();
+        super.onDestroy();
+    }
+
+    private void endTraceSection() {
+        if (mTraceId == null) return;
+        PaymentTrace.endAsyncSection(TRACE_SECTION_NAME, mTraceId);
+        mTraceId = null;
     }
 
-    private String parseIntentExtras(Intent intent) {
-        Bundle bundle = intent.getExtras();
-        JSONObject json = new JSONObject();
-        String description;
-        Set<String> keys = bundle.keySet();
+    private Intent createResultIntent() {
+        PaymentTrace.beginSection("MaxPayActivity.createResultIntent");
         try {
-            for (String key : keys) {
-                json.put(key, JSONObject.wrap(bundle.get(key)));
+            return new PaymentResponseBuilder("maxPay")
+                    .putDetail("status", "success")
+                    .putDetail("amount", 50)
+                    .putDetail("currency", "CAD")
+                    .putDetail("timestamp", System.currentTimeMillis())
+                    .build();
+        } finally {
+            PaymentTrace.endSection();
+        }
+    }
+
+    private static String describe(PayRequest request) {
+        StringBuilder description = new StringBuilder();
+        description.append("origin: ").append(request.getTopOrigin())
+                .append("\niframe origin: ").append(request.getPaymentRequestOrigin())
+                .append("\nid: ").append(request.getPaymentRequestId());
+        for (String methodName : request.getMethodNames()) {
+            description.append("\nmethod: ").append(methodName)
+                    .append(' ').append(request.getMethodData(methodName));
+        }
+        for (PayRequest.Modifier modifier : request.getModifiers()) {
+            description.append("\nmodifier: ").append(modifier.getSupportedMethods());
+            if (modifier.getTotal() != null) {
+                description.append(' ').append(modifier.getTotal().getCurrency())
+                        .append(' ').append(modifier.getTotal().getValue());
             }
-            description = json.toString();
-        } catch(JSONException e) {
-            description = e.toString();
         }
-        return description;
+        byte[][] certificateChain = request.getTopCertificateChain();
+        description.append("\ncertificates: ")
+                .append(certificateChain == null ? 0 : certificateChain.length);
+        return description.toString();
     }
 }
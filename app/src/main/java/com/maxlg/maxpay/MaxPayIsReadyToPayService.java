@@ -2,25 +2,155 @@ package com.maxlg.maxpay;
 
 import android.app.Service;
 import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Binder;
+import android.os.Bundle;
 import android.os.IBinder;
 import android.os.RemoteException;
 
+import androidx.annotation.Nullable;
+
 import  org.chromium.IsReadyToPayService;
 import  org.chromium.IsReadyToPayServiceCallback;
+import  org.chromium.IsReadyToPayServiceV2;
+import  org.chromium.IsReadyToPayServiceV2Callback;
+import  org.chromium.components.payments.intent.PaymentTrace;
+import  org.chromium.components.payments.intent.WebPaymentIntentHelper;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // This is copied from https://developers.google.com/web/fundamentals/payments/payment-apps-developer-guide/android-payment-apps?hl=fr.
+// The readiness is decided by a ReadinessEngine, off the binder threads, so that a slow rule does
+// not hold a binder thread that other calls are waiting for.
 public  class MaxPayIsReadyToPayService extends Service {
-    private final IsReadyToPayService.Stub mBinder =
-            new IsReadyToPayService.Stub() {
-                @Override
-                public void isReadyToPay(IsReadyToPayServiceCallback callback) throws RemoteException {
-                    // Check permission here.
-                    callback.handleIsReadyToPay(true);
-                }
-            };
+    private static final String MAX_PAY_METHOD_NAME =
+            "https://skilful-reserve-239412.appspot.com/static/max-payment-method";
+    // The fake browser of this demo passes its method identifier rather than the URL.
+    private static final String MAX_PAY_SHORT_METHOD_NAME = "maxPay";
+    // The asynchronous trace section from a binder call to its answer.
+    private static final String DECISION_TRACE_SECTION_NAME = "MaxPay.isReadyToPay";
+
+    private ReadinessEngine mEngine;
+    private CallerVerifier mCallerVerifier;
+    private SharedPreferences mAccountPreferences;
+    // The cached decisions are stale once the account changes, e.g., when its last instrument is
+    // removed. Kept in a field, because the preferences only hold a weak reference to it.
+    private final SharedPreferences.OnSharedPreferenceChangeListener mAccountListener =
+            (preferences, key) -> mEngine.clearCache();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mCallerVerifier = CallerVerifier.getInstance(this);
+        mEngine = new ReadinessEngine(
+                Arrays.asList(ReadinessRules.supportedMethods(
+                                      Arrays.asList(MAX_PAY_METHOD_NAME, MAX_PAY_SHORT_METHOD_NAME)),
+                        ReadinessRules.blockedOrigins(Collections.<String>emptyList()),
+                        ReadinessRules.accountCanPay(this)),
+                ReadinessEngine.DEFAULT_TTL_MS, ReadinessEngine.DEFAULT_BUDGET_MS);
+        mAccountPreferences = getSharedPreferences(
+                ReadinessRules.ACCOUNT_PREFERENCES, MODE_PRIVATE);
+        mAccountPreferences.registerOnSharedPreferenceChangeListener(mAccountListener);
+    }
+
+    @Override
+    public void onDestroy() {
+        mAccountPreferences.unregisterOnSharedPreferenceChangeListener(mAccountListener);
+        mEngine.shutdown();
+        super.onDestroy();
+    }
 
     @Override
     public IBinder onBind(Intent intent) {
-        return mBinder;
+        // Browsers that do not know about v2 bind without its action.
+        if (WebPaymentIntentHelper.ACTION_IS_READY_TO_PAY_V2.equals(intent.getAction())) {
+            return new IsReadyToPayServiceV2Stub();
+        }
+        return new IsReadyToPayServiceStub(intent.getExtras());
+    }
+
+    // Answers about the extras of the intent that it was bound with. Android hands the stub of an
+    // onBind() to every later binding of an equal intent, but the browser's bind intents are equal
+    // only when their extras are (see IsReadyToPayFingerprint#createBindIntent), so each stub
+    // serves the queries of its own extras.
+    private final class IsReadyToPayServiceStub extends IsReadyToPayService.Stub {
+        @Nullable
+        private final Bundle mExtras;
+
+        IsReadyToPayServiceStub(@Nullable Bundle extras) {
+            mExtras = extras;
+        }
+
+        @Override
+        public void isReadyToPay(IsReadyToPayServiceCallback callback) throws RemoteException {
+            String callerPackage = getTrustedCallerPackage();
+            if (callerPackage == null) {
+                callback.handleIsReadyToPay(false);
+                return;
+            }
+            ReadinessQuery query = ReadinessQuery.fromExtras(callerPackage, mExtras);
+            String traceId = beginDecisionTrace(callerPackage);
+            mEngine.decide(query, (isReady) -> {
+                endDecisionTrace(traceId);
+                try {
+                    callback.handleIsReadyToPay(isReady);
+                } catch (RemoteException e) {
+                    // The browser has gone away.
+                }
+            });
+        }
+    }
+
+    // The reference implementation of the batched interface. Each query has the same extras as an
+    // IsReadyToPay intent, e.g., the origins and the method names.
+    private final class IsReadyToPayServiceV2Stub extends IsReadyToPayServiceV2.Stub {
+        @Override
+        public void isReadyToPayBatch(Bundle[] queries, IsReadyToPayServiceV2Callback callback)
+                throws RemoteException {
+            String callerPackage = getTrustedCallerPackage();
+            boolean[] isReadyToPay = new boolean[queries.length];
+            AtomicInteger pending = new AtomicInteger(queries.length);
+            if (callerPackage == null || queries.length == 0) {
+                callback.handleIsReadyToPayBatch(isReadyToPay);
+                return;
+            }
+            String traceId = beginDecisionTrace(callerPackage);
+            for (int i = 0; i < queries.length; i++) {
+                final int index = i;
+                mEngine.decide(ReadinessQuery.fromExtras(callerPackage, queries[i]), (isReady) -> {
+                    isReadyToPay[index] = isReady;
+                    // The decrement publishes the write above to the thread that answers.
+                    if (pending.decrementAndGet() > 0) return;
+                    endDecisionTrace(traceId);
+                    try {
+                        callback.handleIsReadyToPayBatch(isReadyToPay);
+                    } catch (RemoteException e) {
+                        // The browser has gone away.
+                    }
+                });
+            }
+        }
+    }
+
+    // Must be called on the binder thread of the incoming call. Returns null for a caller that is
+    // not a trusted browser, which is told that MaxPay is not ready.
+    private String getTrustedCallerPackage() {
+        return mCallerVerifier.getTrustedPackage(Binder.getCallingUid());
+    }
+
+    // The browser does not send a PaymentRequest id with its queries, so each call gets its own
+    // correlation id. Returns null if no trace is being captured.
+    @Nullable
+    private static String beginDecisionTrace(String callerPackage) {
+        if (!PaymentTrace.isEnabled()) return null;
+        String traceId = PaymentTrace.newCorrelationId(callerPackage);
+        PaymentTrace.beginAsyncSection(DECISION_TRACE_SECTION_NAME, traceId);
+        return traceId;
+    }
+
+    private static void endDecisionTrace(@Nullable String traceId) {
+        if (traceId != null) PaymentTrace.endAsyncSection(DECISION_TRACE_SECTION_NAME, traceId);
     }
-}
\ No newline at end of file
+}
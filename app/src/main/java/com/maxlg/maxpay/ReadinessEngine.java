@@ -0,0 +1,215 @@
+package com.maxlg.maxpay;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import org.chromium.components.payments.intent.PaymentTrace;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decides whether MaxPay is ready to pay for a query, by evaluating all of its {@link
+ * ReadinessRule}s against each of the query's payment methods. The app is ready if it is ready for
+ * any of the methods.
+ *
+ * The decisions are cached per (caller, top origin, iframe origin, method) for a time to live, so
+ * that the repeated queries of a checkout page are answered without running the rules. The rules
+ * run on the engine's own thread, never on the binder thread of the query, and a query that is not
+ * decided within the budget is answered "not ready", as the browser would stop waiting anyway.
+ */
+public final class ReadinessEngine {
+    /** The default number of milliseconds that a decision is cached. */
+    public static final long DEFAULT_TTL_MS = 60_000;
+
+    /**
+     * The default number of milliseconds to decide, which leaves the binder round trips some of the
+     * browser's 400 ms budget.
+     */
+    public static final long DEFAULT_BUDGET_MS = 300;
+
+    private static final int MAX_CACHED_DECISIONS = 256;
+
+    private final List<ReadinessRule> mRules;
+    private final long mTtlMs;
+    private final long mBudgetMs;
+    // Runs the rules, which may block.
+    private final ExecutorService mExecutor;
+    // Enforces the budget, so it is not blocked by the rules.
+    private final Handler mBudgetHandler;
+
+    // Guarded by mDecisions. Incremented by clearCache(), so that the evaluations that started
+    // before it do not cache their stale decisions.
+    private long mCacheGeneration;
+
+    // Guarded by itself. Ordered from the least to the most recently used decision.
+    private final LinkedHashMap<String, Decision> mDecisions =
+            new LinkedHashMap<String, Decision>(16, 0.75f, /*accessOrder=*/true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Decision> eldest) {
+                    return size() > MAX_CACHED_DECISIONS;
+                }
+            };
+
+    private static final class Decision {
+        final boolean mIsReady;
+        final long mExpiresAtMs;
+
+        Decision(boolean isReady, long expiresAtMs) {
+            mIsReady = isReady;
+            mExpiresAtMs = expiresAtMs;
+        }
+    }
+
+    /** The callback that receives a decision, once. */
+    public interface Callback {
+        /** @param isReady Whether MaxPay is ready to pay for the query. */
+        void onDecided(boolean isReady);
+    }
+
+    /**
+     * @param rules The rules, all of which should be satisfied for a method to be ready.
+     * @param ttlMs The number of milliseconds that a decision is cached.
+     * @param budgetMs The number of milliseconds after which an undecided query is not ready.
+     */
+    public ReadinessEngine(List<ReadinessRule> rules, long ttlMs, long budgetMs) {
+        assert rules != null;
+        assert ttlMs >= 0;
+        assert budgetMs > 0;
+        mRules = new ArrayList<>(rules);
+        mTtlMs = ttlMs;
+        mBudgetMs = budgetMs;
+        mExecutor = Executors.newSingleThreadExecutor();
+        HandlerThread budgetThread = new HandlerThread("MaxPayReadinessBudget");
+        budgetThread.start();
+        mBudgetHandler = new Handler(budgetThread.getLooper());
+    }
+
+    /**
+     * Decides a query. A query whose decisions are all cached is decided synchronously, and any
+     * other one on the engine's threads. Can be called on any thread.
+     * @param query The query to decide.
+     * @param callback Receives the decision exactly once, on the calling thread or the engine's,
+     *         unless the engine is shut down first.
+     */
+    public void decide(ReadinessQuery query, Callback callback) {
+        Boolean cached = getCachedDecision(query);
+        if (cached != null) {
+            callback.onDecided(cached);
+            return;
+        }
+
+        final AtomicBoolean isDecided = new AtomicBoolean();
+        final Runnable budgetTask = () -> {
+            if (isDecided.compareAndSet(false, true)) callback.onDecided(false);
+        };
+        try {
+            mExecutor.execute(() -> {
+                // Still evaluated after the budget, so that the next query hits the cache.
+                PaymentTrace.beginSection("ReadinessEngine.evaluate");
+                boolean isReady;
+                try {
+                    isReady = evaluate(query);
+                } finally {
+                    PaymentTrace.endSection();
+                }
+                mBudgetHandler.removeCallbacks(budgetTask);
+                if (isDecided.compareAndSet(false, true)) callback.onDecided(isReady);
+            });
+        } catch (RejectedExecutionException e) {
+            // The engine has been shut down.
+            callback.onDecided(false);
+            return;
+        }
+        mBudgetHandler.postDelayed(budgetTask, mBudgetMs);
+    }
+
+    /**
+     * Removes all of the cached decisions, e.g., when the account state changes. The queries that
+     * are being evaluated are still answered, but their decisions are not cached.
+     */
+    public void clearCache() {
+        synchronized (mDecisions) {
+            mCacheGeneration++;
+            mDecisions.clear();
+        }
+    }
+
+    /**
+     * Stops the engine's threads. Queries that are being decided are not answered, so the browser
+     * times out on them.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+        mBudgetHandler.getLooper().quit();
+    }
+
+    // Returns null unless all of the methods are cached and none of them is ready, or any of them
+    // is cached as ready.
+    @Nullable
+    private Boolean getCachedDecision(ReadinessQuery query) {
+        List<String> methodNames = query.getMethodNames();
+        if (methodNames.isEmpty()) return false;
+        long nowMs = SystemClock.elapsedRealtime();
+        boolean isMissing = false;
+        synchronized (mDecisions) {
+            for (String methodName : methodNames) {
+                String key = cacheKey(query, methodName);
+                Decision decision = mDecisions.get(key);
+                if (decision == null || decision.mExpiresAtMs <= nowMs) {
+                    if (decision != null) mDecisions.remove(key);
+                    isMissing = true;
+                } else if (decision.mIsReady) {
+                    return true;
+                }
+            }
+        }
+        return isMissing ? null : false;
+    }
+
+    private boolean evaluate(ReadinessQuery query) {
+        long generation;
+        synchronized (mDecisions) {
+            generation = mCacheGeneration;
+        }
+        boolean isReady = false;
+        for (String methodName : query.getMethodNames()) {
+            boolean isMethodReady = evaluateMethod(query.forMethod(methodName));
+            synchronized (mDecisions) {
+                if (generation == mCacheGeneration) {
+                    mDecisions.put(cacheKey(query, methodName),
+                            new Decision(isMethodReady, SystemClock.elapsedRealtime() + mTtlMs));
+                }
+            }
+            if (isMethodReady) isReady = true;
+        }
+        return isReady;
+    }
+
+    private boolean evaluateMethod(ReadinessQuery query) {
+        for (ReadinessRule rule : mRules) {
+            try {
+                if (!rule.isSatisfied(query)) return false;
+            } catch (RuntimeException e) {
+                // A rule that fails cannot vouch for the query.
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The NUL separator cannot appear in a package name, an origin, or a method name.
+    private static String cacheKey(ReadinessQuery query, String methodName) {
+        return query.getCallerPackage() + '\0' + query.getTopOrigin() + '\0'
+                + query.getPaymentRequestOrigin() + '\0' + methodName;
+    }
+}
@@ -0,0 +1,89 @@
+package com.maxlg.maxpay;
+
+import android.os.Bundle;
+
+import androidx.annotation.Nullable;
+
+import org.chromium.components.payments.intent.WebPaymentIntentHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One IsReadyToPay question from a browser: who is asking, for which merchant, and about which
+ * payment methods. Built from the extras of an IsReadyToPay intent, which the browser sends with
+ * each call, or from one query of a batch.
+ */
+public final class ReadinessQuery {
+    private final String mCallerPackage;
+    private final String mTopOrigin;
+    private final String mPaymentRequestOrigin;
+    private final List<String> mMethodNames;
+    @Nullable
+    private final Bundle mMethodData;
+
+    public ReadinessQuery(String callerPackage, String topOrigin, String paymentRequestOrigin,
+            List<String> methodNames, @Nullable Bundle methodData) {
+        mCallerPackage = callerPackage;
+        mTopOrigin = topOrigin;
+        mPaymentRequestOrigin = paymentRequestOrigin;
+        mMethodNames = Collections.unmodifiableList(new ArrayList<>(methodNames));
+        mMethodData = methodData;
+    }
+
+    /**
+     * @param callerPackage The package of the browser that asks.
+     * @param extras The extras of an IsReadyToPay intent, or null.
+     * @return The query, with empty strings and lists for the missing extras.
+     */
+    public static ReadinessQuery fromExtras(String callerPackage, @Nullable Bundle extras) {
+        if (extras == null) extras = Bundle.EMPTY;
+        List<String> methodNames =
+                extras.getStringArrayList(WebPaymentIntentHelper.EXTRA_METHOD_NAMES);
+        return new ReadinessQuery(callerPackage,
+                nonNull(extras.getString(WebPaymentIntentHelper.EXTRA_TOP_ORIGIN)),
+                nonNull(extras.getString(WebPaymentIntentHelper.EXTRA_PAYMENT_REQUEST_ORIGIN)),
+                methodNames == null ? Collections.<String>emptyList() : methodNames,
+                extras.getBundle(WebPaymentIntentHelper.EXTRA_METHOD_DATA));
+    }
+
+    private static String nonNull(@Nullable String value) {
+        return value == null ? "" : value;
+    }
+
+    /** @return The same query, narrowed to one of its payment methods. */
+    public ReadinessQuery forMethod(String methodName) {
+        return new ReadinessQuery(mCallerPackage, mTopOrigin, mPaymentRequestOrigin,
+                Collections.singletonList(methodName), mMethodData);
+    }
+
+    /** @return The package of the browser that asks. */
+    public String getCallerPackage() {
+        return mCallerPackage;
+    }
+
+    /** @return The schemeless origin of the top-level page. */
+    public String getTopOrigin() {
+        return mTopOrigin;
+    }
+
+    /** @return The schemeless origin of the frame that created the PaymentRequest. */
+    public String getPaymentRequestOrigin() {
+        return mPaymentRequestOrigin;
+    }
+
+    /** @return The payment method names, possibly empty. Unmodifiable. */
+    public List<String> getMethodNames() {
+        return mMethodNames;
+    }
+
+    /**
+     * @param methodName A payment method name of the query.
+     * @return The merchant's stringified data for the method, or null.
+     */
+    @Nullable
+    public String getMethodData(String methodName) {
+        return mMethodData == null ? null : mMethodData.getString(methodName);
+    }
+}
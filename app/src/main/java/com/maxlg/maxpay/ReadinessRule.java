@@ -0,0 +1,15 @@
+package com.maxlg.maxpay;
+
+/**
+ * One condition of the readiness of MaxPay, e.g., that the method is supported or that the account
+ * can pay. A query is ready only if all of the rules of the {@link ReadinessEngine} are satisfied.
+ *
+ * Rules are evaluated on the engine's background thread, one query at a time, and may do I/O.
+ */
+public interface ReadinessRule {
+    /**
+     * @param query The query, narrowed to one payment method.
+     * @return Whether the rule lets MaxPay answer that it is ready to pay.
+     */
+    boolean isSatisfied(ReadinessQuery query);
+}
@@ -0,0 +1,48 @@
+package com.maxlg.maxpay;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/** The built-in rules of MaxPay's readiness. */
+public final class ReadinessRules {
+    /** The preferences that hold the state of the MaxPay account. */
+    public static final String ACCOUNT_PREFERENCES = "maxpay_account";
+    /** Whether the account has a payment instrument that can be charged. */
+    public static final String KEY_HAS_USABLE_INSTRUMENT = "has_usable_instrument";
+
+    /** @return A rule that is satisfied by the methods that MaxPay supports. */
+    public static ReadinessRule supportedMethods(Collection<String> methodNames) {
+        final Set<String> supported = new HashSet<>(methodNames);
+        return (query) -> supported.containsAll(query.getMethodNames());
+    }
+
+    /** @return A rule that refuses the merchants of the given schemeless origins. */
+    public static ReadinessRule blockedOrigins(Collection<String> origins) {
+        final Set<String> blocked = new HashSet<>(origins);
+        return (query) -> !blocked.contains(query.getTopOrigin())
+                && !blocked.contains(query.getPaymentRequestOrigin());
+    }
+
+    /** @return A rule that answers only the browsers of the given packages. */
+    public static ReadinessRule allowedCallers(Collection<String> packageNames) {
+        final Set<String> allowed = new HashSet<>(packageNames);
+        return (query) -> allowed.contains(query.getCallerPackage());
+    }
+
+    /**
+     * @return A rule that is satisfied while the MaxPay account has a usable payment instrument.
+     *         A new install has one, so that the demo is ready out of the box.
+     */
+    public static ReadinessRule accountCanPay(Context context) {
+        final SharedPreferences preferences =
+                context.getSharedPreferences(ACCOUNT_PREFERENCES, Context.MODE_PRIVATE);
+        return (query) -> preferences.getBoolean(KEY_HAS_USABLE_INSTRUMENT, true);
+    }
+
+    // Prevent instantiation.
+    private ReadinessRules() {}
+}
@@ -98,6 +98,15 @@ public abstract class ErrorStrings {
     public static final String UNRECOGNIZED_ACTIVITY_RESULT  =
             "Payment app returned unrecognized activity result %d.";
 
+    public static final String PAYMENT_APP_RESPONSE_TOO_LARGE =
+            "Payment app returned an invalid result. The details are too large.";
+
+    public static final String PAYMENT_APP_INVALID_DETAILS =
+            "Payment app returned an invalid result. The details are not a JSON object.";
+
+    public static final String PAYMENT_APP_DETAILS_TOO_DEEP =
+            "Payment app returned an invalid result. The details are nested too deeply.";
+
     public static final String MINIMAL_UI_SUPPRESSED = "Payment minimal UI suppressed.";
 
     // Prevent instantiation.
@@ -0,0 +1,130 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.os.Bundle;
+import android.os.Parcelable;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Interns the serialized certificate chains of the Pay and IsReadyToPay intents by the digest of
+ * their content. The same merchant chain is sent to every payment app of a checkout, so all of
+ * their intents share one Parcelable[] instead of each wrapping the certificates in new bundles.
+ *
+ * The cache holds at most {@link #MAX_ENTRIES} chains and only weakly, so a chain that is no longer
+ * referenced by any intent can be garbage collected. The returned arrays and their bundles are
+ * shared and must not be modified.
+ */
+/* package */ final class CertificateChainCache {
+    /* package */ static final int MAX_ENTRIES = 16;
+
+    private static final CertificateChainCache sInstance = new CertificateChainCache(MAX_ENTRIES);
+
+    private final ReferenceQueue<Parcelable[]> mClearedChains = new ReferenceQueue<>();
+    // Guarded by |this|. In access order, so that the least recently used chain is evicted first.
+    private final LinkedHashMap<String, ChainReference> mChains;
+
+    /** A weak reference to a serialized chain that remembers its key for removal. */
+    private static final class ChainReference extends WeakReference<Parcelable[]> {
+        private final String mDigest;
+
+        private ChainReference(
+                String digest, Parcelable[] chain, ReferenceQueue<Parcelable[]> queue) {
+            super(chain, queue);
+            mDigest = digest;
+        }
+    }
+
+    /** @return The process-wide cache. */
+    /* package */ static CertificateChainCache getInstance() {
+        return sInstance;
+    }
+
+    /* package */ CertificateChainCache(final int maxEntries) {
+        assert maxEntries > 0;
+        mChains = new LinkedHashMap<String, ChainReference>(
+                /*initialCapacity=*/maxEntries, /*loadFactor=*/0.75f, /*accessOrder=*/true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ChainReference> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the serialized form of the given certificate chain, i.e., one bundle per certificate
+     * with the DER bytes under {@link WebPaymentIntentHelper#EXTRA_CERTIFICATE}. This method throws
+     * IllegalArgumentException if any certificate is null.
+     * @param certificateChain The certificate chain. Should not be null or empty.
+     * @return The shared serialized chain. Should not be modified.
+     */
+    /* package */ Parcelable[] get(byte[][] certificateChain) {
+        assert certificateChain != null && certificateChain.length > 0;
+        String digest = computeDigest(certificateChain);
+        synchronized (this) {
+            removeClearedChains();
+            ChainReference reference = mChains.get(digest);
+            Parcelable[] chain = reference == null ? null : reference.get();
+            if (chain != null) return chain;
+
+            chain = serialize(certificateChain);
+            mChains.put(digest, new ChainReference(digest, chain, mClearedChains));
+            return chain;
+        }
+    }
+
+    /** @return The number of cached chains, including those not yet removed after collection. */
+    /* package */ synchronized int size() {
+        removeClearedChains();
+        return mChains.size();
+    }
+
+    /** Removes all of the cached chains. */
+    /* package */ synchronized void clear() {
+        mChains.clear();
+    }
+
+    // Should be called with |this| locked.
+    private void removeClearedChains() {
+        ChainReference cleared;
+        while ((cleared = (ChainReference) mClearedChains.poll()) != null) {
+            // The entry could have been replaced by a newer chain with the same digest.
+            if (mChains.get(cleared.mDigest) == cleared) mChains.remove(cleared.mDigest);
+        }
+    }
+
+    // The certificates are copied, so that the caller modifying its arrays afterwards cannot
+    // change a chain that other intents share.
+    private static Parcelable[] serialize(byte[][] certificateChain) {
+        Parcelable[] result = new Parcelable[certificateChain.length];
+        for (int i = 0; i < certificateChain.length; i++) {
+            Bundle bundle = new Bundle();
+            bundle.putByteArray(
+                    WebPaymentIntentHelper.EXTRA_CERTIFICATE, certificateChain[i].clone());
+            result[i] = bundle;
+        }
+        return result;
+    }
+
+    // Each certificate is prefixed with its length, so that different splits of the same bytes
+    // have different digests.
+    private static String computeDigest(byte[][] certificateChain) {
+        MessageDigest digest = IsReadyToPayFingerprint.newSha256();
+        for (int i = 0; i < certificateChain.length; i++) {
+            byte[] certificate = certificateChain[i];
+            WebPaymentIntentHelper.checkNotNull(certificate, "certificateChain[" + i + "]");
+            int length = certificate.length;
+            digest.update(new byte[] {(byte) (length >>> 24), (byte) (length >>> 16),
+                    (byte) (length >>> 8), (byte) length});
+            digest.update(certificate);
+        }
+        return IsReadyToPayFingerprint.toHex(digest.digest());
+    }
+}
@@ -0,0 +1,255 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.RemoteException;
+
+import androidx.annotation.Nullable;
+
+import org.chromium.IsReadyToPayServiceV2;
+import org.chromium.IsReadyToPayServiceV2Callback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A helper to query one payment app's IsReadyToPay service about several (origin, iframe origin,
+ * method names) tuples with one binding and one binder call, e.g., for several frames or several
+ * method identifiers.
+ *
+ * The service is bound with {@link WebPaymentIntentHelper#ACTION_IS_READY_TO_PAY_V2}, which apps
+ * that implement {@link IsReadyToPayServiceV2} answer with that interface. Apps that only implement
+ * the original IsReadyToPayService answer with it instead, and are then queried with one {@link
+ * IsReadyToPayServiceHelper} per tuple.
+ */
+public class IsReadyToPayBatchHelper implements ServiceConnection {
+    // The generated Stub keeps its descriptor private.
+    private static final String SERVICE_V2_DESCRIPTOR = "org.chromium.IsReadyToPayServiceV2";
+
+    private final Context mContext;
+    private final List<Intent> mIsReadyToPayIntents;
+    private final Handler mHandler;
+
+    // This callback can be used only once, set to null after that.
+    private ResultHandler mResultHandler;
+
+    private boolean mIsServiceBindingInitiated;
+    private boolean mIsReadyToPayQueried;
+
+    // The state of the fallback to one v1 query per tuple.
+    @Nullable
+    private List<IsReadyToPayServiceHelper> mFallbackHelpers;
+    private boolean[] mFallbackResults;
+    private int mPendingFallbackQueries;
+    private int mFallbackErrors;
+
+    private final Runnable mServiceConnectionTimeoutTask = this::onServiceConnectionTimeout;
+    private final Runnable mReadyToPayTimeoutTask = this::onReadyToPayTimeout;
+
+    // The response arrives on a binder thread, so it is posted to mHandler.
+    private final IsReadyToPayServiceV2Callback.Stub mCallback =
+            new IsReadyToPayServiceV2Callback.Stub() {
+                @Override
+                public void handleIsReadyToPayBatch(boolean[] isReadyToPay) {
+                    mHandler.post(() -> onBatchResponse(isReadyToPay));
+                }
+            };
+
+    /** The callback that returns the result (success or error) to the helper's caller. */
+    public interface ResultHandler {
+        /**
+         * Invoked when the service responds about all of the tuples.
+         * @param isReadyToPay Whether the app is ready to pay, in the order of the intents.
+         */
+        void onIsReadyToPayBatchResponse(boolean[] isReadyToPay);
+
+        /** Invoked when the service has any error, or fails every query of the v1 fallback. */
+        void onIsReadyToPayBatchError();
+    }
+
+    /**
+     * The constructor starts the IsReadyToPay service. The result would be returned asynchronously
+     * with one callback on the current thread, which should have a looper.
+     * @param context The application context. Should not be null.
+     * @param isReadyToPayIntents The IsReadyToPay intents created by {@link
+     *         WebPaymentIntentHelper#createIsReadyToPayIntent}, one per tuple, for the same service.
+     *         Should not be empty.
+     * @param resultHandler Invoked when the service's result is known. Should not be null.
+     */
+    public IsReadyToPayBatchHelper(
+            Context context, List<Intent> isReadyToPayIntents, ResultHandler resultHandler) {
+        assert context != null;
+        assert resultHandler != null;
+        if (isReadyToPayIntents == null || isReadyToPayIntents.isEmpty()) {
+            throw new IllegalArgumentException("isReadyToPayIntents should not be null or empty.");
+        }
+        ComponentName component = isReadyToPayIntents.get(0).getComponent();
+        for (Intent intent : isReadyToPayIntents) {
+            if (intent == null || component == null || !component.equals(intent.getComponent())) {
+                throw new IllegalArgumentException(
+                        "isReadyToPayIntents should be for the same service.");
+            }
+        }
+        mContext = context;
+        mIsReadyToPayIntents = new ArrayList<>(isReadyToPayIntents);
+        mResultHandler = resultHandler;
+        mHandler = new Handler();
+
+        Intent bindIntent = new Intent(mIsReadyToPayIntents.get(0));
+        bindIntent.setAction(WebPaymentIntentHelper.ACTION_IS_READY_TO_PAY_V2);
+        try {
+            mIsServiceBindingInitiated = mContext.bindService(
+                    bindIntent, /*serviceConnection=*/this, Context.BIND_AUTO_CREATE);
+        } catch (SecurityException e) {
+            // mIsServiceBindingInitiated is left false.
+        }
+
+        if (!mIsServiceBindingInitiated) {
+            reportError();
+            return;
+        }
+
+        mHandler.postDelayed(mServiceConnectionTimeoutTask,
+                IsReadyToPayServiceHelper.SERVICE_CONNECTION_TIMEOUT_MS);
+    }
+
+    // ServiceConnection:
+    @Override
+    public void onServiceConnected(ComponentName name, IBinder service) {
+        // Timeout could cause the null.
+        if (mResultHandler == null || mIsReadyToPayQueried) return;
+        mIsReadyToPayQueried = true;
+        mHandler.removeCallbacks(mServiceConnectionTimeoutTask);
+
+        String descriptor;
+        try {
+            descriptor = service.getInterfaceDescriptor();
+        } catch (RemoteException e) {
+            reportError();
+            return;
+        }
+        if (!SERVICE_V2_DESCRIPTOR.equals(descriptor)) {
+            fallBackToV1();
+            return;
+        }
+
+        Bundle[] queries = new Bundle[mIsReadyToPayIntents.size()];
+        for (int i = 0; i < queries.length; i++) {
+            Bundle extras = mIsReadyToPayIntents.get(i).getExtras();
+            queries[i] = extras == null ? new Bundle() : extras;
+        }
+        try {
+            IsReadyToPayServiceV2.Stub.asInterface(service).isReadyToPayBatch(queries, mCallback);
+        } catch (Throwable e) {
+            // Many undocumented exceptions are not caught in the remote Service but passed on
+            // to the Service caller, see writeException in Parcel.java.
+            reportError();
+            return;
+        }
+        mHandler.postDelayed(
+                mReadyToPayTimeoutTask, IsReadyToPayServiceHelper.READY_TO_PAY_TIMEOUT_MS);
+    }
+
+    @Override
+    public void onServiceDisconnected(ComponentName name) {
+        // Do not wait for the service to restart.
+        reportError();
+    }
+
+    private void onBatchResponse(boolean[] isReadyToPay) {
+        if (mResultHandler == null || mFallbackHelpers != null) return;
+        if (isReadyToPay == null || isReadyToPay.length != mIsReadyToPayIntents.size()) {
+            reportError();
+            return;
+        }
+        mResultHandler.onIsReadyToPayBatchResponse(isReadyToPay);
+        mResultHandler = null;
+        destroy();
+    }
+
+    // The v1 service answers about the extras of the intent that it was bound with. Each helper
+    // binds with the IsReadyToPayFingerprint#createBindIntent() of its tuple, so that the tuples
+    // with different extras get their own binders from Android, instead of all sharing the one
+    // built for the first tuple, and the identical tuples share one.
+    private void fallBackToV1() {
+        unbind();
+        int size = mIsReadyToPayIntents.size();
+        mFallbackHelpers = new ArrayList<>(size);
+        mFallbackResults = new boolean[size];
+        mPendingFallbackQueries = size;
+        for (int i = 0; i < size; i++) {
+            final int index = i;
+            mFallbackHelpers.add(new IsReadyToPayServiceHelper(mContext,
+                    mIsReadyToPayIntents.get(i), new IsReadyToPayServiceHelper.ResultHandler() {
+                        // Can be invoked synchronously from the helper's constructor.
+                        @Override
+                        public void onIsReadyToPayServiceResponse(boolean isReadyToPay) {
+                            mHandler.post(() -> onFallbackResult(index, isReadyToPay, false));
+                        }
+
+                        @Override
+                        public void onIsReadyToPayServiceError() {
+                            mHandler.post(() -> onFallbackResult(index, false, true));
+                        }
+                    }));
+        }
+    }
+
+    // A tuple that fails is not ready to pay, unless all of them fail.
+    private void onFallbackResult(int index, boolean isReadyToPay, boolean isError) {
+        if (mResultHandler == null) return;
+        mFallbackResults[index] = isReadyToPay;
+        if (isError) mFallbackErrors++;
+        if (--mPendingFallbackQueries > 0) return;
+        if (mFallbackErrors == mFallbackResults.length) {
+            reportError();
+            return;
+        }
+        mResultHandler.onIsReadyToPayBatchResponse(mFallbackResults);
+        mResultHandler = null;
+        destroy();
+    }
+
+    private void onServiceConnectionTimeout() {
+        if (mIsReadyToPayQueried) return;
+        reportError();
+    }
+
+    private void onReadyToPayTimeout() {
+        if (mFallbackHelpers != null) return;
+        reportError();
+    }
+
+    private void reportError() {
+        if (mResultHandler == null) return;
+        mResultHandler.onIsReadyToPayBatchError();
+        mResultHandler = null;
+        destroy();
+    }
+
+    /** Clean up the resources that this helper has created. */
+    private void destroy() {
+        if (mFallbackHelpers != null) {
+            for (IsReadyToPayServiceHelper helper : mFallbackHelpers) helper.cancel();
+        }
+        unbind();
+    }
+
+    private void unbind() {
+        if (mIsServiceBindingInitiated) {
+            mContext.unbindService(/*serviceConnection=*/this);
+            mIsServiceBindingInitiated = false;
+        }
+        mHandler.removeCallbacks(mServiceConnectionTimeoutTask);
+        mHandler.removeCallbacks(mReadyToPayTimeoutTask);
+    }
+}
@@ -0,0 +1,136 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Parcelable;
+
+import androidx.annotation.Nullable;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Computes a stable digest of everything that an IsReadyToPay service can see in the intent created
+ * by {@link WebPaymentIntentHelper#createIsReadyToPayIntent}: the service component, the top-level
+ * and iframe origins, the certificate chain and the method data. Two intents with the same
+ * fingerprint are indistinguishable to the service.
+ */
+/* package */ final class IsReadyToPayFingerprint {
+    // The scheme of the data of the bind intents. Never resolved, because the intents are explicit.
+    private static final String BIND_INTENT_SCHEME = "chromium-is-ready-to-pay";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * @param isReadyToPayIntent The intent created by {@link
+     *         WebPaymentIntentHelper#createIsReadyToPayIntent}. Should not be null.
+     * @return The lowercase hex SHA-256 digest of the intent's inputs.
+     */
+    /* package */ static String compute(Intent isReadyToPayIntent) {
+        ComponentName component = isReadyToPayIntent.getComponent();
+        assert component != null;
+        Bundle extras = isReadyToPayIntent.getExtras();
+        if (extras == null) extras = Bundle.EMPTY;
+
+        MessageDigest digest = newSha256();
+        update(digest, component.getPackageName());
+        update(digest, component.getClassName());
+        update(digest, extras.getString(WebPaymentIntentHelper.EXTRA_TOP_ORIGIN));
+        update(digest, extras.getString(WebPaymentIntentHelper.EXTRA_PAYMENT_REQUEST_ORIGIN));
+
+        Parcelable[] certificateChain =
+                extras.getParcelableArray(WebPaymentIntentHelper.EXTRA_TOP_CERTIFICATE_CHAIN);
+        int certificateCount = certificateChain == null ? 0 : certificateChain.length;
+        update(digest, certificateCount);
+        for (int i = 0; i < certificateCount; i++) {
+            update(digest,
+                    ((Bundle) certificateChain[i])
+                            .getByteArray(WebPaymentIntentHelper.EXTRA_CERTIFICATE));
+        }
+
+        // The method data is a map, so its keys are sorted to make the digest stable.
+        Bundle methodData = extras.getBundle(WebPaymentIntentHelper.EXTRA_METHOD_DATA);
+        List<String> methodNames = methodData == null
+                ? new ArrayList<>()
+                : new ArrayList<>(methodData.keySet());
+        Collections.sort(methodNames);
+        update(digest, methodNames.size());
+        for (String methodName : methodNames) {
+            update(digest, methodName);
+            update(digest, methodData.getString(methodName));
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Android calls a service's onBind() once per {@link Intent#filterEquals} intent, and hands the
+     * cached binder to every other binding of an equal intent while the service is bound. The
+     * extras are not a part of that equality, so the IsReadyToPay intents of different queries to
+     * the same service would all get the binder built for the extras of the first one.
+     * @param isReadyToPayIntent The intent created by {@link
+     *         WebPaymentIntentHelper#createIsReadyToPayIntent}. Should not be null.
+     * @param key The fingerprint of the intent, or any other string that is not a hex digest,
+     *         e.g., for a binding that never queries the service.
+     * @return A copy of the intent, whose data carries the key, for binding the service. Equal to
+     *         the bind intents of the same key only.
+     */
+    /* package */ static Intent createBindIntent(Intent isReadyToPayIntent, String key) {
+        Intent bindIntent = new Intent(isReadyToPayIntent);
+        bindIntent.setData(Uri.fromParts(BIND_INTENT_SCHEME, key, /*fragment=*/null));
+        return bindIntent;
+    }
+
+    /* package */ static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android implementation is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* package */ static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    // Each field is prefixed with its length, so that adjacent fields cannot be confused.
+    private static void update(MessageDigest digest, @Nullable String value) {
+        update(digest, value == null ? null : value.getBytes(UTF_8));
+    }
+
+    private static void update(MessageDigest digest, @Nullable byte[] value) {
+        if (value == null) {
+            update(digest, -1);
+            return;
+        }
+        update(digest, value.length);
+        digest.update(value);
+    }
+
+    private static void update(MessageDigest digest, int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+
+    // Prevent instantiation.
+    private IsReadyToPayFingerprint() {}
+}
@@ -0,0 +1,247 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.os.Handler;
+
+import androidx.annotation.Nullable;
+
+import org.chromium.components.payments.intent.IsReadyToPayMetricsListener.Outcome;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending {@link IsReadyToPayResult} of one or more IsReadyToPay queries, returned by {@link
+ * IsReadyToPayServiceHelper#queryAsync}. Futures can be chained, combined and timed out without
+ * going through the main looper. A future completes only once; cancelling it completes it with
+ * {@link Outcome#CANCELLED} and stops the queries that it is waiting for.
+ *
+ * All methods are thread-safe. The listeners of the combinators run on the thread that completes
+ * the future, so they only do constant work.
+ */
+public final class IsReadyToPayFuture {
+    /** Receives the result of a future. */
+    public interface Callback {
+        /** @param result The result of the future. */
+        void onResult(IsReadyToPayResult result);
+    }
+
+    /** Starts the next query from the result of the previous one. */
+    public interface Continuation {
+        /**
+         * @param result The result of the previous future.
+         * @return The future of the next query, e.g., a retry. Should not be null.
+         */
+        IsReadyToPayFuture then(IsReadyToPayResult result);
+    }
+
+    // Guarded by |this|.
+    @Nullable
+    private IsReadyToPayResult mResult;
+    // Guarded by |this|. Set to null on completion.
+    @Nullable
+    private List<Runnable> mListeners = new ArrayList<>();
+    // Stops the underlying work on cancellation. Guarded by |this|.
+    @Nullable
+    private Runnable mCanceller;
+
+    /**
+     * @param result The result.
+     * @return A future that has already completed with the given result.
+     */
+    public static IsReadyToPayFuture completedWith(IsReadyToPayResult result) {
+        IsReadyToPayFuture future = new IsReadyToPayFuture();
+        future.complete(result);
+        return future;
+    }
+
+    /**
+     * Combines futures into one that is ready to pay as soon as any of them is. Otherwise, it is
+     * not ready to pay if any of them responded, or fails with the outcome of the first future.
+     * The remaining futures are cancelled once the result is known.
+     * @param futures The futures to combine. Should not be empty.
+     * @return The combined future.
+     */
+    public static IsReadyToPayFuture anyReady(final List<IsReadyToPayFuture> futures) {
+        assert !futures.isEmpty();
+        return combine(futures, /*decisiveOutcome=*/Outcome.READY);
+    }
+
+    /**
+     * Combines futures into one that is ready to pay only if all of them are. The first future
+     * that is not ready to pay, or fails, decides the result, and the remaining futures are
+     * cancelled.
+     * @param futures The futures to combine. Should not be empty.
+     * @return The combined future.
+     */
+    public static IsReadyToPayFuture allReady(final List<IsReadyToPayFuture> futures) {
+        assert !futures.isEmpty();
+        return combine(futures, /*decisiveOutcome=*/-1);
+    }
+
+    // With decisiveOutcome READY, the first READY wins, and otherwise the first non-READY wins.
+    private static IsReadyToPayFuture combine(
+            final List<IsReadyToPayFuture> futures, final int decisiveOutcome) {
+        final IsReadyToPayFuture combined = new IsReadyToPayFuture();
+        combined.setCanceller(() -> {
+            for (IsReadyToPayFuture future : futures) future.cancel();
+        });
+        final int[] pending = {futures.size()};
+        for (final IsReadyToPayFuture future : futures) {
+            future.addListener(() -> {
+                IsReadyToPayResult result = future.getNow();
+                boolean isDecisive = decisiveOutcome == Outcome.READY ? result.isReadyToPay()
+                                                                     : !result.isReadyToPay();
+                boolean isLast;
+                synchronized (pending) {
+                    isLast = --pending[0] == 0;
+                }
+                if (isDecisive) {
+                    if (combined.complete(result)) cancelAll(futures);
+                } else if (isLast) {
+                    combined.complete(decisiveOutcome == Outcome.READY
+                                    ? combineUndecided(futures)
+                                    : IsReadyToPayResult.forOutcome(Outcome.READY));
+                }
+            });
+        }
+        return combined;
+    }
+
+    // None is ready to pay: any NOT_READY response beats the errors.
+    private static IsReadyToPayResult combineUndecided(List<IsReadyToPayFuture> futures) {
+        for (IsReadyToPayFuture future : futures) {
+            if (!future.getNow().isError()) return future.getNow();
+        }
+        return futures.get(0).getNow();
+    }
+
+    private static void cancelAll(List<IsReadyToPayFuture> futures) {
+        for (IsReadyToPayFuture future : futures) future.cancel();
+    }
+
+    /* package */ IsReadyToPayFuture() {}
+
+    /** @return Whether the future has completed. */
+    public synchronized boolean isDone() {
+        return mResult != null;
+    }
+
+    /** @return The result, or null if the future has not completed yet. */
+    @Nullable
+    public synchronized IsReadyToPayResult getNow() {
+        return mResult;
+    }
+
+    /**
+     * Blocks until the future completes. Should not be called on the thread that runs the
+     * queries, e.g., the main thread for the queries started there.
+     * @param timeout The maximum time to wait.
+     * @param unit The unit of the timeout.
+     * @return The result.
+     * @throws TimeoutException If the future did not complete in time.
+     * @throws InterruptedException If the thread was interrupted while waiting.
+     */
+    public IsReadyToPayResult get(long timeout, TimeUnit unit)
+            throws InterruptedException, TimeoutException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        addListener(latch::countDown);
+        if (!latch.await(timeout, unit)) throw new TimeoutException();
+        return getNow();
+    }
+
+    /**
+     * Invokes the callback with the result once the future completes.
+     * @param executor The executor that runs the callback.
+     * @param callback The callback.
+     */
+    public void addCallback(final Executor executor, final Callback callback) {
+        addListener(() -> executor.execute(() -> callback.onResult(getNow())));
+    }
+
+    /**
+     * Chains a query that starts when this future completes.
+     * @param continuation Starts the next query from the result of this future.
+     * @return The future of the next query. Cancelling it cancels both queries.
+     */
+    public IsReadyToPayFuture thenCompose(final Continuation continuation) {
+        final IsReadyToPayFuture chained = new IsReadyToPayFuture();
+        chained.setCanceller(this::cancel);
+        addListener(() -> {
+            if (chained.isDone()) return;
+            final IsReadyToPayFuture next = continuation.then(getNow());
+            chained.setCanceller(next::cancel);
+            next.addListener(() -> chained.complete(next.getNow()));
+        });
+        return chained;
+    }
+
+    /**
+     * Cancels this future if it does not complete in time.
+     * @param timeoutMs The maximum number of milliseconds to wait.
+     * @param handler The handler that runs the timeout, e.g., of a background thread.
+     * @return This future, for chaining.
+     */
+    public IsReadyToPayFuture withTimeout(long timeoutMs, final Handler handler) {
+        final Runnable timeoutTask = this::cancel;
+        handler.postDelayed(timeoutTask, timeoutMs);
+        addListener(() -> handler.removeCallbacks(timeoutTask));
+        return this;
+    }
+
+    /**
+     * Completes the future with {@link Outcome#CANCELLED} and stops the queries that it is
+     * waiting for. No-op if the future has already completed.
+     * @return Whether the future was cancelled by this call.
+     */
+    public boolean cancel() {
+        Runnable canceller;
+        synchronized (this) {
+            if (mResult != null) return false;
+            canceller = mCanceller;
+        }
+        boolean isCancelled = complete(IsReadyToPayResult.forOutcome(Outcome.CANCELLED));
+        if (isCancelled && canceller != null) canceller.run();
+        return isCancelled;
+    }
+
+    /**
+     * Completes the future and runs its listeners. No-op if it has already completed.
+     * @return Whether the future was completed by this call.
+     */
+    /* package */ boolean complete(IsReadyToPayResult result) {
+        List<Runnable> listeners;
+        synchronized (this) {
+            if (mResult != null) return false;
+            mResult = result;
+            listeners = mListeners;
+            mListeners = null;
+            mCanceller = null;
+        }
+        for (Runnable listener : listeners) listener.run();
+        return true;
+    }
+
+    /** Sets the task that stops the underlying work when the future is cancelled. */
+    /* package */ synchronized void setCanceller(Runnable canceller) {
+        if (mResult == null) mCanceller = canceller;
+    }
+
+    // Runs the listener on the completing thread, or right away if already completed.
+    private void addListener(Runnable listener) {
+        synchronized (this) {
+            if (mResult == null) {
+                mListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+}
@@ -0,0 +1,95 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The default {@link IsReadyToPayMetricsListener}, which aggregates all of the queries into outcome
+ * counters and phase latency histograms that a dashboard can poll. Recording is lock-free and
+ * allocation-free.
+ */
+public final class IsReadyToPayMetrics implements IsReadyToPayMetricsListener {
+    private final AtomicLongArray mOutcomeCounts = new AtomicLongArray(OUTCOME_COUNT);
+    private final LatencyHistogram mServiceConnectionLatency =
+            new LatencyHistogram(LatencyHistogram.NO_DECAY);
+    private final LatencyHistogram mWarmServiceConnectionLatency =
+            new LatencyHistogram(LatencyHistogram.NO_DECAY);
+    private final LatencyHistogram mDispatchLatency =
+            new LatencyHistogram(LatencyHistogram.NO_DECAY);
+    private final LatencyHistogram mResponseLatency =
+            new LatencyHistogram(LatencyHistogram.NO_DECAY);
+    private final LatencyHistogram mTotalLatency =
+            new LatencyHistogram(LatencyHistogram.NO_DECAY);
+
+    // IsReadyToPayMetricsListener:
+    @Override
+    public void onIsReadyToPayQueryFinished(String packageName, long bindStartNanos,
+            long serviceConnectedNanos, long readyToPayDispatchNanos, long responseNanos,
+            long finishNanos, @Outcome int outcome, boolean isWarmConnection) {
+        mOutcomeCounts.incrementAndGet(outcome);
+        recordInterval(isWarmConnection ? mWarmServiceConnectionLatency : mServiceConnectionLatency,
+                bindStartNanos, serviceConnectedNanos);
+        recordInterval(mDispatchLatency, serviceConnectedNanos, readyToPayDispatchNanos);
+        recordInterval(mResponseLatency, readyToPayDispatchNanos, responseNanos);
+        recordInterval(mTotalLatency, bindStartNanos, finishNanos);
+    }
+
+    /**
+     * @param outcome An {@link IsReadyToPayMetricsListener.Outcome}.
+     * @return The number of queries that finished with the given outcome.
+     */
+    public long getOutcomeCount(@Outcome int outcome) {
+        return mOutcomeCounts.get(outcome);
+    }
+
+    /**
+     * @return The latencies from the start of the binding to the service connection, of the
+     *         queries that bound the service.
+     */
+    public LatencyHistogram getServiceConnectionLatency() {
+        return mServiceConnectionLatency;
+    }
+
+    /**
+     * @return The latencies from the start of the query to the service connection, of the queries
+     *         that leased a connection that a pool had already connected.
+     */
+    public LatencyHistogram getWarmServiceConnectionLatency() {
+        return mWarmServiceConnectionLatency;
+    }
+
+    /** @return The latencies from the service connection to the isReadyToPay() call. */
+    public LatencyHistogram getDispatchLatency() {
+        return mDispatchLatency;
+    }
+
+    /** @return The latencies from the isReadyToPay() call to its response. */
+    public LatencyHistogram getResponseLatency() {
+        return mResponseLatency;
+    }
+
+    /** @return The latencies from the start of the binding to the end of the query. */
+    public LatencyHistogram getTotalLatency() {
+        return mTotalLatency;
+    }
+
+    /** Removes all of the recorded queries. */
+    public void reset() {
+        for (int i = 0; i < OUTCOME_COUNT; i++) mOutcomeCounts.set(i, 0);
+        mServiceConnectionLatency.clear();
+        mWarmServiceConnectionLatency.clear();
+        mDispatchLatency.clear();
+        mResponseLatency.clear();
+        mTotalLatency.clear();
+    }
+
+    private static void recordInterval(
+            LatencyHistogram histogram, long startNanos, long endNanos) {
+        if (startNanos == NOT_REACHED || endNanos == NOT_REACHED) return;
+        histogram.record(TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos));
+    }
+}
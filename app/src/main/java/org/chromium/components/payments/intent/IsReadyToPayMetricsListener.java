@@ -0,0 +1,74 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Receives the phase timings and the outcome of every query made by {@link
+ * IsReadyToPayServiceHelper}. Set with {@link IsReadyToPayServiceHelper#setMetricsListener}.
+ */
+public interface IsReadyToPayMetricsListener {
+    /** The timestamp of a phase that the query did not reach. */
+    long NOT_REACHED = -1;
+
+    /** How a query finished. Keep in sync with {@link #OUTCOME_COUNT}. */
+    @IntDef({Outcome.READY, Outcome.NOT_READY, Outcome.SECURITY_EXCEPTION,
+            Outcome.BIND_RETURNED_FALSE, Outcome.NULL_SERVICE_INTERFACE, Outcome.REMOTE_EXCEPTION,
+            Outcome.SERVICE_CONNECTION_TIMEOUT, Outcome.READY_TO_PAY_TIMEOUT,
+            Outcome.SERVICE_DISCONNECTED, Outcome.CONNECTION_POOL_ERROR, Outcome.CANCELLED})
+    @Retention(RetentionPolicy.SOURCE)
+    @interface Outcome {
+        /** The service responded that the app is ready to pay. */
+        int READY = 0;
+        /** The service responded that the app is not ready to pay. */
+        int NOT_READY = 1;
+        /** bindService() threw a SecurityException. */
+        int SECURITY_EXCEPTION = 2;
+        /** bindService() returned false. */
+        int BIND_RETURNED_FALSE = 3;
+        /** The connected binder is not an IsReadyToPayService. */
+        int NULL_SERVICE_INTERFACE = 4;
+        /** The isReadyToPay() call threw a RemoteException or another Throwable. */
+        int REMOTE_EXCEPTION = 5;
+        /** The service did not connect in time. */
+        int SERVICE_CONNECTION_TIMEOUT = 6;
+        /** The service did not respond in time. */
+        int READY_TO_PAY_TIMEOUT = 7;
+        /** onServiceDisconnected() was called, or the service died, before the response. */
+        int SERVICE_DISCONNECTED = 8;
+        /**
+         * No longer recorded: the connection pool reports its failures as the outcomes above. Kept
+         * so that the later outcomes keep their values.
+         */
+        int CONNECTION_POOL_ERROR = 9;
+        /** The caller stopped waiting for the response, e.g., at a coordinator's deadline. */
+        int CANCELLED = 10;
+    }
+
+    /** The number of {@link Outcome} values. */
+    int OUTCOME_COUNT = 11;
+
+    /**
+     * Invoked once per query when it finishes, on the thread where it finished, which can be a
+     * binder thread. Should not block or allocate. All timestamps are in the time base of
+     * SystemClock#elapsedRealtimeNanos(), or {@link #NOT_REACHED}.
+     * @param packageName The package name of the payment app.
+     * @param bindStartNanos When the service binding was initiated.
+     * @param serviceConnectedNanos When the service was connected.
+     * @param readyToPayDispatchNanos When isReadyToPay() was called on the service.
+     * @param responseNanos When the response callback arrived.
+     * @param finishNanos When the query finished with the given outcome.
+     * @param outcome The {@link Outcome} of the query.
+     * @param isWarmConnection Whether a connection pool had connected the service before the
+     *         query, in which case the query did not wait for a bind.
+     */
+    void onIsReadyToPayQueryFinished(String packageName, long bindStartNanos,
+            long serviceConnectedNanos, long readyToPayDispatchNanos, long responseNanos,
+            long finishNanos, @Outcome int outcome, boolean isWarmConnection);
+}
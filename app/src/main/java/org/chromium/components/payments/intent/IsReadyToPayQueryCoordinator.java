@@ -0,0 +1,208 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Queries the IsReadyToPay services of several payment apps in parallel under one overall
+ * deadline. All of the services are bound at once, so the total latency is bounded by the deadline
+ * rather than growing with the number of apps. Should be used on the thread of the given handler,
+ * which is usually the UI thread.
+ */
+public class IsReadyToPayQueryCoordinator {
+    /** How the coordinator decides to return the result. */
+    @IntDef({Mode.COLLECT_ALL, Mode.FIRST_READY_WINS, Mode.KNOWN_AT_DEADLINE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Mode {
+        /**
+         * Wait for every app to answer. The apps that have not answered by the deadline are
+         * reported as {@link Outcome#TIMEOUT}.
+         */
+        int COLLECT_ALL = 0;
+        /**
+         * Return as soon as any app is ready to pay. The apps that have not answered by then are
+         * left out of the result. Behaves as {@link #COLLECT_ALL} if no app is ready.
+         */
+        int FIRST_READY_WINS = 1;
+        /**
+         * Return when every app has answered or at the deadline, whichever comes first. The apps
+         * that have not answered by then are left out of the result.
+         */
+        int KNOWN_AT_DEADLINE = 2;
+    }
+
+    /** The outcome of the query to one payment app. */
+    @IntDef({Outcome.READY, Outcome.NOT_READY, Outcome.TIMEOUT, Outcome.ERROR})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Outcome {
+        /** The app responded that it is ready to pay. */
+        int READY = 0;
+        /** The app responded that it is not ready to pay. */
+        int NOT_READY = 1;
+        /** The app did not respond before the deadline. */
+        int TIMEOUT = 2;
+        /**
+         * The app's service failed before responding, e.g., it could not be bound, disconnected or
+         * threw. The helper records the specific failure in {@link IsReadyToPayMetricsListener}.
+         */
+        int ERROR = 3;
+    }
+
+    /** Receives the result of {@link #query}. */
+    public interface ResultCallback {
+        /**
+         * Invoked exactly once per query, on the thread of the coordinator's handler.
+         * @param outcomes The {@link Outcome} of each app, keyed by the component of its
+         *         IsReadyToPay service, in the order that the outcomes became known.
+         */
+        void onIsReadyToPayQueryResult(Map<ComponentName, Integer> outcomes);
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final long mDeadlineMs;
+
+    private final Map<ComponentName, IsReadyToPayServiceHelper> mPendingHelpers = new HashMap<>();
+    private final Map<ComponentName, Integer> mOutcomes = new LinkedHashMap<>();
+    private final Runnable mDeadlineTask = this::onDeadline;
+
+    // This callback can be used only once, set to null after that.
+    private ResultCallback mResultCallback;
+    private @Mode int mMode;
+    private boolean mIsQueried;
+
+    /**
+     * @param context The application context. Should not be null.
+     * @param deadlineMs The overall number of milliseconds to wait for all of the apps, including
+     *         both the service connection and the response.
+     */
+    public IsReadyToPayQueryCoordinator(Context context, long deadlineMs) {
+        this(context, new Handler(), deadlineMs);
+    }
+
+    /* package */ IsReadyToPayQueryCoordinator(Context context, Handler handler, long deadlineMs) {
+        assert context != null;
+        assert handler != null;
+        assert deadlineMs > 0;
+        mContext = context;
+        mHandler = handler;
+        mDeadlineMs = deadlineMs;
+    }
+
+    /**
+     * Queries the given IsReadyToPay services in parallel. Can be called only once per
+     * coordinator. The result is returned asynchronously with one callback.
+     * @param isReadyToPayIntents The intents created by {@link
+     *         WebPaymentIntentHelper#createIsReadyToPayIntent}, at most one per service. Should not
+     *         be null.
+     * @param mode The {@link Mode} that decides when the result is returned.
+     * @param resultCallback Invoked when the result is known. Should not be null.
+     */
+    public void query(Collection<Intent> isReadyToPayIntents, @Mode int mode,
+            ResultCallback resultCallback) {
+        assert !mIsQueried;
+        assert isReadyToPayIntents != null;
+        assert resultCallback != null;
+        mIsQueried = true;
+        mMode = mode;
+        mResultCallback = resultCallback;
+
+        // Posted before any helper starts, so the deadline fires ahead of the helpers' own
+        // timeouts that are scheduled for the same time.
+        mHandler.postDelayed(mDeadlineTask, mDeadlineMs);
+
+        for (Intent intent : isReadyToPayIntents) {
+            ComponentName component = intent.getComponent();
+            assert component != null;
+            assert !mPendingHelpers.containsKey(component);
+            mPendingHelpers.put(component,
+                    new IsReadyToPayServiceHelper(mContext, intent, new AppResultHandler(component),
+                            /*resultExecutor=*/null, mHandler, /*connectionPool=*/null,
+                            /*timeoutPolicy=*/null, mDeadlineMs, mDeadlineMs, /*future=*/null));
+        }
+        if (mPendingHelpers.isEmpty()) finish();
+    }
+
+    /** Stops all of the pending queries without invoking the result callback. */
+    public void cancel() {
+        mResultCallback = null;
+        destroy();
+    }
+
+    private void onAppOutcome(ComponentName component, @Outcome int outcome) {
+        if (mResultCallback == null) return;
+        mPendingHelpers.remove(component);
+        mOutcomes.put(component, outcome);
+
+        if (mPendingHelpers.isEmpty()
+                || (mMode == Mode.FIRST_READY_WINS && outcome == Outcome.READY)) {
+            finish();
+        }
+    }
+
+    private void onDeadline() {
+        if (mResultCallback == null) return;
+        if (mMode != Mode.KNOWN_AT_DEADLINE) {
+            for (ComponentName component : mPendingHelpers.keySet()) {
+                mOutcomes.put(component, Outcome.TIMEOUT);
+            }
+        }
+        finish();
+    }
+
+    private void finish() {
+        ResultCallback resultCallback = mResultCallback;
+        mResultCallback = null;
+        destroy();
+        resultCallback.onIsReadyToPayQueryResult(Collections.unmodifiableMap(mOutcomes));
+    }
+
+    private void destroy() {
+        mHandler.removeCallbacks(mDeadlineTask);
+        for (IsReadyToPayServiceHelper helper : mPendingHelpers.values()) {
+            helper.cancel();
+        }
+        mPendingHelpers.clear();
+    }
+
+    /**
+     * Forwards the result of one app to the coordinator's thread. The result is always posted,
+     * because the helper can invoke it synchronously from its constructor.
+     */
+    private class AppResultHandler implements IsReadyToPayServiceHelper.ResultHandler {
+        private final ComponentName mComponent;
+
+        private AppResultHandler(ComponentName component) {
+            mComponent = component;
+        }
+
+        @Override
+        public void onIsReadyToPayServiceResponse(boolean isReadyToPay) {
+            mHandler.post(() -> onAppOutcome(
+                    mComponent, isReadyToPay ? Outcome.READY : Outcome.NOT_READY));
+        }
+
+        @Override
+        public void onIsReadyToPayServiceError() {
+            // Not a timeout, since the coordinator's deadline fires ahead of the helper's own
+            // timeouts.
+            mHandler.post(() -> onAppOutcome(mComponent, Outcome.ERROR));
+        }
+    }
+}
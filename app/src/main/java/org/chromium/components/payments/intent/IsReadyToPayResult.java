@@ -0,0 +1,55 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import org.chromium.components.payments.intent.IsReadyToPayMetricsListener.Outcome;
+
+/**
+ * The result of an IsReadyToPay query: either the readiness that the service responded with, or
+ * the typed error that ended the query. Instances are shared, one per {@link Outcome}.
+ */
+public final class IsReadyToPayResult {
+    private static final IsReadyToPayResult[] sResults =
+            new IsReadyToPayResult[IsReadyToPayMetricsListener.OUTCOME_COUNT];
+    static {
+        for (int i = 0; i < sResults.length; i++) sResults[i] = new IsReadyToPayResult(i);
+    }
+
+    @Outcome
+    private final int mOutcome;
+
+    /**
+     * @param outcome How the query finished.
+     * @return The result of a query that finished with the given outcome.
+     */
+    public static IsReadyToPayResult forOutcome(@Outcome int outcome) {
+        return sResults[outcome];
+    }
+
+    private IsReadyToPayResult(@Outcome int outcome) {
+        mOutcome = outcome;
+    }
+
+    /** @return Whether the service responded that the app is ready to pay. */
+    public boolean isReadyToPay() {
+        return mOutcome == Outcome.READY;
+    }
+
+    /** @return Whether the query failed instead of getting a response from the service. */
+    public boolean isError() {
+        return mOutcome != Outcome.READY && mOutcome != Outcome.NOT_READY;
+    }
+
+    /** @return How the query finished. */
+    @Outcome
+    public int getOutcome() {
+        return mOutcome;
+    }
+
+    @Override
+    public String toString() {
+        return "IsReadyToPayResult{outcome=" + mOutcome + "}";
+    }
+}
@@ -0,0 +1,226 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the answers of the payment apps' IsReadyToPay services, so that revisiting a merchant does
+ * not query the payment apps again. The answers are keyed by the {@link IsReadyToPayFingerprint} of
+ * the IsReadyToPay intent, which covers all of the inputs that the service can see. Errors are not
+ * cached. The cache is bounded, and evicts the least recently used answer first. An answer to a
+ * query that started before its package was invalidated is delivered but not cached.
+ *
+ * Should be used on the thread of the given handler, which is usually the UI thread.
+ */
+public class IsReadyToPayResultCache {
+    private final Context mContext;
+    private final Handler mHandler;
+    private final int mMaxEntries;
+    private final long mTimeToLiveMs;
+    private final long mStaleWhileRevalidateMs;
+    @Nullable
+    private final IsReadyToPayServiceConnectionPool mConnectionPool;
+
+    // Ordered from the least recently used to the most recently used.
+    private final Map<String, Entry> mEntries;
+    // The in-flight queries, keyed by fingerprint.
+    private final Map<String, InFlightQuery> mInFlightQueries = new HashMap<>();
+    // Incremented by every invalidation, so that the queries that started before it can tell that
+    // their answers are stale. Keyed by package name, plus one for clear().
+    private final Map<String, Integer> mPackageGenerations = new HashMap<>();
+    private int mGeneration;
+
+    /** A cached answer. */
+    private static final class Entry {
+        private final String mPackageName;
+        private final boolean mIsReadyToPay;
+        private final long mCreationTimeMs;
+
+        private Entry(String packageName, boolean isReadyToPay, long creationTimeMs) {
+            mPackageName = packageName;
+            mIsReadyToPay = isReadyToPay;
+            mCreationTimeMs = creationTimeMs;
+        }
+    }
+
+    /** A query to a service, and the callers that wait for its answer. */
+    private static final class InFlightQuery {
+        private final String mPackageName;
+        private final int mGeneration;
+        private final int mPackageGeneration;
+        // Empty for a background refresh.
+        private final List<IsReadyToPayServiceHelper.ResultHandler> mWaiters = new ArrayList<>();
+
+        private InFlightQuery(String packageName, int generation, int packageGeneration) {
+            mPackageName = packageName;
+            mGeneration = generation;
+            mPackageGeneration = packageGeneration;
+        }
+    }
+
+    /**
+     * @param context The application context. Should not be null.
+     * @param maxEntries The maximum number of cached answers.
+     * @param timeToLiveMs The number of milliseconds that an answer is fresh.
+     * @param staleWhileRevalidateMs The number of milliseconds after an answer expires, during
+     *         which it is still returned immediately while being refreshed in the background. Zero
+     *         disables the stale-while-revalidate mode.
+     * @param connectionPool The pool of service connections used for the queries, or null to bind
+     *         the services for each query.
+     */
+    public IsReadyToPayResultCache(Context context, int maxEntries, long timeToLiveMs,
+            long staleWhileRevalidateMs,
+            @Nullable IsReadyToPayServiceConnectionPool connectionPool) {
+        assert context != null;
+        assert maxEntries > 0;
+        assert timeToLiveMs >= 0;
+        assert staleWhileRevalidateMs >= 0;
+        mContext = context;
+        mHandler = new Handler();
+        mMaxEntries = maxEntries;
+        mTimeToLiveMs = timeToLiveMs;
+        mStaleWhileRevalidateMs = staleWhileRevalidateMs;
+        mConnectionPool = connectionPool;
+        mEntries = new LinkedHashMap<String, Entry>(
+                /*initialCapacity=*/16, /*loadFactor=*/0.75f, /*accessOrder=*/true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > mMaxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached answer if it is fresh, otherwise queries the service through {@link
+     * IsReadyToPayServiceHelper}. In the stale-while-revalidate window, the stale answer is
+     * returned and the service is queried in the background to refresh it.
+     * @param isReadyToPayIntent The intent created by {@link
+     *         WebPaymentIntentHelper#createIsReadyToPayIntent}. Should not be null.
+     * @param resultHandler Invoked once when the answer is known, synchronously if it is cached.
+     *         Should not be null.
+     */
+    public void query(
+            Intent isReadyToPayIntent, IsReadyToPayServiceHelper.ResultHandler resultHandler) {
+        assert isReadyToPayIntent != null;
+        assert resultHandler != null;
+        String fingerprint = IsReadyToPayFingerprint.compute(isReadyToPayIntent);
+
+        Entry entry = mEntries.get(fingerprint);
+        long ageMs = entry == null ? 0 : SystemClock.elapsedRealtime() - entry.mCreationTimeMs;
+        if (entry != null && ageMs > mTimeToLiveMs + mStaleWhileRevalidateMs) {
+            mEntries.remove(fingerprint);
+            entry = null;
+        }
+
+        if (entry != null) {
+            resultHandler.onIsReadyToPayServiceResponse(entry.mIsReadyToPay);
+            if (ageMs > mTimeToLiveMs) startQuery(fingerprint, isReadyToPayIntent, null);
+            return;
+        }
+
+        startQuery(fingerprint, isReadyToPayIntent, resultHandler);
+    }
+
+    /**
+     * Removes the cached answers of the given payment app, e.g., when it is updated or its account
+     * state changes.
+     * @param packageName The package name of the payment app.
+     */
+    public void invalidatePackage(String packageName) {
+        mPackageGenerations.put(packageName, getPackageGeneration(packageName) + 1);
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mPackageName.equals(packageName)) iterator.remove();
+        }
+    }
+
+    /** Removes all of the cached answers. */
+    public void clear() {
+        mGeneration++;
+        mEntries.clear();
+    }
+
+    private int getPackageGeneration(String packageName) {
+        Integer generation = mPackageGenerations.get(packageName);
+        return generation == null ? 0 : generation;
+    }
+
+    // Whether no invalidation has happened since the query started.
+    private boolean isCurrent(InFlightQuery query) {
+        return query.mGeneration == mGeneration
+                && query.mPackageGeneration == getPackageGeneration(query.mPackageName);
+    }
+
+    // Joins the in-flight query for the same fingerprint, unless it started before an
+    // invalidation. A null resultHandler refreshes the cache in the background.
+    private void startQuery(String fingerprint, Intent isReadyToPayIntent,
+            @Nullable IsReadyToPayServiceHelper.ResultHandler resultHandler) {
+        ComponentName component = isReadyToPayIntent.getComponent();
+        assert component != null;
+        String packageName = component.getPackageName();
+
+        InFlightQuery inFlightQuery = mInFlightQueries.get(fingerprint);
+        if (inFlightQuery != null && isCurrent(inFlightQuery)) {
+            if (resultHandler != null) inFlightQuery.mWaiters.add(resultHandler);
+            return;
+        }
+        // Replaces a stale query, which still answers its own waiters.
+        final InFlightQuery query = new InFlightQuery(
+                packageName, mGeneration, getPackageGeneration(packageName));
+        if (resultHandler != null) query.mWaiters.add(resultHandler);
+        mInFlightQueries.put(fingerprint, query);
+
+        new IsReadyToPayServiceHelper(mContext, isReadyToPayIntent,
+                new IsReadyToPayServiceHelper.ResultHandler() {
+                    @Override
+                    public void onIsReadyToPayServiceResponse(boolean isReadyToPay) {
+                        // Can be invoked synchronously by an in-process service.
+                        mHandler.post(() -> {
+                            if (isCurrent(query)) {
+                                mEntries.put(fingerprint,
+                                        new Entry(packageName, isReadyToPay,
+                                                SystemClock.elapsedRealtime()));
+                            }
+                            for (IsReadyToPayServiceHelper.ResultHandler waiter :
+                                    finishQuery(fingerprint, query)) {
+                                waiter.onIsReadyToPayServiceResponse(isReadyToPay);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onIsReadyToPayServiceError() {
+                        // Can be invoked synchronously inside the helper's constructor.
+                        mHandler.post(() -> {
+                            for (IsReadyToPayServiceHelper.ResultHandler waiter :
+                                    finishQuery(fingerprint, query)) {
+                                waiter.onIsReadyToPayServiceError();
+                            }
+                        });
+                    }
+                },
+                mConnectionPool, /*timeoutPolicy=*/null);
+    }
+
+    private List<IsReadyToPayServiceHelper.ResultHandler> finishQuery(
+            String fingerprint, InFlightQuery query) {
+        if (mInFlightQueries.get(fingerprint) == query) mInFlightQueries.remove(fingerprint);
+        return query.mWaiters;
+    }
+}
@@ -0,0 +1,287 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.RemoteException;
+
+import org.chromium.IsReadyToPayService;
+import org.chromium.components.payments.intent.IsReadyToPayMetricsListener.Outcome;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the bindings to the payment apps' IsReadyToPay services alive after a query, so that a
+ * later query to the same service costs a single binder call instead of a bind (and often a cold
+ * start of the payment app's process). The connections are evicted after being idle for a while or
+ * when the service dies, and capped in number.
+ *
+ * A service receives the IsReadyToPay extras only in its onBind(), which Android calls once per
+ * distinct bind intent. The connections are therefore keyed by the {@link IsReadyToPayFingerprint}
+ * of the extras, and bound with {@link IsReadyToPayFingerprint#createBindIntent}, so that queries
+ * with different extras to the same service use different connections, which can be alive at the
+ * same time, and never get each other's binder.
+ *
+ * Should be used on the thread of the given handler, which is usually the UI thread.
+ */
+public class IsReadyToPayServiceConnectionPool {
+    /** Receives the service of {@link #acquire}. */
+    public interface ConnectionCallback {
+        /**
+         * Invoked when the service is connected, possibly synchronously inside {@link #acquire}.
+         * @param service The connected service.
+         * @param isWarm Whether the pooled connection was already connected when it was leased, in
+         *         which case the lessee did not wait for a bind.
+         */
+        void onServiceConnectionEstablished(IsReadyToPayService service, boolean isWarm);
+
+        /**
+         * Invoked when the service cannot be connected, or has disconnected.
+         * @param failure Why, e.g., {@link Outcome#SECURITY_EXCEPTION} if bindService() threw.
+         */
+        void onServiceConnectionError(@Outcome int failure);
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final long mIdleTimeoutMs;
+    private final int mMaxConnections;
+
+    // Ordered from the least recently used to the most recently used.
+    // Keyed by the fingerprint.
+    private final Map<String, PooledConnection> mConnections =
+            new LinkedHashMap<>(/*initialCapacity=*/16, /*loadFactor=*/0.75f,
+                    /*accessOrder=*/true);
+
+    /**
+     * @param context The application context. Should not be null.
+     * @param idleTimeoutMs The number of milliseconds to keep an unused connection alive.
+     * @param maxConnections The maximum number of services bound by the pool at the same time.
+     */
+    public IsReadyToPayServiceConnectionPool(
+            Context context, long idleTimeoutMs, int maxConnections) {
+        this(context, new Handler(), idleTimeoutMs, maxConnections);
+    }
+
+    /* package */ IsReadyToPayServiceConnectionPool(
+            Context context, Handler handler, long idleTimeoutMs, int maxConnections) {
+        assert context != null;
+        assert handler != null;
+        assert idleTimeoutMs >= 0;
+        assert maxConnections > 0;
+        mContext = context;
+        mHandler = handler;
+        mIdleTimeoutMs = idleTimeoutMs;
+        mMaxConnections = maxConnections;
+    }
+
+    /**
+     * Connects to the IsReadyToPay service, reusing a pooled connection if possible. The caller
+     * should call {@link #release} when it no longer uses the service, unless this method returns
+     * false or the callback reports an error.
+     * @param isReadyToPayIntent The intent created by {@link
+     *         WebPaymentIntentHelper#createIsReadyToPayIntent}. Should not be null.
+     * @param callback Invoked when the service is connected or cannot be connected. Should not be
+     *         null.
+     * @return False if the pool cannot serve this query, because all of its connections are in
+     *         use. The caller should bind the service by itself in this case, with {@link
+     *         IsReadyToPayFingerprint#createBindIntent}. The callback is not invoked.
+     */
+    public boolean acquire(Intent isReadyToPayIntent, ConnectionCallback callback) {
+        assert Looper.myLooper() == mHandler.getLooper();
+        assert isReadyToPayIntent != null;
+        assert callback != null;
+        ComponentName component = isReadyToPayIntent.getComponent();
+        assert component != null;
+        String fingerprint = IsReadyToPayFingerprint.compute(isReadyToPayIntent);
+
+        PooledConnection connection = mConnections.get(fingerprint);
+        if (connection == null) {
+            if (mConnections.size() >= mMaxConnections && !evictLeastRecentlyUsedIdleConnection()) {
+                return false;
+            }
+            connection = new PooledConnection(component, fingerprint);
+            Intent bindIntent =
+                    IsReadyToPayFingerprint.createBindIntent(isReadyToPayIntent, fingerprint);
+            if (!connection.bind(bindIntent)) {
+                callback.onServiceConnectionError(connection.mBindFailure);
+                return true;
+            }
+            mConnections.put(fingerprint, connection);
+        }
+
+        connection.lease(callback);
+        return true;
+    }
+
+    /**
+     * Returns the connection acquired by {@link #acquire} to the pool. It stays alive for the idle
+     * timeout after its last user releases it. Can be called on any thread, e.g., the binder
+     * thread that receives the IsReadyToPay response.
+     * @param component The component of the IsReadyToPay service.
+     * @param callback The callback that was passed into {@link #acquire}.
+     */
+    public void release(ComponentName component, ConnectionCallback callback) {
+        mHandler.post(() -> {
+            // The pool holds a few connections, of which the callback leases at most one.
+            for (PooledConnection connection : mConnections.values()) {
+                if (connection.mComponent.equals(component)) connection.unlease(callback);
+            }
+        });
+    }
+
+    /** Unbinds all of the services, e.g., when the browser no longer needs them. */
+    public void evictAll() {
+        assert Looper.myLooper() == mHandler.getLooper();
+        List<PooledConnection> connections = new ArrayList<>(mConnections.values());
+        for (PooledConnection connection : connections) {
+            evict(connection);
+        }
+    }
+
+    /** @return The handler of the thread that the pool should be used on. */
+    /* package */ Handler getHandler() {
+        return mHandler;
+    }
+
+    /** @return The number of services that are currently bound by the pool. */
+    public int size() {
+        return mConnections.size();
+    }
+
+    private boolean evictLeastRecentlyUsedIdleConnection() {
+        Iterator<PooledConnection> iterator = mConnections.values().iterator();
+        while (iterator.hasNext()) {
+            PooledConnection connection = iterator.next();
+            if (connection.mLessees.isEmpty()) {
+                iterator.remove();
+                connection.destroy();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void evict(PooledConnection connection) {
+        if (mConnections.get(connection.mFingerprint) == connection) {
+            mConnections.remove(connection.mFingerprint);
+        }
+        connection.destroy();
+    }
+
+    /** A binding to one IsReadyToPay service, shared by all of its lessees. */
+    private class PooledConnection implements ServiceConnection, IBinder.DeathRecipient {
+        private final ComponentName mComponent;
+        private final String mFingerprint;
+        private final Set<ConnectionCallback> mLessees = new HashSet<>();
+        private final Runnable mIdleTimeoutTask = () -> evict(this);
+
+        private IsReadyToPayService mService;
+        private boolean mIsBound;
+        // Why bind() failed, if it did.
+        private @Outcome int mBindFailure = Outcome.BIND_RETURNED_FALSE;
+
+        private PooledConnection(ComponentName component, String fingerprint) {
+            mComponent = component;
+            mFingerprint = fingerprint;
+        }
+
+        private boolean bind(Intent bindIntent) {
+            try {
+                mIsBound = mContext.bindService(
+                        bindIntent, /*serviceConnection=*/this, Context.BIND_AUTO_CREATE);
+            } catch (SecurityException e) {
+                // mIsBound is left false.
+                mBindFailure = Outcome.SECURITY_EXCEPTION;
+            }
+            return mIsBound;
+        }
+
+        private void lease(ConnectionCallback callback) {
+            mHandler.removeCallbacks(mIdleTimeoutTask);
+            mLessees.add(callback);
+            if (mService != null) {
+                callback.onServiceConnectionEstablished(mService, /*isWarm=*/true);
+            }
+        }
+
+        private void unlease(ConnectionCallback callback) {
+            if (!mLessees.remove(callback) || !mLessees.isEmpty()) return;
+            mHandler.postDelayed(mIdleTimeoutTask, mIdleTimeoutMs);
+        }
+
+        // ServiceConnection:
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            if (!mIsBound) return;
+            mService = IsReadyToPayService.Stub.asInterface(service);
+            if (mService == null) {
+                onConnectionLost(Outcome.NULL_SERVICE_INTERFACE);
+                return;
+            }
+            try {
+                service.linkToDeath(/*deathRecipient=*/this, /*flags=*/0);
+            } catch (RemoteException e) {
+                // The service has already died.
+                onConnectionLost(Outcome.SERVICE_DISCONNECTED);
+                return;
+            }
+            // A callback may release the connection re-entrantly.
+            for (ConnectionCallback callback : new ArrayList<>(mLessees)) {
+                if (mLessees.contains(callback)) {
+                    callback.onServiceConnectionEstablished(mService, /*isWarm=*/false);
+                }
+            }
+            if (mLessees.isEmpty()) mHandler.postDelayed(mIdleTimeoutTask, mIdleTimeoutMs);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // Do not wait for the service to restart.
+            onConnectionLost(Outcome.SERVICE_DISCONNECTED);
+        }
+
+        // IBinder.DeathRecipient:
+        @Override
+        public void binderDied() {
+            // Invoked on a binder thread.
+            mHandler.post(() -> onConnectionLost(Outcome.SERVICE_DISCONNECTED));
+        }
+
+        private void onConnectionLost(@Outcome int failure) {
+            if (!mIsBound) return;
+            List<ConnectionCallback> lessees = new ArrayList<>(mLessees);
+            evict(this);
+            for (ConnectionCallback callback : lessees) {
+                callback.onServiceConnectionError(failure);
+            }
+        }
+
+        private void destroy() {
+            mHandler.removeCallbacks(mIdleTimeoutTask);
+            mLessees.clear();
+            if (mService != null) {
+                mService.asBinder().unlinkToDeath(/*deathRecipient=*/this, /*flags=*/0);
+                mService = null;
+            }
+            if (mIsBound) {
+                mContext.unbindService(/*serviceConnection=*/this);
+                mIsBound = false;
+            }
+        }
+    }
+}
@@ -8,29 +8,121 @@ import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.RemoteException;
+import android.os.SystemClock;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
 
 import org.chromium.IsReadyToPayService;
 import org.chromium.IsReadyToPayServiceCallback;
+import org.chromium.components.payments.intent.IsReadyToPayMetricsListener.Outcome;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-/** A helper to query the payment app's IsReadyToPay service. */
-public class IsReadyToPayServiceHelper
-        extends IsReadyToPayServiceCallback.Stub implements ServiceConnection {
+/**
+ * A helper to query the payment app's IsReadyToPay service. Its result is delivered exactly once,
+ * whichever threads the service, its connection and the timeouts call back on.
+ */
+public class IsReadyToPayServiceHelper extends IsReadyToPayServiceCallback.Stub
+        implements ServiceConnection, IsReadyToPayServiceConnectionPool.ConnectionCallback {
     /** The maximum number of milliseconds to wait for a response from a READY_TO_PAY service. */
-    private static final long READY_TO_PAY_TIMEOUT_MS = 400;
+    /* package */ static final long READY_TO_PAY_TIMEOUT_MS = 400;
     /** The maximum number of milliseconds to wait for a connection to READY_TO_PAY service. */
-    private static final long SERVICE_CONNECTION_TIMEOUT_MS = 1000;
+    /* package */ static final long SERVICE_CONNECTION_TIMEOUT_MS = 1000;
+
+    // The name of the asynchronous trace section of each query.
+    private static final String TRACE_SECTION_NAME = "IsReadyToPayServiceHelper.query";
+
+    @Nullable
+    private static volatile IsReadyToPayMetricsListener sMetricsListener;
+
+    // The handler of the thread that runs the queries of queryAsync() by default. Created lazily.
+    @Nullable
+    private static Handler sQueryHandler;
+
+    // Runs the result handler on the thread that finishes the query.
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    // The result handler of the queries that report their result through a future instead.
+    private static final ResultHandler NO_OP_RESULT_HANDLER = new ResultHandler() {
+        @Override
+        public void onIsReadyToPayServiceResponse(boolean isReadyToPay) {}
+
+        @Override
+        public void onIsReadyToPayServiceError() {}
+    };
+
+    /** The phases of a query. A query moves only forward, and finishes exactly once. */
+    @IntDef({State.BINDING, State.CONNECTED, State.QUERYING, State.DONE})
+    @Retention(RetentionPolicy.SOURCE)
+    private @interface State {
+        /** Waiting for the service connection. */
+        int BINDING = 0;
+        /** Connected, about to call the service. */
+        int CONNECTED = 1;
+        /** Waiting for the service's response. */
+        int QUERYING = 2;
+        /** The result has been delivered, or the query was cancelled. */
+        int DONE = 3;
+    }
 
     private final Context mContext;
+    private final ResultHandler mResultHandler;
+    // Runs the result handler, or null to run it on mHandler.
+    @Nullable
+    private final Executor mResultExecutor;
+
+    // The callbacks of the service, its connection, the pool and the timeouts can race on
+    // different threads. Only the transition to State.DONE delivers the result and cleans up, so
+    // both happen exactly once.
+    private final AtomicInteger mState = new AtomicInteger(State.BINDING);
+
+    // Set only when the service connection is leased from a pool instead of bound directly.
+    @Nullable
+    private volatile IsReadyToPayServiceConnectionPool mConnectionPool;
+    private final ComponentName mServiceComponent;
+
+    // Set once the service is bound, and cleared by the first unbind.
+    private final AtomicBoolean mIsServiceBound = new AtomicBoolean();
+    private final Handler mHandler;
+    private final long mReadyToPayTimeoutMs;
+
+    // Learns the latencies of the service, if provided.
+    @Nullable
+    private final IsReadyToPayTimeoutPolicy mTimeoutPolicy;
 
-    // This callback can be used only once, set to null after that.
-    private ResultHandler mResultHandler;
+    // Completed with the outcome of the query, for queryAsync().
+    @Nullable
+    private final IsReadyToPayFuture mFuture;
 
-    private boolean mIsServiceBindingInitiated;
-    private boolean mIsReadyToPayQueried;
-    private Handler mHandler;
+    // The timestamps of the query phases, in SystemClock#elapsedRealtimeNanos(). Volatile, because
+    // the query can finish on another thread than the one that reached the phase.
+    private final long mBindStartNanos;
+    private volatile long mServiceConnectedNanos = IsReadyToPayMetricsListener.NOT_REACHED;
+    private volatile long mReadyToPayDispatchNanos = IsReadyToPayMetricsListener.NOT_REACHED;
+    // Whether the service was connected by the pool before this query, so that it did not bind.
+    private volatile boolean mIsWarmConnection;
+
+    // The correlation id of the query's trace section, or null if no trace was being captured when
+    // the query started. See PaymentTrace.
+    @Nullable
+    private final String mTraceId;
+
+    // The timeout tasks are kept so that only this helper's own tasks are removed from mHandler,
+    // which may be shared with other helpers.
+    private final Runnable mServiceConnectionTimeoutTask = this::onServiceConnectionTimeout;
+    private final Runnable mReadyToPayTimeoutTask = this::onReadyToPayTimeout;
 
     /** The callback that returns the result (success or error) to the helper's caller. */
     public interface ResultHandler {
@@ -44,9 +136,73 @@ public class IsReadyToPayServiceHelper
         void onIsReadyToPayServiceError();
     }
 
+    /**
+     * Sets the listener that receives the phase timings and the outcome of every query of all
+     * helpers, e.g., {@link IsReadyToPayMetrics}.
+     * @param listener The listener, or null to stop recording.
+     */
+    public static void setMetricsListener(@Nullable IsReadyToPayMetricsListener listener) {
+        sMetricsListener = listener;
+    }
+
+    /**
+     * Starts an IsReadyToPay query on a dedicated background thread, so that neither its timeouts
+     * nor its callbacks go through the main looper. See {@link #queryAsync(Context, Intent,
+     * Handler, IsReadyToPayServiceConnectionPool, IsReadyToPayTimeoutPolicy)}.
+     */
+    public static IsReadyToPayFuture queryAsync(Context context, Intent isReadyToPayIntent) {
+        return queryAsync(context, isReadyToPayIntent, getQueryHandler(), /*connectionPool=*/null,
+                /*timeoutPolicy=*/null);
+    }
+
+    /**
+     * Starts an IsReadyToPay query on the thread of the given handler.
+     * @param context The application context. Should not be null.
+     * @param isReadyToPayIntent The IsReaddyToPay intent created by {@link
+     *         WebPaymentIntentHelper#createIsReadyToPayIntent}. Should not be null.
+     * @param handler The handler of the thread that starts the query and runs its timeouts, e.g.,
+     *         of a HandlerThread. The service connection callbacks are delivered to it directly on
+     *         Android Q and later, and to the main thread before.
+     * @param connectionPool The pool of service connections, or null to bind the service for this
+     *         query only. The connection is leased on the pool's thread, which can differ from the
+     *         handler's.
+     * @param timeoutPolicy The policy that derives the timeouts, or null for the default ones.
+     * @return The future of the result, which is completed without a thread hop on the thread
+     *         that finishes the query: the binder thread of the response, or the handler's thread
+     *         for the timeouts. Its errors are typed by {@link IsReadyToPayMetricsListener.Outcome}.
+     */
+    public static IsReadyToPayFuture queryAsync(final Context context,
+            final Intent isReadyToPayIntent, final Handler handler,
+            @Nullable final IsReadyToPayServiceConnectionPool connectionPool,
+            @Nullable final IsReadyToPayTimeoutPolicy timeoutPolicy) {
+        final IsReadyToPayFuture future = new IsReadyToPayFuture();
+        handler.post(() -> {
+            // Cancelled before it started.
+            if (future.isDone()) return;
+            final IsReadyToPayServiceHelper helper = new IsReadyToPayServiceHelper(context,
+                    isReadyToPayIntent, NO_OP_RESULT_HANDLER, DIRECT_EXECUTOR, handler,
+                    connectionPool,
+                    timeoutPolicy, getServiceConnectionTimeoutMs(timeoutPolicy, isReadyToPayIntent),
+                    getReadyToPayTimeoutMs(timeoutPolicy, isReadyToPayIntent), future);
+            future.setCanceller(helper::cancel);
+            // Cancelled while the helper was being created.
+            if (future.isDone()) helper.cancel();
+        });
+        return future;
+    }
+
+    private static synchronized Handler getQueryHandler() {
+        if (sQueryHandler == null) {
+            HandlerThread thread = new HandlerThread("IsReadyToPay");
+            thread.start();
+            sQueryHandler = new Handler(thread.getLooper());
+        }
+        return sQueryHandler;
+    }
+
     /**
      * The constructor starts the IsReadyToPay service. The result would be returned asynchronously
-     * with one callback.
+     * with one callback on the current thread, which should have a looper.
      * @param context The application context. Should not be null.
      * @param isReadyToPayIntent The IsReaddyToPay intent created by {@link
      *         WebPaymentIntentHelper#createIsReadyToPayIntent}. Should not be null.
@@ -54,12 +210,113 @@ public class IsReadyToPayServiceHelper
      */
     public IsReadyToPayServiceHelper(
             Context context, Intent isReadyToPayIntent, ResultHandler resultHandler) {
+        this(context, isReadyToPayIntent, resultHandler, /*connectionPool=*/null,
+                /*timeoutPolicy=*/null);
+    }
+
+    /**
+     * Same as the above constructor, but the result is returned with one callback on the given
+     * executor, without going through the current thread first.
+     * @param resultExecutor Runs the result handler. With a direct executor, e.g., {@code
+     *         Runnable::run}, the result handler runs on the thread that finishes the query, which
+     *         is a binder thread for the service's response. Should not be null.
+     */
+    public IsReadyToPayServiceHelper(Context context, Intent isReadyToPayIntent,
+            ResultHandler resultHandler, Executor resultExecutor) {
+        this(context, isReadyToPayIntent, resultHandler, resultExecutor, new Handler(),
+                /*connectionPool=*/null, /*timeoutPolicy=*/null,
+                getServiceConnectionTimeoutMs(/*timeoutPolicy=*/null, isReadyToPayIntent),
+                getReadyToPayTimeoutMs(/*timeoutPolicy=*/null, isReadyToPayIntent),
+                /*future=*/null);
+        assert resultExecutor != null;
+    }
+
+    /**
+     * Same as the first constructor, but optionally with a connection pool and adaptive timeouts.
+     * @param connectionPool The pool of service connections, so that the binding is reused across
+     *         queries. If null, or if the pool cannot serve this query, the service is bound for
+     *         this query only.
+     * @param timeoutPolicy The policy that derives the timeouts from the latencies of this
+     *         payment app, and learns from this query. If null, the default timeouts are used.
+     */
+    public IsReadyToPayServiceHelper(Context context, Intent isReadyToPayIntent,
+            ResultHandler resultHandler, @Nullable IsReadyToPayServiceConnectionPool connectionPool,
+            @Nullable IsReadyToPayTimeoutPolicy timeoutPolicy) {
+        this(context, isReadyToPayIntent, resultHandler, /*resultExecutor=*/null, new Handler(),
+                connectionPool, timeoutPolicy,
+                getServiceConnectionTimeoutMs(timeoutPolicy, isReadyToPayIntent),
+                getReadyToPayTimeoutMs(timeoutPolicy, isReadyToPayIntent), /*future=*/null);
+    }
+
+    /**
+     * Same as the public constructors, but with the handler and the timeouts provided by the
+     * caller, e.g., {@link IsReadyToPayQueryCoordinator} that enforces its own deadline.
+     * @param resultExecutor Runs the result handler, or null to run it on the handler's thread.
+     * @param handler The handler of the thread that runs the query's timeouts, and the result
+     *         handler if there is no result executor. Can be shared with other helpers. Should be
+     *         of the current thread.
+     * @param connectionPool The pool of service connections, or null to bind the service for this
+     *         query only.
+     * @param timeoutPolicy The policy that learns the latencies of this query, or null.
+     * @param serviceConnectionTimeoutMs The maximum number of milliseconds to wait for a
+     *         connection to the service.
+     * @param readyToPayTimeoutMs The maximum number of milliseconds to wait for a response from
+     *         the service.
+     * @param future The future to complete with the outcome of the query, or null.
+     */
+    /* package */ IsReadyToPayServiceHelper(Context context, Intent isReadyToPayIntent,
+            ResultHandler resultHandler, @Nullable Executor resultExecutor, Handler handler,
+            @Nullable IsReadyToPayServiceConnectionPool connectionPool,
+            @Nullable IsReadyToPayTimeoutPolicy timeoutPolicy, long serviceConnectionTimeoutMs,
+            long readyToPayTimeoutMs, @Nullable IsReadyToPayFuture future) {
         assert context != null;
         assert isReadyToPayIntent != null;
         assert resultHandler != null;
+        assert handler != null;
         mContext = context;
         mResultHandler = resultHandler;
-        mHandler = new Handler();
+        mResultExecutor = resultExecutor;
+        mHandler = handler;
+        mReadyToPayTimeoutMs = readyToPayTimeoutMs;
+        mServiceComponent = isReadyToPayIntent.getComponent();
+        mTimeoutPolicy = timeoutPolicy;
+        mFuture = future;
+        mBindStartNanos = SystemClock.elapsedRealtimeNanos();
+        // The section spans the binding and the query, until the outcome.
+        mTraceId = PaymentTrace.isEnabled()
+                ? PaymentTrace.newCorrelationId(mServiceComponent.getPackageName())
+                : null;
+        if (mTraceId != null) PaymentTrace.beginAsyncSection(TRACE_SECTION_NAME, mTraceId);
+
+        // Posted first, so that a query that finishes right away always removes it.
+        mHandler.postDelayed(mServiceConnectionTimeoutTask, serviceConnectionTimeoutMs);
+
+        // Set before acquire(), which may connect the service synchronously.
+        mConnectionPool = connectionPool;
+        if (connectionPool == null) {
+            bindDirectly(isReadyToPayIntent);
+        } else if (Looper.myLooper() == connectionPool.getHandler().getLooper()) {
+            acquireOrBind(connectionPool, isReadyToPayIntent);
+        } else {
+            // The pool is single-threaded, so the connection is leased on the pool's thread. The
+            // release of this query is posted there too, so it cannot overtake the lease.
+            connectionPool.getHandler().post(
+                    () -> acquireOrBind(connectionPool, isReadyToPayIntent));
+        }
+    }
+
+    private void acquireOrBind(
+            IsReadyToPayServiceConnectionPool connectionPool, Intent isReadyToPayIntent) {
+        // Finished, e.g., cancelled, before the pool's thread got to the lease.
+        if (mState.get() == State.DONE) return;
+        if (connectionPool.acquire(isReadyToPayIntent, this)) return;
+        mConnectionPool = null;
+        bindDirectly(isReadyToPayIntent);
+    }
+
+    private void bindDirectly(Intent isReadyToPayIntent) {
+        @Outcome int bindFailure = Outcome.BIND_RETURNED_FALSE;
+        boolean isServiceBound = false;
         try {
             // This method returns "true if the system is in the process of bringing up a
             // service that your client has permission to bind to; false if the system couldn't
@@ -67,44 +324,94 @@ public class IsReadyToPayServiceHelper
             // value is true, you should later call unbindService(ServiceConnection) to release
             // the connection."
             // https://developer.android.com/reference/android/content/Context.html#bindService(android.content.Intent,%20android.content.ServiceConnection,%20int)
-            mIsServiceBindingInitiated = mContext.bindService(
-                    isReadyToPayIntent, /*serviceConnection=*/this, Context.BIND_AUTO_CREATE);
+            isServiceBound = bindService(isReadyToPayIntent);
         } catch (SecurityException e) {
-            // Intentionally blank, so mIsServiceBindingInitiated is false.
+            // isServiceBound is left false.
+            bindFailure = Outcome.SECURITY_EXCEPTION;
         }
 
-        if (!mIsServiceBindingInitiated) {
-            reportError();
+        if (!isServiceBound) {
+            reportError(bindFailure);
             return;
         }
 
-        mHandler.postDelayed(() -> {
-            if (!mIsReadyToPayQueried) reportError();
-        }, SERVICE_CONNECTION_TIMEOUT_MS);
+        mIsServiceBound.set(true);
+        // The query may have finished on another thread before the binding was recorded, in
+        // which case its cleanup could not unbind.
+        if (mState.get() == State.DONE) unbind();
     }
 
+    private boolean bindService(Intent isReadyToPayIntent) {
+        // The same binding as that of the pool for the same extras, which may still be alive.
+        Intent bindIntent = IsReadyToPayFingerprint.createBindIntent(
+                isReadyToPayIntent, IsReadyToPayFingerprint.compute(isReadyToPayIntent));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            // Delivers the connection callbacks to mHandler without going through the main looper.
+            return mContext.bindService(bindIntent, Context.BIND_AUTO_CREATE, mHandler::post,
+                    /*serviceConnection=*/this);
+        }
+        return mContext.bindService(
+                bindIntent, /*serviceConnection=*/this, Context.BIND_AUTO_CREATE);
+    }
+
+    // The callbacks of the service, its connection and the pool can arrive on any thread: the
+    // main thread, a binder thread or the thread of the pool. Each one only advances the state,
+    // so none of them needs to hop to mHandler.
+
     // ServiceConnection:
     @Override
     public void onServiceConnected(ComponentName name, IBinder service) {
-        // Timeout could cause the null.
-        if (mResultHandler == null) return;
-
         IsReadyToPayService isReadyToPayService = IsReadyToPayService.Stub.asInterface(service);
         if (isReadyToPayService == null) {
-            reportError();
+            reportError(Outcome.NULL_SERVICE_INTERFACE);
             return;
         }
+        queryService(isReadyToPayService, /*isWarmConnection=*/false);
+    }
+
+    // IsReadyToPayServiceConnectionPool.ConnectionCallback:
+    @Override
+    public void onServiceConnectionEstablished(IsReadyToPayService service, boolean isWarm) {
+        queryService(service, isWarm);
+    }
+
+    @Override
+    public void onServiceConnectionError(@Outcome int failure) {
+        reportError(failure);
+    }
+
+    private void queryService(
+            IsReadyToPayService isReadyToPayService, boolean isWarmConnection) {
+        long serviceConnectedNanos = SystemClock.elapsedRealtimeNanos();
+        // A timeout, an error or a reconnection of the service could have come first.
+        if (!mState.compareAndSet(State.BINDING, State.CONNECTED)) return;
+        mIsWarmConnection = isWarmConnection;
+        mServiceConnectedNanos = serviceConnectedNanos;
+        mHandler.removeCallbacks(mServiceConnectionTimeoutTask);
+        // A warm connection took no bind, so its near-zero latency would understate the binds.
+        if (mTimeoutPolicy != null && !isWarmConnection) {
+            mTimeoutPolicy.recordServiceConnectionLatency(mServiceComponent.getPackageName(),
+                    toMillis(serviceConnectedNanos - mBindStartNanos));
+        }
 
-        mIsReadyToPayQueried = true;
+        // Posted and marked as querying before the call, which may respond synchronously.
+        mHandler.postDelayed(mReadyToPayTimeoutTask, mReadyToPayTimeoutMs);
+        mReadyToPayDispatchNanos = SystemClock.elapsedRealtimeNanos();
+        if (!mState.compareAndSet(State.CONNECTED, State.QUERYING)) {
+            // Finished by a disconnection in the meantime, possibly before the task was posted.
+            mHandler.removeCallbacks(mReadyToPayTimeoutTask);
+            return;
+        }
+        PaymentTrace.beginSection("IsReadyToPayServiceHelper.isReadyToPay");
         try {
             isReadyToPayService.isReadyToPay(/*callback=*/this);
         } catch (Throwable e) {
             // Many undocumented exceptions are not caught in the remote Service but passed on
             // to the Service caller, see writeException in Parcel.java.
-            reportError();
-            return;
+            reportError(Outcome.REMOTE_EXCEPTION);
+        } finally {
+            PaymentTrace.endSection();
         }
-        mHandler.postDelayed(this::reportError, READY_TO_PAY_TIMEOUT_MS);
     }
 
     // "Called when a connection to the Service has been lost. This typically happens
@@ -116,33 +423,136 @@ public class IsReadyToPayServiceHelper
     @Override
     public void onServiceDisconnected(ComponentName name) {
         // Do not wait for the service to restart.
-        reportError();
+        reportError(Outcome.SERVICE_DISCONNECTED);
     }
 
     // IsReadyToPayServiceCallback.Stub:
     @Override
     public void handleIsReadyToPay(boolean isReadyToPay) throws RemoteException {
-        if (mResultHandler == null) return;
-        mResultHandler.onIsReadyToPayServiceResponse(isReadyToPay);
-        mResultHandler = null;
-        destroy();
-    }
-
-    private void reportError() {
-        if (mResultHandler == null) return;
-        mResultHandler.onIsReadyToPayServiceError();
-        mResultHandler = null;
-        destroy();
-    }
-
-    /** Clean up the resources that this helper has created. */
-    private void destroy() {
-        if (mIsServiceBindingInitiated) {
-            // ServiceConnection "parameter must not be null."
-            // https://developer.android.com/reference/android/content/Context.html#unbindService(android.content.ServiceConnection)
-            mContext.unbindService(/*serviceConnection=*/this);
-            mIsServiceBindingInitiated = false;
+        long responseNanos = SystemClock.elapsedRealtimeNanos();
+        // Only the first response of a query that is still waiting for one is delivered.
+        if (!mState.compareAndSet(State.QUERYING, State.DONE)) return;
+        recordReadyToPayLatency(responseNanos);
+        finish(isReadyToPay ? Outcome.READY : Outcome.NOT_READY, responseNanos);
+    }
+
+    private void onServiceConnectionTimeout() {
+        if (!mState.compareAndSet(State.BINDING, State.DONE)) return;
+        if (mTimeoutPolicy != null) {
+            mTimeoutPolicy.recordServiceConnectionLatency(mServiceComponent.getPackageName(),
+                    toMillis(SystemClock.elapsedRealtimeNanos() - mBindStartNanos));
+        }
+        finish(Outcome.SERVICE_CONNECTION_TIMEOUT, IsReadyToPayMetricsListener.NOT_REACHED);
+    }
+
+    private void onReadyToPayTimeout() {
+        if (!mState.compareAndSet(State.QUERYING, State.DONE)) return;
+        recordReadyToPayLatency(SystemClock.elapsedRealtimeNanos());
+        finish(Outcome.READY_TO_PAY_TIMEOUT, IsReadyToPayMetricsListener.NOT_REACHED);
+    }
+
+    private void recordReadyToPayLatency(long endNanos) {
+        if (mTimeoutPolicy == null) return;
+        mTimeoutPolicy.recordReadyToPayLatency(
+                mServiceComponent.getPackageName(), toMillis(endNanos - mReadyToPayDispatchNanos));
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static long getServiceConnectionTimeoutMs(
+            @Nullable IsReadyToPayTimeoutPolicy timeoutPolicy, Intent isReadyToPayIntent) {
+        return timeoutPolicy == null ? SERVICE_CONNECTION_TIMEOUT_MS
+                                     : timeoutPolicy.getServiceConnectionTimeoutMs(
+                                             getPackageName(isReadyToPayIntent));
+    }
+
+    private static long getReadyToPayTimeoutMs(
+            @Nullable IsReadyToPayTimeoutPolicy timeoutPolicy, Intent isReadyToPayIntent) {
+        return timeoutPolicy == null
+                ? READY_TO_PAY_TIMEOUT_MS
+                : timeoutPolicy.getReadyToPayTimeoutMs(getPackageName(isReadyToPayIntent));
+    }
+
+    private static String getPackageName(Intent isReadyToPayIntent) {
+        ComponentName component = isReadyToPayIntent.getComponent();
+        assert component != null;
+        return component.getPackageName();
+    }
+
+    private void reportError(@Outcome int failure) {
+        if (mState.getAndSet(State.DONE) == State.DONE) return;
+        finish(failure, IsReadyToPayMetricsListener.NOT_REACHED);
+    }
+
+    /**
+     * Stops waiting for the service without notifying the result handler. No-op if the result has
+     * already been returned. Can be called on any thread.
+     */
+    /* package */ void cancel() {
+        if (mState.getAndSet(State.DONE) == State.DONE) return;
+        destroy(Outcome.CANCELLED, IsReadyToPayMetricsListener.NOT_REACHED);
+    }
+
+    /**
+     * Delivers the result and cleans up. Called exactly once, by the transition to {@link
+     * State#DONE}.
+     * @param outcome How the query finished.
+     * @param responseNanos The timestamp of the service's response, or {@link
+     *         IsReadyToPayMetricsListener#NOT_REACHED}.
+     */
+    private void finish(@Outcome int outcome, long responseNanos) {
+        destroy(outcome, responseNanos);
+        final boolean isError = outcome != Outcome.READY && outcome != Outcome.NOT_READY;
+        final boolean isReadyToPay = outcome == Outcome.READY;
+        Runnable delivery = () -> {
+            if (isError) {
+                mResultHandler.onIsReadyToPayServiceError();
+            } else {
+                mResultHandler.onIsReadyToPayServiceResponse(isReadyToPay);
+            }
+        };
+        if (mResultExecutor != null) {
+            mResultExecutor.execute(delivery);
+        } else if (Looper.myLooper() == mHandler.getLooper()) {
+            delivery.run();
+        } else {
+            mHandler.post(delivery);
         }
-        mHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * Clean up the resources that this helper has created. Idempotent.
+     * @param outcome How the query finished, for the metrics.
+     * @param responseNanos The timestamp of the service's response, for the metrics.
+     */
+    private void destroy(@Outcome int outcome, long responseNanos) {
+        if (mFuture != null) mFuture.complete(IsReadyToPayResult.forOutcome(outcome));
+        if (mTraceId != null) PaymentTrace.endAsyncSection(TRACE_SECTION_NAME, mTraceId);
+
+        IsReadyToPayMetricsListener metricsListener = sMetricsListener;
+        if (metricsListener != null) {
+            metricsListener.onIsReadyToPayQueryFinished(mServiceComponent.getPackageName(),
+                    mBindStartNanos, mServiceConnectedNanos, mReadyToPayDispatchNanos,
+                    responseNanos, SystemClock.elapsedRealtimeNanos(), outcome,
+                    mIsWarmConnection);
+        }
+
+        IsReadyToPayServiceConnectionPool connectionPool = mConnectionPool;
+        mConnectionPool = null;
+        if (connectionPool != null) {
+            connectionPool.release(mServiceComponent, /*callback=*/this);
+        }
+        unbind();
+        mHandler.removeCallbacks(mServiceConnectionTimeoutTask);
+        mHandler.removeCallbacks(mReadyToPayTimeoutTask);
+    }
+
+    private void unbind() {
+        if (!mIsServiceBound.compareAndSet(true, false)) return;
+        // ServiceConnection "parameter must not be null."
+        // https://developer.android.com/reference/android/content/Context.html#unbindService(android.content.ServiceConnection)
+        mContext.unbindService(/*serviceConnection=*/this);
     }
 }
@@ -0,0 +1,177 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Derives the IsReadyToPay timeouts of each payment app from its observed latencies, so that fast
+ * apps fail fast and slow-but-healthy apps are not cut off. The service connection and the
+ * IsReadyToPay response are tracked separately. Until an app has enough samples, the default
+ * timeouts of {@link IsReadyToPayServiceHelper} are used. The histograms are persisted in shared
+ * preferences, so the learned timeouts survive process restarts.
+ *
+ * A query that times out is recorded with its timeout as the latency. Because a percentile is
+ * rounded up to the upper bound of its histogram bucket, repeated timeouts gradually raise the
+ * timeout of a slow app up to the ceiling.
+ *
+ * Thread-safe.
+ */
+public class IsReadyToPayTimeoutPolicy {
+    private static final String PREFERENCES_NAME = "payments_is_ready_to_pay_latency";
+    private static final String CONNECTION_KEY_SUFFIX = ":connection";
+    private static final String RESPONSE_KEY_SUFFIX = ":response";
+
+    /** The number of samples needed before the timeouts of an app are adapted. */
+    private static final long MIN_SAMPLES = 5;
+    /** The number of samples at which a histogram is halved, to follow recent latencies. */
+    private static final long DECAY_THRESHOLD = 200;
+    /** The number of new samples of an app after which its histograms are persisted. */
+    private static final int SAMPLES_PER_PERSIST = 10;
+
+    private final SharedPreferences mPreferences;
+    private final double mPercentile;
+    private final long mConnectionFloorMs;
+    private final long mConnectionCeilingMs;
+    private final long mResponseFloorMs;
+    private final long mResponseCeilingMs;
+
+    private final ConcurrentHashMap<String, AppLatencies> mLatencies = new ConcurrentHashMap<>();
+
+    /** The latency histograms of one payment app. */
+    private static final class AppLatencies {
+        private final LatencyHistogram mConnection = new LatencyHistogram(DECAY_THRESHOLD);
+        private final LatencyHistogram mResponse = new LatencyHistogram(DECAY_THRESHOLD);
+        private int mUnpersistedSamples;
+    }
+
+    /**
+     * @param context The application context. Should not be null.
+     * @param percentile The percentile of the observed latencies that is used as the timeout, in
+     *         (0, 1], e.g., 0.99.
+     * @param connectionFloorMs The minimum timeout for the service connection.
+     * @param connectionCeilingMs The maximum timeout for the service connection.
+     * @param responseFloorMs The minimum timeout for the IsReadyToPay response.
+     * @param responseCeilingMs The maximum timeout for the IsReadyToPay response.
+     */
+    public IsReadyToPayTimeoutPolicy(Context context, double percentile, long connectionFloorMs,
+            long connectionCeilingMs, long responseFloorMs, long responseCeilingMs) {
+        assert context != null;
+        assert percentile > 0 && percentile <= 1;
+        assert 0 < connectionFloorMs && connectionFloorMs <= connectionCeilingMs;
+        assert 0 < responseFloorMs && responseFloorMs <= responseCeilingMs;
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mPercentile = percentile;
+        mConnectionFloorMs = connectionFloorMs;
+        mConnectionCeilingMs = connectionCeilingMs;
+        mResponseFloorMs = responseFloorMs;
+        mResponseCeilingMs = responseCeilingMs;
+    }
+
+    /**
+     * @param packageName The package name of the payment app.
+     * @return The number of milliseconds to wait for a connection to the app's service.
+     */
+    public long getServiceConnectionTimeoutMs(String packageName) {
+        return computeTimeoutMs(getLatencies(packageName).mConnection,
+                IsReadyToPayServiceHelper.SERVICE_CONNECTION_TIMEOUT_MS, mConnectionFloorMs,
+                mConnectionCeilingMs);
+    }
+
+    /**
+     * @param packageName The package name of the payment app.
+     * @return The number of milliseconds to wait for a response from the app's service.
+     */
+    public long getReadyToPayTimeoutMs(String packageName) {
+        return computeTimeoutMs(getLatencies(packageName).mResponse,
+                IsReadyToPayServiceHelper.READY_TO_PAY_TIMEOUT_MS, mResponseFloorMs,
+                mResponseCeilingMs);
+    }
+
+    /**
+     * Records the time from the start of the binding to the service connection.
+     * @param packageName The package name of the payment app.
+     * @param latencyMs The latency, or the timeout if the connection timed out.
+     */
+    public void recordServiceConnectionLatency(String packageName, long latencyMs) {
+        AppLatencies latencies = getLatencies(packageName);
+        latencies.mConnection.record(latencyMs);
+        onSampleRecorded(packageName, latencies);
+    }
+
+    /**
+     * Records the time from the IsReadyToPay call to its response.
+     * @param packageName The package name of the payment app.
+     * @param latencyMs The latency, or the timeout if the response timed out.
+     */
+    public void recordReadyToPayLatency(String packageName, long latencyMs) {
+        AppLatencies latencies = getLatencies(packageName);
+        latencies.mResponse.record(latencyMs);
+        onSampleRecorded(packageName, latencies);
+    }
+
+    /**
+     * Forgets the latencies of the given payment app, e.g., when it is updated or uninstalled.
+     * @param packageName The package name of the payment app.
+     */
+    public void reset(String packageName) {
+        mLatencies.remove(packageName);
+        mPreferences.edit()
+                .remove(packageName + CONNECTION_KEY_SUFFIX)
+                .remove(packageName + RESPONSE_KEY_SUFFIX)
+                .apply();
+    }
+
+    /** Persists the histograms of all of the payment apps asynchronously. */
+    public void persist() {
+        SharedPreferences.Editor editor = mPreferences.edit();
+        for (Map.Entry<String, AppLatencies> entry : mLatencies.entrySet()) {
+            putLatencies(editor, entry.getKey(), entry.getValue());
+        }
+        editor.apply();
+    }
+
+    private AppLatencies getLatencies(String packageName) {
+        AppLatencies latencies = mLatencies.get(packageName);
+        if (latencies != null) return latencies;
+
+        // The shared preferences are cached in memory after the first load.
+        AppLatencies loaded = new AppLatencies();
+        loaded.mConnection.deserialize(
+                mPreferences.getString(packageName + CONNECTION_KEY_SUFFIX, null));
+        loaded.mResponse.deserialize(
+                mPreferences.getString(packageName + RESPONSE_KEY_SUFFIX, null));
+        latencies = mLatencies.putIfAbsent(packageName, loaded);
+        return latencies == null ? loaded : latencies;
+    }
+
+    private void onSampleRecorded(String packageName, AppLatencies latencies) {
+        synchronized (latencies) {
+            if (++latencies.mUnpersistedSamples < SAMPLES_PER_PERSIST) return;
+            latencies.mUnpersistedSamples = 0;
+        }
+        SharedPreferences.Editor editor = mPreferences.edit();
+        putLatencies(editor, packageName, latencies);
+        editor.apply();
+    }
+
+    private static void putLatencies(
+            SharedPreferences.Editor editor, String packageName, AppLatencies latencies) {
+        editor.putString(packageName + CONNECTION_KEY_SUFFIX, latencies.mConnection.serialize());
+        editor.putString(packageName + RESPONSE_KEY_SUFFIX, latencies.mResponse.serialize());
+    }
+
+    private long computeTimeoutMs(
+            LatencyHistogram histogram, long defaultMs, long floorMs, long ceilingMs) {
+        long timeoutMs = histogram.getCount() < MIN_SAMPLES
+                ? defaultMs
+                : histogram.getPercentile(mPercentile);
+        return Math.max(floorMs, Math.min(ceilingMs, timeoutMs));
+    }
+}
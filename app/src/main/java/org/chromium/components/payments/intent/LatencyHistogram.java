@@ -0,0 +1,176 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A streaming histogram of non-negative samples, by default latencies in milliseconds, with
+ * exponentially sized buckets from 1 to a maximum, e.g., about a minute. Samples in other units,
+ * e.g., microseconds or bytes, need their own maximum. Recording is lock-free and allocation-free,
+ * so it can be done on any thread, including binder threads. With a decay threshold, all of the
+ * counts are halved when the number of samples reaches it, so that the histogram follows the recent
+ * samples. Without one, it describes all of the samples since the last {@link #clear}.
+ */
+public final class LatencyHistogram {
+    /** The decay threshold of a histogram that never decays. */
+    public static final long NO_DECAY = 0;
+
+    /** The ratio between the upper bounds of two adjacent buckets. */
+    private static final double BUCKET_GROWTH = 1.25;
+    /** The default upper bound of the last finite bucket, for latencies in milliseconds. */
+    private static final long DEFAULT_MAX_BUCKET_MS = 60_000;
+
+    /** The bucket upper bounds of the default maximum, shared by the histograms that use it. */
+    private static final long[] DEFAULT_BUCKET_UPPER_BOUNDS =
+            createBucketUpperBounds(DEFAULT_MAX_BUCKET_MS);
+
+    private static final String SERIALIZATION_SEPARATOR = ",";
+
+    /** The inclusive upper bound of each bucket, except for the last (overflow) bucket. */
+    private final long[] mBucketUpperBounds;
+    private final AtomicLongArray mCounts;
+    private final long mDecayThreshold;
+
+    /**
+     * Creates a histogram of latencies in milliseconds, up to about a minute.
+     * @param decayThreshold The number of samples at which all of the counts are halved, or {@link
+     *         #NO_DECAY}.
+     */
+    public LatencyHistogram(long decayThreshold) {
+        this(DEFAULT_BUCKET_UPPER_BOUNDS, decayThreshold);
+    }
+
+    /**
+     * @param maxBucketValue The upper bound of the last finite bucket. Larger samples go to the
+     *         overflow bucket. Should be positive.
+     * @param decayThreshold The number of samples at which all of the counts are halved, or {@link
+     *         #NO_DECAY}.
+     */
+    public LatencyHistogram(long maxBucketValue, long decayThreshold) {
+        this(maxBucketValue == DEFAULT_MAX_BUCKET_MS ? DEFAULT_BUCKET_UPPER_BOUNDS
+                                                     : createBucketUpperBounds(maxBucketValue),
+                decayThreshold);
+    }
+
+    private LatencyHistogram(long[] bucketUpperBounds, long decayThreshold) {
+        assert decayThreshold >= 0;
+        mBucketUpperBounds = bucketUpperBounds;
+        mCounts = new AtomicLongArray(bucketUpperBounds.length + 1);
+        mDecayThreshold = decayThreshold;
+    }
+
+    private static long[] createBucketUpperBounds(long maxBucketValue) {
+        assert maxBucketValue > 0;
+        int size = 0;
+        for (double bound = 1; bound < maxBucketValue; bound *= BUCKET_GROWTH) size++;
+        long[] bounds = new long[size + 1];
+        double bound = 1;
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            // The small buckets are at least 1 wide.
+            previous = Math.max(previous + 1, Math.round(bound));
+            bounds[i] = previous;
+            bound *= BUCKET_GROWTH;
+        }
+        bounds[size] = maxBucketValue;
+        return bounds;
+    }
+
+    /** @param value The sample to record. Negative samples are recorded as zero. */
+    public void record(long value) {
+        mCounts.incrementAndGet(bucketIndex(value));
+        if (mDecayThreshold != NO_DECAY && getCount() >= mDecayThreshold) decay();
+    }
+
+    /** @return The number of recorded samples. */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < mCounts.length(); i++) count += mCounts.get(i);
+        return count;
+    }
+
+    /**
+     * @param percentile The percentile in (0, 1], e.g., 0.95.
+     * @return The upper bound of the bucket that contains the given percentile, {@link
+     *         Long#MAX_VALUE} if it is in the overflow bucket, or zero if there are no samples.
+     */
+    public long getPercentile(double percentile) {
+        assert percentile > 0 && percentile <= 1;
+        long total = getCount();
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(percentile * total);
+        long cumulative = 0;
+        for (int i = 0; i < mBucketUpperBounds.length; i++) {
+            cumulative += mCounts.get(i);
+            if (cumulative >= rank) return mBucketUpperBounds[i];
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /** Removes all of the samples. */
+    public void clear() {
+        for (int i = 0; i < mCounts.length(); i++) mCounts.set(i, 0);
+    }
+
+    /** @return The bucket counts in a compact form that can be read by {@link #deserialize}. */
+    public String serialize() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < mCounts.length(); i++) {
+            if (i > 0) builder.append(SERIALIZATION_SEPARATOR);
+            builder.append(mCounts.get(i));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Replaces the samples with the ones from {@link #serialize}. Malformed input, e.g., from a
+     * version with different buckets, is ignored.
+     * @param serialized The serialized bucket counts.
+     * @return Whether the input was read.
+     */
+    public boolean deserialize(@Nullable String serialized) {
+        if (serialized == null) return false;
+        String[] counts = serialized.split(SERIALIZATION_SEPARATOR);
+        if (counts.length != mCounts.length()) return false;
+        long[] parsed = new long[counts.length];
+        try {
+            for (int i = 0; i < counts.length; i++) {
+                parsed[i] = Long.parseLong(counts[i]);
+                if (parsed[i] < 0) return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        for (int i = 0; i < parsed.length; i++) mCounts.set(i, parsed[i]);
+        return true;
+    }
+
+    private void decay() {
+        for (int i = 0; i < mCounts.length(); i++) {
+            long count;
+            do {
+                count = mCounts.get(i);
+            } while (!mCounts.compareAndSet(i, count, count / 2));
+        }
+    }
+
+    private int bucketIndex(long value) {
+        // Binary search for the first bucket whose upper bound is not less than the value.
+        int low = 0;
+        int high = mBucketUpperBounds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mBucketUpperBounds[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,171 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.content.Intent;
+import android.os.Bundle;
+
+import androidx.annotation.Nullable;
+
+import org.chromium.components.payments.intent.PaymentIntentMetricsListener.IntentType;
+import org.chromium.components.payments.intent.PaymentIntentMetricsListener.Phase;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentDetailsModifier;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentItem;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A reusable template for the Pay intents of one payment app within one checkout session. The
+ * extras that do not change within the session (the origins, the certificate chain, the method data
+ * and their deprecated copies) are validated and built once, so that each launch only adds the
+ * request id, the total and the modifiers. The intents are identical to those of {@link
+ * WebPaymentIntentHelper#createPayIntent}.
+ */
+public final class PayIntentTemplate {
+    private final String mPackageName;
+    private final String mActivityName;
+    private final boolean mIncludeDeprecatedExtras;
+    // The keys of the method data, which select the modifiers of the app.
+    private final Set<String> mMethodNames;
+    // Never exposed or modified after construction, so it can be copied into every intent.
+    private final Bundle mInvariantExtras;
+    // The marshalled size of mInvariantExtras, measured once for the out-of-band threshold.
+    private final int mInvariantExtrasSize;
+
+    /**
+     * Creates a template for the Pay intents of a payment app. This method throws
+     * IllegalArgumentException for invalid arguments. See {@link
+     * WebPaymentIntentHelper#createPayIntent} for the parameters.
+     * @return The template.
+     */
+    public static PayIntentTemplate create(String packageName, String activityName,
+            String merchantName, String schemelessOrigin, String schemelessIframeOrigin,
+            @Nullable byte[][] certificateChain, Map<String, PaymentMethodData> methodDataMap) {
+        return create(packageName, activityName, merchantName, schemelessOrigin,
+                schemelessIframeOrigin, certificateChain, methodDataMap,
+                /*includeDeprecatedExtras=*/true);
+    }
+
+    /**
+     * Creates a template for the Pay intents of a payment app, optionally without the deprecated
+     * extras. This method throws IllegalArgumentException for invalid arguments. See {@link
+     * WebPaymentIntentHelper#createPayIntent} for the parameters.
+     * @return The template.
+     */
+    public static PayIntentTemplate create(String packageName, String activityName,
+            String merchantName, String schemelessOrigin, String schemelessIframeOrigin,
+            @Nullable byte[][] certificateChain, Map<String, PaymentMethodData> methodDataMap,
+            boolean includeDeprecatedExtras) {
+        PaymentIntentBuildTrace trace = PaymentIntentBuildTrace.start();
+        WebPaymentIntentHelper.checkStringNotEmpty(activityName, "activityName");
+        WebPaymentIntentHelper.checkStringNotEmpty(packageName, "packageName");
+        WebPaymentIntentHelper.checkNotNull(merchantName, "merchantName");
+        WebPaymentIntentHelper.checkStringNotEmpty(schemelessOrigin, "schemelessOrigin");
+        WebPaymentIntentHelper.checkStringNotEmpty(
+                schemelessIframeOrigin, "schemelessIframeOrigin");
+        // certificateChain is ok to be null, left unchecked here.
+        WebPaymentIntentHelper.checkNotEmpty(methodDataMap, "methodDataMap");
+        if (trace != null) trace.endPhase(Phase.VALIDATION);
+
+        Bundle invariantExtras = new Bundle();
+        WebPaymentIntentHelper.addInvariantExtras(merchantName, schemelessOrigin,
+                schemelessIframeOrigin, certificateChain, methodDataMap, includeDeprecatedExtras,
+                invariantExtras, trace);
+        if (trace != null) trace.finish(IntentType.PAY_TEMPLATE, invariantExtras);
+        return new PayIntentTemplate(packageName, activityName, includeDeprecatedExtras,
+                new HashSet<>(methodDataMap.keySet()), invariantExtras);
+    }
+
+    private PayIntentTemplate(String packageName, String activityName,
+            boolean includeDeprecatedExtras, Set<String> methodNames, Bundle invariantExtras) {
+        mPackageName = packageName;
+        mActivityName = activityName;
+        mIncludeDeprecatedExtras = includeDeprecatedExtras;
+        mMethodNames = methodNames;
+        mInvariantExtras = invariantExtras;
+        mInvariantExtrasSize = PaymentPayloadTransport.getMarshalledSize(invariantExtras);
+    }
+
+    /** @return The package name of the payment app. */
+    public String getPackageName() {
+        return mPackageName;
+    }
+
+    /**
+     * Creates an intent to invoke the payment app. This method throws IllegalArgumentException for
+     * invalid arguments.
+     * @param id The unique identifier of the PaymentRequest. Only non-empty string is allowed.
+     * @param total The total amount. Cannot be null.
+     * @param displayItems The shopping cart items. OK to be null.
+     * @param modifiers The relevant payment details modifiers. OK to be null. Only those of the
+     *         app's methods are sent, see {@link WebPaymentIntentHelper#setModifierPruningEnabled}.
+     * @return The intent to invoke the payment app.
+     */
+    public Intent createPayIntent(String id, PaymentItem total,
+            @Nullable List<PaymentItem> displayItems,
+            @Nullable Map<String, PaymentDetailsModifier> modifiers) {
+        return createPayIntentWithModifiers(id, total, displayItems,
+                PaymentDetailsModifierIndex.select(modifiers, mMethodNames));
+    }
+
+    /**
+     * Creates an intent to invoke the payment app with the modifiers of its methods, selected from
+     * the index of the request's modifiers. This method throws IllegalArgumentException for invalid
+     * arguments. See {@link #createPayIntent(String, PaymentItem, List, Map)} for the other
+     * parameters.
+     * @param modifierIndex The index of the request's modifiers, which is shared by the intents of
+     *         all of the apps. OK to be null if the request has no modifiers.
+     * @return The intent to invoke the payment app.
+     */
+    public Intent createPayIntent(String id, PaymentItem total,
+            @Nullable List<PaymentItem> displayItems,
+            @Nullable PaymentDetailsModifierIndex modifierIndex) {
+        return createPayIntentWithModifiers(id, total, displayItems,
+                modifierIndex == null ? null : modifierIndex.select(mMethodNames));
+    }
+
+    private Intent createPayIntentWithModifiers(String id, PaymentItem total,
+            @Nullable List<PaymentItem> displayItems,
+            @Nullable Collection<PaymentDetailsModifier> modifiers) {
+        PaymentTrace.beginSection("PayIntentTemplate.createPayIntent");
+        try {
+            PaymentIntentBuildTrace trace = PaymentIntentBuildTrace.start();
+            WebPaymentIntentHelper.checkStringNotEmpty(id, "id");
+            WebPaymentIntentHelper.checkNotNull(total, "total");
+            // displayItems is ok to be null, left unchecked here.
+            // modifiers is ok to be null, left unchecked here.
+            if (trace != null) trace.endPhase(Phase.VALIDATION);
+
+            Bundle requestExtras = new Bundle();
+            WebPaymentIntentHelper.addRequestExtras(id, total, displayItems, modifiers,
+                    mIncludeDeprecatedExtras, requestExtras, trace);
+
+            Intent payIntent = new Intent();
+            payIntent.setClassName(mPackageName, mActivityName);
+            payIntent.setAction(WebPaymentIntentHelper.ACTION_PAY);
+            if (PaymentPayloadTransport.exceedsThreshold(mInvariantExtrasSize, requestExtras)) {
+                Bundle extras = new Bundle(mInvariantExtras);
+                extras.putAll(requestExtras);
+                PaymentPayloadTransport.moveLargeExtras(extras);
+                payIntent.putExtras(extras);
+                if (trace != null) trace.finish(IntentType.PAY, extras);
+                return payIntent;
+            }
+            // The nested bundles of the invariant extras are shared by all of the intents, which is
+            // safe because they are only read, when the intent is marshalled.
+            payIntent.putExtras(mInvariantExtras);
+            payIntent.putExtras(requestExtras);
+            if (trace != null) trace.finish(IntentType.PAY, payIntent.getExtras());
+            return payIntent;
+        } finally {
+            PaymentTrace.endSection();
+        }
+    }
+}
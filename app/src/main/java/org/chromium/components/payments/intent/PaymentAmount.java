@@ -0,0 +1,240 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentCurrencyAmount;
+
+/**
+ * An immutable monetary amount in fixed point: an unscaled long and a scale, i.e., the value is
+ * unscaledValue * 10^-scale of the currency. "1.50" USD is 150 with scale 2. The decimal string of
+ * a {@link PaymentCurrencyAmount} is parsed and validated once, after which the amounts are
+ * compared and summed without parsing, boxing or BigDecimal.
+ *
+ * The scale is the number of fraction digits as written by the merchant, so the conversion back to
+ * a PaymentCurrencyAmount is lossless except for the leading zeros of the integer part and the
+ * sign of zero, which the PaymentRequest value grammar allows but does not give any meaning to.
+ *
+ * Like BigDecimal, {@link #equals} compares the representation, i.e., "1.5" and "1.50" are not
+ * equal, while {@link #compareTo} compares the value.
+ */
+public final class PaymentAmount implements Comparable<PaymentAmount> {
+    /** The maximum number of fraction digits, so that every power of ten of a scale fits a long. */
+    public static final int MAX_SCALE = 18;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_SCALE; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private final PaymentCurrency mCurrency;
+    private final long mUnscaledValue;
+    private final int mScale;
+
+    /**
+     * @param currency The currency. Should not be null.
+     * @param unscaledValue The value in units of 10^-scale. Cannot be Long.MIN_VALUE.
+     * @param scale The number of fraction digits, from 0 to {@link #MAX_SCALE}.
+     */
+    public PaymentAmount(PaymentCurrency currency, long unscaledValue, int scale) {
+        WebPaymentIntentHelper.checkNotNull(currency, "currency");
+        if (unscaledValue == Long.MIN_VALUE) {
+            throw new IllegalArgumentException("unscaledValue should not be Long.MIN_VALUE.");
+        }
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("scale should be from 0 to " + MAX_SCALE + ".");
+        }
+        mCurrency = currency;
+        mUnscaledValue = unscaledValue;
+        mScale = scale;
+    }
+
+    /**
+     * Parses an amount. This method throws IllegalArgumentException if the currency is not three
+     * ASCII letters, or if the value is not a valid decimal monetary value, i.e.,
+     * -?[0-9]+(.[0-9]+)?, or does not fit a long with at most {@link #MAX_SCALE} fraction digits.
+     * @param currency The currency code, e.g., "USD".
+     * @param value The decimal value, e.g., "1.50".
+     * @return The amount.
+     */
+    public static PaymentAmount parse(String currency, String value) {
+        PaymentCurrency parsedCurrency = PaymentCurrency.get(currency);
+        if (value == null) throw new IllegalArgumentException("value should not be null.");
+
+        int length = value.length();
+        int index = 0;
+        boolean isNegative = length > 0 && value.charAt(0) == '-';
+        if (isNegative) index++;
+        int integerStart = index;
+        int fractionStart = -1;
+        long unscaledValue = 0;
+        for (; index < length; index++) {
+            char c = value.charAt(index);
+            if (c == '.' && fractionStart == -1 && index > integerStart) {
+                fractionStart = index + 1;
+                continue;
+            }
+            if (c < '0' || c > '9') throw invalidValue(value);
+            int digit = c - '0';
+            if (unscaledValue > (Long.MAX_VALUE - digit) / 10) throw invalidValue(value);
+            unscaledValue = unscaledValue * 10 + digit;
+        }
+        if (index == integerStart || fractionStart == length) throw invalidValue(value);
+        int scale = fractionStart == -1 ? 0 : length - fractionStart;
+        if (scale > MAX_SCALE) throw invalidValue(value);
+
+        return new PaymentAmount(
+                parsedCurrency, isNegative ? -unscaledValue : unscaledValue, scale);
+    }
+
+    /**
+     * Parses the amount of the intent helper's type, unless it was created from a parsed amount.
+     * See {@link #parse}.
+     * @param amount The amount. Should not be null.
+     * @return The amount.
+     */
+    public static PaymentAmount from(PaymentCurrencyAmount amount) {
+        WebPaymentIntentHelper.checkNotNull(amount, "amount");
+        if (amount.parsedAmount != null) return amount.parsedAmount;
+        return parse(amount.currency, amount.value);
+    }
+
+    /** @return The amount as the intent helper's type, with the canonical currency code. */
+    public PaymentCurrencyAmount toPaymentCurrencyAmount() {
+        return new PaymentCurrencyAmount(this);
+    }
+
+    /** @return The interned currency. */
+    public PaymentCurrency getCurrency() {
+        return mCurrency;
+    }
+
+    /** @return The value in units of 10^-{@link #getScale}. */
+    public long getUnscaledValue() {
+        return mUnscaledValue;
+    }
+
+    /** @return The number of fraction digits. */
+    public int getScale() {
+        return mScale;
+    }
+
+    /** @return Whether the amount is less than zero. */
+    public boolean isNegative() {
+        return mUnscaledValue < 0;
+    }
+
+    /**
+     * Adds an amount of the same currency. The scale of the sum is the larger of the two scales.
+     * This method throws IllegalArgumentException for another currency, and ArithmeticException if
+     * the sum does not fit.
+     * @param other The amount to add. Should not be null.
+     * @return The sum.
+     */
+    public PaymentAmount plus(PaymentAmount other) {
+        checkSameCurrency(other);
+        int scale = Math.max(mScale, other.mScale);
+        long value = rescale(mUnscaledValue, scale - mScale);
+        long otherValue = rescale(other.mUnscaledValue, scale - other.mScale);
+        long sum = value + otherValue;
+        // Only a sum of the same signs can overflow, which flips its sign.
+        if (((value ^ sum) & (otherValue ^ sum)) < 0 || sum == Long.MIN_VALUE) {
+            throw new ArithmeticException("The sum of the amounts overflows.");
+        }
+        return new PaymentAmount(mCurrency, sum, scale);
+    }
+
+    /**
+     * Compares the values of two amounts of the same currency, regardless of their scales. This
+     * method throws IllegalArgumentException for another currency.
+     */
+    @Override
+    public int compareTo(PaymentAmount other) {
+        checkSameCurrency(other);
+        // The integer parts are compared first, so that no rescaling can overflow: the fraction
+        // parts are less than 10^scale, which fits a long for any scale.
+        long integer = mUnscaledValue / POWERS_OF_TEN[mScale];
+        long otherInteger = other.mUnscaledValue / POWERS_OF_TEN[other.mScale];
+        if (integer != otherInteger) return integer < otherInteger ? -1 : 1;
+        int scale = Math.max(mScale, other.mScale);
+        long fraction = (mUnscaledValue % POWERS_OF_TEN[mScale]) * POWERS_OF_TEN[scale - mScale];
+        long otherFraction = (other.mUnscaledValue % POWERS_OF_TEN[other.mScale])
+                * POWERS_OF_TEN[scale - other.mScale];
+        return fraction < otherFraction ? -1 : (fraction == otherFraction ? 0 : 1);
+    }
+
+    /**
+     * Appends the decimal value, e.g., 1.50, without creating an intermediate string.
+     * @param buffer The buffer to append to.
+     */
+    public void appendValue(StringBuilder buffer) {
+        long magnitude = Math.abs(mUnscaledValue);
+        if (mUnscaledValue < 0) buffer.append('-');
+        buffer.append(magnitude / POWERS_OF_TEN[mScale]);
+        if (mScale == 0) return;
+        buffer.append('.');
+        long fraction = magnitude % POWERS_OF_TEN[mScale];
+        for (int i = mScale - 1; i >= 0; i--) {
+            buffer.append((char) ('0' + (fraction / POWERS_OF_TEN[i]) % 10));
+        }
+    }
+
+    /**
+     * Appends the JSON of the amount, i.e., {"currency":"USD","value":"1.50"}, the same as that of
+     * the Pay intent's total. Neither the code nor the value needs escaping.
+     * @param buffer The buffer to append to.
+     */
+    public void appendJson(StringBuilder buffer) {
+        buffer.append("{\"currency\":\"").append(mCurrency.getCode()).append("\",\"value\":\"");
+        appendValue(buffer);
+        buffer.append("\"}");
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof PaymentAmount)) return false;
+        PaymentAmount amount = (PaymentAmount) other;
+        return mCurrency == amount.mCurrency && mUnscaledValue == amount.mUnscaledValue
+                && mScale == amount.mScale;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mCurrency.hashCode();
+        result = 31 * result + (int) (mUnscaledValue ^ (mUnscaledValue >>> 32));
+        return 31 * result + mScale;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder(mCurrency.getCode()).append(' ');
+        appendValue(buffer);
+        return buffer.toString();
+    }
+
+    private void checkSameCurrency(PaymentAmount other) {
+        WebPaymentIntentHelper.checkNotNull(other, "other");
+        if (mCurrency != other.mCurrency) {
+            throw new IllegalArgumentException("The amounts should have the same currency.");
+        }
+    }
+
+    // Multiplies by 10^digits, throwing ArithmeticException on overflow. Math.multiplyExact is not
+    // available before Android N.
+    private static long rescale(long value, int digits) {
+        if (digits == 0) return value;
+        long factor = POWERS_OF_TEN[digits];
+        if (Math.abs(value) > Long.MAX_VALUE / factor) {
+            throw new ArithmeticException("The amount does not fit the scale.");
+        }
+        return value * factor;
+    }
+
+    private static IllegalArgumentException invalidValue(String value) {
+        return new IllegalArgumentException(
+                "value should be a valid decimal monetary value, but is \"" + value + "\".");
+    }
+}
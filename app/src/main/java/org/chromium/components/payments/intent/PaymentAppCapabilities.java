@@ -0,0 +1,101 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Bundle;
+
+import androidx.annotation.Nullable;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads the intent parameters that payment apps declare to consume, and caches them per package.
+ *
+ * A payment app declares that it reads only the current parameters, and not their deprecated
+ * copies, with the following meta-data on each of its Pay activities, next to
+ * "org.chromium.default_payment_method_name":
+ *
+ * <pre>
+ * &lt;meta-data
+ *     android:name="org.chromium.payment_intent_parameters"
+ *     android:value="current" /&gt;
+ * </pre>
+ *
+ * Such apps can be sent lean intents without the deprecated extras. All other apps keep receiving
+ * both. The cache should be invalidated when a package is updated or removed.
+ */
+public final class PaymentAppCapabilities {
+    /** The name of the meta-data that declares the intent parameters that an app consumes. */
+    public static final String META_DATA_NAME_INTENT_PARAMETERS =
+            "org.chromium.payment_intent_parameters";
+
+    /** The meta-data value for apps that consume only the current intent parameters. */
+    public static final String INTENT_PARAMETERS_CURRENT = "current";
+
+    private final PackageManager mPackageManager;
+    private final ConcurrentHashMap<String, Boolean> mSkipsDeprecatedExtras =
+            new ConcurrentHashMap<>();
+
+    /** @param context The application context. */
+    public PaymentAppCapabilities(Context context) {
+        mPackageManager = context.getPackageManager();
+    }
+
+    /**
+     * @param packageName The package name of a payment app.
+     * @return Whether the app declares that it consumes only the current intent parameters, so
+     *         that its intents can be created without the deprecated extras.
+     */
+    public boolean skipsDeprecatedExtras(String packageName) {
+        Boolean skipsDeprecatedExtras = mSkipsDeprecatedExtras.get(packageName);
+        if (skipsDeprecatedExtras == null) {
+            skipsDeprecatedExtras = readSkipsDeprecatedExtras(packageName);
+            mSkipsDeprecatedExtras.put(packageName, skipsDeprecatedExtras);
+        }
+        return skipsDeprecatedExtras;
+    }
+
+    /** Removes the cached declaration of a package, e.g., when the package is updated. */
+    public void invalidatePackage(String packageName) {
+        mSkipsDeprecatedExtras.remove(packageName);
+    }
+
+    /** Removes all of the cached declarations. */
+    public void clear() {
+        mSkipsDeprecatedExtras.clear();
+    }
+
+    // An app that has several Pay activities should declare it on all of them, because the
+    // declaration is cached per package.
+    private boolean readSkipsDeprecatedExtras(String packageName) {
+        Intent payIntent = new Intent(WebPaymentIntentHelper.ACTION_PAY);
+        payIntent.setPackage(packageName);
+        return skipsDeprecatedExtras(
+                mPackageManager.queryIntentActivities(payIntent, PackageManager.GET_META_DATA));
+    }
+
+    /**
+     * @param payActivities The Pay activities of one package, resolved with their meta-data.
+     * @return Whether all of the activities declare that they consume only the current intent
+     *         parameters.
+     */
+    /* package */ static boolean skipsDeprecatedExtras(@Nullable List<ResolveInfo> payActivities) {
+        if (payActivities == null || payActivities.isEmpty()) return false;
+        for (ResolveInfo activity : payActivities) {
+            Bundle metaData = activity.activityInfo == null ? null : activity.activityInfo.metaData;
+            if (metaData == null
+                    || !INTENT_PARAMETERS_CURRENT.equals(
+                            metaData.getString(META_DATA_NAME_INTENT_PARAMETERS))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
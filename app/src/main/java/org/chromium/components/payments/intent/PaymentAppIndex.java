@@ -0,0 +1,431 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.provider.Settings;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * An index of the installed payment apps by payment method name, so that a checkout resolves the
+ * targets of {@link WebPaymentIntentHelper#createPayIntent} and {@link
+ * WebPaymentIntentHelper#createIsReadyToPayIntent} with an in-memory lookup instead of querying
+ * the package manager.
+ *
+ * The index is built from the package manager once, persisted in shared preferences, and then
+ * updated one package at a time: from the package broadcasts while the process runs, and from the
+ * packages that changed since the last run on Android O and later, as long as the device has not
+ * rebooted since. Older versions, and the first load after a reboot, rebuild the index.
+ *
+ * Browsers should use the process-wide {@link #getInstance}, so that the index is loaded once per
+ * process rather than once per activity. Lookups are lock-free and thread-safe.
+ */
+public final class PaymentAppIndex {
+    /** The name of the meta-data of a Pay activity that declares its payment method name. */
+    public static final String META_DATA_NAME_DEFAULT_PAYMENT_METHOD_NAME =
+            "org.chromium.default_payment_method_name";
+
+    private static final String PREFERENCES_NAME = "payments_app_index";
+    // Bumped when the persisted format changes, which triggers a rebuild.
+    private static final int FORMAT_VERSION = 1;
+    private static final String FORMAT_VERSION_KEY = "version";
+    private static final String SEQUENCE_NUMBER_KEY = "sequence";
+    private static final String BOOT_COUNT_KEY = "boot";
+    private static final String PACKAGE_KEY_PREFIX = "package:";
+
+    private static final String JSON_METHOD_NAME = "method";
+    private static final String JSON_ACTIVITY_NAME = "activity";
+    private static final String JSON_SERVICE_NAME = "service";
+    private static final String JSON_SKIPS_DEPRECATED_EXTRAS = "lean";
+
+    private static PaymentAppIndex sInstance;
+
+    private final Context mContext;
+    private final PackageManager mPackageManager;
+    private final SharedPreferences mPreferences;
+
+    // The apps of each package, the source of truth. Guarded by |this|.
+    private final Map<String, List<App>> mAppsByPackage = new HashMap<>();
+    // Rebuilt from mAppsByPackage on every change, and never modified after publication.
+    private volatile Map<String, List<App>> mAppsByMethod = Collections.emptyMap();
+
+    // Guarded by |this|.
+    @Nullable
+    private BroadcastReceiver mPackageReceiver;
+    // Whether start() has loaded the index, and the callbacks that wait for it. Guarded by |this|.
+    private boolean mIsLoaded;
+    private final List<Runnable> mLoadedCallbacks = new ArrayList<>();
+
+    /** One Pay activity of a payment app, with the IsReadyToPay service of its package. */
+    public static final class App {
+        private final String mMethodName;
+        private final String mPackageName;
+        private final String mActivityName;
+        @Nullable
+        private final String mServiceName;
+        private final boolean mSkipsDeprecatedExtras;
+
+        private App(String methodName, String packageName, String activityName,
+                @Nullable String serviceName, boolean skipsDeprecatedExtras) {
+            mMethodName = methodName;
+            mPackageName = packageName;
+            mActivityName = activityName;
+            mServiceName = serviceName;
+            mSkipsDeprecatedExtras = skipsDeprecatedExtras;
+        }
+
+        /** @return The default payment method name of the Pay activity. */
+        public String getMethodName() {
+            return mMethodName;
+        }
+
+        /** @return The package name of the payment app. */
+        public String getPackageName() {
+            return mPackageName;
+        }
+
+        /** @return The class name of the Pay activity. */
+        public String getActivityName() {
+            return mActivityName;
+        }
+
+        /** @return The class name of the IsReadyToPay service, or null if the app has none. */
+        @Nullable
+        public String getServiceName() {
+            return mServiceName;
+        }
+
+        /** @return See {@link PaymentAppCapabilities#skipsDeprecatedExtras}. */
+        public boolean skipsDeprecatedExtras() {
+            return mSkipsDeprecatedExtras;
+        }
+    }
+
+    /**
+     * @return The process-wide index, which is loaded once on a background thread and then follows
+     *         the package changes for the lifetime of the process.
+     */
+    public static synchronized PaymentAppIndex getInstance(Context context) {
+        if (sInstance == null) {
+            HandlerThread thread = new HandlerThread("PaymentAppIndex");
+            thread.start();
+            final Handler handler = new Handler(thread.getLooper());
+            final PaymentAppIndex index = new PaymentAppIndex(context.getApplicationContext());
+            handler.post(() -> index.start(handler));
+            sInstance = index;
+        }
+        return sInstance;
+    }
+
+    /** @param context The application context. Should not be null. */
+    public PaymentAppIndex(Context context) {
+        assert context != null;
+        mContext = context;
+        mPackageManager = context.getPackageManager();
+        mPreferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Loads the persisted index, brings it up to date, and starts following the package changes.
+     * The first load of a new install, or any load before Android O, queries all of the payment
+     * apps, so it is best called off the main thread.
+     * @param handler The handler of the thread that receives the package broadcasts.
+     */
+    public void start(Handler handler) {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        synchronized (this) {
+            if (mPackageReceiver != null) return;
+            mPackageReceiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    if (intent.getData() == null) return;
+                    String packageName = intent.getData().getSchemeSpecificPart();
+                    if (!TextUtils.isEmpty(packageName)) reindexPackage(packageName);
+                }
+            };
+            // Registered before the index is loaded, so that no change is missed in between, and
+            // with |this| locked, so that a concurrent stop() cannot miss the registration.
+            mContext.registerReceiver(
+                    mPackageReceiver, filter, /*broadcastPermission=*/null, handler);
+        }
+
+        if (!load()) rebuild();
+
+        List<Runnable> loadedCallbacks;
+        synchronized (this) {
+            mIsLoaded = true;
+            loadedCallbacks = new ArrayList<>(mLoadedCallbacks);
+            mLoadedCallbacks.clear();
+        }
+        for (Runnable callback : loadedCallbacks) callback.run();
+    }
+
+    /** Stops following the package changes. The index keeps its current content. */
+    public void stop() {
+        synchronized (this) {
+            if (mPackageReceiver == null) return;
+            mContext.unregisterReceiver(mPackageReceiver);
+            mPackageReceiver = null;
+        }
+    }
+
+    /**
+     * Runs the callback once {@link #start} has loaded the index, or right away if it already has.
+     * @param executor The executor that runs the callback, e.g., of the UI thread.
+     * @param callback The callback, which can then look up the apps.
+     */
+    public void runWhenLoaded(final Executor executor, final Runnable callback) {
+        synchronized (this) {
+            if (!mIsLoaded) {
+                mLoadedCallbacks.add(() -> executor.execute(callback));
+                return;
+            }
+        }
+        executor.execute(callback);
+    }
+
+    /**
+     * @param methodName A payment method name.
+     * @return The apps whose Pay activity declares the method name, possibly empty. Unmodifiable.
+     */
+    public List<App> getApps(String methodName) {
+        List<App> apps = mAppsByMethod.get(methodName);
+        return apps == null ? Collections.<App>emptyList() : apps;
+    }
+
+    /** Re-reads one package from the package manager, e.g., after it was updated. */
+    public void reindexPackage(String packageName) {
+        List<App> apps = queryApps(packageName);
+        SharedPreferences.Editor editor = mPreferences.edit();
+        synchronized (this) {
+            if (apps.isEmpty()) {
+                if (mAppsByPackage.remove(packageName) == null) return;
+                editor.remove(PACKAGE_KEY_PREFIX + packageName);
+            } else {
+                mAppsByPackage.put(packageName, apps);
+                editor.putString(PACKAGE_KEY_PREFIX + packageName, serialize(apps));
+            }
+            publish();
+        }
+        editor.apply();
+    }
+
+    /** Rebuilds the whole index from the package manager. */
+    public void rebuild() {
+        Map<String, List<App>> appsByPackage = queryAllApps();
+        SharedPreferences.Editor editor = mPreferences.edit().clear();
+        editor.putInt(FORMAT_VERSION_KEY, FORMAT_VERSION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            ChangedPackages changedPackages = mPackageManager.getChangedPackages(0);
+            editor.putInt(SEQUENCE_NUMBER_KEY,
+                    changedPackages == null ? 0 : changedPackages.getSequenceNumber());
+            editor.putInt(BOOT_COUNT_KEY, getBootCount());
+        }
+        for (Map.Entry<String, List<App>> entry : appsByPackage.entrySet()) {
+            editor.putString(PACKAGE_KEY_PREFIX + entry.getKey(), serialize(entry.getValue()));
+        }
+        synchronized (this) {
+            mAppsByPackage.clear();
+            mAppsByPackage.putAll(appsByPackage);
+            publish();
+        }
+        editor.apply();
+    }
+
+    // Returns false if the persisted index cannot be used or brought up to date incrementally.
+    private boolean load() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return false;
+        if (mPreferences.getInt(FORMAT_VERSION_KEY, 0) != FORMAT_VERSION) return false;
+        // The sequence numbers of getChangedPackages() restart after a reboot, and a number of the
+        // previous boot then returns null, just like when no package has changed. So the index is
+        // only brought up to date within the boot that persisted it.
+        int bootCount = getBootCount();
+        if (bootCount == -1 || mPreferences.getInt(BOOT_COUNT_KEY, -1) != bootCount) return false;
+
+        Map<String, List<App>> appsByPackage = new HashMap<>();
+        for (Map.Entry<String, ?> entry : mPreferences.getAll().entrySet()) {
+            if (!entry.getKey().startsWith(PACKAGE_KEY_PREFIX)) continue;
+            String packageName = entry.getKey().substring(PACKAGE_KEY_PREFIX.length());
+            List<App> apps = deserialize(packageName, (String) entry.getValue());
+            if (apps == null) return false;
+            appsByPackage.put(packageName, apps);
+        }
+        synchronized (this) {
+            mAppsByPackage.putAll(appsByPackage);
+            publish();
+        }
+
+        int sequenceNumber = mPreferences.getInt(SEQUENCE_NUMBER_KEY, 0);
+        ChangedPackages changedPackages = mPackageManager.getChangedPackages(sequenceNumber);
+        if (changedPackages == null) return true;
+        for (String packageName : changedPackages.getPackageNames()) {
+            reindexPackage(packageName);
+        }
+        mPreferences.edit()
+                .putInt(SEQUENCE_NUMBER_KEY, changedPackages.getSequenceNumber())
+                .apply();
+        return true;
+    }
+
+    // Returns Settings.Global.BOOT_COUNT, or -1 if it is unknown.
+    private int getBootCount() {
+        return Settings.Global.getInt(
+                mContext.getContentResolver(), Settings.Global.BOOT_COUNT, /*def=*/-1);
+    }
+
+    // Should be called with |this| locked.
+    private void publish() {
+        Map<String, List<App>> appsByMethod = new HashMap<>();
+        for (List<App> apps : mAppsByPackage.values()) {
+            for (App app : apps) {
+                List<App> methodApps = appsByMethod.get(app.mMethodName);
+                if (methodApps == null) {
+                    methodApps = new ArrayList<>();
+                    appsByMethod.put(app.mMethodName, methodApps);
+                }
+                methodApps.add(app);
+            }
+        }
+        for (Map.Entry<String, List<App>> entry : appsByMethod.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        mAppsByMethod = appsByMethod;
+    }
+
+    private List<App> queryApps(String packageName) {
+        Intent payIntent = new Intent(WebPaymentIntentHelper.ACTION_PAY);
+        payIntent.setPackage(packageName);
+        Intent isReadyToPayIntent = new Intent(WebPaymentIntentHelper.ACTION_IS_READY_TO_PAY);
+        isReadyToPayIntent.setPackage(packageName);
+        List<App> apps = toApps(packageName,
+                mPackageManager.queryIntentActivities(payIntent, PackageManager.GET_META_DATA),
+                mPackageManager.queryIntentServices(isReadyToPayIntent, 0));
+        return apps == null ? Collections.<App>emptyList() : apps;
+    }
+
+    private Map<String, List<App>> queryAllApps() {
+        Map<String, List<ResolveInfo>> activitiesByPackage = groupByPackage(
+                mPackageManager.queryIntentActivities(
+                        new Intent(WebPaymentIntentHelper.ACTION_PAY),
+                        PackageManager.GET_META_DATA),
+                /*isService=*/false);
+        Map<String, List<ResolveInfo>> servicesByPackage = groupByPackage(
+                mPackageManager.queryIntentServices(
+                        new Intent(WebPaymentIntentHelper.ACTION_IS_READY_TO_PAY), 0),
+                /*isService=*/true);
+        Map<String, List<App>> appsByPackage = new HashMap<>();
+        for (Map.Entry<String, List<ResolveInfo>> entry : activitiesByPackage.entrySet()) {
+            List<App> apps = toApps(
+                    entry.getKey(), entry.getValue(), servicesByPackage.get(entry.getKey()));
+            if (apps != null) appsByPackage.put(entry.getKey(), apps);
+        }
+        return appsByPackage;
+    }
+
+    private static Map<String, List<ResolveInfo>> groupByPackage(
+            @Nullable List<ResolveInfo> resolveInfos, boolean isService) {
+        Map<String, List<ResolveInfo>> result = new HashMap<>();
+        if (resolveInfos == null) return result;
+        for (ResolveInfo resolveInfo : resolveInfos) {
+            String packageName = isService ? resolveInfo.serviceInfo.packageName
+                                           : resolveInfo.activityInfo.packageName;
+            List<ResolveInfo> packageInfos = result.get(packageName);
+            if (packageInfos == null) {
+                packageInfos = new ArrayList<>();
+                result.put(packageName, packageInfos);
+            }
+            packageInfos.add(resolveInfo);
+        }
+        return result;
+    }
+
+    // Returns null if the package has no Pay activity with a payment method name.
+    @Nullable
+    private static List<App> toApps(String packageName, @Nullable List<ResolveInfo> activities,
+            @Nullable List<ResolveInfo> services) {
+        if (activities == null || activities.isEmpty()) return null;
+        // Like Chrome, only the first IsReadyToPay service of a package is used.
+        String serviceName = services == null || services.isEmpty()
+                ? null
+                : services.get(0).serviceInfo.name;
+        boolean skipsDeprecatedExtras = PaymentAppCapabilities.skipsDeprecatedExtras(activities);
+        List<App> apps = new ArrayList<>();
+        for (ResolveInfo activity : activities) {
+            Bundle metaData = activity.activityInfo.metaData;
+            String methodName = metaData == null
+                    ? null
+                    : metaData.getString(META_DATA_NAME_DEFAULT_PAYMENT_METHOD_NAME);
+            if (TextUtils.isEmpty(methodName)) continue;
+            apps.add(new App(methodName, packageName, activity.activityInfo.name, serviceName,
+                    skipsDeprecatedExtras));
+        }
+        return apps.isEmpty() ? null : Collections.unmodifiableList(apps);
+    }
+
+    private static String serialize(List<App> apps) {
+        JSONArray array = new JSONArray();
+        try {
+            for (App app : apps) {
+                JSONObject object = new JSONObject();
+                object.put(JSON_METHOD_NAME, app.mMethodName);
+                object.put(JSON_ACTIVITY_NAME, app.mActivityName);
+                if (app.mServiceName != null) object.put(JSON_SERVICE_NAME, app.mServiceName);
+                object.put(JSON_SKIPS_DEPRECATED_EXTRAS, app.mSkipsDeprecatedExtras);
+                array.put(object);
+            }
+        } catch (JSONException e) {
+            // Only thrown for null names, which are never indexed.
+            throw new IllegalStateException(e);
+        }
+        return array.toString();
+    }
+
+    @Nullable
+    private static List<App> deserialize(String packageName, String serialized) {
+        try {
+            JSONArray array = new JSONArray(serialized);
+            List<App> apps = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject object = array.getJSONObject(i);
+                apps.add(new App(object.getString(JSON_METHOD_NAME), packageName,
+                        object.getString(JSON_ACTIVITY_NAME),
+                        object.has(JSON_SERVICE_NAME) ? object.getString(JSON_SERVICE_NAME) : null,
+                        object.getBoolean(JSON_SKIPS_DEPRECATED_EXTRAS)));
+            }
+            return Collections.unmodifiableList(apps);
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+}
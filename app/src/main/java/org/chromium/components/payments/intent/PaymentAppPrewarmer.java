@@ -0,0 +1,198 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Speculatively warms up payment apps as soon as a checkout page constructs its PaymentRequest,
+ * so that the click on the pay button does not wait for the payment app's process to cold start.
+ *
+ * Prewarming an app binds its IsReadyToPay service, which starts the app's process, and keeps the
+ * app's {@link PayIntentTemplate} for the Pay intent. The binding only warms the process: it
+ * carries no extras, and its intent is distinct from those of the queries, so that Android never
+ * hands its binder to an IsReadyToPay query. Both are kept for a bounded window, after
+ * which the binding is released and the app's process may be reclaimed. The number of apps that
+ * are prewarmed at the same time is capped, because every bound process costs memory.
+ *
+ * Should be used on the thread of the given handler, which is usually the UI thread.
+ */
+public final class PaymentAppPrewarmer {
+    /** The default maximum number of apps that are prewarmed at the same time. */
+    public static final int DEFAULT_MAX_PREWARMED_APPS = 2;
+
+    /** The default number of milliseconds that an app is kept warm. */
+    public static final long DEFAULT_WINDOW_MS = 30_000;
+
+    // The key of the bind intent, which is not a fingerprint. See
+    // IsReadyToPayFingerprint#createBindIntent().
+    private static final String PREWARM_BIND_KEY = "prewarm";
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final int mMaxPrewarmedApps;
+    private final long mWindowMs;
+
+    // Keyed by package name, ordered from the oldest to the newest prewarm.
+    private final Map<String, Prewarm> mPrewarms = new LinkedHashMap<>();
+
+    /** One prewarmed payment app, active until it is cancelled or its window expires. */
+    public final class Prewarm implements ServiceConnection {
+        private final String mPackageName;
+        private final PayIntentTemplate mPayIntentTemplate;
+        private final Runnable mExpiryTask = this::cancel;
+
+        private boolean mIsBound;
+        private boolean mIsActive = true;
+
+        private Prewarm(PayIntentTemplate payIntentTemplate) {
+            mPackageName = payIntentTemplate.getPackageName();
+            mPayIntentTemplate = payIntentTemplate;
+        }
+
+        /**
+         * @return The template for the Pay intents of the app. Remains usable after the prewarm
+         *         ends, only without the warm process.
+         */
+        public PayIntentTemplate getPayIntentTemplate() {
+            return mPayIntentTemplate;
+        }
+
+        /** @return Whether the app is still kept warm. */
+        public boolean isActive() {
+            return mIsActive;
+        }
+
+        /**
+         * Releases the app, e.g., when the PaymentRequest is aborted or after the Pay activity has
+         * started. No-op if the prewarm has already ended.
+         */
+        public void cancel() {
+            if (!mIsActive) return;
+            mIsActive = false;
+            if (mPrewarms.get(mPackageName) == this) mPrewarms.remove(mPackageName);
+            mHandler.removeCallbacks(mExpiryTask);
+            unbind();
+        }
+
+        private void bind(Intent isReadyToPayIntent) {
+            Intent bindIntent = new Intent(isReadyToPayIntent.getAction());
+            bindIntent.setComponent(isReadyToPayIntent.getComponent());
+            bindIntent = IsReadyToPayFingerprint.createBindIntent(bindIntent, PREWARM_BIND_KEY);
+            try {
+                mIsBound = mContext.bindService(
+                        bindIntent, /*serviceConnection=*/this, Context.BIND_AUTO_CREATE);
+            } catch (SecurityException e) {
+                // Intentionally blank, so mIsBound is false.
+            }
+        }
+
+        private void unbind() {
+            if (!mIsBound) return;
+            mContext.unbindService(/*serviceConnection=*/this);
+            mIsBound = false;
+        }
+
+        // ServiceConnection:
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            // The binding alone keeps the process alive, so the service is not used.
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // The process has died, so there is nothing left to keep warm.
+            cancel();
+        }
+    }
+
+    /** @param context The application context. Should not be null. */
+    public PaymentAppPrewarmer(Context context) {
+        this(context, new Handler(), DEFAULT_MAX_PREWARMED_APPS, DEFAULT_WINDOW_MS);
+    }
+
+    /**
+     * @param context The application context. Should not be null.
+     * @param maxPrewarmedApps The maximum number of apps that are prewarmed at the same time.
+     * @param windowMs The number of milliseconds that an app is kept warm.
+     */
+    public PaymentAppPrewarmer(Context context, int maxPrewarmedApps, long windowMs) {
+        this(context, new Handler(), maxPrewarmedApps, windowMs);
+    }
+
+    /* package */ PaymentAppPrewarmer(
+            Context context, Handler handler, int maxPrewarmedApps, long windowMs) {
+        assert context != null;
+        assert handler != null;
+        assert maxPrewarmedApps > 0;
+        assert windowMs > 0;
+        mContext = context;
+        mHandler = handler;
+        mMaxPrewarmedApps = maxPrewarmedApps;
+        mWindowMs = windowMs;
+    }
+
+    /**
+     * Prewarms a payment app. Prewarming an app that is already warm replaces its prewarm, which
+     * restarts its window.
+     * @param isReadyToPayIntent The intent created by {@link
+     *         WebPaymentIntentHelper#createIsReadyToPayIntent}, whose service is bound without the
+     *         extras to start the app's process. If null, e.g., for an app without the service,
+     *         only the template is kept.
+     * @param payIntentTemplate The template for the Pay intents of the app. Should not be null.
+     * @return The prewarm, or null if the maximum number of apps are already prewarmed.
+     */
+    @Nullable
+    public Prewarm prewarm(
+            @Nullable Intent isReadyToPayIntent, PayIntentTemplate payIntentTemplate) {
+        assert payIntentTemplate != null;
+        String packageName = payIntentTemplate.getPackageName();
+        assert isReadyToPayIntent == null || isReadyToPayIntent.getComponent() == null
+                || packageName.equals(isReadyToPayIntent.getComponent().getPackageName());
+
+        Prewarm previous = mPrewarms.get(packageName);
+        if (previous == null && mPrewarms.size() >= mMaxPrewarmedApps) return null;
+
+        Prewarm prewarm = new Prewarm(payIntentTemplate);
+        // Bound before the previous binding is released, so that the process stays alive.
+        if (isReadyToPayIntent != null) prewarm.bind(isReadyToPayIntent);
+        if (previous != null) previous.cancel();
+        mPrewarms.put(packageName, prewarm);
+        mHandler.postDelayed(prewarm.mExpiryTask, mWindowMs);
+        return prewarm;
+    }
+
+    /**
+     * @param packageName The package name of a payment app.
+     * @return The active prewarm of the app, or null if it is not warm.
+     */
+    @Nullable
+    public Prewarm get(String packageName) {
+        return mPrewarms.get(packageName);
+    }
+
+    /** Releases all of the prewarmed apps, e.g., when the checkout page is closed. */
+    public void cancelAll() {
+        List<Prewarm> prewarms = new ArrayList<>(mPrewarms.values());
+        for (Prewarm prewarm : prewarms) prewarm.cancel();
+    }
+
+    /** @return The number of apps that are currently prewarmed. */
+    public int size() {
+        return mPrewarms.size();
+    }
+}
@@ -0,0 +1,111 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An interned currency code, so that the currencies of amounts are compared by identity and their
+ * codes are validated and canonicalized only once.
+ *
+ * The ISO 4217 currencies are known with their number of minor unit digits. Other well-formed
+ * codes, which PaymentRequest also accepts, are interned on first use with {@link #DIGITS_UNKNOWN}.
+ * The table is bounded by the 26^3 codes in their 8 cases.
+ */
+public final class PaymentCurrency {
+    /** The number of minor unit digits of a currency that is not in ISO 4217, e.g., "XBT". */
+    public static final int DIGITS_UNKNOWN = -1;
+
+    // The active ISO 4217 codes, by their number of minor unit digits. The funds and precious
+    // metals without minor units are left to DIGITS_UNKNOWN.
+    private static final String ZERO_DIGIT_CODES =
+            "BIF CLP DJF GNF ISK JPY KMF KRW PYG RWF UGX UYI VND VUV XAF XOF XPF";
+    private static final String TWO_DIGIT_CODES = "AED AFN ALL AMD ANG AOA ARS AUD AWG AZN BAM BBD "
+            + "BDT BGN BMD BND BOB BOV BRL BSD BTN BWP BYN BZD CAD CDF CHE CHF CHW CNY COP COU CRC "
+            + "CUC CUP CVE CZK DKK DOP DZD EGP ERN ETB EUR FJD FKP GBP GEL GHS GIP GMD GTQ GYD HKD "
+            + "HNL HRK HTG HUF IDR ILS INR IRR JMD KES KGS KHR KPW KYD KZT LAK LBP LKR LRD LSL MAD "
+            + "MDL MGA MKD MMK MNT MOP MRU MUR MVR MWK MXN MXV MYR MZN NAD NGN NIO NOK NPR NZD PAB "
+            + "PEN PGK PHP PKR PLN QAR RON RSD RUB SAR SBD SCR SDG SEK SGD SHP SLL SOS SRD SSP STN "
+            + "SVC SYP SZL THB TJS TMT TOP TRY TTD TWD TZS UAH USD USN UYU UZS VES WST XCD YER ZAR "
+            + "ZMW ZWL";
+    private static final String THREE_DIGIT_CODES = "BHD IQD JOD KWD LYD OMR TND";
+    private static final String FOUR_DIGIT_CODES = "CLF UYW";
+
+    // Keyed by the code as given, so that a lowercase code is canonicalized only once.
+    private static final ConcurrentHashMap<String, PaymentCurrency> sCurrencies =
+            new ConcurrentHashMap<>();
+
+    static {
+        internAll(ZERO_DIGIT_CODES, 0);
+        internAll(TWO_DIGIT_CODES, 2);
+        internAll(THREE_DIGIT_CODES, 3);
+        internAll(FOUR_DIGIT_CODES, 4);
+    }
+
+    private final String mCode;
+    private final int mMinorUnitDigits;
+
+    private PaymentCurrency(String code, int minorUnitDigits) {
+        mCode = code;
+        mMinorUnitDigits = minorUnitDigits;
+    }
+
+    /**
+     * Returns the interned currency of a code. This method throws IllegalArgumentException if the
+     * code is not three ASCII letters.
+     * @param code The currency code, in any case, e.g., "USD" or "usd".
+     * @return The currency, the same instance for all cases of the code.
+     */
+    public static PaymentCurrency get(String code) {
+        PaymentCurrency currency = code == null ? null : sCurrencies.get(code);
+        if (currency != null) return currency;
+
+        if (code == null || code.length() != 3) {
+            throw new IllegalArgumentException("currency should be three ASCII letters.");
+        }
+        char[] canonical = new char[3];
+        for (int i = 0; i < 3; i++) {
+            char c = code.charAt(i);
+            if (c >= 'a' && c <= 'z') c = (char) (c - 'a' + 'A');
+            if (c < 'A' || c > 'Z') {
+                throw new IllegalArgumentException("currency should be three ASCII letters.");
+            }
+            canonical[i] = c;
+        }
+        String canonicalCode = new String(canonical);
+        currency = sCurrencies.get(canonicalCode);
+        if (currency == null) {
+            PaymentCurrency created = new PaymentCurrency(canonicalCode, DIGITS_UNKNOWN);
+            currency = sCurrencies.putIfAbsent(canonicalCode, created);
+            if (currency == null) currency = created;
+        }
+        sCurrencies.putIfAbsent(code, currency);
+        return currency;
+    }
+
+    /** @return The uppercase currency code, e.g., "USD". */
+    public String getCode() {
+        return mCode;
+    }
+
+    /**
+     * @return The number of minor unit digits in ISO 4217, e.g., 2 for USD and 0 for JPY, or {@link
+     *         #DIGITS_UNKNOWN}.
+     */
+    public int getMinorUnitDigits() {
+        return mMinorUnitDigits;
+    }
+
+    @Override
+    public String toString() {
+        return mCode;
+    }
+
+    private static void internAll(String codes, int minorUnitDigits) {
+        for (String code : codes.split(" ")) {
+            sCurrencies.put(code, new PaymentCurrency(code, minorUnitDigits));
+        }
+    }
+}
@@ -0,0 +1,143 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import androidx.annotation.Nullable;
+
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentDetailsModifier;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The modifiers of one PaymentRequest, indexed by their supported method, so that the Pay intent of
+ * each payment app carries only the modifiers of the app's methods. The index is created once per
+ * request and shared by the intents of all of the apps, which are created from their {@link
+ * PayIntentTemplate}s.
+ *
+ * The selected modifiers keep the order of the merchant's map. While {@link
+ * WebPaymentIntentHelper#setModifierPruningEnabled} is false, every app gets all of the modifiers,
+ * as before the pruning.
+ */
+public final class PaymentDetailsModifierIndex {
+    private final List<PaymentDetailsModifier> mModifiers;
+    // The positions in mModifiers of the modifiers of each method, in ascending order.
+    private final Map<String, int[]> mPositionsByMethod;
+
+    /**
+     * Indexes the modifiers of a request. This method throws IllegalArgumentException if a modifier
+     * or its method data is null.
+     * @param modifiers The payment details modifiers. Should not be null.
+     * @return The index.
+     */
+    public static PaymentDetailsModifierIndex create(
+            Map<String, PaymentDetailsModifier> modifiers) {
+        WebPaymentIntentHelper.checkNotNull(modifiers, "modifiers");
+        List<PaymentDetailsModifier> list = new ArrayList<>(modifiers.values());
+        Map<String, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < list.size(); i++) {
+            PaymentDetailsModifier modifier = list.get(i);
+            WebPaymentIntentHelper.checkNotNull(modifier, "PaymentDetailsModifier");
+            WebPaymentIntentHelper.checkNotNull(
+                    modifier.methodData, "PaymentDetailsModifier.methodData");
+            List<Integer> methodPositions = positions.get(modifier.methodData.supportedMethod);
+            if (methodPositions == null) {
+                methodPositions = new ArrayList<>();
+                positions.put(modifier.methodData.supportedMethod, methodPositions);
+            }
+            methodPositions.add(i);
+        }
+
+        Map<String, int[]> positionsByMethod = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+            int[] methodPositions = new int[entry.getValue().size()];
+            for (int i = 0; i < methodPositions.length; i++) {
+                methodPositions[i] = entry.getValue().get(i);
+            }
+            positionsByMethod.put(entry.getKey(), methodPositions);
+        }
+        return new PaymentDetailsModifierIndex(
+                Collections.unmodifiableList(list), positionsByMethod);
+    }
+
+    private PaymentDetailsModifierIndex(
+            List<PaymentDetailsModifier> modifiers, Map<String, int[]> positionsByMethod) {
+        mModifiers = modifiers;
+        mPositionsByMethod = positionsByMethod;
+    }
+
+    /** @return The number of indexed modifiers. */
+    public int size() {
+        return mModifiers.size();
+    }
+
+    /**
+     * @param methodNames The payment method names of an app, i.e., the keys of its method data.
+     * @return The modifiers whose supported method is one of the names, in the merchant's order,
+     *         or all of the modifiers while the pruning is disabled.
+     */
+    /* package */ List<PaymentDetailsModifier> select(Collection<String> methodNames) {
+        if (!WebPaymentIntentHelper.isModifierPruningEnabled()) return mModifiers;
+
+        // Most apps support one method, whose modifiers are already in order.
+        if (methodNames.size() == 1) {
+            return toModifiers(mPositionsByMethod.get(methodNames.iterator().next()));
+        }
+
+        int count = 0;
+        for (String methodName : methodNames) {
+            int[] positions = mPositionsByMethod.get(methodName);
+            if (positions != null) count += positions.length;
+        }
+        if (count == mModifiers.size()) return mModifiers;
+        int[] selected = new int[count];
+        int offset = 0;
+        for (String methodName : methodNames) {
+            int[] positions = mPositionsByMethod.get(methodName);
+            if (positions == null) continue;
+            System.arraycopy(positions, 0, selected, offset, positions.length);
+            offset += positions.length;
+        }
+        Arrays.sort(selected);
+        return toModifiers(selected);
+    }
+
+    /**
+     * Selects the modifiers of an app from a map of modifiers without indexing them, for the
+     * intents that are created one at a time.
+     * @param modifiers The payment details modifiers, or null.
+     * @param methodNames The payment method names of the app.
+     * @return The selected modifiers, see {@link #select}, or null if modifiers is null.
+     */
+    @Nullable
+    /* package */ static Collection<PaymentDetailsModifier> select(
+            @Nullable Map<String, PaymentDetailsModifier> modifiers,
+            Collection<String> methodNames) {
+        if (modifiers == null || !WebPaymentIntentHelper.isModifierPruningEnabled()) {
+            return modifiers == null ? null : modifiers.values();
+        }
+        List<PaymentDetailsModifier> selected = new ArrayList<>();
+        for (PaymentDetailsModifier modifier : modifiers.values()) {
+            WebPaymentIntentHelper.checkNotNull(modifier, "PaymentDetailsModifier");
+            WebPaymentIntentHelper.checkNotNull(
+                    modifier.methodData, "PaymentDetailsModifier.methodData");
+            if (methodNames.contains(modifier.methodData.supportedMethod)) selected.add(modifier);
+        }
+        return selected;
+    }
+
+    private List<PaymentDetailsModifier> toModifiers(@Nullable int[] positions) {
+        if (positions == null) return Collections.emptyList();
+        if (positions.length == mModifiers.size()) return mModifiers;
+        List<PaymentDetailsModifier> modifiers = new ArrayList<>(positions.length);
+        for (int position : positions) modifiers.add(mModifiers.get(position));
+        return modifiers;
+    }
+}
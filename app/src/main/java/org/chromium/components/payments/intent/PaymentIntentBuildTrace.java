@@ -0,0 +1,69 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.os.Bundle;
+
+import androidx.annotation.Nullable;
+
+import org.chromium.components.payments.intent.PaymentIntentMetricsListener.IntentType;
+import org.chromium.components.payments.intent.PaymentIntentMetricsListener.Phase;
+
+import java.util.Arrays;
+
+/**
+ * Times the phases of one intent build for the {@link PaymentIntentMetricsListener}. A trace
+ * exists only while a listener is set, so the builders pass a null trace otherwise and pay for
+ * nothing but the null checks. Confined to the thread that builds the intent.
+ */
+/* package */ final class PaymentIntentBuildTrace {
+    private final PaymentIntentMetricsListener mListener;
+    private final long[] mPhaseDurationsNanos = new long[PaymentIntentMetricsListener.PHASE_COUNT];
+    private final long mStartNanos;
+    private long mPhaseStartNanos;
+
+    /** @return A new trace that started now, or null if no listener is set. */
+    @Nullable
+    /* package */ static PaymentIntentBuildTrace start() {
+        PaymentIntentMetricsListener listener = WebPaymentIntentHelper.getIntentMetricsListener();
+        return listener == null ? null : new PaymentIntentBuildTrace(listener);
+    }
+
+    private PaymentIntentBuildTrace(PaymentIntentMetricsListener listener) {
+        mListener = listener;
+        Arrays.fill(mPhaseDurationsNanos, PaymentIntentMetricsListener.NOT_REACHED);
+        mStartNanos = System.nanoTime();
+        mPhaseStartNanos = mStartNanos;
+    }
+
+    /** Starts a phase, so that the work since the end of the previous phase is not counted. */
+    /* package */ void beginPhase() {
+        mPhaseStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Ends a phase, which starts the next one. A phase that runs more than once is summed.
+     * @param phase The {@link Phase} that started at the last beginPhase() or endPhase().
+     */
+    /* package */ void endPhase(@Phase int phase) {
+        long now = System.nanoTime();
+        long duration = now - mPhaseStartNanos;
+        if (mPhaseDurationsNanos[phase] != PaymentIntentMetricsListener.NOT_REACHED) {
+            duration += mPhaseDurationsNanos[phase];
+        }
+        mPhaseDurationsNanos[phase] = duration;
+        mPhaseStartNanos = now;
+    }
+
+    /**
+     * Reports the build to the listener.
+     * @param intentType The {@link IntentType} of the intent.
+     * @param extras The extras of the built intent.
+     */
+    /* package */ void finish(@IntentType int intentType, Bundle extras) {
+        mListener.onPaymentIntentBuilt(
+                intentType, mPhaseDurationsNanos, System.nanoTime() - mStartNanos, extras);
+    }
+}
@@ -0,0 +1,197 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.os.Bundle;
+import android.os.Parcel;
+
+import androidx.annotation.Nullable;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The default {@link PaymentIntentMetricsListener}, which aggregates all of the built intents into
+ * histograms of their phase durations in microseconds and of their marshalled sizes in bytes, in
+ * total and per extra, that can be dumped on demand.
+ *
+ * Measuring the sizes marshals the extras once more, so the listener is meant for debugging and
+ * benchmarking, e.g., to find the extras behind a TransactionTooLargeException.
+ */
+public final class PaymentIntentMetrics implements PaymentIntentMetricsListener {
+    private static final long MAX_DURATION_US = TimeUnit.SECONDS.toMicros(10);
+    private static final long MAX_SIZE_BYTES = 8 * 1024 * 1024;
+
+    private static final String[] INTENT_TYPE_NAMES = {"Pay", "PayTemplate", "IsReadyToPay"};
+    private static final String[] PHASE_NAMES = {"validation", "certificateChain", "methodData",
+            "modifiersJson", "totalJson", "deprecatedExtras"};
+
+    private final AtomicLongArray mIntentCounts = new AtomicLongArray(INTENT_TYPE_COUNT);
+    private final LatencyHistogram[] mTotalDurations = new LatencyHistogram[INTENT_TYPE_COUNT];
+    private final LatencyHistogram[][] mPhaseDurations =
+            new LatencyHistogram[INTENT_TYPE_COUNT][PHASE_COUNT];
+    private final LatencyHistogram[] mExtrasSizes = new LatencyHistogram[INTENT_TYPE_COUNT];
+    // Keyed by the name of the extra. Bounded by the extras that the helper writes.
+    private final ConcurrentHashMap<String, LatencyHistogram> mExtraSizes =
+            new ConcurrentHashMap<>();
+
+    public PaymentIntentMetrics() {
+        assert INTENT_TYPE_NAMES.length == INTENT_TYPE_COUNT;
+        assert PHASE_NAMES.length == PHASE_COUNT;
+        for (int type = 0; type < INTENT_TYPE_COUNT; type++) {
+            mTotalDurations[type] = createDurationHistogram();
+            mExtrasSizes[type] = createSizeHistogram();
+            for (int phase = 0; phase < PHASE_COUNT; phase++) {
+                mPhaseDurations[type][phase] = createDurationHistogram();
+            }
+        }
+    }
+
+    // PaymentIntentMetricsListener:
+    @Override
+    public void onPaymentIntentBuilt(@IntentType int intentType, long[] phaseDurationsNanos,
+            long totalDurationNanos, Bundle extras) {
+        mIntentCounts.incrementAndGet(intentType);
+        mTotalDurations[intentType].record(TimeUnit.NANOSECONDS.toMicros(totalDurationNanos));
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            if (phaseDurationsNanos[phase] == NOT_REACHED) continue;
+            mPhaseDurations[intentType][phase].record(
+                    TimeUnit.NANOSECONDS.toMicros(phaseDurationsNanos[phase]));
+        }
+        mExtrasSizes[intentType].record(PaymentPayloadTransport.getMarshalledSize(extras));
+        recordExtraSizes(extras);
+    }
+
+    /**
+     * @param intentType An {@link PaymentIntentMetricsListener.IntentType}.
+     * @return The number of built intents of the given type.
+     */
+    public long getIntentCount(@IntentType int intentType) {
+        return mIntentCounts.get(intentType);
+    }
+
+    /**
+     * @param intentType An {@link PaymentIntentMetricsListener.IntentType}.
+     * @return The durations of the whole builds of the given type, in microseconds.
+     */
+    public LatencyHistogram getTotalDuration(@IntentType int intentType) {
+        return mTotalDurations[intentType];
+    }
+
+    /**
+     * @param intentType An {@link PaymentIntentMetricsListener.IntentType}.
+     * @param phase A {@link PaymentIntentMetricsListener.Phase}.
+     * @return The durations of the phase in the builds of the given type, in microseconds.
+     */
+    public LatencyHistogram getPhaseDuration(@IntentType int intentType, @Phase int phase) {
+        return mPhaseDurations[intentType][phase];
+    }
+
+    /**
+     * @param intentType An {@link PaymentIntentMetricsListener.IntentType}.
+     * @return The marshalled sizes of all of the extras of the given type, in bytes.
+     */
+    public LatencyHistogram getExtrasSize(@IntentType int intentType) {
+        return mExtrasSizes[intentType];
+    }
+
+    /**
+     * @param name The name of an extra, e.g., {@link WebPaymentIntentHelper#EXTRA_MODIFIERS}.
+     * @return The marshalled sizes of the value of the extra in bytes, or null if no intent had it.
+     */
+    @Nullable
+    public LatencyHistogram getExtraSize(String name) {
+        return mExtraSizes.get(name);
+    }
+
+    /** @return A human-readable summary of all of the histograms, e.g., for a debug log. */
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (int type = 0; type < INTENT_TYPE_COUNT; type++) {
+            long count = mIntentCounts.get(type);
+            if (count == 0) continue;
+            builder.append(INTENT_TYPE_NAMES[type]).append(": ").append(count).append(" intents\n");
+            appendHistogram(builder, "total", mTotalDurations[type], "us");
+            for (int phase = 0; phase < PHASE_COUNT; phase++) {
+                appendHistogram(builder, PHASE_NAMES[phase], mPhaseDurations[type][phase], "us");
+            }
+            appendHistogram(builder, "extras", mExtrasSizes[type], "B");
+        }
+        // Sorted, so that the dumps can be compared.
+        Map<String, LatencyHistogram> extraSizes = new TreeMap<>(mExtraSizes);
+        if (!extraSizes.isEmpty()) builder.append("Extra sizes:\n");
+        for (Map.Entry<String, LatencyHistogram> entry : extraSizes.entrySet()) {
+            appendHistogram(builder, entry.getKey(), entry.getValue(), "B");
+        }
+        return builder.toString();
+    }
+
+    /** Removes all of the recorded intents. */
+    public void reset() {
+        for (int type = 0; type < INTENT_TYPE_COUNT; type++) {
+            mIntentCounts.set(type, 0);
+            mTotalDurations[type].clear();
+            mExtrasSizes[type].clear();
+            for (int phase = 0; phase < PHASE_COUNT; phase++) {
+                mPhaseDurations[type][phase].clear();
+            }
+        }
+        mExtraSizes.clear();
+    }
+
+    // Marshals the values one after another into one parcel, measuring each of them.
+    private void recordExtraSizes(Bundle extras) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            for (String name : extras.keySet()) {
+                int start = parcel.dataSize();
+                parcel.writeValue(extras.get(name));
+                getOrCreateExtraSize(name).record(parcel.dataSize() - start);
+            }
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private LatencyHistogram getOrCreateExtraSize(String name) {
+        LatencyHistogram histogram = mExtraSizes.get(name);
+        if (histogram != null) return histogram;
+        LatencyHistogram created = createSizeHistogram();
+        histogram = mExtraSizes.putIfAbsent(name, created);
+        return histogram == null ? created : histogram;
+    }
+
+    // The histograms describe all of the intents since the last reset(), so they do not decay.
+    private static LatencyHistogram createDurationHistogram() {
+        return new LatencyHistogram(MAX_DURATION_US, LatencyHistogram.NO_DECAY);
+    }
+
+    private static LatencyHistogram createSizeHistogram() {
+        return new LatencyHistogram(MAX_SIZE_BYTES, LatencyHistogram.NO_DECAY);
+    }
+
+    private static void appendHistogram(
+            StringBuilder builder, String name, LatencyHistogram histogram, String unit) {
+        if (histogram.getCount() == 0) return;
+        builder.append("  ").append(name).append(':');
+        appendPercentile(builder, "p50", histogram.getPercentile(0.5), unit);
+        appendPercentile(builder, "p95", histogram.getPercentile(0.95), unit);
+        appendPercentile(builder, "p99", histogram.getPercentile(0.99), unit);
+        builder.append('\n');
+    }
+
+    private static void appendPercentile(
+            StringBuilder builder, String name, long value, String unit) {
+        builder.append(' ').append(name);
+        if (value == Long.MAX_VALUE) {
+            builder.append(" overflow");
+        } else {
+            builder.append(" <= ").append(value).append(' ').append(unit);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.os.Bundle;
+
+import androidx.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Receives the build cost and the extras of every intent built by {@link WebPaymentIntentHelper}
+ * and {@link PayIntentTemplate}. Set with {@link WebPaymentIntentHelper#setIntentMetricsListener}.
+ */
+public interface PaymentIntentMetricsListener {
+    /** The duration of a phase that the build did not run. */
+    long NOT_REACHED = -1;
+
+    /** The kind of the built intent. Keep in sync with {@link #INTENT_TYPE_COUNT}. */
+    @IntDef({IntentType.PAY, IntentType.PAY_TEMPLATE, IntentType.IS_READY_TO_PAY})
+    @Retention(RetentionPolicy.SOURCE)
+    @interface IntentType {
+        /** A Pay intent, from WebPaymentIntentHelper or from a PayIntentTemplate. */
+        int PAY = 0;
+        /** The invariant extras of a PayIntentTemplate, which are built once per template. */
+        int PAY_TEMPLATE = 1;
+        /** An IsReadyToPay intent. */
+        int IS_READY_TO_PAY = 2;
+    }
+
+    /** The number of {@link IntentType} values. */
+    int INTENT_TYPE_COUNT = 3;
+
+    /** A phase of the build. Keep in sync with {@link #PHASE_COUNT}. */
+    @IntDef({Phase.VALIDATION, Phase.CERTIFICATE_CHAIN, Phase.METHOD_DATA, Phase.MODIFIERS_JSON,
+            Phase.TOTAL_JSON, Phase.DEPRECATED_EXTRAS})
+    @Retention(RetentionPolicy.SOURCE)
+    @interface Phase {
+        /** The checks of the arguments. */
+        int VALIDATION = 0;
+        /** The serialization of the certificate chain, usually from the CertificateChainCache. */
+        int CERTIFICATE_CHAIN = 1;
+        /** The method names and the method data bundle. */
+        int METHOD_DATA = 2;
+        /** The JSON of the modifiers. */
+        int MODIFIERS_JSON = 3;
+        /**
+         * The JSON of the total, including the deprecated details, which contain the total and are
+         * encoded in the same pass.
+         */
+        int TOTAL_JSON = 4;
+        /** The deprecated copies of the other extras. */
+        int DEPRECATED_EXTRAS = 5;
+    }
+
+    /** The number of {@link Phase} values. */
+    int PHASE_COUNT = 6;
+
+    /**
+     * Invoked once per intent after it is built, on the thread that built it.
+     * @param intentType The {@link IntentType} of the intent.
+     * @param phaseDurationsNanos The duration of each {@link Phase}, or {@link #NOT_REACHED}.
+     *         Valid only during the call.
+     * @param totalDurationNanos The duration of the whole build, including the work between the
+     *         phases, e.g., moving oversized extras out of band.
+     * @param extras The extras of the intent as sent to the payment app. Should not be modified.
+     */
+    void onPaymentIntentBuilt(@IntentType int intentType, long[] phaseDurationsNanos,
+            long totalDurationNanos, Bundle extras);
+}
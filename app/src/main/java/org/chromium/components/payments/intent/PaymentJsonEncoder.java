@@ -0,0 +1,271 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import androidx.annotation.Nullable;
+
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentCurrencyAmount;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentDetailsModifier;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentItem;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Encodes the JSON payloads of the Pay intent, i.e., the total amount, the modifiers and the
+ * deprecated details, in one traversal of the request. The JSON is written straight into a reusable
+ * buffer, and the total is encoded only once for both the total amount and the deprecated details.
+ * The output is the same as that of android.util.JsonWriter without indentation, including its
+ * escaping.
+ *
+ * An encoder is confined to the thread that got it from {@link #get}.
+ */
+/* package */ final class PaymentJsonEncoder {
+    /** Larger buffers are not kept for the next encoding, to bound the retained memory. */
+    private static final int MAX_RETAINED_BUFFER_CAPACITY = 16 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<PaymentJsonEncoder> sEncoders =
+            new ThreadLocal<PaymentJsonEncoder>() {
+                @Override
+                protected PaymentJsonEncoder initialValue() {
+                    return new PaymentJsonEncoder();
+                }
+            };
+
+    private StringBuilder mBuffer = new StringBuilder();
+
+    @Nullable
+    private String mTotalAmount;
+    @Nullable
+    private String mModifiers;
+    private String mDeprecatedDetails;
+
+    /** @return The encoder of the current thread. */
+    /* package */ static PaymentJsonEncoder get() {
+        return sEncoders.get();
+    }
+
+    private PaymentJsonEncoder() {}
+
+    /**
+     * Encodes the payloads, which can then be read with the getters until the next call.
+     * @param total The total amount, or null for an IsReadyToPay intent.
+     * @param displayItems The shopping cart items, or null. Only their presence is encoded.
+     * @param modifiers The payment details modifiers, or null.
+     */
+    /* package */ void encode(@Nullable PaymentItem total,
+            @Nullable List<PaymentItem> displayItems,
+            @Nullable Collection<PaymentDetailsModifier> modifiers) {
+        encodeDetails(total, displayItems);
+        encodeModifiers(total, modifiers);
+    }
+
+    /**
+     * Encodes the deprecated details and the total amount, which is a part of them. The first step
+     * of {@link #encode}, which is followed by {@link #encodeModifiers}.
+     */
+    /* package */ void encodeDetails(
+            @Nullable PaymentItem total, @Nullable List<PaymentItem> displayItems) {
+        StringBuilder buffer = mBuffer;
+
+        // details {{{
+        buffer.setLength(0);
+        buffer.append('{');
+        int totalAmountStart = -1;
+        int totalAmountEnd = -1;
+        if (total != null) {
+            // total {{{
+            buffer.append("\"total\":{\"label\":\"\",\"amount\":");
+            totalAmountStart = buffer.length();
+            appendAmount(total.amount, buffer);
+            totalAmountEnd = buffer.length();
+            buffer.append('}');
+            // }}} total
+        }
+        if (displayItems != null) {
+            // Do not pass any display items to the payment app.
+            if (total != null) buffer.append(',');
+            buffer.append("\"displayItems\":[]");
+        }
+        buffer.append('}');
+        // }}} details
+        mDeprecatedDetails = buffer.toString();
+        mTotalAmount =
+                total == null ? null : mDeprecatedDetails.substring(totalAmountStart, totalAmountEnd);
+    }
+
+    /**
+     * Encodes only the current payloads, i.e., the total amount and the modifiers, for the payment
+     * apps that do not read the deprecated details. {@link #getDeprecatedDetails} returns null
+     * until the next call.
+     * @param total The total amount, or null for an IsReadyToPay intent.
+     * @param modifiers The payment details modifiers, or null.
+     */
+    /* package */ void encodeCurrent(
+            @Nullable PaymentItem total, @Nullable Collection<PaymentDetailsModifier> modifiers) {
+        encodeTotalAmount(total);
+        encodeModifiers(total, modifiers);
+    }
+
+    /**
+     * Encodes only the total amount. The first step of {@link #encodeCurrent}, which is followed by
+     * {@link #encodeModifiers}.
+     */
+    /* package */ void encodeTotalAmount(@Nullable PaymentItem total) {
+        mDeprecatedDetails = null;
+        mTotalAmount = null;
+        if (total != null) {
+            mBuffer.setLength(0);
+            appendAmount(total.amount, mBuffer);
+            mTotalAmount = mBuffer.toString();
+        }
+    }
+
+    /** @return The JSON of the total amount, or null if there is no total. */
+    @Nullable
+    /* package */ String getTotalAmount() {
+        return mTotalAmount;
+    }
+
+    /** @return The JSON array of the modifiers, or null if there are no modifiers. */
+    @Nullable
+    /* package */ String getModifiers() {
+        return mModifiers;
+    }
+
+    /** @return The JSON of the deprecated details, or null after {@link #encodeCurrent}. */
+    @Nullable
+    /* package */ String getDeprecatedDetails() {
+        return mDeprecatedDetails;
+    }
+
+    /**
+     * Encodes the modifiers, reusing the total amount of the first step. The last step of {@link
+     * #encode} and {@link #encodeCurrent}, which also trims the buffer.
+     */
+    /* package */ void encodeModifiers(
+            @Nullable PaymentItem total, @Nullable Collection<PaymentDetailsModifier> modifiers) {
+        StringBuilder buffer = mBuffer;
+        mModifiers = null;
+        if (modifiers != null) {
+            buffer.setLength(0);
+            buffer.append('[');
+            boolean isFirst = true;
+            for (PaymentDetailsModifier modifier : modifiers) {
+                WebPaymentIntentHelper.checkNotNull(modifier, "PaymentDetailsModifier");
+                if (!isFirst) buffer.append(',');
+                isFirst = false;
+                appendModifier(modifier, total, buffer);
+            }
+            buffer.append(']');
+            mModifiers = buffer.toString();
+        }
+
+        if (buffer.capacity() > MAX_RETAINED_BUFFER_CAPACITY) mBuffer = new StringBuilder();
+    }
+
+    // The total of the request is usually also the total of its modifiers, in which case its
+    // already encoded amount is reused.
+    private void appendModifier(PaymentDetailsModifier modifier, @Nullable PaymentItem total,
+            StringBuilder buffer) {
+        // {{{
+        buffer.append("{\"total\":");
+        // total {{{
+        if (modifier.total == null) {
+            buffer.append("null");
+        } else {
+            buffer.append("{\"label\":\"\",\"amount\":");
+            if (modifier.total == total) {
+                buffer.append(mTotalAmount);
+            } else {
+                appendAmount(modifier.total.amount, buffer);
+            }
+            buffer.append('}');
+        }
+        // }}} total
+
+        // TODO(https://crbug.com/754779): The supportedMethods field was already changed from array
+        // to string but we should keep backward-compatibility for now.
+        // supportedMethods {{{
+        buffer.append(",\"supportedMethods\":[");
+        appendString(modifier.methodData.supportedMethod, buffer);
+        buffer.append(']');
+        // }}} supportedMethods
+
+        // data {{{
+        buffer.append(",\"data\":");
+        appendString(modifier.methodData.stringifiedData, buffer);
+        // }}}
+
+        buffer.append('}');
+        // }}}
+    }
+
+    private static void appendAmount(PaymentCurrencyAmount amount, StringBuilder buffer) {
+        // A parsed amount has a canonical currency code and a decimal value, neither of which
+        // needs to be escaped.
+        if (amount.parsedAmount != null) {
+            amount.parsedAmount.appendJson(buffer);
+            return;
+        }
+        buffer.append("{\"currency\":");
+        appendString(amount.currency, buffer);
+        buffer.append(",\"value\":");
+        appendString(amount.value, buffer);
+        buffer.append('}');
+    }
+
+    /** Appends a JSON string, escaped the same way as android.util.JsonWriter. */
+    private static void appendString(@Nullable String value, StringBuilder buffer) {
+        if (value == null) {
+            buffer.append("null");
+            return;
+        }
+        buffer.append('"');
+        int length = value.length();
+        // Unescaped runs are copied in bulk.
+        int runStart = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c > 0x1F && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') continue;
+            buffer.append(value, runStart, i);
+            runStart = i + 1;
+            switch (c) {
+                case '"':
+                case '\\':
+                    buffer.append('\\').append(c);
+                    break;
+                case '\t':
+                    buffer.append("\\t");
+                    break;
+                case '\b':
+                    buffer.append("\\b");
+                    break;
+                case '\n':
+                    buffer.append("\\n");
+                    break;
+                case '\r':
+                    buffer.append("\\r");
+                    break;
+                case '\f':
+                    buffer.append("\\f");
+                    break;
+                default:
+                    // The other control characters, and the line and paragraph separators, which
+                    // JavaScript interprets as newlines.
+                    buffer.append("\\u")
+                            .append(HEX_DIGITS[(c >> 12) & 0xF])
+                            .append(HEX_DIGITS[(c >> 8) & 0xF])
+                            .append(HEX_DIGITS[(c >> 4) & 0xF])
+                            .append(HEX_DIGITS[c & 0xF]);
+                    break;
+            }
+        }
+        buffer.append(value, runStart, length);
+        buffer.append('"');
+    }
+}
@@ -0,0 +1,308 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.ParcelFileDescriptor;
+import android.os.Parcelable;
+import android.os.RemoteException;
+
+import androidx.annotation.Nullable;
+
+import org.chromium.PaymentPayloadProvider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends the large extras of a Pay intent out of band, so that a merchant with large method data or
+ * modifiers cannot exceed the binder transaction buffer when the payment app is launched.
+ *
+ * The browser moves the method data, the modifiers, the certificate chain and their deprecated
+ * copies into a marshalled blob, and the intent carries only a {@link PaymentPayloadProvider}
+ * binder, the size and the SHA-256 digest of the blob. The payment app streams the blob through a
+ * pipe and puts the extras back with PayRequest#restorePayload of the payment app library.
+ */
+public final class PaymentPayloadTransport {
+    /** The default size of the marshalled extras above which they are sent out of band. */
+    public static final int DEFAULT_THRESHOLD_BYTES = 256 * 1024;
+
+    /** The extras that are moved into the payload when the intent is too large. */
+    private static final String[] MOVABLE_EXTRAS = {WebPaymentIntentHelper.EXTRA_METHOD_DATA,
+            WebPaymentIntentHelper.EXTRA_MODIFIERS,
+            WebPaymentIntentHelper.EXTRA_TOP_CERTIFICATE_CHAIN,
+            WebPaymentIntentHelper.EXTRA_DEPRECATED_CERTIFICATE_CHAIN,
+            WebPaymentIntentHelper.EXTRA_DEPRECATED_DATA,
+            WebPaymentIntentHelper.EXTRA_DEPRECATED_DATA_MAP};
+
+    /**
+     * Pairs of a deprecated extra and the extra that it copies. A deprecated extra that is the same
+     * object as its copy is not written into the payload again, but restored from the copy.
+     */
+    private static final String[][] ALIASED_EXTRAS = {
+            {WebPaymentIntentHelper.EXTRA_DEPRECATED_CERTIFICATE_CHAIN,
+                    WebPaymentIntentHelper.EXTRA_TOP_CERTIFICATE_CHAIN},
+            {WebPaymentIntentHelper.EXTRA_DEPRECATED_DATA_MAP,
+                    WebPaymentIntentHelper.EXTRA_METHOD_DATA}};
+
+    // The key in the payload for the deprecated extras that were not written because of aliasing.
+    // The payment app library's PaymentPayloadReader reads the payload with the same keys.
+    private static final String PAYLOAD_ALIASES = "aliases";
+
+    // The extras whose estimated size is within this fraction of the threshold are marshalled to
+    // be measured exactly, which covers the error of the estimate for the Pay intent extras.
+    private static final int ESTIMATE_MARGIN_DIVISOR = 8;
+
+    // The estimated size of the value types that the Pay intent extras do not use.
+    private static final int UNKNOWN_SIZE = -1;
+
+    private static volatile int sThresholdBytes = DEFAULT_THRESHOLD_BYTES;
+
+    // A pipe blocks its writer until the payment app reads, so each write needs a thread of its
+    // own. The threads are shared by all of the payloads and bounded, because the providers can be
+    // called by any app that gets hold of the binder.
+    private static final int MAX_WRITER_THREADS = 2;
+    private static final int MAX_QUEUED_WRITES = 8;
+    private static final long WRITER_KEEP_ALIVE_SECONDS = 30;
+    private static final ThreadPoolExecutor sWriterExecutor = createWriterExecutor();
+
+    /** Serves the payload of one intent through a pipe, only to the first caller. */
+    private static final class PayloadProvider extends PaymentPayloadProvider.Stub {
+        private final byte[] mPayload;
+        private final AtomicBoolean mIsServed = new AtomicBoolean();
+
+        private PayloadProvider(byte[] payload) {
+            mPayload = payload;
+        }
+
+        // PaymentPayloadProvider.Stub:
+        @Override
+        public ParcelFileDescriptor openPayload() throws RemoteException {
+            // The payment app reads its payload once, so a later call is not the payment app's.
+            if (mIsServed.getAndSet(true)) return null;
+            final ParcelFileDescriptor[] pipe;
+            try {
+                pipe = ParcelFileDescriptor.createPipe();
+            } catch (IOException e) {
+                return null;
+            }
+            try {
+                sWriterExecutor.execute(() -> {
+                    try (OutputStream output =
+                                    new ParcelFileDescriptor.AutoCloseOutputStream(pipe[1])) {
+                        output.write(mPayload);
+                    } catch (IOException e) {
+                        // The payment app closed the pipe early, so it will fail the digest check.
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                closeQuietly(pipe[0]);
+                closeQuietly(pipe[1]);
+                return null;
+            }
+            return pipe[0];
+        }
+    }
+
+    private static ThreadPoolExecutor createWriterExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_WRITER_THREADS,
+                MAX_WRITER_THREADS, WRITER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_WRITES),
+                (runnable) -> new Thread(runnable, "PaymentPayloadWriter"));
+        // No thread is kept while no payload is being written.
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static void closeQuietly(ParcelFileDescriptor fd) {
+        try {
+            fd.close();
+        } catch (IOException e) {
+            // Nothing else to release.
+        }
+    }
+
+    /**
+     * Sets the size of the marshalled Pay intent extras above which the large extras are sent out
+     * of band. Applies to the intents created afterwards.
+     * @param thresholdBytes The threshold in bytes. Should be positive.
+     */
+    public static void setThresholdBytes(int thresholdBytes) {
+        if (thresholdBytes <= 0) {
+            throw new IllegalArgumentException("thresholdBytes should be positive.");
+        }
+        sThresholdBytes = thresholdBytes;
+    }
+
+    /**
+     * @param provider The {@link WebPaymentIntentHelper#EXTRA_PAYLOAD_PROVIDER} of a Pay intent.
+     * @return The marshalled payload that the provider serves, without going through a pipe.
+     */
+    /* package */ static byte[] getPayloadForTesting(IBinder provider) {
+        return ((PayloadProvider) provider).mPayload;
+    }
+
+    /**
+     * @param extras The extras of an intent.
+     * @return The number of bytes that the extras take when marshalled into a binder transaction.
+     */
+    /* package */ static int getMarshalledSize(Bundle extras) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(extras);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * @param extras The extras of an intent.
+     * @return The number of bytes that the extras would take when marshalled, estimated from the
+     *         lengths of their strings and byte arrays without marshalling them, or -1 if they
+     *         contain a value of another type.
+     */
+    /* package */ static int estimateMarshalledSize(Bundle extras) {
+        return estimateBundleSize(extras);
+    }
+
+    /**
+     * Tells whether the marshalled extras of a Pay intent exceed the threshold. Only the extras
+     * whose estimated size is close to the threshold are marshalled.
+     * @param baseSize The marshalled size of the other extras of the intent, e.g., the invariant
+     *         extras of a {@link PayIntentTemplate}.
+     * @param extras The extras of the intent to measure.
+     * @return Whether the extras, with the base size, exceed the threshold.
+     */
+    /* package */ static boolean exceedsThreshold(int baseSize, Bundle extras) {
+        int thresholdBytes = sThresholdBytes;
+        int estimatedSize = estimateMarshalledSize(extras);
+        if (estimatedSize != UNKNOWN_SIZE) {
+            long size = (long) baseSize + estimatedSize;
+            int margin = thresholdBytes / ESTIMATE_MARGIN_DIVISOR;
+            if (size < thresholdBytes - margin) return false;
+            if (size > thresholdBytes + margin) return true;
+        }
+        return baseSize + getMarshalledSize(extras) > thresholdBytes;
+    }
+
+    /**
+     * Moves the large extras of a Pay intent into an out-of-band payload if the marshalled extras
+     * exceed the threshold.
+     * @param extras The extras of the Pay intent, modified in place.
+     */
+    /* package */ static void moveOversizedExtras(Bundle extras) {
+        if (exceedsThreshold(/*baseSize=*/0, extras)) moveLargeExtras(extras);
+    }
+
+    /**
+     * Moves the large extras of a Pay intent into an out-of-band payload unconditionally.
+     * @param extras The extras of the Pay intent, modified in place.
+     */
+    /* package */ static void moveLargeExtras(Bundle extras) {
+        // A shallow copy keeps the types of the extras and the identity of the aliased ones.
+        Bundle payload = new Bundle(extras);
+        List<String> movableExtras = Arrays.asList(MOVABLE_EXTRAS);
+        for (String key : extras.keySet()) {
+            if (!movableExtras.contains(key)) payload.remove(key);
+        }
+        ArrayList<String> aliases = new ArrayList<>();
+        for (String[] alias : ALIASED_EXTRAS) {
+            Object deprecatedValue = payload.get(alias[0]);
+            if (deprecatedValue != null && deprecatedValue == payload.get(alias[1])) {
+                payload.remove(alias[0]);
+                aliases.add(alias[0]);
+            }
+        }
+        payload.putStringArrayList(PAYLOAD_ALIASES, aliases);
+
+        byte[] marshalledPayload;
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(payload);
+            marshalledPayload = parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+
+        for (String key : MOVABLE_EXTRAS) extras.remove(key);
+        extras.putBinder(WebPaymentIntentHelper.EXTRA_PAYLOAD_PROVIDER,
+                new PayloadProvider(marshalledPayload));
+        extras.putInt(WebPaymentIntentHelper.EXTRA_PAYLOAD_SIZE, marshalledPayload.length);
+        extras.putString(
+                WebPaymentIntentHelper.EXTRA_PAYLOAD_DIGEST, computeDigest(marshalledPayload));
+    }
+
+    // The sizes follow Parcel.writeBundle() and Parcel.writeValue(): a length, a magic number and a
+    // count for each bundle, a type tag for each value, and UTF-16 strings and byte arrays that are
+    // prefixed by their length and padded to 4 bytes.
+    private static int estimateBundleSize(Bundle bundle) {
+        int size = 3 * 4;
+        for (String key : bundle.keySet()) {
+            int valueSize = estimateValueSize(bundle.get(key));
+            if (valueSize == UNKNOWN_SIZE) return UNKNOWN_SIZE;
+            size += estimateStringSize(key) + valueSize;
+        }
+        return size;
+    }
+
+    private static int estimateValueSize(@Nullable Object value) {
+        // The type tag.
+        int size = 4;
+        if (value == null) return size;
+        if (value instanceof String) return size + estimateStringSize((String) value);
+        if (value instanceof Integer || value instanceof Boolean) return size + 4;
+        if (value instanceof byte[]) return size + 4 + pad(((byte[]) value).length);
+        if (value instanceof IBinder) return size + 6 * 4;
+        if (value instanceof Bundle) return size + estimateBundleSize((Bundle) value);
+        if (value instanceof List) {
+            size += 4;
+            for (Object element : (List<?>) value) {
+                int elementSize = estimateValueSize(element);
+                if (elementSize == UNKNOWN_SIZE) return UNKNOWN_SIZE;
+                size += elementSize;
+            }
+            return size;
+        }
+        if (value instanceof Parcelable[]) {
+            size += 4;
+            for (Parcelable element : (Parcelable[]) value) {
+                if (!(element instanceof Bundle)) return UNKNOWN_SIZE;
+                // Each element is written with its class name.
+                size += estimateStringSize(Bundle.class.getName())
+                        + estimateBundleSize((Bundle) element);
+            }
+            return size;
+        }
+        return UNKNOWN_SIZE;
+    }
+
+    private static int estimateStringSize(String value) {
+        return 4 + pad(2 * (value.length() + 1));
+    }
+
+    private static int pad(int size) {
+        return (size + 3) & ~3;
+    }
+
+    private static String computeDigest(byte[] bytes) {
+        MessageDigest digest = IsReadyToPayFingerprint.newSha256();
+        return IsReadyToPayFingerprint.toHex(digest.digest(bytes));
+    }
+
+    // Prevent instantiation.
+    private PaymentPayloadTransport() {}
+}
@@ -0,0 +1,272 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import androidx.annotation.Nullable;
+
+import org.chromium.components.payments.ErrorStrings;
+import org.chromium.components.payments.intent.WebPaymentIntentHelper.PaymentErrorCallback;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The response of a payment app to a Pay intent. Created by {@link #parse}, which reads the
+ * extras of the intent only once and validates the details without decoding them.
+ *
+ * The details are decoded lazily and incrementally: {@link #getDetailsField} decodes the top-level
+ * fields of the details only up to the requested one, and remembers them for later calls.
+ *
+ * A field that occurs more than once in an object has its last value, at the top level and in the
+ * nested objects, as with JSON.parse() and org.json.
+ */
+public final class PaymentResponse {
+    /** The default maximum length of the details, in characters. */
+    public static final int DEFAULT_MAX_DETAILS_LENGTH = 1024 * 1024;
+
+    /** The default maximum nesting depth of the details, counting the top-level object. */
+    public static final int DEFAULT_MAX_DETAILS_DEPTH = 32;
+
+    private static final String EMPTY_JSON_DATA = "{}";
+
+    private final String mMethodName;
+    private final String mDetails;
+    // The top-level fields that occur more than once, found by the validation. Their last values
+    // are only known once all of the fields are decoded.
+    private final Set<String> mDuplicateFields;
+
+    // The lazily decoded top-level fields of the details. Guarded by |this|.
+    private final Map<String, Object> mDecodedFields = new HashMap<>();
+    // Positioned after the last decoded field, or null before the first and after the last field.
+    // Guarded by |this|.
+    @Nullable
+    private JsonReader mDetailsReader;
+    // Guarded by |this|.
+    private boolean mIsFullyDecoded;
+
+    /**
+     * Parses the response of a payment app with the default limits. See {@link #parse(int, Intent,
+     * int, int, PaymentErrorCallback)}.
+     */
+    @Nullable
+    public static PaymentResponse parse(
+            int resultCode, @Nullable Intent data, PaymentErrorCallback errorCallback) {
+        return parse(resultCode, data, DEFAULT_MAX_DETAILS_LENGTH, DEFAULT_MAX_DETAILS_DEPTH,
+                errorCallback);
+    }
+
+    /**
+     * Parses the response of a payment app. The details should be a JSON object within the given
+     * limits.
+     * @param resultCode Result code of the requested intent.
+     * @param data The intent response data.
+     * @param maxDetailsLength The maximum length of the details, in characters.
+     * @param maxDetailsDepth The maximum nesting depth of the details, counting the top-level
+     *         object.
+     * @param errorCallback Callback to handle parsing errors. Invoked synchronously.
+     * @return The response, or null if the response is invalid, in which case the errorCallback
+     *         has been invoked.
+     */
+    @Nullable
+    public static PaymentResponse parse(int resultCode, @Nullable Intent data,
+            int maxDetailsLength, int maxDetailsDepth, PaymentErrorCallback errorCallback) {
+        PaymentTrace.beginSection("PaymentResponse.parse");
+        try {
+            if (data == null) {
+                errorCallback.onError(ErrorStrings.MISSING_INTENT_DATA);
+                return null;
+            }
+            // Intent#getExtras() copies the extras, so it is called only once.
+            Bundle extras = data.getExtras();
+            if (extras == null) {
+                errorCallback.onError(ErrorStrings.MISSING_INTENT_EXTRAS);
+                return null;
+            }
+            if (resultCode == Activity.RESULT_CANCELED) {
+                errorCallback.onError(ErrorStrings.RESULT_CANCELED);
+                return null;
+            }
+            if (resultCode != Activity.RESULT_OK) {
+                errorCallback.onError(String.format(
+                        Locale.US, ErrorStrings.UNRECOGNIZED_ACTIVITY_RESULT, resultCode));
+                return null;
+            }
+
+            String details = extras.getString(WebPaymentIntentHelper.EXTRA_RESPONSE_DETAILS);
+            if (details == null) {
+                details = extras.getString(
+                        WebPaymentIntentHelper.EXTRA_DEPRECATED_RESPONSE_INSTRUMENT_DETAILS);
+            }
+            if (details == null) details = EMPTY_JSON_DATA;
+            if (details.length() > maxDetailsLength) {
+                errorCallback.onError(ErrorStrings.PAYMENT_APP_RESPONSE_TOO_LARGE);
+                return null;
+            }
+            Set<String> duplicateFields = new HashSet<>();
+            String error = validateDetails(details, maxDetailsDepth, duplicateFields);
+            if (error != null) {
+                errorCallback.onError(error);
+                return null;
+            }
+
+            String methodName = extras.getString(WebPaymentIntentHelper.EXTRA_RESPONSE_METHOD_NAME);
+            if (methodName == null) methodName = "";
+            return new PaymentResponse(methodName, details,
+                    duplicateFields.isEmpty() ? Collections.<String>emptySet() : duplicateFields);
+        } finally {
+            PaymentTrace.endSection();
+        }
+    }
+
+    private PaymentResponse(String methodName, String details, Set<String> duplicateFields) {
+        mMethodName = methodName;
+        mDetails = details;
+        mDuplicateFields = duplicateFields;
+    }
+
+    /** @return The method name of the response, or an empty string if the app did not set one. */
+    public String getMethodName() {
+        return mMethodName;
+    }
+
+    /** @return The undecoded JSON object of the details. */
+    public String getDetails() {
+        return mDetails;
+    }
+
+    /**
+     * Decodes a top-level field of the details. Only the fields up to the requested one are
+     * decoded, unless the field occurs more than once, in which case its last value is used.
+     * @param name The name of the field.
+     * @return The value of the field as a String, Long, Double, Boolean, JSONObject, JSONArray or
+     *         JSONObject#NULL, or null if the details do not have the field.
+     */
+    @Nullable
+    public synchronized Object getDetailsField(String name) {
+        Object value = mDecodedFields.get(name);
+        boolean isDuplicate = mDuplicateFields.contains(name);
+        if (mIsFullyDecoded || (value != null && !isDuplicate)) return value;
+        try {
+            if (mDetailsReader == null) {
+                mDetailsReader = new JsonReader(new StringReader(mDetails));
+                mDetailsReader.beginObject();
+            }
+            while (mDetailsReader.hasNext()) {
+                String fieldName = mDetailsReader.nextName();
+                Object fieldValue = decodeValue(mDetailsReader);
+                // A later value of a duplicate field replaces the earlier ones.
+                mDecodedFields.put(fieldName, fieldValue);
+                if (!isDuplicate && fieldName.equals(name)) return fieldValue;
+            }
+            mDetailsReader.endObject();
+            mDetailsReader.close();
+        } catch (IOException | JSONException e) {
+            // The details were validated by parse().
+            throw new IllegalStateException(e);
+        }
+        mDetailsReader = null;
+        mIsFullyDecoded = true;
+        return mDecodedFields.get(name);
+    }
+
+    // Checks that the details are one well-formed JSON object within the depth limit, without
+    // materializing any values but the top-level names. Adds the top-level names that occur more
+    // than once to duplicateFields.
+    @Nullable
+    private static String validateDetails(
+            String details, int maxDepth, Set<String> duplicateFields) {
+        JsonReader reader = new JsonReader(new StringReader(details));
+        Set<String> fields = new HashSet<>();
+        try {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return ErrorStrings.PAYMENT_APP_INVALID_DETAILS;
+            }
+            int depth = 0;
+            do {
+                switch (reader.peek()) {
+                    case BEGIN_OBJECT:
+                        if (++depth > maxDepth) return ErrorStrings.PAYMENT_APP_DETAILS_TOO_DEEP;
+                        reader.beginObject();
+                        break;
+                    case BEGIN_ARRAY:
+                        if (++depth > maxDepth) return ErrorStrings.PAYMENT_APP_DETAILS_TOO_DEEP;
+                        reader.beginArray();
+                        break;
+                    case END_OBJECT:
+                        depth--;
+                        reader.endObject();
+                        break;
+                    case END_ARRAY:
+                        depth--;
+                        reader.endArray();
+                        break;
+                    case NAME:
+                        String name = reader.nextName();
+                        if (depth == 1 && !fields.add(name)) duplicateFields.add(name);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            } while (depth > 0);
+            // Nothing can follow the object.
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                return ErrorStrings.PAYMENT_APP_INVALID_DETAILS;
+            }
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            return ErrorStrings.PAYMENT_APP_INVALID_DETAILS;
+        }
+        return null;
+    }
+
+    private static Object decodeValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    object.put(name, decodeValue(reader));
+                }
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) array.put(decodeValue(reader));
+                reader.endArray();
+                return array;
+            case NUMBER:
+                String number = reader.nextString();
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    return Double.parseDouble(number);
+                }
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.os.Build;
+import android.os.Trace;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The trace sections of a payment transaction, so that one system trace capture shows the whole
+ * critical path, from the browser's IsReadyToPay query and intent build to the payment app and
+ * back to the parsing of its response.
+ *
+ * The synchronous sections cover the work of one call on one thread. The asynchronous sections
+ * span the stages that cross threads or processes, and are correlated by an id, which is the
+ * PaymentRequest id of {@link WebPaymentIntentHelper#EXTRA_PAYMENT_REQUEST_ID} where there is one,
+ * so that the sections of the browser and of the payment app line up. The id is a part of the
+ * section name, and its hash is the cookie of the section.
+ *
+ * Asynchronous sections need Android Q, which can also tell whether a trace is being captured, so
+ * their names are built only while it is. Before Q, only the synchronous sections are emitted.
+ */
+public final class PaymentTrace {
+    // The maximum length of a section name, beyond which android.os.Trace throws.
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    private static final AtomicInteger sNextSequenceNumber = new AtomicInteger();
+
+    private PaymentTrace() {}
+
+    /**
+     * @return Whether the asynchronous sections are being captured, i.e., whether the caller should
+     *         build their correlation ids.
+     */
+    public static boolean isEnabled() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && Trace.isEnabled();
+    }
+
+    /**
+     * Begins a synchronous section on the current thread, which must be ended with {@link
+     * #endSection} on the same thread.
+     * @param name The name of the section, e.g., "PayIntentTemplate.createPayIntent". Should be a
+     *         constant, so that it costs nothing while no trace is being captured.
+     */
+    public static void beginSection(String name) {
+        Trace.beginSection(truncate(name));
+    }
+
+    /** Ends the last synchronous section that began on the current thread. */
+    public static void endSection() {
+        Trace.endSection();
+    }
+
+    /**
+     * Begins an asynchronous section, which can be ended on any thread. No-op before Android Q or
+     * while no trace is being captured.
+     * @param name The name of the stage, e.g., "PaymentRequest".
+     * @param correlationId The id of the transaction, e.g., the PaymentRequest id.
+     */
+    public static void beginAsyncSection(String name, String correlationId) {
+        if (!isEnabled()) return;
+        Trace.beginAsyncSection(
+                getAsyncSectionName(name, correlationId), correlationId.hashCode());
+    }
+
+    /**
+     * Ends an asynchronous section. No-op before Android Q or while no trace is being captured.
+     * @param name The name of the stage, the same as that of {@link #beginAsyncSection}.
+     * @param correlationId The id of the transaction, the same as that of {@link
+     *         #beginAsyncSection}.
+     */
+    public static void endAsyncSection(String name, String correlationId) {
+        if (!isEnabled()) return;
+        Trace.endAsyncSection(getAsyncSectionName(name, correlationId), correlationId.hashCode());
+    }
+
+    /**
+     * Creates a correlation id for a stage that has no PaymentRequest id, e.g., an IsReadyToPay
+     * query. Should be called only while {@link #isEnabled}, to not build strings otherwise.
+     * @param prefix The prefix of the id, e.g., the package name of the payment app.
+     * @return An id that is unique within the process.
+     */
+    public static String newCorrelationId(String prefix) {
+        return prefix + "#" + sNextSequenceNumber.incrementAndGet();
+    }
+
+    private static String getAsyncSectionName(String name, String correlationId) {
+        return truncate(name + " " + correlationId);
+    }
+
+    private static String truncate(String name) {
+        return name.length() <= MAX_SECTION_NAME_LENGTH
+                ? name
+                : name.substring(0, MAX_SECTION_NAME_LENGTH);
+    }
+}
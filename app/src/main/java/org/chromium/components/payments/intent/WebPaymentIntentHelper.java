@@ -9,18 +9,16 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.os.Parcelable;
 import android.text.TextUtils;
-import android.util.JsonWriter;
 
 import androidx.annotation.Nullable;
 
 import org.chromium.components.payments.ErrorStrings;
-import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentCurrencyAmount;
+import org.chromium.components.payments.intent.PaymentIntentMetricsListener.IntentType;
+import org.chromium.components.payments.intent.PaymentIntentMetricsListener.Phase;
 import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentDetailsModifier;
 import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentItem;
 import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
 
-import java.io.IOException;
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -34,6 +32,16 @@ public class WebPaymentIntentHelper {
     /** The action name for the Pay Intent. */
     public static final String ACTION_PAY = "org.chromium.intent.action.PAY";
 
+    /** The action name of the IsReadyToPay services. */
+    public static final String ACTION_IS_READY_TO_PAY = "org.chromium.intent.action.IS_READY_TO_PAY";
+
+    /**
+     * The action name of the IsReadyToPay intent that binds an IsReadyToPayServiceV2, which answers
+     * a batch of queries in one call. See {@link IsReadyToPayBatchHelper}.
+     */
+    public static final String ACTION_IS_READY_TO_PAY_V2 =
+            "org.chromium.intent.action.IS_READY_TO_PAY_V2";
+
     // Freshest parameters sent to the payment app.
     public static final String EXTRA_CERTIFICATE = "certificate";
     public static final String EXTRA_MERCHANT_NAME = "merchantName";
@@ -56,6 +64,11 @@ public class WebPaymentIntentHelper {
     public static final String EXTRA_DEPRECATED_METHOD_NAME = "methodName";
     public static final String EXTRA_DEPRECATED_ORIGIN = "origin";
 
+    // Handle to the parameters that were too large for the intent. See PaymentPayloadTransport.
+    public static final String EXTRA_PAYLOAD_DIGEST = "payloadDigest";
+    public static final String EXTRA_PAYLOAD_PROVIDER = "payloadProvider";
+    public static final String EXTRA_PAYLOAD_SIZE = "payloadSize";
+
     // Response from the payment app.
     public static final String EXTRA_DEPRECATED_RESPONSE_INSTRUMENT_DETAILS = "instrumentDetails";
     public static final String EXTRA_RESPONSE_DETAILS = "details";
@@ -63,6 +76,11 @@ public class WebPaymentIntentHelper {
 
     private static final String EMPTY_JSON_DATA = "{}";
 
+    private static volatile boolean sIsModifierPruningEnabled = true;
+
+    @Nullable
+    private static volatile PaymentIntentMetricsListener sIntentMetricsListener;
+
     /** Invoked to report error for {@link #parsePaymentResponse}. */
     public interface PaymentErrorCallback {
         /** @param errorString The string that explains the error. */
@@ -79,7 +97,8 @@ public class WebPaymentIntentHelper {
     }
 
     /**
-     * Parse the Payment Intent response.
+     * Parse the Payment Intent response. See {@link PaymentResponse#parse} for a parser that also
+     * validates the details.
      * @param resultCode Result code of the requested intent.
      * @param data The intent response data.
      * @param errorCallback Callback to handle parsing errors. Invoked synchronously.
@@ -87,9 +106,11 @@ public class WebPaymentIntentHelper {
      **/
     public static void parsePaymentResponse(int resultCode, Intent data,
             PaymentErrorCallback errorCallback, PaymentSuccessCallback successCallback) {
+        // Intent#getExtras() copies the extras, so it is called only once.
+        Bundle extras = data == null ? null : data.getExtras();
         if (data == null) {
             errorCallback.onError(ErrorStrings.MISSING_INTENT_DATA);
-        } else if (data.getExtras() == null) {
+        } else if (extras == null) {
             errorCallback.onError(ErrorStrings.MISSING_INTENT_EXTRAS);
         } else if (resultCode == Activity.RESULT_CANCELED) {
             errorCallback.onError(ErrorStrings.RESULT_CANCELED);
@@ -97,12 +118,12 @@ public class WebPaymentIntentHelper {
             errorCallback.onError(String.format(
                     Locale.US, ErrorStrings.UNRECOGNIZED_ACTIVITY_RESULT, resultCode));
         } else {
-            String details = data.getExtras().getString(EXTRA_RESPONSE_DETAILS);
+            String details = extras.getString(EXTRA_RESPONSE_DETAILS);
             if (details == null) {
-                details = data.getExtras().getString(EXTRA_DEPRECATED_RESPONSE_INSTRUMENT_DETAILS);
+                details = extras.getString(EXTRA_DEPRECATED_RESPONSE_INSTRUMENT_DETAILS);
             }
             if (details == null) details = EMPTY_JSON_DATA;
-            String methodName = data.getExtras().getString(EXTRA_RESPONSE_METHOD_NAME);
+            String methodName = extras.getString(EXTRA_RESPONSE_METHOD_NAME);
             if (methodName == null) methodName = "";
             // TODO(crbug.com/1026667): Support payer data delegation for native apps instead of
             // returning empty PayerData.
@@ -134,7 +155,8 @@ public class WebPaymentIntentHelper {
      *         least one entry.
      * @param total The total amount. Cannot be null..
      * @param displayItems The shopping cart items. OK to be null.
-     * @param modifiers The relevant payment details modifiers. OK to be null.
+     * @param modifiers The relevant payment details modifiers. OK to be null. Only those of the
+     *         methods in methodDataMap are sent, see {@link #setModifierPruningEnabled}.
      * @return The intent to invoke the payment app.
      */
     public static Intent createPayIntent(String packageName, String activityName, String id,
@@ -142,15 +164,44 @@ public class WebPaymentIntentHelper {
             @Nullable byte[][] certificateChain, Map<String, PaymentMethodData> methodDataMap,
             PaymentItem total, @Nullable List<PaymentItem> displayItems,
             @Nullable Map<String, PaymentDetailsModifier> modifiers) {
-        Intent payIntent = new Intent();
-        checkStringNotEmpty(activityName, "activityName");
-        checkStringNotEmpty(packageName, "packageName");
-        payIntent.setClassName(packageName, activityName);
-        payIntent.setAction(ACTION_PAY);
-        payIntent.putExtras(
-                buildPayIntentExtras(id, merchantName, schemelessOrigin, schemelessIframeOrigin,
-                        certificateChain, methodDataMap, total, displayItems, modifiers));
-        return payIntent;
+        return createPayIntent(packageName, activityName, id, merchantName, schemelessOrigin,
+                schemelessIframeOrigin, certificateChain, methodDataMap, total, displayItems,
+                modifiers, /*includeDeprecatedExtras=*/true);
+    }
+
+    /**
+     * Create an intent to invoke a native payment app, optionally without the deprecated extras.
+     * This method throws IllegalArgumentException for invalid arguments. See {@link
+     * #createPayIntent} for the other parameters.
+     *
+     * @param includeDeprecatedExtras Whether to add the deprecated copies of the parameters. Can be
+     *         false only for the apps that {@link PaymentAppCapabilities#skipsDeprecatedExtras}.
+     * @return The intent to invoke the payment app.
+     */
+    public static Intent createPayIntent(String packageName, String activityName, String id,
+            String merchantName, String schemelessOrigin, String schemelessIframeOrigin,
+            @Nullable byte[][] certificateChain, Map<String, PaymentMethodData> methodDataMap,
+            PaymentItem total, @Nullable List<PaymentItem> displayItems,
+            @Nullable Map<String, PaymentDetailsModifier> modifiers,
+            boolean includeDeprecatedExtras) {
+        PaymentTrace.beginSection("WebPaymentIntentHelper.createPayIntent");
+        try {
+            PaymentIntentBuildTrace trace = PaymentIntentBuildTrace.start();
+            Intent payIntent = new Intent();
+            checkStringNotEmpty(activityName, "activityName");
+            checkStringNotEmpty(packageName, "packageName");
+            payIntent.setClassName(packageName, activityName);
+            payIntent.setAction(ACTION_PAY);
+            Bundle extras = buildPayIntentExtras(id, merchantName, schemelessOrigin,
+                    schemelessIframeOrigin, certificateChain, methodDataMap, total, displayItems,
+                    modifiers, includeDeprecatedExtras, trace);
+            PaymentPayloadTransport.moveOversizedExtras(extras);
+            payIntent.putExtras(extras);
+            if (trace != null) trace.finish(IntentType.PAY, extras);
+            return payIntent;
+        } finally {
+            PaymentTrace.endSection();
+        }
     }
 
     /**
@@ -175,33 +226,90 @@ public class WebPaymentIntentHelper {
     public static Intent createIsReadyToPayIntent(String packageName, String serviceName,
             String schemelessOrigin, String schemelessIframeOrigin,
             @Nullable byte[][] certificateChain, Map<String, PaymentMethodData> methodDataMap) {
-        Intent isReadyToPayIntent = new Intent();
-        checkStringNotEmpty(serviceName, "serviceName");
-        checkStringNotEmpty(packageName, "packageName");
-        isReadyToPayIntent.setClassName(packageName, serviceName);
+        return createIsReadyToPayIntent(packageName, serviceName, schemelessOrigin,
+                schemelessIframeOrigin, certificateChain, methodDataMap,
+                /*includeDeprecatedExtras=*/true);
+    }
 
-        checkStringNotEmpty(schemelessOrigin, "schemelessOrigin");
-        checkStringNotEmpty(schemelessIframeOrigin, "schemelessIframeOrigin");
-        // certificateChain is ok to be null, left unchecked here.
-        checkNotEmpty(methodDataMap, "methodDataMap");
-        isReadyToPayIntent.putExtras(buildExtras(/*id=*/null,
-                /*merchantName=*/null, schemelessOrigin, schemelessIframeOrigin, certificateChain,
-                methodDataMap, /*total=*/null, /*displayItems=*/null, /*modifiers=*/null));
-        return isReadyToPayIntent;
+    /**
+     * Create an intent to invoke an IsReadyToPay service, optionally without the deprecated
+     * extras. This method throws IllegalArgumentException for invalid arguments. See {@link
+     * #createIsReadyToPayIntent} for the other parameters.
+     *
+     * @param includeDeprecatedExtras Whether to add the deprecated copies of the parameters. Can be
+     *         false only for the apps that {@link PaymentAppCapabilities#skipsDeprecatedExtras}.
+     * @return The intent to invoke the service.
+     */
+    public static Intent createIsReadyToPayIntent(String packageName, String serviceName,
+            String schemelessOrigin, String schemelessIframeOrigin,
+            @Nullable byte[][] certificateChain, Map<String, PaymentMethodData> methodDataMap,
+            boolean includeDeprecatedExtras) {
+        PaymentTrace.beginSection("WebPaymentIntentHelper.createIsReadyToPayIntent");
+        try {
+            PaymentIntentBuildTrace trace = PaymentIntentBuildTrace.start();
+            Intent isReadyToPayIntent = new Intent();
+            checkStringNotEmpty(serviceName, "serviceName");
+            checkStringNotEmpty(packageName, "packageName");
+            isReadyToPayIntent.setClassName(packageName, serviceName);
+
+            checkStringNotEmpty(schemelessOrigin, "schemelessOrigin");
+            checkStringNotEmpty(schemelessIframeOrigin, "schemelessIframeOrigin");
+            // certificateChain is ok to be null, left unchecked here.
+            checkNotEmpty(methodDataMap, "methodDataMap");
+            if (trace != null) trace.endPhase(Phase.VALIDATION);
+            Bundle extras = buildExtras(/*id=*/null, /*merchantName=*/null, schemelessOrigin,
+                    schemelessIframeOrigin, certificateChain, methodDataMap, /*total=*/null,
+                    /*displayItems=*/null, /*modifiers=*/null, includeDeprecatedExtras, trace);
+            isReadyToPayIntent.putExtras(extras);
+            if (trace != null) trace.finish(IntentType.IS_READY_TO_PAY, extras);
+            return isReadyToPayIntent;
+        } finally {
+            PaymentTrace.endSection();
+        }
+    }
+
+    /**
+     * Sets whether each Pay intent carries only the modifiers of the payment app's methods, i.e.,
+     * of the keys of its method data, or all of the merchant's modifiers as before. Enabled by
+     * default. Applies to the intents created afterwards.
+     * @param isEnabled Whether to prune the modifiers of each app.
+     */
+    public static void setModifierPruningEnabled(boolean isEnabled) {
+        sIsModifierPruningEnabled = isEnabled;
     }
 
-    private static void checkNotEmpty(Map map, String name) {
+    /* package */ static boolean isModifierPruningEnabled() {
+        return sIsModifierPruningEnabled;
+    }
+
+    /**
+     * Sets the listener that receives the phase durations and the extras of every Pay and
+     * IsReadyToPay intent, e.g., a {@link PaymentIntentMetrics}. Without a listener, which is the
+     * default, the intents are built without any timing.
+     * @param listener The listener, or null to stop measuring.
+     */
+    public static void setIntentMetricsListener(@Nullable PaymentIntentMetricsListener listener) {
+        sIntentMetricsListener = listener;
+    }
+
+    @Nullable
+    /* package */ static PaymentIntentMetricsListener getIntentMetricsListener() {
+        return sIntentMetricsListener;
+    }
+
+    /* package */ static void checkNotEmpty(Map map, String name) {
         if (map == null || map.isEmpty()) {
             throw new IllegalArgumentException(name + " should not be null or empty.");
         }
     }
 
-    private static void checkStringNotEmpty(String value, String name) {
+    /* package */ static void checkStringNotEmpty(String value, String name) {
         if (TextUtils.isEmpty(value)) {
             throw new IllegalArgumentException(name + " should not be null or empty.");
         }
     }
-    private static void checkNotNull(Object value, String name) {
+
+    /* package */ static void checkNotNull(Object value, String name) {
         if (value == null) throw new IllegalArgumentException(name + " should not be null.");
     }
 
@@ -209,7 +317,8 @@ public class WebPaymentIntentHelper {
             String schemelessOrigin, String schemelessIframeOrigin,
             @Nullable byte[][] certificateChain, Map<String, PaymentMethodData> methodDataMap,
             PaymentItem total, @Nullable List<PaymentItem> displayItems,
-            @Nullable Map<String, PaymentDetailsModifier> modifiers) {
+            @Nullable Map<String, PaymentDetailsModifier> modifiers,
+            boolean includeDeprecatedExtras, @Nullable PaymentIntentBuildTrace trace) {
         // The following checks follow the order of the parameters.
         checkStringNotEmpty(id, "id");
         checkNotNull(merchantName, "merchantName");
@@ -224,9 +333,11 @@ public class WebPaymentIntentHelper {
 
         // displayItems is ok to be null, left unchecked here.
         // modifiers is ok to be null, left unchecked here.
+        if (trace != null) trace.endPhase(Phase.VALIDATION);
 
         return buildExtras(id, merchantName, schemelessOrigin, schemelessIframeOrigin,
-                certificateChain, methodDataMap, total, displayItems, modifiers);
+                certificateChain, methodDataMap, total, displayItems, modifiers,
+                includeDeprecatedExtras, trace);
     }
 
     // id, merchantName, total are ok to be null only for {@link #createIsReadyToPayIntent}.
@@ -234,11 +345,27 @@ public class WebPaymentIntentHelper {
             String schemelessOrigin, String schemelessIframeOrigin,
             @Nullable byte[][] certificateChain, Map<String, PaymentMethodData> methodDataMap,
             @Nullable PaymentItem total, @Nullable List<PaymentItem> displayItems,
-            @Nullable Map<String, PaymentDetailsModifier> modifiers) {
+            @Nullable Map<String, PaymentDetailsModifier> modifiers,
+            boolean includeDeprecatedExtras, @Nullable PaymentIntentBuildTrace trace) {
         Bundle extras = new Bundle();
+        addInvariantExtras(merchantName, schemelessOrigin, schemelessIframeOrigin,
+                certificateChain, methodDataMap, includeDeprecatedExtras, extras, trace);
+        addRequestExtras(id, total, displayItems,
+                PaymentDetailsModifierIndex.select(modifiers, methodDataMap.keySet()),
+                includeDeprecatedExtras, extras, trace);
+        return extras;
+    }
 
-        if (id != null) extras.putString(EXTRA_PAYMENT_REQUEST_ID, id);
-
+    /**
+     * Adds the extras that do not change within a checkout session, optionally with their
+     * deprecated copies. Used by {@link PayIntentTemplate} to build them only once. The trace, if
+     * any, times the phases of the build.
+     */
+    /* package */ static void addInvariantExtras(@Nullable String merchantName,
+            String schemelessOrigin, String schemelessIframeOrigin,
+            @Nullable byte[][] certificateChain, Map<String, PaymentMethodData> methodDataMap,
+            boolean includeDeprecatedExtras, Bundle extras,
+            @Nullable PaymentIntentBuildTrace trace) {
         if (merchantName != null) extras.putString(EXTRA_MERCHANT_NAME, merchantName);
 
         assert !TextUtils.isEmpty(schemelessOrigin);
@@ -249,10 +376,14 @@ public class WebPaymentIntentHelper {
 
         Parcelable[] serializedCertificateChain = null;
         if (certificateChain != null && certificateChain.length > 0) {
-            serializedCertificateChain = buildCertificateChain(certificateChain);
+            if (trace != null) trace.beginPhase();
+            // Shared by the top-level and deprecated extras, and by the intents of other apps.
+            serializedCertificateChain = CertificateChainCache.getInstance().get(certificateChain);
             extras.putParcelableArray(EXTRA_TOP_CERTIFICATE_CHAIN, serializedCertificateChain);
+            if (trace != null) trace.endPhase(Phase.CERTIFICATE_CHAIN);
         }
 
+        if (trace != null) trace.beginPhase();
         assert methodDataMap != null && !methodDataMap.isEmpty();
         extras.putStringArrayList(EXTRA_METHOD_NAMES, new ArrayList<>(methodDataMap.keySet()));
 
@@ -262,28 +393,69 @@ public class WebPaymentIntentHelper {
             methodDataBundle.putString(methodData.getKey(), methodData.getValue().stringifiedData);
         }
         extras.putParcelable(EXTRA_METHOD_DATA, methodDataBundle);
+        if (trace != null) trace.endPhase(Phase.METHOD_DATA);
 
-        if (modifiers != null) {
-            extras.putString(EXTRA_MODIFIERS, serializeModifiers(modifiers.values()));
-        }
+        if (!includeDeprecatedExtras) return;
+        addDeprecatedInvariantExtras(schemelessOrigin, schemelessIframeOrigin,
+                serializedCertificateChain, methodDataMap, methodDataBundle, extras);
+        if (trace != null) trace.endPhase(Phase.DEPRECATED_EXTRAS);
+    }
 
-        if (total != null) {
-            String serializedTotalAmount = serializeTotalAmount(total.amount);
-            extras.putString(EXTRA_TOTAL,
-                    serializedTotalAmount == null ? EMPTY_JSON_DATA : serializedTotalAmount);
+    /**
+     * Adds the extras that are specific to one PaymentRequest, optionally with their deprecated
+     * copies. id and total are ok to be null only for {@link #createIsReadyToPayIntent}. The
+     * modifiers are those selected for the app, see {@link PaymentDetailsModifierIndex}. The
+     * trace, if any, times the phases of the build.
+     */
+    /* package */ static void addRequestExtras(@Nullable String id, @Nullable PaymentItem total,
+            @Nullable List<PaymentItem> displayItems,
+            @Nullable Collection<PaymentDetailsModifier> modifiers,
+            boolean includeDeprecatedExtras, Bundle extras,
+            @Nullable PaymentIntentBuildTrace trace) {
+        if (!includeDeprecatedExtras) {
+            addCurrentRequestExtras(id, total, modifiers, extras, trace);
+            return;
         }
 
-        return addDeprecatedExtras(id, schemelessOrigin, schemelessIframeOrigin,
-                serializedCertificateChain, methodDataMap, methodDataBundle, total, displayItems,
-                extras);
+        if (id != null) extras.putString(EXTRA_PAYMENT_REQUEST_ID, id);
+
+        // Encodes the total and the deprecated details in one pass, and then the modifiers, which
+        // reuse the encoded total.
+        if (trace != null) trace.beginPhase();
+        PaymentJsonEncoder encoder = PaymentJsonEncoder.get();
+        encoder.encodeDetails(total, displayItems);
+        if (total != null) extras.putString(EXTRA_TOTAL, encoder.getTotalAmount());
+        if (trace != null) trace.endPhase(Phase.TOTAL_JSON);
+
+        encoder.encodeModifiers(total, modifiers);
+        if (modifiers != null) extras.putString(EXTRA_MODIFIERS, encoder.getModifiers());
+        if (trace != null) trace.endPhase(Phase.MODIFIERS_JSON);
+
+        addDeprecatedRequestExtras(id, encoder.getDeprecatedDetails(), extras);
+        if (trace != null) trace.endPhase(Phase.DEPRECATED_EXTRAS);
     }
 
-    private static Bundle addDeprecatedExtras(@Nullable String id, String schemelessOrigin,
-            String schemelessIframeOrigin, @Nullable Parcelable[] serializedCertificateChain,
-            Map<String, PaymentMethodData> methodDataMap, Bundle methodDataBundle,
-            @Nullable PaymentItem total, @Nullable List<PaymentItem> displayItems, Bundle extras) {
-        if (id != null) extras.putString(EXTRA_DEPRECATED_ID, id);
+    // The lean path for the apps that skip the deprecated extras, which does not encode the
+    // deprecated details at all.
+    private static void addCurrentRequestExtras(@Nullable String id, @Nullable PaymentItem total,
+            @Nullable Collection<PaymentDetailsModifier> modifiers, Bundle extras,
+            @Nullable PaymentIntentBuildTrace trace) {
+        if (id != null) extras.putString(EXTRA_PAYMENT_REQUEST_ID, id);
+
+        if (trace != null) trace.beginPhase();
+        PaymentJsonEncoder encoder = PaymentJsonEncoder.get();
+        encoder.encodeTotalAmount(total);
+        if (total != null) extras.putString(EXTRA_TOTAL, encoder.getTotalAmount());
+        if (trace != null) trace.endPhase(Phase.TOTAL_JSON);
+
+        encoder.encodeModifiers(total, modifiers);
+        if (modifiers != null) extras.putString(EXTRA_MODIFIERS, encoder.getModifiers());
+        if (trace != null) trace.endPhase(Phase.MODIFIERS_JSON);
+    }
 
+    private static void addDeprecatedInvariantExtras(String schemelessOrigin,
+            String schemelessIframeOrigin, @Nullable Parcelable[] serializedCertificateChain,
+            Map<String, PaymentMethodData> methodDataMap, Bundle methodDataBundle, Bundle extras) {
         extras.putString(EXTRA_DEPRECATED_ORIGIN, schemelessOrigin);
 
         extras.putString(EXTRA_DEPRECATED_IFRAME_ORIGIN, schemelessIframeOrigin);
@@ -301,134 +473,12 @@ public class WebPaymentIntentHelper {
                 firstMethodData == null ? EMPTY_JSON_DATA : firstMethodData.stringifiedData);
 
         extras.putParcelable(EXTRA_DEPRECATED_DATA_MAP, methodDataBundle);
-
-        String details = deprecatedSerializeDetails(total, displayItems);
-        extras.putString(EXTRA_DEPRECATED_DETAILS, details == null ? EMPTY_JSON_DATA : details);
-
-        return extras;
-    }
-
-    private static Parcelable[] buildCertificateChain(byte[][] certificateChain) {
-        Parcelable[] result = new Parcelable[certificateChain.length];
-        for (int i = 0; i < certificateChain.length; i++) {
-            Bundle bundle = new Bundle();
-            checkNotNull(certificateChain[i], "certificateChain[" + i + "]");
-            bundle.putByteArray(EXTRA_CERTIFICATE, certificateChain[i]);
-            result[i] = bundle;
-        }
-        return result;
     }
 
-    private static String deprecatedSerializeDetails(
-            @Nullable PaymentItem total, @Nullable List<PaymentItem> displayItems) {
-        StringWriter stringWriter = new StringWriter();
-        JsonWriter json = new JsonWriter(stringWriter);
-        try {
-            // details {{{
-            json.beginObject();
-
-            if (total != null) {
-                // total {{{
-                json.name("total");
-                serializeTotal(total, json);
-                // }}} total
-            }
-
-            // displayitems {{{
-            if (displayItems != null) {
-                json.name("displayItems").beginArray();
-                // Do not pass any display items to the payment app.
-                json.endArray();
-            }
-            // }}} displayItems
-
-            json.endObject();
-            // }}} details
-        } catch (IOException e) {
-            return null;
-        }
-
-        return stringWriter.toString();
-    }
-
-    private static String serializeTotalAmount(PaymentCurrencyAmount totalAmount) {
-        StringWriter stringWriter = new StringWriter();
-        JsonWriter json = new JsonWriter(stringWriter);
-        try {
-            // {{{
-            json.beginObject();
-            json.name("currency").value(totalAmount.currency);
-            json.name("value").value(totalAmount.value);
-            json.endObject();
-            // }}}
-        } catch (IOException e) {
-            return null;
-        }
-        return stringWriter.toString();
-    }
-
-    private static void serializeTotal(PaymentItem item, JsonWriter json) throws IOException {
-        // item {{{
-        json.beginObject();
-        // Sanitize the total name, because the payment app does not need it to complete the
-        // transaction. Matches the behavior of:
-        // https://w3c.github.io/payment-handler/#total-attribute
-        json.name("label").value("");
-
-        // amount {{{
-        json.name("amount").beginObject();
-        json.name("currency").value(item.amount.currency);
-        json.name("value").value(item.amount.value);
-        json.endObject();
-        // }}} amount
-
-        json.endObject();
-        // }}} item
-    }
-
-    private static String serializeModifiers(Collection<PaymentDetailsModifier> modifiers) {
-        StringWriter stringWriter = new StringWriter();
-        JsonWriter json = new JsonWriter(stringWriter);
-        try {
-            json.beginArray();
-            for (PaymentDetailsModifier modifier : modifiers) {
-                checkNotNull(modifier, "PaymentDetailsModifier");
-                serializeModifier(modifier, json);
-            }
-            json.endArray();
-        } catch (IOException e) {
-            return EMPTY_JSON_DATA;
-        }
-        return stringWriter.toString();
-    }
-
-    private static void serializeModifier(PaymentDetailsModifier modifier, JsonWriter json)
-            throws IOException {
-        // {{{
-        json.beginObject();
+    private static void addDeprecatedRequestExtras(
+            @Nullable String id, String serializedDetails, Bundle extras) {
+        if (id != null) extras.putString(EXTRA_DEPRECATED_ID, id);
 
-        // total {{{
-        if (modifier.total != null) {
-            json.name("total");
-            serializeTotal(modifier.total, json);
-        } else {
-            json.name("total").nullValue();
-        }
-        // }}} total
-
-        // TODO(https://crbug.com/754779): The supportedMethods field was already changed from array
-        // to string but we should keep backward-compatibility for now.
-        // supportedMethods {{{
-        json.name("supportedMethods").beginArray();
-        json.value(modifier.methodData.supportedMethod);
-        json.endArray();
-        // }}} supportedMethods
-
-        // data {{{
-        json.name("data").value(modifier.methodData.stringifiedData);
-        // }}}
-
-        json.endObject();
-        // }}}
+        extras.putString(EXTRA_DEPRECATED_DETAILS, serializedDetails);
     }
 }
@@ -4,6 +4,8 @@
 
 package org.chromium.components.payments.intent;
 
+import androidx.annotation.Nullable;
+
 /**
  * The types that corresponds to the types in org.chromium.payments.mojom. The fields of these types
  * are the subset of those in the mojom types. The subset is minimally selected based on the need of
@@ -23,9 +25,24 @@ public final class WebPaymentIntentHelperType {
     public static final class PaymentCurrencyAmount {
         public final String currency;
         public final String value;
+        /** The parsed amount, or null if the amount was created from strings. */
+        @Nullable
+        public final PaymentAmount parsedAmount;
         public PaymentCurrencyAmount(String currency, String value) {
             this.currency = currency;
             this.value = value;
+            this.parsedAmount = null;
+        }
+        /**
+         * Creates the amount of a total that was parsed once, so that the JSON encoder writes it
+         * from the fixed-point value and PaymentAmount.from() does not parse it again.
+         */
+        public PaymentCurrencyAmount(PaymentAmount amount) {
+            StringBuilder value = new StringBuilder(24);
+            amount.appendValue(value);
+            this.currency = amount.getCurrency().getCode();
+            this.value = value.toString();
+            this.parsedAmount = amount;
         }
     }
 
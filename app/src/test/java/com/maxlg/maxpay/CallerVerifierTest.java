@@ -0,0 +1,117 @@
+package com.maxlg.maxpay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.pm.PackageInfo;
+import android.content.pm.Signature;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowPackageManager;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Collections;
+
+/** Tests of {@link CallerVerifier}'s verdicts and of their cache. */
+@RunWith(RobolectricTestRunner.class)
+// The signatures of the packages are read from PackageInfo.signatures before Android P.
+@Config(sdk = 27)
+public class CallerVerifierTest {
+    private static final String BROWSER_PACKAGE = "com.example.browser";
+    private static final int BROWSER_UID = 10123;
+    private static final Signature TRUSTED_SIGNER = signer("trusted");
+    private static final Signature OTHER_SIGNER = signer("other");
+
+    private ShadowPackageManager mPackageManager;
+    private CallerVerifier mVerifier;
+
+    @Before
+    public void setUp() throws Exception {
+        mPackageManager = shadowOf(RuntimeEnvironment.application.getPackageManager());
+        mPackageManager.setPackagesForUid(BROWSER_UID, BROWSER_PACKAGE);
+        mVerifier = new CallerVerifier(RuntimeEnvironment.application,
+                Collections.singletonMap(BROWSER_PACKAGE,
+                        Collections.singleton(sha256Hex(TRUSTED_SIGNER.toByteArray()))));
+    }
+
+    private static Signature signer(String name) {
+        return new Signature(name.getBytes(Charset.forName("UTF-8")));
+    }
+
+    private static String sha256Hex(byte[] bytes) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private void installBrowser(Signature... signers) {
+        PackageInfo info = new PackageInfo();
+        info.packageName = BROWSER_PACKAGE;
+        info.signatures = signers;
+        mPackageManager.installPackage(info);
+    }
+
+    @Test
+    public void trustsTheAllowlistedSigner() {
+        installBrowser(TRUSTED_SIGNER);
+        assertTrue(mVerifier.isTrustedPackage(BROWSER_PACKAGE));
+        assertEquals(BROWSER_PACKAGE, mVerifier.getTrustedPackage(BROWSER_UID));
+    }
+
+    @Test
+    public void trustsItsOwnPackage() {
+        assertTrue(mVerifier.isTrustedPackage(RuntimeEnvironment.application.getPackageName()));
+    }
+
+    @Test
+    public void distrustsOtherSignersAndPackages() {
+        installBrowser(TRUSTED_SIGNER, OTHER_SIGNER);
+        assertFalse(mVerifier.isTrustedPackage(BROWSER_PACKAGE));
+        assertNull(mVerifier.getTrustedPackage(BROWSER_UID));
+        assertFalse(mVerifier.isTrustedPackage("com.example.unknown"));
+        assertFalse(mVerifier.isTrustedPackage(null));
+        assertNull(mVerifier.getTrustedPackage(/*uid=*/99999));
+    }
+
+    @Test
+    public void cachesTheVerdictsUntilInvalidated() {
+        installBrowser(TRUSTED_SIGNER);
+        assertEquals(BROWSER_PACKAGE, mVerifier.getTrustedPackage(BROWSER_UID));
+
+        installBrowser(OTHER_SIGNER);
+        assertEquals(BROWSER_PACKAGE, mVerifier.getTrustedPackage(BROWSER_UID));
+        assertTrue(mVerifier.isTrustedPackage(BROWSER_PACKAGE));
+
+        mVerifier.invalidate();
+        assertNull(mVerifier.getTrustedPackage(BROWSER_UID));
+        assertFalse(mVerifier.isTrustedPackage(BROWSER_PACKAGE));
+    }
+
+    @Test
+    public void doesNotCacheAVerdictComputedBeforeInvalidate() {
+        installBrowser(TRUSTED_SIGNER);
+        final int[] verifications = {0};
+        // The package is updated right after its first verification, before the verdict is cached.
+        mVerifier.setOnVerifiedForTesting(() -> {
+            if (verifications[0]++ > 0) return;
+            installBrowser(OTHER_SIGNER);
+            mVerifier.invalidate();
+        });
+
+        assertTrue(mVerifier.isTrustedPackage(BROWSER_PACKAGE));
+        assertFalse(mVerifier.isTrustedPackage(BROWSER_PACKAGE));
+        assertNull(mVerifier.getTrustedPackage(BROWSER_UID));
+    }
+}
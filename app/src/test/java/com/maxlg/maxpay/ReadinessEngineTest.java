@@ -0,0 +1,151 @@
+package com.maxlg.maxpay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Tests of {@link ReadinessEngine}'s decisions and of its cache. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ReadinessEngineTest {
+    private static final String METHOD = "https://maxpay.example/pay";
+    private static final String OTHER_METHOD = "https://other.example/pay";
+    private static final long TTL_MS = 1000;
+    // Long enough that no test reaches it.
+    private static final long BUDGET_MS = 60_000;
+    private static final long WAIT_SECONDS = 5;
+
+    private ReadinessEngine mEngine;
+
+    @After
+    public void tearDown() {
+        if (mEngine != null) mEngine.shutdown();
+    }
+
+    private ReadinessEngine createEngine(ReadinessRule... rules) {
+        mEngine = new ReadinessEngine(Arrays.asList(rules), TTL_MS, BUDGET_MS);
+        return mEngine;
+    }
+
+    private static ReadinessQuery query(String... methodNames) {
+        return new ReadinessQuery("com.example.browser", "merchant.example", "merchant.example",
+                Arrays.asList(methodNames), /*methodData=*/null);
+    }
+
+    private static boolean decide(ReadinessEngine engine, ReadinessQuery query)
+            throws InterruptedException {
+        final CountDownLatch decided = new CountDownLatch(1);
+        final boolean[] isReady = {false};
+        engine.decide(query, (result) -> {
+            isReady[0] = result;
+            decided.countDown();
+        });
+        assertTrue(decided.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        return isReady[0];
+    }
+
+    @Test
+    public void isReadyIfAnyMethodIsReady() throws Exception {
+        ReadinessEngine engine =
+                createEngine(ReadinessRules.supportedMethods(Collections.singletonList(METHOD)));
+        assertTrue(decide(engine, query(OTHER_METHOD, METHOD)));
+        assertFalse(decide(engine, query(OTHER_METHOD)));
+        assertFalse(decide(engine, query()));
+    }
+
+    @Test
+    public void isNotReadyIfARuleThrows() throws Exception {
+        ReadinessEngine engine = createEngine((query) -> {
+            throw new IllegalStateException("Injected.");
+        });
+        assertFalse(decide(engine, query(METHOD)));
+    }
+
+    @Test
+    public void cachesTheDecisionsForTheirTimeToLive() throws Exception {
+        final AtomicInteger evaluations = new AtomicInteger();
+        ReadinessEngine engine = createEngine((query) -> {
+            evaluations.incrementAndGet();
+            return true;
+        });
+        assertTrue(decide(engine, query(METHOD)));
+        // A cached decision is delivered synchronously.
+        final boolean[] isDecided = {false};
+        engine.decide(query(METHOD), (isReady) -> isDecided[0] = isReady);
+        assertTrue(isDecided[0]);
+        assertEquals(1, evaluations.get());
+
+        shadowOf(Looper.getMainLooper()).idleFor(TTL_MS, TimeUnit.MILLISECONDS);
+        assertTrue(decide(engine, query(METHOD)));
+        assertEquals(2, evaluations.get());
+    }
+
+    @Test
+    public void clearCacheReevaluatesTheRules() throws Exception {
+        final AtomicBoolean hasUsableInstrument = new AtomicBoolean(true);
+        ReadinessEngine engine = createEngine((query) -> hasUsableInstrument.get());
+        assertTrue(decide(engine, query(METHOD)));
+
+        hasUsableInstrument.set(false);
+        assertTrue(decide(engine, query(METHOD)));
+        engine.clearCache();
+        assertFalse(decide(engine, query(METHOD)));
+    }
+
+    @Test
+    public void doesNotCacheADecisionThatStartedBeforeClearCache() throws Exception {
+        final AtomicBoolean hasUsableInstrument = new AtomicBoolean(true);
+        final AtomicInteger evaluations = new AtomicInteger();
+        final CountDownLatch isEvaluating = new CountDownLatch(1);
+        final CountDownLatch mayFinish = new CountDownLatch(1);
+        ReadinessEngine engine = createEngine((query) -> {
+            boolean isReady = hasUsableInstrument.get();
+            if (evaluations.incrementAndGet() == 1) {
+                // The first evaluation reads the account, then waits for it to change.
+                isEvaluating.countDown();
+                try {
+                    mayFinish.await(WAIT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return isReady;
+        });
+
+        final CountDownLatch decided = new CountDownLatch(1);
+        final boolean[] staleDecision = {false};
+        engine.decide(query(METHOD), (isReady) -> {
+            staleDecision[0] = isReady;
+            decided.countDown();
+        });
+        assertTrue(isEvaluating.await(WAIT_SECONDS, TimeUnit.SECONDS));
+        hasUsableInstrument.set(false);
+        engine.clearCache();
+        mayFinish.countDown();
+        assertTrue(decided.await(WAIT_SECONDS, TimeUnit.SECONDS));
+
+        // The query in flight is answered as it was evaluated, but the answer is not cached.
+        assertTrue(staleDecision[0]);
+        assertFalse(decide(engine, query(METHOD)));
+        assertEquals(2, evaluations.get());
+    }
+}
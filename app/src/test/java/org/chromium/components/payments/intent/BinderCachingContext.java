@@ -0,0 +1,142 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.RemoteException;
+
+import androidx.annotation.Nullable;
+
+import org.chromium.IsReadyToPayService;
+import org.chromium.IsReadyToPayServiceCallback;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * A context that binds services with the binder caching of the framework: the service's onBind()
+ * runs only for the first binding of each {@link Intent#filterEquals} intent, and every later
+ * binding of an equal intent gets the same binder, whatever its extras, until all of them are
+ * unbound. It records the intents that onBind() saw, so that the tests can tell which extras a
+ * binder was built for.
+ */
+/* package */ final class BinderCachingContext extends ContextWrapper {
+    /** Stands in for the service's onBind(). */
+    /* package */ interface Service {
+        /**
+         * @param intent The intent of the first binding with a new filter.
+         * @return The binder of the service for that intent, or null to fail the binding.
+         */
+        @Nullable
+        IBinder onBind(Intent intent);
+    }
+
+    private final Service mService;
+    private final Handler mHandler;
+    private final Map<Intent.FilterComparison, IBinder> mBinders = new HashMap<>();
+    private final Map<ServiceConnection, Intent.FilterComparison> mConnections =
+            new IdentityHashMap<>();
+    private final List<Intent> mOnBindIntents = new ArrayList<>();
+
+    /**
+     * @param base The context that everything but the service bindings is delegated to.
+     * @param service The service that every intent binds to.
+     * @param handler The handler of the main thread, which delivers the connections.
+     */
+    /* package */ BinderCachingContext(Context base, Service service, Handler handler) {
+        super(base);
+        mService = service;
+        mHandler = handler;
+    }
+
+    /**
+     * @param isReadyToPay The response of the service.
+     * @return An IsReadyToPay service that always gives the same response synchronously.
+     */
+    /* package */ static IsReadyToPayService.Stub respondingWith(final boolean isReadyToPay) {
+        return new IsReadyToPayService.Stub() {
+            @Override
+            public void isReadyToPay(IsReadyToPayServiceCallback callback)
+                    throws RemoteException {
+                callback.handleIsReadyToPay(isReadyToPay);
+            }
+        };
+    }
+
+    /**
+     * @param readyMethodName The payment method that the service is ready to pay with.
+     * @return An IsReadyToPay service that answers about the method data of the intent that it was
+     *         bound with, as the original protocol requires.
+     */
+    /* package */ static Service readyToPayWith(final String readyMethodName) {
+        return (intent) -> {
+            Bundle methodData = intent.getBundleExtra(WebPaymentIntentHelper.EXTRA_METHOD_DATA);
+            return respondingWith(methodData != null && methodData.containsKey(readyMethodName));
+        };
+    }
+
+    @Override
+    public boolean bindService(Intent service, ServiceConnection conn, int flags) {
+        return bind(service, conn, /*executor=*/null);
+    }
+
+    @Override
+    public boolean bindService(
+            Intent service, int flags, Executor executor, ServiceConnection conn) {
+        return bind(service, conn, executor);
+    }
+
+    @Override
+    public void unbindService(ServiceConnection conn) {
+        Intent.FilterComparison filter = mConnections.remove(conn);
+        if (filter == null) throw new IllegalArgumentException("Service not registered: " + conn);
+        // The service is unbound, so the next binding runs onBind() again.
+        if (!mConnections.containsValue(filter)) mBinders.remove(filter);
+    }
+
+    /** @return The intents that onBind() was called with, in order. */
+    /* package */ List<Intent> getOnBindIntents() {
+        return mOnBindIntents;
+    }
+
+    /** @return The number of connections that are still bound. */
+    /* package */ int getLiveBindingCount() {
+        return mConnections.size();
+    }
+
+    private boolean bind(
+            final Intent intent, final ServiceConnection conn, @Nullable Executor executor) {
+        final Intent.FilterComparison filter = new Intent.FilterComparison(new Intent(intent));
+        IBinder binder = mBinders.get(filter);
+        if (binder == null) {
+            mOnBindIntents.add(new Intent(intent));
+            binder = mService.onBind(new Intent(intent));
+            if (binder == null) return false;
+            mBinders.put(filter, binder);
+        }
+        mConnections.put(conn, filter);
+        final IBinder connected = binder;
+        mHandler.post(() -> {
+            if (mConnections.get(conn) != filter) return;
+            Runnable callback = () -> conn.onServiceConnected(intent.getComponent(), connected);
+            if (executor == null) {
+                callback.run();
+            } else {
+                executor.execute(callback);
+            }
+        });
+        return true;
+    }
+}
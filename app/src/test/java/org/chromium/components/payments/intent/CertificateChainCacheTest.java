@@ -0,0 +1,114 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import android.os.Bundle;
+import android.os.Parcelable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Tests of {@link CertificateChainCache}'s sharing, eviction and release of the chains. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class CertificateChainCacheTest {
+    private static byte[] certificate(Parcelable[] chain, int index) {
+        return ((Bundle) chain[index]).getByteArray(WebPaymentIntentHelper.EXTRA_CERTIFICATE);
+    }
+
+    @Test
+    public void sharesTheChainOfEqualCertificates() {
+        CertificateChainCache cache = new CertificateChainCache(CertificateChainCache.MAX_ENTRIES);
+        Parcelable[] chain = cache.get(new byte[][] {{1, 2, 3}, {4, 5}});
+        assertEquals(2, chain.length);
+        assertArrayEquals(new byte[] {1, 2, 3}, certificate(chain, 0));
+        assertArrayEquals(new byte[] {4, 5}, certificate(chain, 1));
+
+        Parcelable[] sameChain = cache.get(new byte[][] {{1, 2, 3}, {4, 5}});
+        assertEquals(1, cache.size());
+        assertSame(chain, sameChain);
+    }
+
+    @Test
+    public void copiesTheCertificates() {
+        CertificateChainCache cache = new CertificateChainCache(CertificateChainCache.MAX_ENTRIES);
+        byte[][] certificateChain = {{1, 2, 3}};
+        Parcelable[] chain = cache.get(certificateChain);
+        certificateChain[0][0] = 9;
+
+        Parcelable[] modifiedChain = cache.get(certificateChain);
+        assertEquals(2, cache.size());
+        assertArrayEquals(new byte[] {1, 2, 3}, certificate(chain, 0));
+        assertNotSame(chain, modifiedChain);
+    }
+
+    @Test
+    public void distinguishesDifferentSplitsOfTheSameBytes() {
+        CertificateChainCache cache = new CertificateChainCache(CertificateChainCache.MAX_ENTRIES);
+        Parcelable[] chain = cache.get(new byte[][] {{1, 2}, {3}});
+        Parcelable[] otherChain = cache.get(new byte[][] {{1}, {2, 3}});
+
+        assertEquals(2, cache.size());
+        assertNotSame(chain, otherChain);
+        assertArrayEquals(new byte[] {1}, certificate(otherChain, 0));
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedChain() {
+        CertificateChainCache cache = new CertificateChainCache(/*maxEntries=*/2);
+        Parcelable[] a = cache.get(new byte[][] {{1}});
+        Parcelable[] b = cache.get(new byte[][] {{2}});
+        assertSame(a, cache.get(new byte[][] {{1}}));
+        cache.get(new byte[][] {{3}});
+
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get(new byte[][] {{1}}));
+        assertNotSame(b, cache.get(new byte[][] {{2}}));
+    }
+
+    @Test
+    public void releasesTheChainsThatAreNoLongerReferenced() throws Exception {
+        CertificateChainCache cache = new CertificateChainCache(CertificateChainCache.MAX_ENTRIES);
+        cache.get(new byte[][] {{1, 2, 3}});
+        Parcelable[] kept = cache.get(new byte[][] {{4, 5}});
+
+        for (int i = 0; i < 100 && cache.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertEquals(1, cache.size());
+        assertSame(kept, cache.get(new byte[][] {{4, 5}}));
+    }
+
+    @Test
+    public void clearRemovesEveryChain() {
+        CertificateChainCache cache = new CertificateChainCache(CertificateChainCache.MAX_ENTRIES);
+        Parcelable[] chain = cache.get(new byte[][] {{1}});
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertNotSame(chain, cache.get(new byte[][] {{1}}));
+    }
+
+    @Test
+    public void rejectsNullCertificates() {
+        CertificateChainCache cache = new CertificateChainCache(CertificateChainCache.MAX_ENTRIES);
+        try {
+            cache.get(new byte[][] {{1}, null});
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        assertEquals(0, cache.size());
+    }
+}
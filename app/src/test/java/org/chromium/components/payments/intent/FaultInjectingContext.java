@@ -0,0 +1,143 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * A context that binds every service to a {@link FaultInjectingIsReadyToPayService}, with the
+ * semantics of the framework: the connection is delivered asynchronously, a death disconnects all
+ * of the bindings and reconnects them once the service restarts, and unbinding a connection that is
+ * not bound throws. It counts the bindings, so that the leaked ones can be detected.
+ */
+/* package */ final class FaultInjectingContext extends ContextWrapper {
+    private final FaultInjectingIsReadyToPayService mService;
+    private final Handler mHandler;
+    private final Map<ServiceConnection, Binding> mBindings = new IdentityHashMap<>();
+
+    private int mBindCount;
+    private int mUnregisteredUnbindCount;
+
+    /** One binding of a connection to the service. */
+    private final class Binding {
+        private final ComponentName mComponent;
+        private final ServiceConnection mConnection;
+        @Nullable
+        private final Executor mExecutor;
+        private boolean mIsConnected;
+
+        private Binding(ComponentName component, ServiceConnection connection,
+                @Nullable Executor executor) {
+            mComponent = component;
+            mConnection = connection;
+            mExecutor = executor;
+        }
+
+        private boolean isBound() {
+            return mBindings.get(mConnection) == this;
+        }
+
+        private void connect() {
+            if (!isBound() || mIsConnected) return;
+            mIsConnected = true;
+            deliver(() -> mConnection.onServiceConnected(mComponent, mService));
+        }
+
+        private void disconnect() {
+            if (!isBound() || !mIsConnected) return;
+            mIsConnected = false;
+            deliver(() -> mConnection.onServiceDisconnected(mComponent));
+            // "This binding to the service will remain active, and you will receive a call to
+            // onServiceConnected(ComponentName, IBinder) when the Service is next running."
+            mHandler.postDelayed(this::connect, mService.sampleConnectDelayMs());
+        }
+
+        private void deliver(Runnable callback) {
+            if (mExecutor == null) {
+                callback.run();
+            } else {
+                mExecutor.execute(callback);
+            }
+        }
+    }
+
+    /**
+     * @param base The context that everything but the service bindings is delegated to.
+     * @param service The service that every intent binds to.
+     * @param handler The handler of the main thread, which delivers the connections.
+     */
+    /* package */ FaultInjectingContext(
+            Context base, FaultInjectingIsReadyToPayService service, Handler handler) {
+        super(base);
+        mService = service;
+        mHandler = handler;
+        mService.setDeathListener(this::onServiceDied);
+    }
+
+    @Override
+    public boolean bindService(Intent service, ServiceConnection conn, int flags) {
+        return bind(service, conn, /*executor=*/null);
+    }
+
+    @Override
+    public boolean bindService(
+            Intent service, int flags, Executor executor, ServiceConnection conn) {
+        return bind(service, conn, executor);
+    }
+
+    @Override
+    public void unbindService(ServiceConnection conn) {
+        if (mBindings.remove(conn) == null) {
+            mUnregisteredUnbindCount++;
+            throw new IllegalArgumentException("Service not registered: " + conn);
+        }
+    }
+
+    /** @return The number of bindService() calls that bound the service. */
+    /* package */ int getBindCount() {
+        return mBindCount;
+    }
+
+    /** @return The number of connections that are still bound. */
+    /* package */ int getLiveBindingCount() {
+        return mBindings.size();
+    }
+
+    /** @return The number of unbindService() calls for connections that were not bound. */
+    /* package */ int getUnregisteredUnbindCount() {
+        return mUnregisteredUnbindCount;
+    }
+
+    private boolean bind(Intent service, ServiceConnection conn, @Nullable Executor executor) {
+        if (mService.shouldThrowOnBind()) {
+            throw new SecurityException("Injected SecurityException.");
+        }
+        if (mService.shouldFailBind()) return false;
+        mBindCount++;
+        final Binding binding = new Binding(service.getComponent(), conn, executor);
+        mBindings.put(conn, binding);
+        mHandler.postDelayed(binding::connect, mService.sampleConnectDelayMs());
+        return true;
+    }
+
+    private void onServiceDied() {
+        // The connections may unbind re-entrantly.
+        List<Binding> bindings = new ArrayList<>(mBindings.values());
+        for (Binding binding : bindings) binding.disconnect();
+    }
+}
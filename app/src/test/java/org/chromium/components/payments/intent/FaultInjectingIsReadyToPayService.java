@@ -0,0 +1,226 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.os.Handler;
+import android.os.RemoteException;
+import android.os.SystemClock;
+
+import org.chromium.IsReadyToPayService;
+import org.chromium.IsReadyToPayServiceCallback;
+
+import java.util.Random;
+
+/**
+ * A stand-in for a payment app's IsReadyToPay service that injects the faults of a real one:
+ * slow connections and responses, dropped and duplicate callbacks, exceptions, deaths of its
+ * process in the middle of a query, and bind failures. It is bound through {@link
+ * FaultInjectingContext}, and all of its randomness comes from a seed, so that a failing run can
+ * be replayed.
+ */
+/* package */ final class FaultInjectingIsReadyToPayService extends IsReadyToPayService.Stub {
+    /** A distribution of latencies. */
+    /* package */ interface Latency {
+        /** @return A latency in milliseconds, sampled with the given random. */
+        long sampleMs(Random random);
+    }
+
+    /** Receives the deaths of the service's process. */
+    /* package */ interface DeathListener {
+        /** Invoked when the process dies. The service restarts after the restart delay. */
+        void onServiceDied();
+    }
+
+    /** The faults to inject. The probabilities are per call. */
+    /* package */ static final class Faults {
+        private Latency mConnectLatency = fixed(0);
+        private Latency mResponseLatency = fixed(0);
+        private double mDropProbability;
+        private double mDuplicateProbability;
+        private double mExceptionProbability;
+        private double mDeathProbability;
+        private long mRestartDelayMs = 100;
+        private double mSecurityExceptionProbability;
+        private double mBindFailureProbability;
+
+        /** The latency between bindService() and onServiceConnected(). */
+        /* package */ Faults setConnectLatency(Latency latency) {
+            mConnectLatency = latency;
+            return this;
+        }
+
+        /** The latency between isReadyToPay() and handleIsReadyToPay(). */
+        /* package */ Faults setResponseLatency(Latency latency) {
+            mResponseLatency = latency;
+            return this;
+        }
+
+        /** The probability that a query is never answered. */
+        /* package */ Faults setDropProbability(double probability) {
+            mDropProbability = probability;
+            return this;
+        }
+
+        /** The probability that a query is answered twice. */
+        /* package */ Faults setDuplicateProbability(double probability) {
+            mDuplicateProbability = probability;
+            return this;
+        }
+
+        /** The probability that isReadyToPay() throws. */
+        /* package */ Faults setExceptionProbability(double probability) {
+            mExceptionProbability = probability;
+            return this;
+        }
+
+        /**
+         * The probability that the process dies before it answers a query, which disconnects all
+         * of its clients.
+         */
+        /* package */ Faults setDeathProbability(double probability) {
+            mDeathProbability = probability;
+            return this;
+        }
+
+        /** The time that the process takes to restart after a death. */
+        /* package */ Faults setRestartDelayMs(long restartDelayMs) {
+            mRestartDelayMs = restartDelayMs;
+            return this;
+        }
+
+        /** The probability that bindService() throws SecurityException. */
+        /* package */ Faults setSecurityExceptionProbability(double probability) {
+            mSecurityExceptionProbability = probability;
+            return this;
+        }
+
+        /** The probability that bindService() returns false. */
+        /* package */ Faults setBindFailureProbability(double probability) {
+            mBindFailureProbability = probability;
+            return this;
+        }
+    }
+
+    private final Faults mFaults;
+    private final Handler mHandler;
+    private final Random mRandom;
+    private final boolean mIsReadyToPay;
+
+    private DeathListener mDeathListener;
+    // Incremented on every death, so that the responses of a dead process are never delivered.
+    private int mGeneration;
+    private long mRestartedAtMs;
+    private int mQueryCount;
+    private int mDeathCount;
+
+    /** @return A latency that is always the given one. */
+    /* package */ static Latency fixed(final long ms) {
+        return (random) -> ms;
+    }
+
+    /** @return A latency that is uniformly distributed between the bounds, inclusive. */
+    /* package */ static Latency uniform(final long minMs, final long maxMs) {
+        assert minMs <= maxMs;
+        return (random) -> minMs + (long) (random.nextDouble() * (maxMs - minMs + 1));
+    }
+
+    /**
+     * @param medianMs The median latency.
+     * @param sigma The standard deviation of the latency's logarithm. The larger, the longer the
+     *         tail, e.g., 1.0 puts the 99th percentile at about 10 times the median.
+     * @return A log-normally distributed latency, the usual shape of a service's latencies.
+     */
+    /* package */ static Latency logNormal(final long medianMs, final double sigma) {
+        return (random) -> Math.round(medianMs * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    /**
+     * @param faults The faults to inject.
+     * @param handler The handler of the thread that the service runs on.
+     * @param seed The seed of all of the random choices.
+     * @param isReadyToPay The response of the service.
+     */
+    /* package */ FaultInjectingIsReadyToPayService(
+            Faults faults, Handler handler, long seed, boolean isReadyToPay) {
+        mFaults = faults;
+        mHandler = handler;
+        mRandom = new Random(seed);
+        mIsReadyToPay = isReadyToPay;
+    }
+
+    /* package */ void setDeathListener(DeathListener deathListener) {
+        mDeathListener = deathListener;
+    }
+
+    /* package */ Faults getFaults() {
+        return mFaults;
+    }
+
+    /* package */ boolean roll(double probability) {
+        return probability > 0 && mRandom.nextDouble() < probability;
+    }
+
+    /** @return The delay before a new binding is connected, including a restart in progress. */
+    /* package */ long sampleConnectDelayMs() {
+        long restartRemainingMs = Math.max(0, mRestartedAtMs - SystemClock.uptimeMillis());
+        return restartRemainingMs + Math.max(0, mFaults.mConnectLatency.sampleMs(mRandom));
+    }
+
+    /** @return Whether bindService() should throw SecurityException. */
+    /* package */ boolean shouldThrowOnBind() {
+        return roll(mFaults.mSecurityExceptionProbability);
+    }
+
+    /** @return Whether bindService() should return false. */
+    /* package */ boolean shouldFailBind() {
+        return roll(mFaults.mBindFailureProbability);
+    }
+
+    /* package */ int getQueryCount() {
+        return mQueryCount;
+    }
+
+    /* package */ int getDeathCount() {
+        return mDeathCount;
+    }
+
+    // IsReadyToPayService.Stub:
+    @Override
+    public void isReadyToPay(final IsReadyToPayServiceCallback callback) throws RemoteException {
+        mQueryCount++;
+        if (roll(mFaults.mExceptionProbability)) {
+            throw new IllegalStateException("Injected exception.");
+        }
+        long responseDelayMs = Math.max(0, mFaults.mResponseLatency.sampleMs(mRandom));
+        if (roll(mFaults.mDeathProbability)) {
+            mHandler.postDelayed(this::die, responseDelayMs / 2);
+            return;
+        }
+        if (roll(mFaults.mDropProbability)) return;
+        final int generation = mGeneration;
+        mHandler.postDelayed(() -> respond(callback, generation), responseDelayMs);
+        if (roll(mFaults.mDuplicateProbability)) {
+            long duplicateDelayMs = Math.max(0, mFaults.mResponseLatency.sampleMs(mRandom));
+            mHandler.postDelayed(
+                    () -> respond(callback, generation), responseDelayMs + duplicateDelayMs);
+        }
+    }
+
+    private void respond(IsReadyToPayServiceCallback callback, int generation) {
+        if (generation != mGeneration) return;
+        try {
+            callback.handleIsReadyToPay(mIsReadyToPay);
+        } catch (RemoteException e) {
+            // Not thrown when called locally.
+        }
+    }
+
+    private void die() {
+        mGeneration++;
+        mDeathCount++;
+        mRestartedAtMs = SystemClock.uptimeMillis() + mFaults.mRestartDelayMs;
+        if (mDeathListener != null) mDeathListener.onServiceDied();
+    }
+}
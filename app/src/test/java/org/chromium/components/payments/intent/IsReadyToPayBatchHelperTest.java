@@ -0,0 +1,123 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+
+import org.chromium.IsReadyToPayServiceV2;
+import org.chromium.IsReadyToPayServiceV2Callback;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Tests of {@link IsReadyToPayBatchHelper} against the binder caching of the framework. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class IsReadyToPayBatchHelperTest {
+    private static final String READY_METHOD = "https://ready.example/pay";
+    private static final String OTHER_METHOD = "https://other.example/pay";
+
+    /** The result of one batch. */
+    private static final class Result implements IsReadyToPayBatchHelper.ResultHandler {
+        private int mResponseCount;
+        private boolean[] mIsReadyToPay;
+
+        @Override
+        public void onIsReadyToPayBatchResponse(boolean[] isReadyToPay) {
+            mResponseCount++;
+            mIsReadyToPay = isReadyToPay;
+        }
+
+        @Override
+        public void onIsReadyToPayBatchError() {
+            mResponseCount++;
+        }
+    }
+
+    private static Intent createIsReadyToPayIntent(String methodName) {
+        Map<String, PaymentMethodData> methodDataMap = new HashMap<>();
+        methodDataMap.put(methodName, new PaymentMethodData(methodName, "{}"));
+        return WebPaymentIntentHelper.createIsReadyToPayIntent("com.example.app",
+                "com.example.app.IsReadyToPayService", "merchant.example", "merchant.example",
+                /*certificateChain=*/null, methodDataMap);
+    }
+
+    private static Result runBatch(BinderCachingContext context, String... methodNames) {
+        Intent[] intents = new Intent[methodNames.length];
+        for (int i = 0; i < methodNames.length; i++) {
+            intents[i] = createIsReadyToPayIntent(methodNames[i]);
+        }
+        Result result = new Result();
+        new IsReadyToPayBatchHelper(context, Arrays.asList(intents), result);
+        shadowOf(Looper.getMainLooper()).idle();
+        return result;
+    }
+
+    @Test
+    public void fallsBackToOneAnswerPerTupleFromAV1Service() {
+        BinderCachingContext context = new BinderCachingContext(RuntimeEnvironment.application,
+                BinderCachingContext.readyToPayWith(READY_METHOD),
+                new Handler(Looper.getMainLooper()));
+        Result result = runBatch(context, READY_METHOD, OTHER_METHOD, READY_METHOD, OTHER_METHOD);
+
+        assertEquals(1, result.mResponseCount);
+        assertNotNull(result.mIsReadyToPay);
+        assertArrayEquals(new boolean[] {true, false, true, false}, result.mIsReadyToPay);
+        // The batch binding, then one binding per distinct tuple.
+        List<Intent> onBindIntents = context.getOnBindIntents();
+        assertEquals(3, onBindIntents.size());
+        assertEquals(WebPaymentIntentHelper.ACTION_IS_READY_TO_PAY_V2,
+                onBindIntents.get(0).getAction());
+        assertEquals(0, context.getLiveBindingCount());
+    }
+
+    @Test
+    public void sendsEveryTupleToAV2ServiceInOneCall() {
+        final int[] batchCount = {0};
+        BinderCachingContext context = new BinderCachingContext(RuntimeEnvironment.application,
+                (intent) -> new IsReadyToPayServiceV2.Stub() {
+                    @Override
+                    public void isReadyToPayBatch(Bundle[] queries,
+                            IsReadyToPayServiceV2Callback callback) throws RemoteException {
+                        batchCount[0]++;
+                        boolean[] isReadyToPay = new boolean[queries.length];
+                        for (int i = 0; i < queries.length; i++) {
+                            Bundle methodData =
+                                    queries[i].getBundle(WebPaymentIntentHelper.EXTRA_METHOD_DATA);
+                            isReadyToPay[i] = methodData.containsKey(READY_METHOD);
+                        }
+                        callback.handleIsReadyToPayBatch(isReadyToPay);
+                    }
+                },
+                new Handler(Looper.getMainLooper()));
+        Result result = runBatch(context, OTHER_METHOD, READY_METHOD);
+
+        assertEquals(1, result.mResponseCount);
+        assertArrayEquals(new boolean[] {false, true}, result.mIsReadyToPay);
+        assertEquals(1, batchCount[0]);
+        assertEquals(1, context.getOnBindIntents().size());
+        assertEquals(0, context.getLiveBindingCount());
+    }
+}
@@ -0,0 +1,123 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.chromium.components.payments.intent.IsReadyToPayMetricsListener.Outcome;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/** Local unit tests for {@link IsReadyToPayFuture}. */
+public class IsReadyToPayFutureTest {
+    private static final IsReadyToPayResult READY = IsReadyToPayResult.forOutcome(Outcome.READY);
+    private static final IsReadyToPayResult NOT_READY =
+            IsReadyToPayResult.forOutcome(Outcome.NOT_READY);
+    private static final IsReadyToPayResult TIMEOUT =
+            IsReadyToPayResult.forOutcome(Outcome.READY_TO_PAY_TIMEOUT);
+
+    @Test
+    public void completesOnlyOnce() throws Exception {
+        IsReadyToPayFuture future = new IsReadyToPayFuture();
+        assertFalse(future.isDone());
+        assertNull(future.getNow());
+
+        assertTrue(future.complete(NOT_READY));
+        assertFalse(future.complete(READY));
+        assertFalse(future.cancel());
+        assertSame(NOT_READY, future.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void deliversCallbacksThroughTheExecutor() {
+        IsReadyToPayFuture future = new IsReadyToPayFuture();
+        final int[] executions = {0};
+        final IsReadyToPayResult[] received = {null};
+        future.addCallback((task) -> {
+            executions[0]++;
+            task.run();
+        }, (result) -> received[0] = result);
+        assertEquals(0, executions[0]);
+
+        future.complete(READY);
+        assertEquals(1, executions[0]);
+        assertSame(READY, received[0]);
+    }
+
+    @Test
+    public void anyReadyCompletesAtTheFirstReadyAndCancelsTheRest() {
+        IsReadyToPayFuture first = new IsReadyToPayFuture();
+        IsReadyToPayFuture second = new IsReadyToPayFuture();
+        IsReadyToPayFuture third = new IsReadyToPayFuture();
+        IsReadyToPayFuture combined =
+                IsReadyToPayFuture.anyReady(Arrays.asList(first, second, third));
+
+        first.complete(NOT_READY);
+        assertFalse(combined.isDone());
+        second.complete(READY);
+        assertSame(READY, combined.getNow());
+        assertEquals(Outcome.CANCELLED, third.getNow().getOutcome());
+    }
+
+    @Test
+    public void anyReadyPrefersNotReadyOverErrors() {
+        IsReadyToPayFuture first = new IsReadyToPayFuture();
+        IsReadyToPayFuture second = new IsReadyToPayFuture();
+        IsReadyToPayFuture combined = IsReadyToPayFuture.anyReady(Arrays.asList(first, second));
+
+        first.complete(TIMEOUT);
+        second.complete(NOT_READY);
+        assertSame(NOT_READY, combined.getNow());
+    }
+
+    @Test
+    public void allReadyFailsAtTheFirstError() {
+        IsReadyToPayFuture first = new IsReadyToPayFuture();
+        IsReadyToPayFuture second = new IsReadyToPayFuture();
+        IsReadyToPayFuture combined = IsReadyToPayFuture.allReady(Arrays.asList(first, second));
+
+        first.complete(TIMEOUT);
+        assertSame(TIMEOUT, combined.getNow());
+        assertTrue(second.getNow().isError());
+
+        IsReadyToPayFuture third = new IsReadyToPayFuture();
+        IsReadyToPayFuture fourth = new IsReadyToPayFuture();
+        combined = IsReadyToPayFuture.allReady(Arrays.asList(third, fourth));
+        third.complete(READY);
+        fourth.complete(READY);
+        assertSame(READY, combined.getNow());
+    }
+
+    @Test
+    public void thenComposeChainsAndCancelsBothQueries() {
+        IsReadyToPayFuture first = new IsReadyToPayFuture();
+        final IsReadyToPayFuture retry = new IsReadyToPayFuture();
+        IsReadyToPayFuture chained =
+                first.thenCompose((result) -> result.isError() ? retry : first);
+
+        first.complete(TIMEOUT);
+        assertFalse(chained.isDone());
+        assertTrue(chained.cancel());
+        assertEquals(Outcome.CANCELLED, retry.getNow().getOutcome());
+    }
+
+    @Test
+    public void cancellingACombinedFutureCancelsItsInputs() {
+        IsReadyToPayFuture first = new IsReadyToPayFuture();
+        final boolean[] isQueryStopped = {false};
+        first.setCanceller(() -> isQueryStopped[0] = true);
+        IsReadyToPayFuture combined = IsReadyToPayFuture.anyReady(Arrays.asList(first));
+
+        assertTrue(combined.cancel());
+        assertTrue(first.getNow().isError());
+        assertTrue(isQueryStopped[0]);
+    }
+}
@@ -0,0 +1,182 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.chromium.components.payments.intent.IsReadyToPayMetricsListener.Outcome;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives thousands of concurrent {@link IsReadyToPayServiceHelper}s against a {@link
+ * FaultInjectingContext} on the paused main looper of Robolectric, whose clock only advances when
+ * the harness idles it, and reports their tail latency, their leaked bindings and their violations
+ * of the exactly-once delivery of the result.
+ */
+/* package */ final class IsReadyToPayLoadHarness {
+    // The granularity of the simulated clock.
+    private static final long STEP_MS = 5;
+    // How long the harness keeps running after the last result, to catch late deliveries.
+    private static final long SETTLE_MS = 10_000;
+
+    /** The results of a run. */
+    /* package */ static final class Report {
+        /** The number of queries. */
+        /* package */ final int queries;
+        /** The latencies from the start of a query to its first result, in milliseconds. */
+        /* package */ final long p50LatencyMs;
+        /* package */ final long p99LatencyMs;
+        /* package */ final long p999LatencyMs;
+        /* package */ final long maxLatencyMs;
+        /** The number of queries that never received a result. */
+        /* package */ final int lostResults;
+        /** The number of results beyond the first one of each query. */
+        /* package */ final int duplicateResults;
+        /** The number of bindings that were still alive after all of the queries finished. */
+        /* package */ final int leakedBindings;
+        /** The number of unbindService() calls for connections that were not bound. */
+        /* package */ final int unregisteredUnbinds;
+        /** The number of queries of each {@link Outcome}, as reported to the metrics listener. */
+        /* package */ final int[] outcomeCounts;
+
+        private Report(int queries, long[] sortedLatenciesMs, int lostResults,
+                int duplicateResults, int leakedBindings, int unregisteredUnbinds,
+                int[] outcomeCounts) {
+            this.queries = queries;
+            p50LatencyMs = percentile(sortedLatenciesMs, 0.5);
+            p99LatencyMs = percentile(sortedLatenciesMs, 0.99);
+            p999LatencyMs = percentile(sortedLatenciesMs, 0.999);
+            maxLatencyMs = percentile(sortedLatenciesMs, 1.0);
+            this.lostResults = lostResults;
+            this.duplicateResults = duplicateResults;
+            this.leakedBindings = leakedBindings;
+            this.unregisteredUnbinds = unregisteredUnbinds;
+            this.outcomeCounts = outcomeCounts;
+        }
+
+        /** @return The number of violations of the exactly-once delivery. */
+        /* package */ int exactlyOnceViolations() {
+            return lostResults + duplicateResults;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "queries=%d latency(ms): p50=%d p99=%d p99.9=%d max=%d; lost=%d duplicate=%d"
+                            + " leakedBindings=%d unregisteredUnbinds=%d outcomes=%s",
+                    queries, p50LatencyMs, p99LatencyMs, p999LatencyMs, maxLatencyMs,
+                    lostResults, duplicateResults, leakedBindings, unregisteredUnbinds,
+                    Arrays.toString(outcomeCounts));
+        }
+
+        private static long percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) return 0;
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+
+    // Prevent instantiation.
+    private IsReadyToPayLoadHarness() {}
+
+    /**
+     * Starts the queries at random times within the arrival window, and runs the main looper until
+     * all of them have finished and settled. Should be called on the main thread of a Robolectric
+     * test in the paused looper mode.
+     * @param context The context that binds the fault-injecting service.
+     * @param queries The number of queries.
+     * @param arrivalWindowMs The window in which the queries start.
+     * @param seed The seed of the arrival times.
+     * @return The report of the run.
+     */
+    /* package */ static Report run(final FaultInjectingContext context, int queries,
+            long arrivalWindowMs, long seed) {
+        final int[] outcomeCounts = new int[IsReadyToPayMetricsListener.OUTCOME_COUNT];
+        IsReadyToPayServiceHelper.setMetricsListener(
+                (packageName, bindStartNanos, serviceConnectedNanos, readyToPayDispatchNanos,
+                        responseNanos, finishNanos, outcome,
+                        isWarmConnection) -> outcomeCounts[outcome]++);
+
+        final Intent isReadyToPayIntent = createIsReadyToPayIntent();
+        final long[] startTimesMs = new long[queries];
+        final long[] latenciesMs = new long[queries];
+        final int[] resultCounts = new int[queries];
+        final int[] finishedQueries = {0};
+        Handler handler = new Handler(Looper.getMainLooper());
+        Random random = new Random(seed);
+        for (int i = 0; i < queries; i++) {
+            final int index = i;
+            handler.postDelayed(() -> {
+                startTimesMs[index] = SystemClock.uptimeMillis();
+                new IsReadyToPayServiceHelper(context, isReadyToPayIntent,
+                        new IsReadyToPayServiceHelper.ResultHandler() {
+                            @Override
+                            public void onIsReadyToPayServiceResponse(boolean isReadyToPay) {
+                                onResult();
+                            }
+
+                            @Override
+                            public void onIsReadyToPayServiceError() {
+                                onResult();
+                            }
+
+                            private void onResult() {
+                                if (resultCounts[index]++ > 0) return;
+                                latenciesMs[index] =
+                                        SystemClock.uptimeMillis() - startTimesMs[index];
+                                finishedQueries[0]++;
+                            }
+                        });
+            }, (long) (random.nextDouble() * arrivalWindowMs));
+        }
+
+        // Every query finishes within its timeouts, so the deadline only stops a broken helper.
+        long deadlineMs = SystemClock.uptimeMillis() + arrivalWindowMs
+                + IsReadyToPayServiceHelper.SERVICE_CONNECTION_TIMEOUT_MS
+                + IsReadyToPayServiceHelper.READY_TO_PAY_TIMEOUT_MS + SETTLE_MS;
+        while (finishedQueries[0] < queries && SystemClock.uptimeMillis() < deadlineMs) {
+            shadowOf(Looper.getMainLooper()).idleFor(STEP_MS, TimeUnit.MILLISECONDS);
+        }
+        shadowOf(Looper.getMainLooper()).idleFor(SETTLE_MS, TimeUnit.MILLISECONDS);
+        IsReadyToPayServiceHelper.setMetricsListener(null);
+
+        int lostResults = 0;
+        int duplicateResults = 0;
+        for (int resultCount : resultCounts) {
+            if (resultCount == 0) lostResults++;
+            if (resultCount > 1) duplicateResults += resultCount - 1;
+        }
+        long[] finishedLatenciesMs = new long[queries - lostResults];
+        int next = 0;
+        for (int i = 0; i < queries; i++) {
+            if (resultCounts[i] > 0) finishedLatenciesMs[next++] = latenciesMs[i];
+        }
+        Arrays.sort(finishedLatenciesMs);
+        return new Report(queries, finishedLatenciesMs, lostResults, duplicateResults,
+                context.getLiveBindingCount(), context.getUnregisteredUnbindCount(),
+                outcomeCounts);
+    }
+
+    private static Intent createIsReadyToPayIntent() {
+        Map<String, PaymentMethodData> methodDataMap = new HashMap<>();
+        methodDataMap.put("https://chaos.example/pay",
+                new PaymentMethodData("https://chaos.example/pay", "{}"));
+        return WebPaymentIntentHelper.createIsReadyToPayIntent("com.example.chaos",
+                "com.example.chaos.IsReadyToPayService", "merchant.example", "merchant.example",
+                /*certificateChain=*/null, methodDataMap);
+    }
+}
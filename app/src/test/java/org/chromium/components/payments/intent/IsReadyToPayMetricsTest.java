@@ -0,0 +1,94 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+
+import static org.chromium.components.payments.intent.IsReadyToPayMetricsListener.NOT_REACHED;
+
+import org.chromium.components.payments.intent.IsReadyToPayMetricsListener.Outcome;
+import org.junit.Test;
+
+/** Local unit tests for {@link IsReadyToPayMetrics}. */
+public class IsReadyToPayMetricsTest {
+    private static final String PACKAGE_NAME = "com.example.app";
+    private static final long NANOS_PER_MS = 1_000_000;
+
+    private static void recordQuery(IsReadyToPayMetrics metrics, long serviceConnectedMs,
+            long readyToPayDispatchMs, long responseMs, long finishMs, @Outcome int outcome,
+            boolean isWarmConnection) {
+        metrics.onIsReadyToPayQueryFinished(PACKAGE_NAME, /*bindStartNanos=*/0,
+                toNanos(serviceConnectedMs), toNanos(readyToPayDispatchMs), toNanos(responseMs),
+                toNanos(finishMs), outcome, isWarmConnection);
+    }
+
+    private static long toNanos(long ms) {
+        return ms == NOT_REACHED ? NOT_REACHED : ms * NANOS_PER_MS;
+    }
+
+    @Test
+    public void recordsThePhasesThatTheQueriesReached() {
+        IsReadyToPayMetrics metrics = new IsReadyToPayMetrics();
+        recordQuery(metrics, 2, 5, 10, 12, Outcome.READY, /*isWarmConnection=*/false);
+        recordQuery(metrics, 1, 2, 4, 5, Outcome.NOT_READY, /*isWarmConnection=*/true);
+        recordQuery(metrics, NOT_REACHED, NOT_REACHED, NOT_REACHED, 10,
+                Outcome.SERVICE_CONNECTION_TIMEOUT, /*isWarmConnection=*/false);
+
+        assertEquals(1, metrics.getOutcomeCount(Outcome.READY));
+        assertEquals(1, metrics.getOutcomeCount(Outcome.NOT_READY));
+        assertEquals(1, metrics.getOutcomeCount(Outcome.SERVICE_CONNECTION_TIMEOUT));
+        assertEquals(0, metrics.getOutcomeCount(Outcome.READY_TO_PAY_TIMEOUT));
+
+        // The warm connection is kept out of the bind latency.
+        assertEquals(1, metrics.getServiceConnectionLatency().getCount());
+        assertEquals(2, metrics.getServiceConnectionLatency().getPercentile(1));
+        assertEquals(1, metrics.getWarmServiceConnectionLatency().getCount());
+        assertEquals(1, metrics.getWarmServiceConnectionLatency().getPercentile(1));
+
+        assertEquals(2, metrics.getDispatchLatency().getCount());
+        assertEquals(1, metrics.getDispatchLatency().getPercentile(0.5));
+        assertEquals(3, metrics.getDispatchLatency().getPercentile(1));
+        assertEquals(2, metrics.getResponseLatency().getCount());
+        assertEquals(5, metrics.getResponseLatency().getPercentile(1));
+        assertEquals(3, metrics.getTotalLatency().getCount());
+        assertEquals(12, metrics.getTotalLatency().getPercentile(1));
+    }
+
+    @Test
+    public void resetRemovesEverything() {
+        IsReadyToPayMetrics metrics = new IsReadyToPayMetrics();
+        recordQuery(metrics, 2, 5, 10, 12, Outcome.READY, /*isWarmConnection=*/false);
+        recordQuery(metrics, 1, 2, 4, 5, Outcome.READY, /*isWarmConnection=*/true);
+        metrics.reset();
+
+        assertEquals(0, metrics.getOutcomeCount(Outcome.READY));
+        assertEquals(0, metrics.getServiceConnectionLatency().getCount());
+        assertEquals(0, metrics.getWarmServiceConnectionLatency().getCount());
+        assertEquals(0, metrics.getDispatchLatency().getCount());
+        assertEquals(0, metrics.getResponseLatency().getCount());
+        assertEquals(0, metrics.getTotalLatency().getCount());
+    }
+
+    @Test
+    public void recordsConcurrentQueries() throws Exception {
+        final IsReadyToPayMetrics metrics = new IsReadyToPayMetrics();
+        final int queriesPerThread = 10_000;
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < queriesPerThread; j++) {
+                    recordQuery(metrics, 2, 5, 10, 12, Outcome.READY, /*isWarmConnection=*/false);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        long queries = threads.length * queriesPerThread;
+        assertEquals(queries, metrics.getOutcomeCount(Outcome.READY));
+        assertEquals(queries, metrics.getServiceConnectionLatency().getCount());
+        assertEquals(queries, metrics.getTotalLatency().getCount());
+    }
+}
@@ -0,0 +1,172 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.chromium.IsReadyToPayService;
+import org.chromium.IsReadyToPayServiceCallback;
+import org.chromium.components.payments.intent.IsReadyToPayQueryCoordinator.Mode;
+import org.chromium.components.payments.intent.IsReadyToPayQueryCoordinator.Outcome;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Tests of {@link IsReadyToPayQueryCoordinator}'s modes, deadline and cancellation. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class IsReadyToPayQueryCoordinatorTest {
+    private static final long DEADLINE_MS = 1000;
+    // The apps are named after how their services behave.
+    private static final String READY = "com.example.ready";
+    private static final String NOT_READY = "com.example.notready";
+    private static final String SILENT = "com.example.silent";
+    private static final String UNBINDABLE = "com.example.unbindable";
+
+    private BinderCachingContext mContext;
+    // The results of the query, of which there should be at most one.
+    private final List<Map<ComponentName, Integer>> mResults = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mContext = new BinderCachingContext(RuntimeEnvironment.application, (intent) -> {
+            switch (intent.getComponent().getPackageName()) {
+                case READY:
+                    return BinderCachingContext.respondingWith(true);
+                case NOT_READY:
+                    return BinderCachingContext.respondingWith(false);
+                case SILENT:
+                    return new IsReadyToPayService.Stub() {
+                        @Override
+                        public void isReadyToPay(IsReadyToPayServiceCallback callback) {}
+                    };
+                default:
+                    return null;
+            }
+        }, new Handler(Looper.getMainLooper()));
+    }
+
+    private static Intent createIsReadyToPayIntent(String packageName) {
+        Map<String, PaymentMethodData> methodDataMap = new HashMap<>();
+        methodDataMap.put("https://example.test/pay",
+                new PaymentMethodData("https://example.test/pay", "{}"));
+        return WebPaymentIntentHelper.createIsReadyToPayIntent(packageName,
+                packageName + ".IsReadyToPayService", "merchant.example", "merchant.example",
+                /*certificateChain=*/null, methodDataMap);
+    }
+
+    private static ComponentName component(String packageName) {
+        return new ComponentName(packageName, packageName + ".IsReadyToPayService");
+    }
+
+    private IsReadyToPayQueryCoordinator query(@Mode int mode, String... packageNames) {
+        List<Intent> intents = new ArrayList<>();
+        for (String packageName : packageNames) intents.add(createIsReadyToPayIntent(packageName));
+        IsReadyToPayQueryCoordinator coordinator = new IsReadyToPayQueryCoordinator(
+                mContext, new Handler(Looper.getMainLooper()), DEADLINE_MS);
+        coordinator.query(intents, mode, mResults::add);
+        return coordinator;
+    }
+
+    private static void advanceBy(long ms) {
+        shadowOf(Looper.getMainLooper()).idleFor(ms, TimeUnit.MILLISECONDS);
+    }
+
+    private static Map<ComponentName, Integer> outcomes(Object... componentsAndOutcomes) {
+        Map<ComponentName, Integer> outcomes = new LinkedHashMap<>();
+        for (int i = 0; i < componentsAndOutcomes.length; i += 2) {
+            outcomes.put(component((String) componentsAndOutcomes[i]),
+                    (Integer) componentsAndOutcomes[i + 1]);
+        }
+        return outcomes;
+    }
+
+    @Test
+    public void collectsEveryOutcomeByTheDeadline() {
+        query(Mode.COLLECT_ALL, READY, NOT_READY, SILENT, UNBINDABLE);
+        advanceBy(DEADLINE_MS - 1);
+        assertEquals(0, mResults.size());
+
+        advanceBy(1);
+        assertEquals(Collections.singletonList(outcomes(UNBINDABLE, Outcome.ERROR, READY,
+                             Outcome.READY, NOT_READY, Outcome.NOT_READY, SILENT, Outcome.TIMEOUT)),
+                mResults);
+        assertEquals(0, mContext.getLiveBindingCount());
+    }
+
+    @Test
+    public void returnsAsSoonAsEveryAppHasAnswered() {
+        query(Mode.COLLECT_ALL, READY, NOT_READY);
+        advanceBy(0);
+        assertEquals(Collections.singletonList(
+                             outcomes(READY, Outcome.READY, NOT_READY, Outcome.NOT_READY)),
+                mResults);
+
+        advanceBy(DEADLINE_MS);
+        assertEquals(1, mResults.size());
+    }
+
+    @Test
+    public void returnsTheFirstReadyAppWithoutWaitingForTheOthers() {
+        query(Mode.FIRST_READY_WINS, SILENT, READY);
+        advanceBy(0);
+        assertEquals(Collections.singletonList(outcomes(READY, Outcome.READY)), mResults);
+        // The silent app's query was cancelled.
+        assertEquals(0, mContext.getLiveBindingCount());
+    }
+
+    @Test
+    public void waitsForEveryAppIfNoneIsReady() {
+        query(Mode.FIRST_READY_WINS, NOT_READY, SILENT);
+        advanceBy(DEADLINE_MS);
+        assertEquals(Collections.singletonList(
+                             outcomes(NOT_READY, Outcome.NOT_READY, SILENT, Outcome.TIMEOUT)),
+                mResults);
+    }
+
+    @Test
+    public void leavesTheUnansweredAppsOutAtTheDeadline() {
+        query(Mode.KNOWN_AT_DEADLINE, READY, SILENT);
+        advanceBy(DEADLINE_MS);
+        assertEquals(Collections.singletonList(outcomes(READY, Outcome.READY)), mResults);
+        assertEquals(0, mContext.getLiveBindingCount());
+    }
+
+    @Test
+    public void returnsRightAwayWithoutApps() {
+        query(Mode.COLLECT_ALL);
+        assertEquals(Collections.singletonList(Collections.emptyMap()), mResults);
+    }
+
+    @Test
+    public void cancelStopsThePendingQueriesWithoutAResult() {
+        IsReadyToPayQueryCoordinator coordinator = query(Mode.COLLECT_ALL, READY, SILENT);
+        coordinator.cancel();
+        advanceBy(DEADLINE_MS);
+        assertEquals(0, mResults.size());
+        assertEquals(0, mContext.getLiveBindingCount());
+    }
+}
@@ -0,0 +1,218 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+
+import org.chromium.IsReadyToPayService;
+import org.chromium.IsReadyToPayServiceCallback;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Tests of {@link IsReadyToPayResultCache}'s expiry and invalidation. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class IsReadyToPayResultCacheTest {
+    private static final String PACKAGE_NAME = "com.example.app";
+    private static final long TIME_TO_LIVE_MS = 1000;
+    private static final long STALE_WHILE_REVALIDATE_MS = 1000;
+
+    private BinderCachingContext mContext;
+    // The queries that the service has received but not answered yet.
+    private final List<IsReadyToPayServiceCallback> mPendingCallbacks = new ArrayList<>();
+    private int mServiceQueryCount;
+
+    /** The result of one query. */
+    private static final class Result implements IsReadyToPayServiceHelper.ResultHandler {
+        private int mResponseCount;
+        private boolean mIsReadyToPay;
+
+        @Override
+        public void onIsReadyToPayServiceResponse(boolean isReadyToPay) {
+            mResponseCount++;
+            mIsReadyToPay = isReadyToPay;
+        }
+
+        @Override
+        public void onIsReadyToPayServiceError() {
+            mResponseCount++;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mContext = new BinderCachingContext(RuntimeEnvironment.application,
+                (intent) -> new IsReadyToPayService.Stub() {
+                    @Override
+                    public void isReadyToPay(IsReadyToPayServiceCallback callback) {
+                        mServiceQueryCount++;
+                        mPendingCallbacks.add(callback);
+                    }
+                },
+                new Handler(Looper.getMainLooper()));
+    }
+
+    private static Intent createIsReadyToPayIntent() {
+        Map<String, PaymentMethodData> methodDataMap = new HashMap<>();
+        methodDataMap.put("https://example.test/pay",
+                new PaymentMethodData("https://example.test/pay", "{}"));
+        return WebPaymentIntentHelper.createIsReadyToPayIntent(PACKAGE_NAME,
+                PACKAGE_NAME + ".IsReadyToPayService", "merchant.example", "merchant.example",
+                /*certificateChain=*/null, methodDataMap);
+    }
+
+    private IsReadyToPayResultCache createCache(long staleWhileRevalidateMs) {
+        return new IsReadyToPayResultCache(mContext, /*maxEntries=*/8, TIME_TO_LIVE_MS,
+                staleWhileRevalidateMs, /*connectionPool=*/null);
+    }
+
+    private static Result query(IsReadyToPayResultCache cache) {
+        Result result = new Result();
+        cache.query(createIsReadyToPayIntent(), result);
+        idle();
+        return result;
+    }
+
+    // Answers the oldest pending query of the service.
+    private void respond(boolean isReadyToPay) throws RemoteException {
+        mPendingCallbacks.remove(0).handleIsReadyToPay(isReadyToPay);
+        idle();
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static void advanceBy(long ms) {
+        shadowOf(Looper.getMainLooper()).idleFor(ms, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void answersFromTheCacheUntilTheTimeToLive() throws Exception {
+        IsReadyToPayResultCache cache = createCache(/*staleWhileRevalidateMs=*/0);
+        Result first = query(cache);
+        respond(true);
+        assertEquals(1, first.mResponseCount);
+        assertTrue(first.mIsReadyToPay);
+
+        Result cached = query(cache);
+        assertEquals(1, cached.mResponseCount);
+        assertTrue(cached.mIsReadyToPay);
+        assertEquals(1, mServiceQueryCount);
+
+        advanceBy(TIME_TO_LIVE_MS + 1);
+        Result expired = query(cache);
+        assertEquals(0, expired.mResponseCount);
+        assertEquals(2, mServiceQueryCount);
+        respond(false);
+        assertEquals(1, expired.mResponseCount);
+        assertFalse(expired.mIsReadyToPay);
+    }
+
+    @Test
+    public void revalidatesAStaleAnswerInTheBackground() throws Exception {
+        IsReadyToPayResultCache cache = createCache(STALE_WHILE_REVALIDATE_MS);
+        query(cache);
+        respond(true);
+
+        advanceBy(TIME_TO_LIVE_MS + 1);
+        Result stale = query(cache);
+        assertEquals(1, stale.mResponseCount);
+        assertTrue(stale.mIsReadyToPay);
+        assertEquals(2, mServiceQueryCount);
+        respond(false);
+
+        Result refreshed = query(cache);
+        assertEquals(1, refreshed.mResponseCount);
+        assertFalse(refreshed.mIsReadyToPay);
+        assertEquals(2, mServiceQueryCount);
+    }
+
+    @Test
+    public void joinsTheQueryInFlight() throws Exception {
+        IsReadyToPayResultCache cache = createCache(/*staleWhileRevalidateMs=*/0);
+        Result first = query(cache);
+        Result second = query(cache);
+        assertEquals(1, mServiceQueryCount);
+
+        respond(true);
+        assertEquals(1, first.mResponseCount);
+        assertEquals(1, second.mResponseCount);
+    }
+
+    @Test
+    public void invalidatePackageDropsItsAnswers() throws Exception {
+        IsReadyToPayResultCache cache = createCache(/*staleWhileRevalidateMs=*/0);
+        query(cache);
+        respond(true);
+
+        cache.invalidatePackage("com.example.other");
+        query(cache);
+        assertEquals(1, mServiceQueryCount);
+
+        cache.invalidatePackage(PACKAGE_NAME);
+        Result result = query(cache);
+        assertEquals(0, result.mResponseCount);
+        assertEquals(2, mServiceQueryCount);
+    }
+
+    @Test
+    public void doesNotCacheAnAnswerThatStartedBeforeInvalidatePackage() throws Exception {
+        IsReadyToPayResultCache cache = createCache(/*staleWhileRevalidateMs=*/0);
+        Result before = query(cache);
+        cache.invalidatePackage(PACKAGE_NAME);
+        // Does not join the stale query.
+        Result after = query(cache);
+        assertEquals(2, mServiceQueryCount);
+
+        respond(true);
+        assertEquals(1, before.mResponseCount);
+        assertTrue(before.mIsReadyToPay);
+        assertEquals(0, after.mResponseCount);
+        respond(false);
+        assertEquals(1, after.mResponseCount);
+        assertFalse(after.mIsReadyToPay);
+
+        // Only the answer of the query that started after the invalidation is cached.
+        Result cached = query(cache);
+        assertEquals(1, cached.mResponseCount);
+        assertFalse(cached.mIsReadyToPay);
+        assertEquals(2, mServiceQueryCount);
+    }
+
+    @Test
+    public void doesNotCacheAnAnswerThatStartedBeforeClear() throws Exception {
+        IsReadyToPayResultCache cache = createCache(/*staleWhileRevalidateMs=*/0);
+        Result before = query(cache);
+        cache.clear();
+        respond(true);
+        assertEquals(1, before.mResponseCount);
+
+        query(cache);
+        assertEquals(2, mServiceQueryCount);
+    }
+}
@@ -0,0 +1,252 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import org.chromium.components.payments.intent.IsReadyToPayMetricsListener.Outcome;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests of {@link IsReadyToPayServiceConnectionPool} against the binder caching of the framework,
+ * where the service answers about the extras that it was bound with.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class IsReadyToPayServiceConnectionPoolTest {
+    private static final String READY_METHOD = "https://ready.example/pay";
+    private static final String OTHER_METHOD = "https://other.example/pay";
+    private static final long IDLE_TIMEOUT_MS = 1000;
+
+    private BinderCachingContext mContext;
+
+    /** The result of one query. */
+    private static final class Result implements IsReadyToPayServiceHelper.ResultHandler {
+        private int mResponseCount;
+        private boolean mIsReadyToPay;
+        private boolean mIsError;
+
+        @Override
+        public void onIsReadyToPayServiceResponse(boolean isReadyToPay) {
+            mResponseCount++;
+            mIsReadyToPay = isReadyToPay;
+        }
+
+        @Override
+        public void onIsReadyToPayServiceError() {
+            mResponseCount++;
+            mIsError = true;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        mContext = new BinderCachingContext(RuntimeEnvironment.application,
+                BinderCachingContext.readyToPayWith(READY_METHOD),
+                new Handler(Looper.getMainLooper()));
+    }
+
+    @After
+    public void tearDown() {
+        IsReadyToPayServiceHelper.setMetricsListener(null);
+    }
+
+    private static Intent createIsReadyToPayIntent(String methodName) {
+        Map<String, PaymentMethodData> methodDataMap = new HashMap<>();
+        methodDataMap.put(methodName, new PaymentMethodData(methodName, "{}"));
+        return WebPaymentIntentHelper.createIsReadyToPayIntent("com.example.app",
+                "com.example.app.IsReadyToPayService", "merchant.example", "merchant.example",
+                /*certificateChain=*/null, methodDataMap);
+    }
+
+    private Result query(String methodName, IsReadyToPayServiceConnectionPool pool) {
+        Result result = new Result();
+        new IsReadyToPayServiceHelper(mContext, createIsReadyToPayIntent(methodName), result, pool,
+                /*timeoutPolicy=*/null);
+        return result;
+    }
+
+    private static void assertResponse(boolean expected, Result result) {
+        assertEquals(1, result.mResponseCount);
+        assertFalse(result.mIsError);
+        assertEquals(expected, result.mIsReadyToPay);
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    @Test
+    public void reusesTheBindingOfTheSameExtras() {
+        IsReadyToPayServiceConnectionPool pool =
+                new IsReadyToPayServiceConnectionPool(mContext, IDLE_TIMEOUT_MS, 4);
+        Result first = query(READY_METHOD, pool);
+        idle();
+        Result second = query(READY_METHOD, pool);
+        idle();
+
+        assertResponse(true, first);
+        assertResponse(true, second);
+        assertEquals(1, mContext.getOnBindIntents().size());
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void bindsOtherExtrasSeparatelyWhileTheConnectionIsLeased() {
+        IsReadyToPayServiceConnectionPool pool =
+                new IsReadyToPayServiceConnectionPool(mContext, IDLE_TIMEOUT_MS, 4);
+        // Both are started before either is connected, so the first one's lease is still held.
+        Result ready = query(READY_METHOD, pool);
+        Result other = query(OTHER_METHOD, pool);
+        idle();
+
+        assertResponse(true, ready);
+        assertResponse(false, other);
+        assertEquals(2, mContext.getOnBindIntents().size());
+        assertFalse(mContext.getOnBindIntents().get(0).filterEquals(
+                mContext.getOnBindIntents().get(1)));
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void doesNotHandTheFullPoolsBinderToADirectBinding() {
+        IsReadyToPayServiceConnectionPool pool =
+                new IsReadyToPayServiceConnectionPool(mContext, IDLE_TIMEOUT_MS, 1);
+        Result ready = query(READY_METHOD, pool);
+        // The pool cannot evict the leased connection, so this query binds the service by itself.
+        Result other = query(OTHER_METHOD, pool);
+        idle();
+
+        assertResponse(true, ready);
+        assertResponse(false, other);
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void unbindsAfterTheIdleTimeout() {
+        IsReadyToPayServiceConnectionPool pool =
+                new IsReadyToPayServiceConnectionPool(mContext, IDLE_TIMEOUT_MS, 4);
+        assertResponse(false, queryAndIdle(OTHER_METHOD, pool));
+        assertEquals(1, mContext.getLiveBindingCount());
+
+        shadowOf(Looper.getMainLooper()).idleFor(IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(0, pool.size());
+        assertEquals(0, mContext.getLiveBindingCount());
+
+        // Rebinding runs onBind() again.
+        assertResponse(true, queryAndIdle(READY_METHOD, pool));
+        assertEquals(2, mContext.getOnBindIntents().size());
+    }
+
+    @Test
+    public void evictAllUnbindsEveryConnection() {
+        IsReadyToPayServiceConnectionPool pool =
+                new IsReadyToPayServiceConnectionPool(mContext, IDLE_TIMEOUT_MS, 4);
+        queryAndIdle(READY_METHOD, pool);
+        queryAndIdle(OTHER_METHOD, pool);
+        assertEquals(2, pool.size());
+
+        pool.evictAll();
+        assertEquals(0, pool.size());
+        assertEquals(0, mContext.getLiveBindingCount());
+        assertEquals(2, mContext.getOnBindIntents().size());
+    }
+
+    @Test
+    public void recordsTheConnectionLatencyOfWarmConnectionsSeparately() {
+        IsReadyToPayMetrics metrics = new IsReadyToPayMetrics();
+        IsReadyToPayServiceHelper.setMetricsListener(metrics);
+        IsReadyToPayServiceConnectionPool pool =
+                new IsReadyToPayServiceConnectionPool(mContext, IDLE_TIMEOUT_MS, 4);
+        queryAndIdle(READY_METHOD, pool);
+        queryAndIdle(READY_METHOD, pool);
+        queryAndIdle(READY_METHOD, pool);
+
+        // Only the first query waited for a bind.
+        assertEquals(1, metrics.getServiceConnectionLatency().getCount());
+        assertEquals(2, metrics.getWarmServiceConnectionLatency().getCount());
+        assertEquals(3, metrics.getTotalLatency().getCount());
+    }
+
+    @Test
+    public void leasesTheConnectionOnThePoolsThread() {
+        IsReadyToPayServiceConnectionPool pool =
+                new IsReadyToPayServiceConnectionPool(mContext, IDLE_TIMEOUT_MS, 4);
+        HandlerThread thread = new HandlerThread("IsReadyToPayQuery");
+        thread.start();
+        try {
+            IsReadyToPayFuture future = IsReadyToPayServiceHelper.queryAsync(mContext,
+                    createIsReadyToPayIntent(READY_METHOD), new Handler(thread.getLooper()), pool,
+                    /*timeoutPolicy=*/null);
+            // The query starts on its own thread, which posts the lease to the main thread.
+            shadowOf(thread.getLooper()).idle();
+            assertEquals(0, pool.size());
+            idle();
+
+            assertTrue(future.isDone());
+            assertTrue(future.getNow().isReadyToPay());
+            assertEquals(1, pool.size());
+        } finally {
+            thread.quit();
+        }
+    }
+
+    @Test
+    public void reportsWhyThePoolCouldNotBind() {
+        assertEquals(Outcome.BIND_RETURNED_FALSE, queryWithFailingBind(/*throwing=*/false));
+        assertEquals(Outcome.SECURITY_EXCEPTION, queryWithFailingBind(/*throwing=*/true));
+    }
+
+    private static @Outcome int queryWithFailingBind(boolean throwing) {
+        Context context = new ContextWrapper(RuntimeEnvironment.application) {
+            @Override
+            public boolean bindService(Intent service, ServiceConnection connection, int flags) {
+                if (throwing) throw new SecurityException();
+                return false;
+            }
+        };
+        IsReadyToPayServiceConnectionPool pool =
+                new IsReadyToPayServiceConnectionPool(context, IDLE_TIMEOUT_MS, 4);
+        IsReadyToPayFuture future = IsReadyToPayServiceHelper.queryAsync(context,
+                createIsReadyToPayIntent(READY_METHOD), new Handler(Looper.getMainLooper()), pool,
+                /*timeoutPolicy=*/null);
+        idle();
+
+        assertTrue(future.isDone());
+        assertEquals(0, pool.size());
+        return future.getNow().getOutcome();
+    }
+
+    private Result queryAndIdle(String methodName, IsReadyToPayServiceConnectionPool pool) {
+        Result result = query(methodName, pool);
+        idle();
+        return result;
+    }
+}
@@ -0,0 +1,292 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import static org.chromium.components.payments.intent.FaultInjectingIsReadyToPayService.logNormal;
+import static org.chromium.components.payments.intent.FaultInjectingIsReadyToPayService.uniform;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.RemoteException;
+
+import org.chromium.IsReadyToPayService;
+import org.chromium.IsReadyToPayServiceCallback;
+import org.chromium.components.payments.intent.FaultInjectingIsReadyToPayService.Faults;
+import org.chromium.components.payments.intent.IsReadyToPayMetricsListener.Outcome;
+import org.chromium.components.payments.intent.IsReadyToPayLoadHarness.Report;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Load and chaos tests of {@link IsReadyToPayServiceHelper} against a fault-injecting service.
+ * Whatever the service does, every query should get exactly one result within its timeouts, and
+ * release its binding. The fault-injecting runs are on the main thread, so the connections,
+ * responses, disconnections and cancellations are also raced from other threads against the
+ * timeouts on the main thread.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class IsReadyToPayServiceHelperChaosTest {
+    private static final long SEED = 20200311;
+    private static final int QUERIES = 2000;
+    private static final long ARRIVAL_WINDOW_MS = 2000;
+    // A query can wait for its connection and then for its response.
+    private static final long MAX_LATENCY_MS =
+            IsReadyToPayServiceHelper.SERVICE_CONNECTION_TIMEOUT_MS
+            + IsReadyToPayServiceHelper.READY_TO_PAY_TIMEOUT_MS;
+    private static final int RACES = 500;
+
+    /**
+     * A context whose bindings are connected by the test, from whichever thread it chooses. It
+     * counts the bindings from any thread.
+     */
+    private static final class RacingContext extends ContextWrapper {
+        private int mLiveBindingCount;
+        private int mUnregisteredUnbindCount;
+        private ServiceConnection mConnection;
+
+        private RacingContext(Context base) {
+            super(base);
+        }
+
+        @Override
+        public synchronized boolean bindService(Intent service, ServiceConnection conn, int flags) {
+            mLiveBindingCount++;
+            mConnection = conn;
+            return true;
+        }
+
+        @Override
+        public synchronized void unbindService(ServiceConnection conn) {
+            if (conn != mConnection) {
+                mUnregisteredUnbindCount++;
+                throw new IllegalArgumentException("Service not registered: " + conn);
+            }
+            mLiveBindingCount--;
+            mConnection = null;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        IsReadyToPayServiceHelper.setMetricsListener(null);
+    }
+
+    private static Report run(Faults faults, int queries) {
+        FaultInjectingIsReadyToPayService service = new FaultInjectingIsReadyToPayService(
+                faults, new Handler(Looper.getMainLooper()), SEED, /*isReadyToPay=*/true);
+        FaultInjectingContext context = new FaultInjectingContext(
+                RuntimeEnvironment.application, service, new Handler(Looper.getMainLooper()));
+        return IsReadyToPayLoadHarness.run(context, queries, ARRIVAL_WINDOW_MS, SEED);
+    }
+
+    private static void assertWellBehaved(Report report) {
+        assertEquals(report.toString(), 0, report.exactlyOnceViolations());
+        assertEquals(report.toString(), 0, report.leakedBindings);
+        assertEquals(report.toString(), 0, report.unregisteredUnbinds);
+        assertTrue(report.toString(), report.maxLatencyMs <= MAX_LATENCY_MS);
+    }
+
+    @Test
+    public void answersEveryQueryWithinTheTimeouts() {
+        Report report = run(new Faults()
+                                    .setConnectLatency(uniform(5, 200))
+                                    .setResponseLatency(logNormal(20, 0.5)),
+                QUERIES);
+        assertWellBehaved(report);
+        assertEquals(QUERIES, report.outcomeCounts[Outcome.READY]);
+    }
+
+    @Test
+    public void timesOutSlowAndDroppedResponses() {
+        Report report = run(new Faults()
+                                    .setConnectLatency(logNormal(100, 1.0))
+                                    .setResponseLatency(logNormal(100, 1.0))
+                                    .setDropProbability(0.2),
+                QUERIES);
+        assertWellBehaved(report);
+        assertTrue(report.outcomeCounts[Outcome.READY_TO_PAY_TIMEOUT] > 0);
+        assertTrue(report.outcomeCounts[Outcome.SERVICE_CONNECTION_TIMEOUT] > 0);
+    }
+
+    @Test
+    public void deliversDuplicateResponsesOnce() {
+        Report report = run(new Faults()
+                                    .setResponseLatency(uniform(0, 100))
+                                    .setDuplicateProbability(0.5),
+                QUERIES);
+        assertWellBehaved(report);
+        assertEquals(QUERIES, report.outcomeCounts[Outcome.READY]);
+    }
+
+    @Test
+    public void reportsServiceExceptions() {
+        Report report = run(new Faults().setExceptionProbability(0.5), QUERIES);
+        assertWellBehaved(report);
+        assertTrue(report.outcomeCounts[Outcome.REMOTE_EXCEPTION] > 0);
+    }
+
+    @Test
+    public void reportsBinderDeathsMidQuery() {
+        Report report = run(new Faults()
+                                    .setConnectLatency(uniform(5, 50))
+                                    .setResponseLatency(uniform(50, 300))
+                                    .setDeathProbability(0.01)
+                                    .setRestartDelayMs(200),
+                QUERIES);
+        assertWellBehaved(report);
+        assertTrue(report.outcomeCounts[Outcome.SERVICE_DISCONNECTED] > 0);
+    }
+
+    @Test
+    public void reportsBindFailures() {
+        Report report = run(new Faults()
+                                    .setSecurityExceptionProbability(0.3)
+                                    .setBindFailureProbability(0.3),
+                QUERIES);
+        assertWellBehaved(report);
+        assertTrue(report.outcomeCounts[Outcome.SECURITY_EXCEPTION] > 0);
+        assertTrue(report.outcomeCounts[Outcome.BIND_RETURNED_FALSE] > 0);
+    }
+
+    @Test
+    public void survivesAllFaultsAtOnce() {
+        Report report = run(new Faults()
+                                    .setConnectLatency(logNormal(50, 1.0))
+                                    .setResponseLatency(logNormal(50, 1.0))
+                                    .setDropProbability(0.05)
+                                    .setDuplicateProbability(0.1)
+                                    .setExceptionProbability(0.05)
+                                    .setDeathProbability(0.005)
+                                    .setRestartDelayMs(300)
+                                    .setSecurityExceptionProbability(0.02)
+                                    .setBindFailureProbability(0.02),
+                5 * QUERIES);
+        assertWellBehaved(report);
+    }
+
+    @Test
+    public void finishesOnceWhenTheBinderAndTheMainThreadsRace() throws Exception {
+        final AtomicInteger finishedQueries = new AtomicInteger();
+        final AtomicInteger lastOutcome = new AtomicInteger(-1);
+        IsReadyToPayServiceHelper.setMetricsListener(
+                (packageName, bindStartNanos, serviceConnectedNanos, readyToPayDispatchNanos,
+                        responseNanos, finishNanos, outcome, isWarmConnection) -> {
+                    finishedQueries.incrementAndGet();
+                    lastOutcome.set(outcome);
+                });
+        Map<String, PaymentMethodData> methodDataMap = new HashMap<>();
+        methodDataMap.put("https://chaos.example/pay",
+                new PaymentMethodData("https://chaos.example/pay", "{}"));
+        Intent isReadyToPayIntent = WebPaymentIntentHelper.createIsReadyToPayIntent(
+                "com.example.chaos", "com.example.chaos.IsReadyToPayService", "merchant.example",
+                "merchant.example", /*certificateChain=*/null, methodDataMap);
+        final ComponentName component = isReadyToPayIntent.getComponent();
+        // The binder threads of the service's connection, its responses, and of the browser.
+        ExecutorService threads = Executors.newFixedThreadPool(3);
+        try {
+            for (int i = 0; i < RACES; i++) {
+                finishedQueries.set(0);
+                final RacingContext context = new RacingContext(RuntimeEnvironment.application);
+                final AtomicInteger results = new AtomicInteger();
+                final IsReadyToPayServiceHelper helper = new IsReadyToPayServiceHelper(context,
+                        isReadyToPayIntent, new IsReadyToPayServiceHelper.ResultHandler() {
+                            @Override
+                            public void onIsReadyToPayServiceResponse(boolean isReadyToPay) {
+                                results.incrementAndGet();
+                            }
+
+                            @Override
+                            public void onIsReadyToPayServiceError() {
+                                results.incrementAndGet();
+                            }
+                        }, Runnable::run);
+                final AtomicReference<IsReadyToPayServiceCallback> callback =
+                        new AtomicReference<>();
+                final IsReadyToPayService service = new IsReadyToPayService.Stub() {
+                    @Override
+                    public void isReadyToPay(IsReadyToPayServiceCallback serviceCallback) {
+                        callback.set(serviceCallback);
+                    }
+                };
+
+                final CountDownLatch start = new CountDownLatch(1);
+                final boolean cancels = i % 2 == 0;
+                List<Future<?>> races = new ArrayList<>();
+                races.add(threads.submit(() -> {
+                    start.await();
+                    helper.onServiceConnected(component, service.asBinder());
+                    respond(callback.get());
+                    return null;
+                }));
+                // A duplicate response.
+                races.add(threads.submit(() -> {
+                    start.await();
+                    respond(callback.get());
+                    return null;
+                }));
+                races.add(threads.submit(() -> {
+                    start.await();
+                    if (cancels) {
+                        helper.cancel();
+                    } else {
+                        helper.onServiceDisconnected(component);
+                    }
+                    return null;
+                }));
+                start.countDown();
+                // The timeouts run on the main thread meanwhile.
+                shadowOf(Looper.getMainLooper())
+                        .idleFor(MAX_LATENCY_MS, TimeUnit.MILLISECONDS);
+                for (Future<?> race : races) race.get(5, TimeUnit.SECONDS);
+                // A query that connected during the idling may still wait for its timeout.
+                shadowOf(Looper.getMainLooper())
+                        .idleFor(MAX_LATENCY_MS, TimeUnit.MILLISECONDS);
+
+                String message = "race " + i + ", outcome " + lastOutcome.get();
+                assertEquals(message, 1, finishedQueries.get());
+                assertEquals(message, lastOutcome.get() == Outcome.CANCELLED ? 0 : 1,
+                        results.get());
+                assertEquals(message, 0, context.mLiveBindingCount);
+                assertEquals(message, 0, context.mUnregisteredUnbindCount);
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    private static void respond(IsReadyToPayServiceCallback callback) throws RemoteException {
+        if (callback != null) callback.handleIsReadyToPay(true);
+    }
+}
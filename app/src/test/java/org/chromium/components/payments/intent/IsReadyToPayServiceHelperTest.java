@@ -0,0 +1,233 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import org.chromium.IsReadyToPayService;
+import org.chromium.IsReadyToPayServiceCallback;
+import org.chromium.components.payments.intent.IsReadyToPayMetricsListener.Outcome;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests of {@link IsReadyToPayServiceHelper}'s state machine: each query finishes exactly once, by
+ * its first response, timeout, disconnection or cancellation, and releases its binding.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class IsReadyToPayServiceHelperTest {
+    private static final long SERVICE_CONNECTION_TIMEOUT_MS = 1000;
+    private static final long READY_TO_PAY_TIMEOUT_MS = 400;
+    private static final String PACKAGE_NAME = "com.example.app";
+
+    private BinderCachingContext mContext;
+    // The callback of the query, which the test responds through. Set by the service.
+    @Nullable
+    private volatile IsReadyToPayServiceCallback mCallback;
+    // The results that the result handler received, as "ready", "not ready" or "error".
+    private final List<String> mResults = Collections.synchronizedList(new ArrayList<>());
+    private final List<Thread> mResultThreads = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> mOutcomes = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() {
+        mContext = new BinderCachingContext(RuntimeEnvironment.application,
+                (intent) -> new IsReadyToPayService.Stub() {
+                    @Override
+                    public void isReadyToPay(IsReadyToPayServiceCallback callback) {
+                        mCallback = callback;
+                    }
+                },
+                new Handler(Looper.getMainLooper()));
+        IsReadyToPayServiceHelper.setMetricsListener((packageName, bindStartNanos,
+                serviceConnectedNanos, readyToPayDispatchNanos, responseNanos, finishNanos,
+                outcome, isWarmConnection) -> mOutcomes.add(outcome));
+    }
+
+    @After
+    public void tearDown() {
+        IsReadyToPayServiceHelper.setMetricsListener(null);
+    }
+
+    private static Intent createIsReadyToPayIntent() {
+        Map<String, PaymentMethodData> methodDataMap = new HashMap<>();
+        methodDataMap.put("https://example.test/pay",
+                new PaymentMethodData("https://example.test/pay", "{}"));
+        return WebPaymentIntentHelper.createIsReadyToPayIntent(PACKAGE_NAME,
+                PACKAGE_NAME + ".IsReadyToPayService", "merchant.example", "merchant.example",
+                /*certificateChain=*/null, methodDataMap);
+    }
+
+    private IsReadyToPayServiceHelper query(@Nullable Executor resultExecutor) {
+        return new IsReadyToPayServiceHelper(mContext, createIsReadyToPayIntent(),
+                new IsReadyToPayServiceHelper.ResultHandler() {
+                    @Override
+                    public void onIsReadyToPayServiceResponse(boolean isReadyToPay) {
+                        mResultThreads.add(Thread.currentThread());
+                        mResults.add(isReadyToPay ? "ready" : "not ready");
+                    }
+
+                    @Override
+                    public void onIsReadyToPayServiceError() {
+                        mResultThreads.add(Thread.currentThread());
+                        mResults.add("error");
+                    }
+                },
+                resultExecutor, new Handler(Looper.getMainLooper()), /*connectionPool=*/null,
+                /*timeoutPolicy=*/null, SERVICE_CONNECTION_TIMEOUT_MS, READY_TO_PAY_TIMEOUT_MS,
+                /*future=*/null);
+    }
+
+    private static void advanceBy(long ms) {
+        shadowOf(Looper.getMainLooper()).idleFor(ms, TimeUnit.MILLISECONDS);
+    }
+
+    // Lets every pending timeout run.
+    private static void advancePastTheTimeouts() {
+        advanceBy(SERVICE_CONNECTION_TIMEOUT_MS + READY_TO_PAY_TIMEOUT_MS);
+    }
+
+    private void assertFinishedWith(@Outcome int outcome, String... results) {
+        assertEquals(Collections.singletonList(outcome), mOutcomes);
+        assertEquals(Arrays.asList(results), mResults);
+        assertEquals(0, mContext.getLiveBindingCount());
+    }
+
+    @Test
+    public void deliversOnlyTheFirstResponse() throws Exception {
+        query(/*resultExecutor=*/null);
+        advanceBy(0);
+        mCallback.handleIsReadyToPay(true);
+        mCallback.handleIsReadyToPay(false);
+        advancePastTheTimeouts();
+
+        assertFinishedWith(Outcome.READY, "ready");
+    }
+
+    @Test
+    public void dropsTheResponseAndTheDisconnectionAfterTheTimeout() throws Exception {
+        IsReadyToPayServiceHelper helper = query(/*resultExecutor=*/null);
+        advanceBy(0);
+        advanceBy(READY_TO_PAY_TIMEOUT_MS);
+        assertFinishedWith(Outcome.READY_TO_PAY_TIMEOUT, "error");
+
+        mCallback.handleIsReadyToPay(true);
+        helper.onServiceDisconnected(/*name=*/null);
+        advancePastTheTimeouts();
+        assertFinishedWith(Outcome.READY_TO_PAY_TIMEOUT, "error");
+    }
+
+    @Test
+    public void reportsTheDisconnectionOnce() {
+        IsReadyToPayServiceHelper helper = query(/*resultExecutor=*/null);
+        advanceBy(0);
+        helper.onServiceDisconnected(/*name=*/null);
+        helper.onServiceDisconnected(/*name=*/null);
+        advancePastTheTimeouts();
+
+        assertFinishedWith(Outcome.SERVICE_DISCONNECTED, "error");
+    }
+
+    @Test
+    public void cancelBeforeTheConnectionStopsTheQuerySilently() {
+        IsReadyToPayServiceHelper helper = query(/*resultExecutor=*/null);
+        helper.cancel();
+        helper.cancel();
+        advancePastTheTimeouts();
+
+        assertFinishedWith(Outcome.CANCELLED);
+        // The service was never asked.
+        assertNull(mCallback);
+    }
+
+    @Test
+    public void cancelDuringTheQueryDropsTheResponse() throws Exception {
+        IsReadyToPayServiceHelper helper = query(/*resultExecutor=*/null);
+        advanceBy(0);
+        helper.cancel();
+        mCallback.handleIsReadyToPay(true);
+        advancePastTheTimeouts();
+
+        assertFinishedWith(Outcome.CANCELLED);
+    }
+
+    @Test
+    public void cancelAfterTheResultDoesNothing() throws Exception {
+        IsReadyToPayServiceHelper helper = query(/*resultExecutor=*/null);
+        advanceBy(0);
+        mCallback.handleIsReadyToPay(false);
+        helper.cancel();
+        advancePastTheTimeouts();
+
+        assertFinishedWith(Outcome.NOT_READY, "not ready");
+    }
+
+    @Test
+    public void deliversOnTheRespondingThreadWithADirectExecutor() throws Exception {
+        query(Runnable::run);
+        advanceBy(0);
+        Thread binderThread = new Thread(() -> {
+            try {
+                mCallback.handleIsReadyToPay(true);
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        binderThread.start();
+        binderThread.join();
+
+        // Without running the main looper.
+        assertFinishedWith(Outcome.READY, "ready");
+        assertSame(binderThread, mResultThreads.get(0));
+    }
+
+    @Test
+    public void deliversOnTheHandlersThreadWithoutAnExecutor() throws Exception {
+        query(/*resultExecutor=*/null);
+        advanceBy(0);
+        Thread binderThread = new Thread(() -> {
+            try {
+                mCallback.handleIsReadyToPay(true);
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        binderThread.start();
+        binderThread.join();
+        assertEquals(0, mResults.size());
+
+        advanceBy(0);
+        assertFinishedWith(Outcome.READY, "ready");
+        assertSame(Looper.getMainLooper().getThread(), mResultThreads.get(0));
+    }
+}
@@ -0,0 +1,82 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Local unit tests for {@link LatencyHistogram}. */
+public class LatencyHistogramTest {
+    @Test
+    public void boundsThePercentilesByTheirBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram(
+                /*maxBucketValue=*/1_000_000, LatencyHistogram.NO_DECAY);
+        assertEquals(0, histogram.getPercentile(0.5));
+        for (int i = 1; i <= 100; i++) histogram.record(i * 1000);
+
+        assertEquals(100, histogram.getCount());
+        long median = histogram.getPercentile(0.5);
+        assertTrue(median >= 50_000 && median <= 50_000 * 1.25);
+        long max = histogram.getPercentile(1);
+        assertTrue(max >= 100_000 && max <= 100_000 * 1.25);
+    }
+
+    @Test
+    public void countsTheOverflowAndClears() {
+        LatencyHistogram histogram =
+                new LatencyHistogram(/*maxBucketValue=*/100, LatencyHistogram.NO_DECAY);
+        histogram.record(-5);
+        histogram.record(100);
+        histogram.record(101);
+
+        assertEquals(1, histogram.getPercentile(0.3));
+        assertEquals(100, histogram.getPercentile(0.6));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(1));
+        histogram.clear();
+        assertEquals(0, histogram.getCount());
+    }
+
+    @Test
+    public void coversAboutAMinuteOfMillisecondsByDefault() {
+        LatencyHistogram histogram = new LatencyHistogram(LatencyHistogram.NO_DECAY);
+        histogram.record(60_000);
+        assertEquals(60_000, histogram.getPercentile(1));
+        histogram.record(60_001);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void halvesTheCountsAtTheDecayThreshold() {
+        LatencyHistogram histogram = new LatencyHistogram(/*decayThreshold=*/4);
+        for (int i = 0; i < 3; i++) histogram.record(10);
+        assertEquals(3, histogram.getCount());
+        histogram.record(10);
+        assertEquals(2, histogram.getCount());
+
+        LatencyHistogram undecayed = new LatencyHistogram(LatencyHistogram.NO_DECAY);
+        for (int i = 0; i < 100; i++) undecayed.record(10);
+        assertEquals(100, undecayed.getCount());
+    }
+
+    @Test
+    public void deserializesOnlyTheSameBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram(LatencyHistogram.NO_DECAY);
+        histogram.record(5);
+        histogram.record(500);
+        LatencyHistogram restored = new LatencyHistogram(LatencyHistogram.NO_DECAY);
+        assertTrue(restored.deserialize(histogram.serialize()));
+        assertEquals(2, restored.getCount());
+        assertEquals(histogram.getPercentile(0.5), restored.getPercentile(0.5));
+
+        LatencyHistogram other =
+                new LatencyHistogram(/*maxBucketValue=*/100, LatencyHistogram.NO_DECAY);
+        assertFalse(other.deserialize(histogram.serialize()));
+        assertFalse(restored.deserialize("1,x"));
+        assertEquals(2, restored.getCount());
+    }
+}
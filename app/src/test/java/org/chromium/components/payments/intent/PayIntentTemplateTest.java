@@ -0,0 +1,203 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.Intent;
+import android.os.Bundle;
+
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentCurrencyAmount;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentDetailsModifier;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentItem;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+import org.chromium.components.payments.paymentapp.PayRequest;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/** Tests that {@link PayIntentTemplate}'s intents are those of WebPaymentIntentHelper. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PayIntentTemplateTest {
+    private static final String PACKAGE_NAME = "com.example.app";
+    private static final String ACTIVITY_NAME = "com.example.app.PayActivity";
+    private static final String METHOD = "https://example.test/pay";
+    private static final String OTHER_METHOD = "https://other.example/pay";
+    private static final byte[][] CERTIFICATE_CHAIN = {{1, 2, 3}, {4, 5, 6, 7}};
+    private static final PaymentItem TOTAL =
+            new PaymentItem(new PaymentCurrencyAmount("USD", "1.00"));
+    private static final List<PaymentItem> DISPLAY_ITEMS =
+            Collections.singletonList(new PaymentItem(new PaymentCurrencyAmount("USD", "0.50")));
+
+    @After
+    public void tearDown() {
+        WebPaymentIntentHelper.setModifierPruningEnabled(true);
+        PaymentPayloadTransport.setThresholdBytes(PaymentPayloadTransport.DEFAULT_THRESHOLD_BYTES);
+    }
+
+    private static Map<String, PaymentMethodData> createMethodDataMap(String methodData) {
+        Map<String, PaymentMethodData> methodDataMap = new HashMap<>();
+        methodDataMap.put(METHOD, new PaymentMethodData(METHOD, methodData));
+        return methodDataMap;
+    }
+
+    // One modifier of the app's method and one of another app's.
+    private static Map<String, PaymentDetailsModifier> createModifiers() {
+        Map<String, PaymentDetailsModifier> modifiers = new LinkedHashMap<>();
+        modifiers.put(METHOD,
+                new PaymentDetailsModifier(
+                        new PaymentItem(new PaymentCurrencyAmount("USD", "0.99")),
+                        new PaymentMethodData(METHOD, "{\"discount\":true}")));
+        modifiers.put(OTHER_METHOD,
+                new PaymentDetailsModifier(
+                        new PaymentItem(new PaymentCurrencyAmount("USD", "0.98")),
+                        new PaymentMethodData(OTHER_METHOD, "{}")));
+        return modifiers;
+    }
+
+    private static PayIntentTemplate createTemplate(
+            String methodData, boolean includeDeprecatedExtras) {
+        return PayIntentTemplate.create(PACKAGE_NAME, ACTIVITY_NAME, "Merchant",
+                "merchant.example", "iframe.example", CERTIFICATE_CHAIN,
+                createMethodDataMap(methodData), includeDeprecatedExtras);
+    }
+
+    private static Intent createExpectedIntent(boolean includeDeprecatedExtras) {
+        return WebPaymentIntentHelper.createPayIntent(PACKAGE_NAME, ACTIVITY_NAME, "id",
+                "Merchant", "merchant.example", "iframe.example", CERTIFICATE_CHAIN,
+                createMethodDataMap("{}"), TOTAL, DISPLAY_ITEMS, createModifiers(),
+                includeDeprecatedExtras);
+    }
+
+    private static void assertSameIntent(Intent expected, Intent actual) {
+        assertEquals(expected.getComponent(), actual.getComponent());
+        assertEquals(expected.getAction(), actual.getAction());
+        assertSameValue("extras", expected.getExtras(), actual.getExtras());
+    }
+
+    // Compares the values of the extras, including those of the nested bundles.
+    private static void assertSameValue(String path, Object expected, Object actual) {
+        if (expected instanceof Bundle) {
+            assertTrue(path, actual instanceof Bundle);
+            Bundle expectedBundle = (Bundle) expected;
+            Bundle actualBundle = (Bundle) actual;
+            assertEquals(path, expectedBundle.keySet(), actualBundle.keySet());
+            for (String key : expectedBundle.keySet()) {
+                assertSameValue(path + "." + key, expectedBundle.get(key), actualBundle.get(key));
+            }
+        } else if (expected instanceof Object[]) {
+            assertTrue(path, actual instanceof Object[]);
+            Object[] expectedArray = (Object[]) expected;
+            Object[] actualArray = (Object[]) actual;
+            assertEquals(path, expectedArray.length, actualArray.length);
+            for (int i = 0; i < expectedArray.length; i++) {
+                assertSameValue(path + "[" + i + "]", expectedArray[i], actualArray[i]);
+            }
+        } else {
+            assertTrue(path, Objects.deepEquals(expected, actual));
+        }
+    }
+
+    private static void assertRejected(Runnable create) {
+        try {
+            create.run();
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void createsTheIntentsOfWebPaymentIntentHelper() {
+        for (boolean includeDeprecatedExtras : new boolean[] {true, false}) {
+            PayIntentTemplate template = createTemplate("{}", includeDeprecatedExtras);
+            Intent expected = createExpectedIntent(includeDeprecatedExtras);
+            assertEquals(PACKAGE_NAME, template.getPackageName());
+            assertSameIntent(expected,
+                    template.createPayIntent("id", TOTAL, DISPLAY_ITEMS, createModifiers()));
+            assertSameIntent(expected,
+                    template.createPayIntent("id", TOTAL, DISPLAY_ITEMS,
+                            PaymentDetailsModifierIndex.create(createModifiers())));
+            // Every launch gets the same invariant extras.
+            assertSameIntent(expected,
+                    template.createPayIntent("id", TOTAL, DISPLAY_ITEMS, createModifiers()));
+        }
+    }
+
+    @Test
+    public void sendsOnlyTheModifiersOfTheAppsMethods() {
+        PayIntentTemplate template = createTemplate("{}", /*includeDeprecatedExtras=*/false);
+        PayRequest request = PayRequest.from(
+                template.createPayIntent("id", TOTAL, /*displayItems=*/null, createModifiers()));
+        assertEquals(1, request.getModifiers().size());
+        assertEquals(Collections.singletonList(METHOD),
+                request.getModifiers().get(0).getSupportedMethods());
+
+        WebPaymentIntentHelper.setModifierPruningEnabled(false);
+        request = PayRequest.from(template.createPayIntent("id", TOTAL, /*displayItems=*/null,
+                PaymentDetailsModifierIndex.create(createModifiers())));
+        assertEquals(2, request.getModifiers().size());
+
+        request = PayRequest.from(template.createPayIntent("id", TOTAL, /*displayItems=*/null,
+                (PaymentDetailsModifierIndex) null));
+        assertTrue(request.getModifiers().isEmpty());
+    }
+
+    @Test
+    public void movesTheLargeExtrasOutOfBand() {
+        PaymentPayloadTransport.setThresholdBytes(10_000);
+        char[] data = new char[20_000];
+        Arrays.fill(data, 'x');
+        String methodData = new String(data);
+
+        Bundle extras = createTemplate(methodData, /*includeDeprecatedExtras=*/true)
+                                .createPayIntent("id", TOTAL, DISPLAY_ITEMS, createModifiers())
+                                .getExtras();
+        assertFalse(extras.containsKey(WebPaymentIntentHelper.EXTRA_METHOD_DATA));
+        Bundle payload = PaymentPayloadTransportTest.readPayload(extras);
+        // Put back as PayRequest#restorePayload does.
+        extras.remove(WebPaymentIntentHelper.EXTRA_PAYLOAD_PROVIDER);
+        extras.putAll(payload);
+        PayRequest request = new PayRequest(extras);
+        assertEquals(methodData, request.getMethodData(METHOD));
+        assertEquals(1, request.getModifiers().size());
+
+        extras = createTemplate("{}", /*includeDeprecatedExtras=*/true)
+                         .createPayIntent("id", TOTAL, DISPLAY_ITEMS, createModifiers())
+                         .getExtras();
+        assertFalse(extras.containsKey(WebPaymentIntentHelper.EXTRA_PAYLOAD_PROVIDER));
+    }
+
+    @Test
+    public void rejectsInvalidArguments() {
+        assertRejected(() -> PayIntentTemplate.create("", ACTIVITY_NAME, "Merchant",
+                "merchant.example", "iframe.example", CERTIFICATE_CHAIN,
+                createMethodDataMap("{}")));
+        assertRejected(() -> PayIntentTemplate.create(PACKAGE_NAME, ACTIVITY_NAME, "Merchant",
+                "", "iframe.example", CERTIFICATE_CHAIN, createMethodDataMap("{}")));
+        assertRejected(() -> PayIntentTemplate.create(PACKAGE_NAME, ACTIVITY_NAME, "Merchant",
+                "merchant.example", "iframe.example", CERTIFICATE_CHAIN,
+                new HashMap<String, PaymentMethodData>()));
+
+        PayIntentTemplate template = createTemplate("{}", /*includeDeprecatedExtras=*/true);
+        assertRejected(() -> template.createPayIntent("", TOTAL, DISPLAY_ITEMS, createModifiers()));
+        assertRejected(
+                () -> template.createPayIntent("id", null, DISPLAY_ITEMS, createModifiers()));
+    }
+}
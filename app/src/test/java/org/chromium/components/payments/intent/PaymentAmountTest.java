@@ -0,0 +1,118 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentCurrencyAmount;
+import org.junit.Test;
+
+/** Local unit tests for {@link PaymentAmount} and {@link PaymentCurrency}. */
+public class PaymentAmountTest {
+    @Test
+    public void internsCurrencies() {
+        assertSame(PaymentCurrency.get("USD"), PaymentCurrency.get("usd"));
+        assertSame(PaymentCurrency.get("USD"), PaymentCurrency.get("uSd"));
+        assertEquals(2, PaymentCurrency.get("USD").getMinorUnitDigits());
+        assertEquals(0, PaymentCurrency.get("JPY").getMinorUnitDigits());
+        assertEquals(3, PaymentCurrency.get("KWD").getMinorUnitDigits());
+        assertEquals(
+                PaymentCurrency.DIGITS_UNKNOWN, PaymentCurrency.get("xbt").getMinorUnitDigits());
+        assertEquals("XBT", PaymentCurrency.get("xbt").getCode());
+        assertSame(PaymentCurrency.get("XBT"), PaymentCurrency.get("xbt"));
+    }
+
+    @Test
+    public void rejectsMalformedCurrencies() {
+        for (String code : new String[] {null, "", "US", "USDT", "US1", "ÜSD"}) {
+            try {
+                PaymentCurrency.get(code);
+                fail(code);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void parsesAndSerializesLosslessly() {
+        for (String value : new String[] {"0", "50", "1.50", "-1.05", "0.000001", "12345.6789",
+                     "9223372036854775807", "-0.922337203685477580"}) {
+            PaymentCurrencyAmount amount =
+                    PaymentAmount.from(new PaymentCurrencyAmount("usd", value))
+                            .toPaymentCurrencyAmount();
+            assertEquals("USD", amount.currency);
+            assertEquals(value, amount.value);
+        }
+        PaymentAmount amount = PaymentAmount.parse("cad", "1.50");
+        assertEquals(150, amount.getUnscaledValue());
+        assertEquals(2, amount.getScale());
+        StringBuilder json = new StringBuilder();
+        amount.appendJson(json);
+        assertEquals("{\"currency\":\"CAD\",\"value\":\"1.50\"}", json.toString());
+    }
+
+    @Test
+    public void keepsTheParsedAmount() {
+        PaymentAmount amount = PaymentAmount.parse("cad", "1.50");
+        PaymentCurrencyAmount currencyAmount = new PaymentCurrencyAmount(amount);
+        assertEquals("CAD", currencyAmount.currency);
+        assertEquals("1.50", currencyAmount.value);
+        assertSame(amount, currencyAmount.parsedAmount);
+        // Not parsed again.
+        assertSame(amount, PaymentAmount.from(currencyAmount));
+        assertSame(amount, amount.toPaymentCurrencyAmount().parsedAmount);
+    }
+
+    @Test
+    public void rejectsMalformedValues() {
+        for (String value : new String[] {null, "", "-", ".5", "5.", "1.2.3", "+1", "1e3", " 1",
+                     "1,00", "9223372036854775808", "0.1234567890123456789"}) {
+            try {
+                PaymentAmount.parse("USD", value);
+                fail(value);
+            } catch (IllegalArgumentException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void comparesValuesAcrossScales() {
+        assertEquals(0, usd("1.5").compareTo(usd("1.50")));
+        assertNotEquals(usd("1.5"), usd("1.50"));
+        assertEquals(usd("1.50"), PaymentAmount.parse("usd", "1.50"));
+        assertTrue(usd("-0.5").compareTo(usd("0.3")) < 0);
+        assertTrue(usd("-1.5").compareTo(usd("-1.25")) < 0);
+        assertTrue(usd("2").compareTo(usd("1.999")) > 0);
+        assertTrue(usd("9223372036854775807").compareTo(usd("0.000000000000000001")) > 0);
+    }
+
+    @Test
+    public void sumsAcrossScales() {
+        assertEquals("1.75", usd("1.5").plus(usd("0.25")).toPaymentCurrencyAmount().value);
+        assertEquals("-0.75", usd("0.25").plus(usd("-1")).toPaymentCurrencyAmount().value);
+        try {
+            usd("9223372036854775807").plus(usd("1"));
+            fail();
+        } catch (ArithmeticException e) {
+            // Expected.
+        }
+        try {
+            usd("1").plus(PaymentAmount.parse("CAD", "1"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    private static PaymentAmount usd(String value) {
+        return PaymentAmount.parse("USD", value);
+    }
+}
@@ -0,0 +1,203 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+import org.robolectric.shadows.ShadowPackageManager;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/** Tests of {@link PaymentAppIndex}'s lookups, updates and persistence. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class PaymentAppIndexTest {
+    private static final String PACKAGE_NAME = "com.example.app";
+    private static final String ACTIVITY_NAME = PACKAGE_NAME + ".PayActivity";
+    private static final String SERVICE_NAME = PACKAGE_NAME + ".IsReadyToPayService";
+    private static final String METHOD = "https://example.test/pay";
+
+    private ShadowPackageManager mPackageManager;
+    private Handler mHandler;
+
+    @Before
+    public void setUp() {
+        mPackageManager = shadowOf(RuntimeEnvironment.application.getPackageManager());
+        mHandler = new Handler(Looper.getMainLooper());
+        setBootCount(1);
+    }
+
+    private static void setBootCount(int bootCount) {
+        Settings.Global.putInt(RuntimeEnvironment.application.getContentResolver(),
+                Settings.Global.BOOT_COUNT, bootCount);
+    }
+
+    // The index queries the package itself, and all of the packages.
+    private static Intent[] createIntents(String action) {
+        Intent packageIntent = new Intent(action);
+        packageIntent.setPackage(PACKAGE_NAME);
+        return new Intent[] {packageIntent, new Intent(action)};
+    }
+
+    private void installApp() {
+        ResolveInfo activity = new ResolveInfo();
+        activity.activityInfo = new ActivityInfo();
+        activity.activityInfo.packageName = PACKAGE_NAME;
+        activity.activityInfo.name = ACTIVITY_NAME;
+        activity.activityInfo.metaData = new Bundle();
+        activity.activityInfo.metaData.putString(
+                PaymentAppIndex.META_DATA_NAME_DEFAULT_PAYMENT_METHOD_NAME, METHOD);
+        for (Intent intent : createIntents(WebPaymentIntentHelper.ACTION_PAY)) {
+            mPackageManager.addResolveInfoForIntent(intent, activity);
+        }
+
+        ResolveInfo service = new ResolveInfo();
+        service.serviceInfo = new ServiceInfo();
+        service.serviceInfo.packageName = PACKAGE_NAME;
+        service.serviceInfo.name = SERVICE_NAME;
+        for (Intent intent : createIntents(WebPaymentIntentHelper.ACTION_IS_READY_TO_PAY)) {
+            mPackageManager.addResolveInfoForIntent(intent, service);
+        }
+    }
+
+    private void uninstallApp() {
+        for (Intent intent : createIntents(WebPaymentIntentHelper.ACTION_PAY)) {
+            mPackageManager.removeResolveInfosForIntent(intent, PACKAGE_NAME);
+        }
+        for (Intent intent : createIntents(WebPaymentIntentHelper.ACTION_IS_READY_TO_PAY)) {
+            mPackageManager.removeResolveInfosForIntent(intent, PACKAGE_NAME);
+        }
+    }
+
+    private static void broadcastPackageChange(String action) {
+        RuntimeEnvironment.application.sendBroadcast(
+                new Intent(action, Uri.fromParts("package", PACKAGE_NAME, null)));
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    // Starts an index as a new process would, from what the previous ones persisted.
+    private PaymentAppIndex startIndex() {
+        PaymentAppIndex index = new PaymentAppIndex(RuntimeEnvironment.application);
+        index.start(mHandler);
+        return index;
+    }
+
+    @Test
+    public void indexesThePayActivitiesByMethodName() {
+        installApp();
+        PaymentAppIndex index = startIndex();
+
+        List<PaymentAppIndex.App> apps = index.getApps(METHOD);
+        assertEquals(1, apps.size());
+        assertEquals(PACKAGE_NAME, apps.get(0).getPackageName());
+        assertEquals(ACTIVITY_NAME, apps.get(0).getActivityName());
+        assertEquals(SERVICE_NAME, apps.get(0).getServiceName());
+        assertFalse(apps.get(0).skipsDeprecatedExtras());
+        assertTrue(index.getApps("https://other.example/pay").isEmpty());
+    }
+
+    @Test
+    public void followsThePackageBroadcastsUntilStopped() {
+        PaymentAppIndex index = startIndex();
+        assertTrue(index.getApps(METHOD).isEmpty());
+
+        installApp();
+        broadcastPackageChange(Intent.ACTION_PACKAGE_ADDED);
+        assertEquals(1, index.getApps(METHOD).size());
+
+        index.stop();
+        uninstallApp();
+        broadcastPackageChange(Intent.ACTION_PACKAGE_REMOVED);
+        assertEquals(1, index.getApps(METHOD).size());
+    }
+
+    @Test
+    public void stopBeforeStartDoesNotPreventTheRegistration() {
+        PaymentAppIndex index = new PaymentAppIndex(RuntimeEnvironment.application);
+        index.stop();
+        index.start(mHandler);
+        // A second start() neither registers nor loads again.
+        index.start(mHandler);
+
+        installApp();
+        broadcastPackageChange(Intent.ACTION_PACKAGE_ADDED);
+        assertEquals(1, index.getApps(METHOD).size());
+        index.stop();
+    }
+
+    @Test
+    public void loadsThePersistedIndexWithinABoot() {
+        installApp();
+        startIndex().stop();
+
+        // Not seen by the next process, e.g., because the change was not broadcast yet.
+        uninstallApp();
+        assertEquals(1, startIndex().getApps(METHOD).size());
+    }
+
+    @Test
+    public void rebuildsAfterAReboot() {
+        installApp();
+        startIndex().stop();
+
+        // The sequence number of the persisted index is from the previous boot, so it cannot tell
+        // that the app was uninstalled.
+        uninstallApp();
+        setBootCount(2);
+        assertTrue(startIndex().getApps(METHOD).isEmpty());
+    }
+
+    @Test
+    public void runsTheCallbacksOnceLoaded() {
+        installApp();
+        PaymentAppIndex index = new PaymentAppIndex(RuntimeEnvironment.application);
+        final int[] appCounts = {-1, -1};
+        index.runWhenLoaded(Runnable::run, () -> appCounts[0] = index.getApps(METHOD).size());
+        assertEquals(-1, appCounts[0]);
+
+        index.start(mHandler);
+        assertEquals(1, appCounts[0]);
+        index.runWhenLoaded(Runnable::run, () -> appCounts[1] = index.getApps(METHOD).size());
+        assertEquals(1, appCounts[1]);
+        index.stop();
+    }
+
+    @Test
+    public void getInstanceLoadsOneIndexPerProcess() throws Exception {
+        installApp();
+        PaymentAppIndex index = PaymentAppIndex.getInstance(RuntimeEnvironment.application);
+        assertSame(index, PaymentAppIndex.getInstance(RuntimeEnvironment.application));
+
+        final CountDownLatch loaded = new CountDownLatch(1);
+        index.runWhenLoaded(Runnable::run, loaded::countDown);
+        assertTrue(loaded.await(5, TimeUnit.SECONDS));
+        assertEquals(1, index.getApps(METHOD).size());
+    }
+}
@@ -0,0 +1,163 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Tests of {@link PaymentAppPrewarmer} against the binder caching of the framework. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class PaymentAppPrewarmerTest {
+    private static final String PACKAGE_NAME = "com.example.app";
+    private static final String OTHER_PACKAGE_NAME = "com.example.other";
+    private static final String READY_METHOD = "https://ready.example/pay";
+    private static final String OTHER_METHOD = "https://other.example/pay";
+    private static final long WINDOW_MS = 30_000;
+
+    private BinderCachingContext mContext;
+    private Handler mHandler;
+
+    @Before
+    public void setUp() {
+        mHandler = new Handler(Looper.getMainLooper());
+        mContext = new BinderCachingContext(RuntimeEnvironment.application,
+                BinderCachingContext.readyToPayWith(READY_METHOD), mHandler);
+    }
+
+    private static Map<String, PaymentMethodData> createMethodDataMap(String methodName) {
+        Map<String, PaymentMethodData> methodDataMap = new HashMap<>();
+        methodDataMap.put(methodName, new PaymentMethodData(methodName, "{}"));
+        return methodDataMap;
+    }
+
+    private static Intent createIsReadyToPayIntent(String packageName, String methodName) {
+        return WebPaymentIntentHelper.createIsReadyToPayIntent(packageName,
+                packageName + ".IsReadyToPayService", "merchant.example", "merchant.example",
+                /*certificateChain=*/null, createMethodDataMap(methodName));
+    }
+
+    private static PayIntentTemplate createPayIntentTemplate(String packageName) {
+        return PayIntentTemplate.create(packageName, packageName + ".PayActivity", "Merchant",
+                "merchant.example", "merchant.example", /*certificateChain=*/null,
+                createMethodDataMap(READY_METHOD));
+    }
+
+    private PaymentAppPrewarmer.Prewarm prewarm(
+            PaymentAppPrewarmer prewarmer, String packageName, String methodName) {
+        return prewarmer.prewarm(createIsReadyToPayIntent(packageName, methodName),
+                createPayIntentTemplate(packageName));
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    @Test
+    public void bindsWithoutTheExtrasOfTheQuery() {
+        PaymentAppPrewarmer prewarmer = new PaymentAppPrewarmer(mContext, mHandler, 2, WINDOW_MS);
+        assertNotNull(prewarm(prewarmer, PACKAGE_NAME, OTHER_METHOD));
+        idle();
+
+        assertEquals(1, mContext.getOnBindIntents().size());
+        Intent bindIntent = mContext.getOnBindIntents().get(0);
+        assertEquals(PACKAGE_NAME, bindIntent.getComponent().getPackageName());
+        assertNull(bindIntent.getExtras());
+    }
+
+    @Test
+    public void doesNotHandItsBinderToAQuery() {
+        PaymentAppPrewarmer prewarmer = new PaymentAppPrewarmer(mContext, mHandler, 2, WINDOW_MS);
+        // Warmed for a method that the app cannot pay with, then queried for one that it can.
+        prewarm(prewarmer, PACKAGE_NAME, OTHER_METHOD);
+        idle();
+
+        final Boolean[] isReadyToPay = {null};
+        Intent query = createIsReadyToPayIntent(PACKAGE_NAME, READY_METHOD);
+        new IsReadyToPayServiceHelper(mContext, query,
+                new IsReadyToPayServiceHelper.ResultHandler() {
+                    @Override
+                    public void onIsReadyToPayServiceResponse(boolean response) {
+                        isReadyToPay[0] = response;
+                    }
+
+                    @Override
+                    public void onIsReadyToPayServiceError() {}
+                });
+        idle();
+
+        assertEquals(Boolean.TRUE, isReadyToPay[0]);
+        assertEquals(2, mContext.getOnBindIntents().size());
+        // Only the prewarm's binding is left.
+        assertEquals(1, mContext.getLiveBindingCount());
+    }
+
+    @Test
+    public void releasesTheAppWhenTheWindowExpires() {
+        PaymentAppPrewarmer prewarmer = new PaymentAppPrewarmer(mContext, mHandler, 2, WINDOW_MS);
+        PaymentAppPrewarmer.Prewarm prewarm = prewarm(prewarmer, PACKAGE_NAME, READY_METHOD);
+        idle();
+        assertSame(prewarm, prewarmer.get(PACKAGE_NAME));
+
+        shadowOf(Looper.getMainLooper()).idleFor(WINDOW_MS, TimeUnit.MILLISECONDS);
+        assertFalse(prewarm.isActive());
+        assertNull(prewarmer.get(PACKAGE_NAME));
+        assertEquals(0, mContext.getLiveBindingCount());
+        // The template outlives the prewarm.
+        assertNotNull(prewarm.getPayIntentTemplate());
+    }
+
+    @Test
+    public void replacesThePrewarmOfTheSameAppWithoutUnbindingFirst() {
+        PaymentAppPrewarmer prewarmer = new PaymentAppPrewarmer(mContext, mHandler, 1, WINDOW_MS);
+        PaymentAppPrewarmer.Prewarm first = prewarm(prewarmer, PACKAGE_NAME, READY_METHOD);
+        idle();
+        PaymentAppPrewarmer.Prewarm second = prewarm(prewarmer, PACKAGE_NAME, OTHER_METHOD);
+        idle();
+
+        assertFalse(first.isActive());
+        assertTrue(second.isActive());
+        assertEquals(1, prewarmer.size());
+        assertEquals(1, mContext.getLiveBindingCount());
+        // The binder stayed cached across the replacement, so the process was never released.
+        assertEquals(1, mContext.getOnBindIntents().size());
+    }
+
+    @Test
+    public void capsTheNumberOfPrewarmedApps() {
+        PaymentAppPrewarmer prewarmer = new PaymentAppPrewarmer(mContext, mHandler, 1, WINDOW_MS);
+        assertNotNull(prewarm(prewarmer, PACKAGE_NAME, READY_METHOD));
+        assertNull(prewarm(prewarmer, OTHER_PACKAGE_NAME, READY_METHOD));
+
+        prewarmer.cancelAll();
+        assertEquals(0, prewarmer.size());
+        assertEquals(0, mContext.getLiveBindingCount());
+        assertNotNull(prewarm(prewarmer, OTHER_PACKAGE_NAME, READY_METHOD));
+    }
+}
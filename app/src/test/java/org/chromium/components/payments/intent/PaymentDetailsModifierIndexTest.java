@@ -0,0 +1,79 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentCurrencyAmount;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentDetailsModifier;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentItem;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Local unit tests for {@link PaymentDetailsModifierIndex}. */
+public class PaymentDetailsModifierIndexTest {
+    private static final PaymentDetailsModifier A1 = modifier("a", "1");
+    private static final PaymentDetailsModifier B2 = modifier("b", "2");
+    private static final PaymentDetailsModifier A3 = modifier("a", "3");
+    private static final PaymentDetailsModifier C4 = modifier("c", "4");
+
+    @After
+    public void tearDown() {
+        WebPaymentIntentHelper.setModifierPruningEnabled(true);
+    }
+
+    @Test
+    public void selectsTheModifiersOfTheAppsMethodsInOrder() {
+        PaymentDetailsModifierIndex index = PaymentDetailsModifierIndex.create(modifiers());
+
+        assertEquals(Arrays.asList(A1, A3), index.select(Collections.singleton("a")));
+        assertEquals(Arrays.asList(A1, B2, A3), index.select(Arrays.asList("b", "a")));
+        assertEquals(Arrays.asList(A1, B2, A3, C4), index.select(Arrays.asList("c", "b", "a")));
+        assertEquals(Collections.emptyList(), index.select(Collections.singleton("d")));
+        assertEquals(Arrays.asList(C4), index.select(Arrays.asList("c", "d")));
+    }
+
+    @Test
+    public void selectsFromTheMapLikeTheIndex() {
+        assertEquals(Arrays.asList(A1, B2, A3),
+                new ArrayList<>(
+                        PaymentDetailsModifierIndex.select(modifiers(), Arrays.asList("b", "a"))));
+        assertNull(PaymentDetailsModifierIndex.select(null, Collections.singleton("a")));
+    }
+
+    @Test
+    public void keepsAllOfTheModifiersWithoutPruning() {
+        WebPaymentIntentHelper.setModifierPruningEnabled(false);
+        PaymentDetailsModifierIndex index = PaymentDetailsModifierIndex.create(modifiers());
+
+        assertEquals(Arrays.asList(A1, B2, A3, C4), index.select(Collections.singleton("d")));
+        Collection<PaymentDetailsModifier> selected =
+                PaymentDetailsModifierIndex.select(modifiers(), Collections.singleton("d"));
+        assertEquals(Arrays.asList(A1, B2, A3, C4), new ArrayList<>(selected));
+    }
+
+    private static Map<String, PaymentDetailsModifier> modifiers() {
+        Map<String, PaymentDetailsModifier> modifiers = new LinkedHashMap<>();
+        for (PaymentDetailsModifier modifier : new PaymentDetailsModifier[] {A1, B2, A3, C4}) {
+            modifiers.put(modifier.total.amount.value, modifier);
+        }
+        return modifiers;
+    }
+
+    private static PaymentDetailsModifier modifier(String method, String value) {
+        return new PaymentDetailsModifier(new PaymentItem(new PaymentCurrencyAmount("CAD", value)),
+                new PaymentMethodData(method, "{}"));
+    }
+}
@@ -0,0 +1,151 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentCurrencyAmount;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentDetailsModifier;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentItem;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Local unit tests for {@link PaymentJsonEncoder}. The expected strings are what
+ * android.util.JsonWriter produces for the same input, see PaymentJsonEncoderEquivalenceTest for
+ * the on-device comparison.
+ */
+public class PaymentJsonEncoderTest {
+    private static final PaymentItem TOTAL = new PaymentItem(new PaymentCurrencyAmount("CAD", "50"));
+
+    @Test
+    public void encodesIsReadyToPayPayloads() {
+        PaymentJsonEncoder encoder = PaymentJsonEncoder.get();
+        encoder.encode(/*total=*/null, /*displayItems=*/null, /*modifiers=*/null);
+
+        assertNull(encoder.getTotalAmount());
+        assertNull(encoder.getModifiers());
+        assertEquals("{}", encoder.getDeprecatedDetails());
+    }
+
+    @Test
+    public void encodesTotalAndDisplayItems() {
+        PaymentJsonEncoder encoder = PaymentJsonEncoder.get();
+        encoder.encode(TOTAL, new ArrayList<>(), /*modifiers=*/null);
+
+        assertEquals("{\"currency\":\"CAD\",\"value\":\"50\"}", encoder.getTotalAmount());
+        assertEquals("{\"total\":{\"label\":\"\",\"amount\":{\"currency\":\"CAD\",\"value\":\"50\"}},"
+                        + "\"displayItems\":[]}",
+                encoder.getDeprecatedDetails());
+    }
+
+    @Test
+    public void encodesDisplayItemsWithoutTotal() {
+        PaymentJsonEncoder encoder = PaymentJsonEncoder.get();
+        encoder.encode(/*total=*/null, new ArrayList<>(), /*modifiers=*/null);
+
+        assertEquals("{\"displayItems\":[]}", encoder.getDeprecatedDetails());
+    }
+
+    @Test
+    public void encodesModifiers() {
+        PaymentDetailsModifier sharedTotal =
+                new PaymentDetailsModifier(TOTAL, new PaymentMethodData("maxPay", "{}"));
+        PaymentDetailsModifier ownTotal = new PaymentDetailsModifier(
+                new PaymentItem(new PaymentCurrencyAmount("USD", "1.50")),
+                new PaymentMethodData("basic-card", null));
+        PaymentDetailsModifier noTotal =
+                new PaymentDetailsModifier(null, new PaymentMethodData("https://pay.example", "[]"));
+        PaymentJsonEncoder encoder = PaymentJsonEncoder.get();
+        encoder.encode(TOTAL, null, Arrays.asList(sharedTotal, ownTotal, noTotal));
+
+        assertEquals("[{\"total\":{\"label\":\"\",\"amount\":{\"currency\":\"CAD\",\"value\":\"50\"}},"
+                        + "\"supportedMethods\":[\"maxPay\"],\"data\":\"{}\"},"
+                        + "{\"total\":{\"label\":\"\",\"amount\":{\"currency\":\"USD\",\"value\":"
+                        + "\"1.50\"}},\"supportedMethods\":[\"basic-card\"],\"data\":null},"
+                        + "{\"total\":null,\"supportedMethods\":[\"https://pay.example\"],"
+                        + "\"data\":\"[]\"}]",
+                encoder.getModifiers());
+    }
+
+    @Test
+    public void encodesEmptyModifiers() {
+        PaymentJsonEncoder encoder = PaymentJsonEncoder.get();
+        encoder.encode(TOTAL, null, Collections.emptyList());
+
+        assertEquals("[]", encoder.getModifiers());
+        assertEquals("{\"total\":{\"label\":\"\",\"amount\":{\"currency\":\"CAD\",\"value\":\"50\"}}}",
+                encoder.getDeprecatedDetails());
+    }
+
+    @Test
+    public void encodesCurrentPayloadsWithoutDeprecatedDetails() {
+        PaymentDetailsModifier sharedTotal =
+                new PaymentDetailsModifier(TOTAL, new PaymentMethodData("maxPay", "{}"));
+        PaymentJsonEncoder encoder = PaymentJsonEncoder.get();
+        encoder.encode(TOTAL, new ArrayList<>(), Collections.singletonList(sharedTotal));
+        String totalAmount = encoder.getTotalAmount();
+        String modifiers = encoder.getModifiers();
+
+        encoder.encodeCurrent(TOTAL, Collections.singletonList(sharedTotal));
+
+        assertEquals(totalAmount, encoder.getTotalAmount());
+        assertEquals(modifiers, encoder.getModifiers());
+        assertNull(encoder.getDeprecatedDetails());
+    }
+
+    @Test
+    public void escapesLikeJsonWriter() {
+        PaymentJsonEncoder encoder = PaymentJsonEncoder.get();
+        encoder.encode(new PaymentItem(new PaymentCurrencyAmount(
+                               "\"\\/\t\b\n\r\f", "\u0000\u001f\u2028\u2029\u00e9\ud83d\ude00")),
+                null, null);
+
+        assertEquals("{\"currency\":\"\\\"\\\\/\\t\\b\\n\\r\\f\","
+                        + "\"value\":\"\\u0000\\u001f\\u2028\\u2029\u00e9\ud83d\ude00\"}",
+                encoder.getTotalAmount());
+    }
+
+    @Test
+    public void encodesParsedAmountsLikeTheirStrings() {
+        PaymentItem parsedTotal =
+                new PaymentItem(new PaymentCurrencyAmount(PaymentAmount.parse("cad", "50")));
+        PaymentDetailsModifier modifier = new PaymentDetailsModifier(
+                new PaymentItem(new PaymentCurrencyAmount(PaymentAmount.parse("USD", "-1.05"))),
+                new PaymentMethodData("maxPay", "{}"));
+        PaymentJsonEncoder encoder = PaymentJsonEncoder.get();
+        encoder.encode(parsedTotal, new ArrayList<>(), Collections.singletonList(modifier));
+        String totalAmount = encoder.getTotalAmount();
+        String modifiers = encoder.getModifiers();
+        String deprecatedDetails = encoder.getDeprecatedDetails();
+
+        encoder.encode(new PaymentItem(new PaymentCurrencyAmount("CAD", "50")), new ArrayList<>(),
+                Collections.singletonList(new PaymentDetailsModifier(
+                        new PaymentItem(new PaymentCurrencyAmount("USD", "-1.05")),
+                        new PaymentMethodData("maxPay", "{}"))));
+
+        assertEquals(encoder.getTotalAmount(), totalAmount);
+        assertEquals(encoder.getModifiers(), modifiers);
+        assertEquals(encoder.getDeprecatedDetails(), deprecatedDetails);
+    }
+
+    @Test
+    public void encodesNullAmountFields() {
+        PaymentJsonEncoder encoder = PaymentJsonEncoder.get();
+        encoder.encode(new PaymentItem(new PaymentCurrencyAmount(null, null)), null, null);
+
+        assertEquals("{\"currency\":null,\"value\":null}", encoder.getTotalAmount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNullModifier() {
+        PaymentJsonEncoder.get().encode(TOTAL, null, Collections.singletonList(null));
+    }
+}
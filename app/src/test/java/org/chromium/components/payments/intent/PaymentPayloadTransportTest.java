@@ -0,0 +1,174 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.ParcelFileDescriptor;
+import android.os.Parcelable;
+
+import org.chromium.PaymentPayloadProvider;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentCurrencyAmount;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentItem;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests of {@link PaymentPayloadTransport}'s size threshold and out-of-band payload. The payment
+ * app library's PayRequestTest restores the payload.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PaymentPayloadTransportTest {
+    private static final String METHOD = "https://example.test/pay";
+    private static final byte[][] CERTIFICATE_CHAIN = {{1, 2, 3}, {4, 5, 6, 7}};
+
+    @After
+    public void tearDown() {
+        PaymentPayloadTransport.setThresholdBytes(PaymentPayloadTransport.DEFAULT_THRESHOLD_BYTES);
+    }
+
+    // Builds the extras of a Pay intent whose method data has the given number of characters.
+    private static Bundle createPayIntentExtras(int methodDataLength) {
+        char[] data = new char[methodDataLength];
+        Arrays.fill(data, 'x');
+        Map<String, PaymentMethodData> methodDataMap = new HashMap<>();
+        methodDataMap.put(METHOD, new PaymentMethodData(METHOD, new String(data)));
+        return WebPaymentIntentHelper
+                .createPayIntent("com.example.app", "com.example.app.PayActivity", "id",
+                        "Merchant", "merchant.example", "merchant.example", CERTIFICATE_CHAIN,
+                        methodDataMap, new PaymentItem(new PaymentCurrencyAmount("USD", "1.00")),
+                        /*displayItems=*/null, /*modifiers=*/null)
+                .getExtras();
+    }
+
+    /**
+     * Reads the payload of a Pay intent from memory, because Robolectric's pipes are backed by
+     * files that do not stream, and checks it against its size and digest.
+     * @param extras The extras of the Pay intent.
+     * @return The unmarshalled payload.
+     */
+    /* package */ static Bundle readPayload(Bundle extras) {
+        byte[] payload = PaymentPayloadTransport.getPayloadForTesting(
+                extras.getBinder(WebPaymentIntentHelper.EXTRA_PAYLOAD_PROVIDER));
+        assertEquals(payload.length, extras.getInt(WebPaymentIntentHelper.EXTRA_PAYLOAD_SIZE));
+        assertEquals(IsReadyToPayFingerprint.toHex(
+                             IsReadyToPayFingerprint.newSha256().digest(payload)),
+                extras.getString(WebPaymentIntentHelper.EXTRA_PAYLOAD_DIGEST));
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(payload, 0, payload.length);
+            parcel.setDataPosition(0);
+            return parcel.readBundle(PaymentPayloadTransportTest.class.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    @Test
+    public void estimatesTheMarshalledSizeOfThePayIntentExtras() {
+        for (int methodDataLength : new int[] {0, 100, 10_000}) {
+            Bundle extras = createPayIntentExtras(methodDataLength);
+            int marshalledSize = PaymentPayloadTransport.getMarshalledSize(extras);
+            int estimatedSize = PaymentPayloadTransport.estimateMarshalledSize(extras);
+            // Well within the margin around the threshold in which the extras are marshalled.
+            assertTrue(Math.abs(estimatedSize - marshalledSize) <= marshalledSize / 16);
+        }
+    }
+
+    @Test
+    public void doesNotEstimateUnknownTypes() {
+        Bundle extras = new Bundle();
+        extras.putLong("long", 1);
+        assertEquals(-1, PaymentPayloadTransport.estimateMarshalledSize(extras));
+    }
+
+    @Test
+    public void measuresTheExtrasExactlyNearTheThreshold() {
+        Bundle extras = createPayIntentExtras(1000);
+        int marshalledSize = PaymentPayloadTransport.getMarshalledSize(extras);
+
+        PaymentPayloadTransport.setThresholdBytes(marshalledSize);
+        assertFalse(PaymentPayloadTransport.exceedsThreshold(/*baseSize=*/0, extras));
+        assertTrue(PaymentPayloadTransport.exceedsThreshold(/*baseSize=*/1, extras));
+
+        PaymentPayloadTransport.setThresholdBytes(marshalledSize - 1);
+        assertTrue(PaymentPayloadTransport.exceedsThreshold(/*baseSize=*/0, extras));
+    }
+
+    @Test
+    public void decidesFromTheEstimateFarFromTheThreshold() {
+        Bundle extras = createPayIntentExtras(1000);
+        int marshalledSize = PaymentPayloadTransport.getMarshalledSize(extras);
+
+        PaymentPayloadTransport.setThresholdBytes(2 * marshalledSize);
+        assertFalse(PaymentPayloadTransport.exceedsThreshold(/*baseSize=*/0, extras));
+        PaymentPayloadTransport.setThresholdBytes(marshalledSize / 2);
+        assertTrue(PaymentPayloadTransport.exceedsThreshold(/*baseSize=*/0, extras));
+    }
+
+    @Test
+    public void keepsTheExtrasBelowTheThresholdInTheIntent() {
+        Bundle extras = createPayIntentExtras(1000);
+        assertNull(extras.getBinder(WebPaymentIntentHelper.EXTRA_PAYLOAD_PROVIDER));
+        assertNotNull(extras.getBundle(WebPaymentIntentHelper.EXTRA_METHOD_DATA));
+    }
+
+    @Test
+    public void movesTheExtrasAboveTheThresholdIntoThePayload() {
+        PaymentPayloadTransport.setThresholdBytes(10_000);
+        Bundle extras = createPayIntentExtras(20_000);
+        assertNull(extras.getBundle(WebPaymentIntentHelper.EXTRA_METHOD_DATA));
+        assertNull(extras.getParcelableArray(WebPaymentIntentHelper.EXTRA_TOP_CERTIFICATE_CHAIN));
+        // The small extras stay in the intent.
+        assertEquals("Merchant", extras.getString(WebPaymentIntentHelper.EXTRA_MERCHANT_NAME));
+
+        Bundle payload = readPayload(extras);
+        Bundle methodData = payload.getBundle(WebPaymentIntentHelper.EXTRA_METHOD_DATA);
+        assertEquals(20_000, methodData.getString(METHOD).length());
+        Parcelable[] certificateChain =
+                payload.getParcelableArray(WebPaymentIntentHelper.EXTRA_TOP_CERTIFICATE_CHAIN);
+        assertEquals(CERTIFICATE_CHAIN.length, certificateChain.length);
+        for (int i = 0; i < CERTIFICATE_CHAIN.length; i++) {
+            assertArrayEquals(CERTIFICATE_CHAIN[i],
+                    ((Bundle) certificateChain[i])
+                            .getByteArray(WebPaymentIntentHelper.EXTRA_CERTIFICATE));
+        }
+        // The deprecated copies are not written again, but listed for the payment app to restore.
+        assertFalse(payload.containsKey(WebPaymentIntentHelper.EXTRA_DEPRECATED_DATA_MAP));
+        assertFalse(
+                payload.containsKey(WebPaymentIntentHelper.EXTRA_DEPRECATED_CERTIFICATE_CHAIN));
+        assertEquals(Arrays.asList(WebPaymentIntentHelper.EXTRA_DEPRECATED_CERTIFICATE_CHAIN,
+                             WebPaymentIntentHelper.EXTRA_DEPRECATED_DATA_MAP),
+                payload.getStringArrayList("aliases"));
+    }
+
+    @Test
+    public void servesThePayloadOnlyOnce() throws Exception {
+        PaymentPayloadTransport.setThresholdBytes(10_000);
+        PaymentPayloadProvider provider = PaymentPayloadProvider.Stub.asInterface(
+                createPayIntentExtras(20_000).getBinder(
+                        WebPaymentIntentHelper.EXTRA_PAYLOAD_PROVIDER));
+        // The first call gets the pipe, which Robolectric may fail to create.
+        ParcelFileDescriptor payloadFd = provider.openPayload();
+        if (payloadFd != null) payloadFd.close();
+        assertNull(provider.openPayload());
+    }
+}
@@ -0,0 +1,141 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import android.app.Activity;
+import android.content.Intent;
+
+import org.chromium.components.payments.ErrorStrings;
+import org.chromium.components.payments.paymentapp.PaymentResponseBuilder;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Tests of {@link PaymentResponse}'s validation and lazy decoding of the payment app's result. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PaymentResponseTest {
+    private static final int MAX_DEPTH = 3;
+
+    private static Intent createResult(String details) {
+        Intent result = new Intent();
+        result.putExtra(WebPaymentIntentHelper.EXTRA_RESPONSE_METHOD_NAME, "maxPay");
+        result.putExtra(WebPaymentIntentHelper.EXTRA_RESPONSE_DETAILS, details);
+        return result;
+    }
+
+    private static PaymentResponse parse(String details) {
+        PaymentResponse response = PaymentResponse.parse(Activity.RESULT_OK,
+                createResult(details), PaymentResponse.DEFAULT_MAX_DETAILS_LENGTH, MAX_DEPTH,
+                (error) -> { throw new AssertionError(error); });
+        assertEquals(details, response.getDetails());
+        return response;
+    }
+
+    // Returns the error of a response that is expected to be rejected.
+    private static String getError(int resultCode, Intent data) {
+        final String[] error = {null};
+        PaymentResponse response = PaymentResponse.parse(resultCode, data,
+                /*maxDetailsLength=*/64, MAX_DEPTH, (errorString) -> error[0] = errorString);
+        assertNull(response);
+        return error[0];
+    }
+
+    @Test
+    public void decodesTheFieldsOfTheDetails() throws Exception {
+        PaymentResponse response =
+                parse("{\"s\":\"a\",\"n\":1,\"d\":1.5,\"b\":true,\"z\":null,\"o\":{\"x\":[1]}}");
+        assertEquals("maxPay", response.getMethodName());
+        // Out of order, so that the later fields are decoded first.
+        assertEquals(1, ((JSONObject) response.getDetailsField("o")).getJSONArray("x").length());
+        assertEquals("a", response.getDetailsField("s"));
+        assertEquals(1L, response.getDetailsField("n"));
+        assertEquals(1.5, response.getDetailsField("d"));
+        assertEquals(true, response.getDetailsField("b"));
+        assertEquals(JSONObject.NULL, response.getDetailsField("z"));
+        assertNull(response.getDetailsField("missing"));
+    }
+
+    @Test
+    public void keepsTheLastValueOfDuplicateFields() throws Exception {
+        String details = "{\"a\":1,\"b\":{\"c\":1,\"c\":2},\"e\":[],\"a\":3}";
+        // A duplicate field is the same whether it is read before or after the other fields.
+        PaymentResponse response = parse(details);
+        assertEquals(3L, response.getDetailsField("a"));
+        assertEquals(2L, ((JSONObject) response.getDetailsField("b")).get("c"));
+
+        response = parse(details);
+        assertEquals(0, ((JSONArray) response.getDetailsField("e")).length());
+        assertEquals(2L, ((JSONObject) response.getDetailsField("b")).get("c"));
+        assertEquals(3L, response.getDetailsField("a"));
+        assertEquals(3L, response.getDetailsField("a"));
+    }
+
+    @Test
+    public void rejectsMalformedDetails() {
+        for (String details : new String[] {"", "[]", "\"details\"", "null", "{", "{\"a\":}",
+                     "{\"a\":1,}", "{\"a\" 1}", "{}{}", "{} x"}) {
+            assertEquals(details, ErrorStrings.PAYMENT_APP_INVALID_DETAILS,
+                    getError(Activity.RESULT_OK, createResult(details)));
+        }
+    }
+
+    @Test
+    public void rejectsDetailsBeyondTheLimits() {
+        assertEquals(ErrorStrings.PAYMENT_APP_DETAILS_TOO_DEEP,
+                getError(Activity.RESULT_OK, createResult("{\"a\":{\"b\":[{}]}}")));
+        assertEquals(ErrorStrings.PAYMENT_APP_RESPONSE_TOO_LARGE,
+                getError(Activity.RESULT_OK,
+                        createResult("{\"a\":\"" + new String(new char[64]) + "\"}")));
+    }
+
+    @Test
+    public void rejectsMissingAndUnsuccessfulResults() {
+        assertEquals(ErrorStrings.MISSING_INTENT_DATA, getError(Activity.RESULT_OK, null));
+        assertEquals(
+                ErrorStrings.MISSING_INTENT_EXTRAS, getError(Activity.RESULT_OK, new Intent()));
+        assertEquals(ErrorStrings.RESULT_CANCELED,
+                getError(Activity.RESULT_CANCELED, createResult("{}")));
+        assertEquals(String.format(ErrorStrings.UNRECOGNIZED_ACTIVITY_RESULT, 7),
+                getError(7, createResult("{}")));
+    }
+
+    @Test
+    public void fallsBackToTheDeprecatedDetails() {
+        Intent result = new Intent();
+        result.putExtra(
+                WebPaymentIntentHelper.EXTRA_DEPRECATED_RESPONSE_INSTRUMENT_DETAILS, "{\"a\":1}");
+        PaymentResponse response = PaymentResponse.parse(Activity.RESULT_OK, result,
+                (error) -> { throw new AssertionError(error); });
+        assertEquals("", response.getMethodName());
+        assertEquals("{\"a\":1}", response.getDetails());
+
+        result = new Intent();
+        result.putExtra(WebPaymentIntentHelper.EXTRA_RESPONSE_METHOD_NAME, "maxPay");
+        response = PaymentResponse.parse(Activity.RESULT_OK, result,
+                (error) -> { throw new AssertionError(error); });
+        assertEquals("{}", response.getDetails());
+    }
+
+    @Test
+    public void parsesTheResponseOfThePaymentAppLibrary() {
+        Intent result = new PaymentResponseBuilder("maxPay")
+                                .putDetail("status", "success")
+                                .putDetail("amount", 50)
+                                .build();
+        PaymentResponse response = PaymentResponse.parse(Activity.RESULT_OK, result,
+                (error) -> { throw new AssertionError(error); });
+        assertEquals("maxPay", response.getMethodName());
+        assertEquals("success", response.getDetailsField("status"));
+        assertEquals(50L, response.getDetailsField("amount"));
+        assertNull(response.getDetailsField("missing"));
+    }
+}
@@ -0,0 +1,105 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentCurrencyAmount;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentItem;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowTrace;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Tests of the trace sections of {@link PaymentTrace} and of the intent builders. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PaymentTraceTest {
+    private static final String METHOD = "https://example.test/pay";
+
+    @Before
+    public void setUp() {
+        ShadowTrace.reset();
+    }
+
+    private static Map<String, PaymentMethodData> createMethodDataMap() {
+        Map<String, PaymentMethodData> methodDataMap = new HashMap<>();
+        methodDataMap.put(METHOD, new PaymentMethodData(METHOD, "{}"));
+        return methodDataMap;
+    }
+
+    @Test
+    public void truncatesLongSectionNames() {
+        char[] name = new char[200];
+        Arrays.fill(name, 'x');
+        PaymentTrace.beginSection(new String(name));
+        assertEquals(127, ShadowTrace.getCurrentSections().peek().length());
+        PaymentTrace.endSection();
+        assertTrue(ShadowTrace.getCurrentSections().isEmpty());
+    }
+
+    @Test
+    public void skipsTheAsyncSectionsBeforeQ() {
+        assertFalse(PaymentTrace.isEnabled());
+        PaymentTrace.beginAsyncSection("PaymentRequest", "id");
+        PaymentTrace.endAsyncSection("PaymentRequest", "id");
+        assertTrue(ShadowTrace.getCurrentSections().isEmpty());
+        assertTrue(ShadowTrace.getPreviousSections().isEmpty());
+    }
+
+    @Test
+    public void createsUniqueCorrelationIds() {
+        String id = PaymentTrace.newCorrelationId("com.example.app");
+        assertTrue(id, id.startsWith("com.example.app#"));
+        assertNotEquals(id, PaymentTrace.newCorrelationId("com.example.app"));
+    }
+
+    @Test
+    public void tracesTheIntentBuilds() {
+        WebPaymentIntentHelper.createIsReadyToPayIntent("com.example.app",
+                "com.example.app.IsReadyToPayService", "merchant.example", "merchant.example",
+                /*certificateChain=*/null, createMethodDataMap());
+        PayIntentTemplate
+                .create("com.example.app", "com.example.app.PayActivity", "Merchant",
+                        "merchant.example", "merchant.example", /*certificateChain=*/null,
+                        createMethodDataMap())
+                .createPayIntent("id", new PaymentItem(new PaymentCurrencyAmount("USD", "1.00")),
+                        /*displayItems=*/null, /*modifiers=*/Collections.emptyMap());
+
+        assertTrue(ShadowTrace.getCurrentSections().isEmpty());
+        assertTrue(ShadowTrace.getPreviousSections().contains(
+                "WebPaymentIntentHelper.createIsReadyToPayIntent"));
+        assertTrue(ShadowTrace.getPreviousSections().contains("PayIntentTemplate.createPayIntent"));
+    }
+
+    @Test
+    public void endsTheSectionOfAFailedBuild() {
+        try {
+            WebPaymentIntentHelper.createPayIntent("com.example.app",
+                    "com.example.app.PayActivity", /*id=*/"", "Merchant", "merchant.example",
+                    "merchant.example", /*certificateChain=*/null, createMethodDataMap(),
+                    new PaymentItem(new PaymentCurrencyAmount("USD", "1.00")),
+                    /*displayItems=*/null, /*modifiers=*/null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        assertTrue(ShadowTrace.getCurrentSections().isEmpty());
+        assertTrue(ShadowTrace.getPreviousSections().contains(
+                "WebPaymentIntentHelper.createPayIntent"));
+    }
+}
@@ -0,0 +1,168 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.content.Intent;
+
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentCurrencyAmount;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentDetailsModifier;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentItem;
+import org.chromium.components.payments.intent.WebPaymentIntentHelperType.PaymentMethodData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures building the Pay and IsReadyToPay intents, and encoding their JSON payloads, for
+ * checkouts of different shapes. The certificate chains are cached across invocations, as they
+ * are across the intents of one page. Each parameter is only at its small and its large end, so that
+ * the run covers 16 checkouts per benchmark instead of every combination in between.
+ */
+@State(Scope.Benchmark)
+public class PaymentIntentBenchmark {
+    // The size of a typical DER-encoded certificate.
+    private static final int CERTIFICATE_SIZE = 1500;
+
+    /** The number of payment methods in the method data. */
+    @Param({"1", "16"})
+    public int methodCount;
+
+    /** The number of payment details modifiers. */
+    @Param({"0", "16"})
+    public int modifierCount;
+
+    /** The number of characters of each method's stringified data. */
+    @Param({"16", "65536"})
+    public int stringifiedDataSize;
+
+    /** The number of certificates in the merchant's certificate chain. */
+    @Param({"0", "3"})
+    public int certificateChainLength;
+
+    private byte[][] mCertificateChain;
+    private Map<String, PaymentMethodData> mMethodDataMap;
+    private PaymentItem mTotal;
+    private List<PaymentItem> mDisplayItems;
+    private Map<String, PaymentDetailsModifier> mModifiers;
+    private PayIntentTemplate mPayIntentTemplate;
+    // One app per method, each with the template of its own method.
+    private List<PayIntentTemplate> mAppTemplates;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(/*seed=*/0);
+        mCertificateChain = certificateChainLength == 0 ? null : new byte[certificateChainLength][];
+        for (int i = 0; i < certificateChainLength; i++) {
+            mCertificateChain[i] = new byte[CERTIFICATE_SIZE];
+            random.nextBytes(mCertificateChain[i]);
+        }
+
+        char[] padding = new char[Math.max(0, stringifiedDataSize - "{\"d\":\"\"}".length())];
+        Arrays.fill(padding, 'x');
+        String stringifiedData = "{\"d\":\"" + new String(padding) + "\"}";
+        List<PaymentMethodData> methodData = new ArrayList<>();
+        mMethodDataMap = new HashMap<>();
+        for (int i = 0; i < methodCount; i++) {
+            String methodName = "https://pay" + i + ".example/method";
+            methodData.add(new PaymentMethodData(methodName, stringifiedData));
+            mMethodDataMap.put(methodName, methodData.get(i));
+        }
+
+        mTotal = new PaymentItem(new PaymentCurrencyAmount("CAD", "50.00"));
+        mDisplayItems = new ArrayList<>();
+        mDisplayItems.add(new PaymentItem(new PaymentCurrencyAmount("CAD", "50.00")));
+        mModifiers = new HashMap<>();
+        for (int i = 0; i < modifierCount; i++) {
+            mModifiers.put("modifier" + i,
+                    new PaymentDetailsModifier(new PaymentItem(new PaymentCurrencyAmount(
+                                                       "CAD", "4" + i + ".00")),
+                            methodData.get(i % methodCount)));
+        }
+
+        mPayIntentTemplate = PayIntentTemplate.create("com.example.app", "com.example.app.Pay",
+                "Merchant", "merchant.example", "merchant.example", mCertificateChain,
+                mMethodDataMap);
+        mAppTemplates = new ArrayList<>();
+        for (PaymentMethodData data : methodData) {
+            Map<String, PaymentMethodData> appMethodDataMap = new HashMap<>();
+            appMethodDataMap.put(data.supportedMethod, data);
+            mAppTemplates.add(PayIntentTemplate.create("com.example.app", "com.example.app.Pay",
+                    "Merchant", "merchant.example", "merchant.example", mCertificateChain,
+                    appMethodDataMap));
+        }
+    }
+
+    @Benchmark
+    public Intent createPayIntent() {
+        return WebPaymentIntentHelper.createPayIntent("com.example.app", "com.example.app.Pay",
+                "request-id", "Merchant", "merchant.example", "merchant.example",
+                mCertificateChain, mMethodDataMap, mTotal, mDisplayItems, mModifiers);
+    }
+
+    @Benchmark
+    public Intent createPayIntentWithoutDeprecatedExtras() {
+        return WebPaymentIntentHelper.createPayIntent("com.example.app", "com.example.app.Pay",
+                "request-id", "Merchant", "merchant.example", "merchant.example",
+                mCertificateChain, mMethodDataMap, mTotal, mDisplayItems, mModifiers,
+                /*includeDeprecatedExtras=*/false);
+    }
+
+    @Benchmark
+    public Intent createPayIntentFromTemplate() {
+        return mPayIntentTemplate.createPayIntent(
+                "request-id", mTotal, mDisplayItems, mModifiers);
+    }
+
+    @Benchmark
+    public Intent createIsReadyToPayIntent() {
+        return WebPaymentIntentHelper.createIsReadyToPayIntent("com.example.app",
+                "com.example.app.IsReadyToPay", "merchant.example", "merchant.example",
+                mCertificateChain, mMethodDataMap);
+    }
+
+    /** The intents of all of the apps, each with only its modifiers from one shared index. */
+    @Benchmark
+    public void createPayIntentsForAllApps(Blackhole blackhole) {
+        PaymentDetailsModifierIndex modifierIndex = PaymentDetailsModifierIndex.create(mModifiers);
+        for (PayIntentTemplate template : mAppTemplates) {
+            blackhole.consume(
+                    template.createPayIntent("request-id", mTotal, mDisplayItems, modifierIndex));
+        }
+    }
+
+    /** The intents of all of the apps, each with all of the modifiers, as before the pruning. */
+    @Benchmark
+    public void createPayIntentsForAllAppsWithoutPruning(Blackhole blackhole) {
+        WebPaymentIntentHelper.setModifierPruningEnabled(false);
+        try {
+            for (PayIntentTemplate template : mAppTemplates) {
+                blackhole.consume(
+                        template.createPayIntent("request-id", mTotal, mDisplayItems, mModifiers));
+            }
+        } finally {
+            WebPaymentIntentHelper.setModifierPruningEnabled(true);
+        }
+    }
+
+    /** The JSON encoding that replaced the serialize* methods of WebPaymentIntentHelper. */
+    @Benchmark
+    public void encodeJson(Blackhole blackhole) {
+        PaymentJsonEncoder encoder = PaymentJsonEncoder.get();
+        encoder.encode(mTotal, mDisplayItems, mModifiers.values());
+        blackhole.consume(encoder.getDeprecatedDetails());
+        blackhole.consume(encoder.getTotalAmount());
+        blackhole.consume(encoder.getModifiers());
+    }
+}
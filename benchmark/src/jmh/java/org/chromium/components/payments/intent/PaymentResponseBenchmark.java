@@ -0,0 +1,64 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.intent;
+
+import android.app.Activity;
+import android.content.Intent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Measures parsing the payment app's response, with details of different sizes. */
+@State(Scope.Benchmark)
+public class PaymentResponseBenchmark {
+    /** The number of fields in the details, besides "status". */
+    @Param({"1", "64", "4096"})
+    public int detailsFieldCount;
+
+    private Intent mResponse;
+
+    @Setup
+    public void setUp() {
+        StringBuilder details = new StringBuilder("{\"status\":\"success\"");
+        for (int i = 0; i < detailsFieldCount; i++) {
+            details.append(",\"field").append(i).append("\":{\"token\":\"")
+                    .append(Integer.toHexString(i * 0x9E3779B1))
+                    .append("\",\"amount\":").append(i).append(".5,\"flags\":[true,false,null]}");
+        }
+        details.append('}');
+
+        mResponse = new Intent();
+        mResponse.putExtra(WebPaymentIntentHelper.EXTRA_RESPONSE_METHOD_NAME,
+                "https://pay.example/method");
+        mResponse.putExtra(WebPaymentIntentHelper.EXTRA_RESPONSE_DETAILS, details.toString());
+    }
+
+    @Benchmark
+    public void parsePaymentResponse(final Blackhole blackhole) {
+        WebPaymentIntentHelper.parsePaymentResponse(Activity.RESULT_OK, mResponse,
+                blackhole::consume, (methodName, details) -> {
+                    blackhole.consume(methodName);
+                    blackhole.consume(details);
+                });
+    }
+
+    /** Includes the validation of the details. */
+    @Benchmark
+    public PaymentResponse parse(Blackhole blackhole) {
+        return PaymentResponse.parse(Activity.RESULT_OK, mResponse, blackhole::consume);
+    }
+
+    /** Includes the decoding of the details up to their first field. */
+    @Benchmark
+    public Object parseAndGetStatus(Blackhole blackhole) {
+        PaymentResponse response =
+                PaymentResponse.parse(Activity.RESULT_OK, mResponse, blackhole::consume);
+        return response == null ? null : response.getDetailsField("status");
+    }
+}
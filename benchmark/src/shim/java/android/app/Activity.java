@@ -0,0 +1,11 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.app;
+
+/** The result codes of android.app.Activity, for the benchmarks. */
+public class Activity {
+    public static final int RESULT_CANCELED = 0;
+    public static final int RESULT_OK = -1;
+}
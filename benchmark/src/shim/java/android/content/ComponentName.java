@@ -0,0 +1,37 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.content;
+
+/** A value class like android.content.ComponentName, for the benchmarks. */
+public final class ComponentName {
+    private final String mPackage;
+    private final String mClass;
+
+    public ComponentName(String pkg, String cls) {
+        if (pkg == null || cls == null) throw new NullPointerException();
+        mPackage = pkg;
+        mClass = cls;
+    }
+
+    public String getPackageName() {
+        return mPackage;
+    }
+
+    public String getClassName() {
+        return mClass;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ComponentName)) return false;
+        ComponentName other = (ComponentName) obj;
+        return mPackage.equals(other.mPackage) && mClass.equals(other.mClass);
+    }
+
+    @Override
+    public int hashCode() {
+        return mPackage.hashCode() + mClass.hashCode();
+    }
+}
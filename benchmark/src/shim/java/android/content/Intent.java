@@ -0,0 +1,106 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.content;
+
+import android.net.Uri;
+import android.os.Bundle;
+
+/**
+ * The subset of android.content.Intent that the payment intent helpers use. Like the framework,
+ * it copies the extras in and out.
+ */
+public class Intent {
+    private String mAction;
+    private String mPackage;
+    private ComponentName mComponent;
+    private Uri mData;
+    private Bundle mExtras;
+
+    public Intent() {}
+
+    public Intent(String action) {
+        mAction = action;
+    }
+
+    public Intent(Intent o) {
+        mAction = o.mAction;
+        mPackage = o.mPackage;
+        mComponent = o.mComponent;
+        mData = o.mData;
+        if (o.mExtras != null) mExtras = new Bundle(o.mExtras);
+    }
+
+    public String getAction() {
+        return mAction;
+    }
+
+    public Intent setAction(String action) {
+        mAction = action;
+        return this;
+    }
+
+    public String getPackage() {
+        return mPackage;
+    }
+
+    public Intent setPackage(String packageName) {
+        mPackage = packageName;
+        return this;
+    }
+
+    public ComponentName getComponent() {
+        return mComponent;
+    }
+
+    public Intent setComponent(ComponentName component) {
+        mComponent = component;
+        return this;
+    }
+
+    public Intent setClassName(String packageName, String className) {
+        mComponent = new ComponentName(packageName, className);
+        return this;
+    }
+
+    public Uri getData() {
+        return mData;
+    }
+
+    public Intent setData(Uri data) {
+        mData = data;
+        return this;
+    }
+
+    public Bundle getExtras() {
+        return mExtras == null ? null : new Bundle(mExtras);
+    }
+
+    public Intent putExtras(Bundle extras) {
+        if (mExtras == null) mExtras = new Bundle();
+        mExtras.putAll(extras);
+        return this;
+    }
+
+    public Intent replaceExtras(Bundle extras) {
+        mExtras = extras == null ? null : new Bundle(extras);
+        return this;
+    }
+
+    public Intent putExtra(String name, String value) {
+        if (mExtras == null) mExtras = new Bundle();
+        mExtras.putString(name, value);
+        return this;
+    }
+
+    public Intent putExtra(String name, Bundle value) {
+        if (mExtras == null) mExtras = new Bundle();
+        mExtras.putBundle(name, value);
+        return this;
+    }
+
+    public String getStringExtra(String name) {
+        return mExtras == null ? null : mExtras.getString(name);
+    }
+}
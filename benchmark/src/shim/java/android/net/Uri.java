@@ -0,0 +1,33 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.net;
+
+/** The subset of android.net.Uri that the payment intent helpers use. */
+public final class Uri {
+    private final String mString;
+
+    private Uri(String string) {
+        mString = string;
+    }
+
+    public static Uri fromParts(String scheme, String ssp, String fragment) {
+        return new Uri(scheme + ":" + ssp + (fragment == null ? "" : "#" + fragment));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Uri && mString.equals(((Uri) o).mString);
+    }
+
+    @Override
+    public int hashCode() {
+        return mString.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return mString;
+    }
+}
@@ -0,0 +1,21 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.os;
+
+/** A local binder like android.os.Binder, without the transactions. */
+public class Binder implements IBinder {
+    private IInterface mOwner;
+    private String mDescriptor;
+
+    public void attachInterface(IInterface owner, String descriptor) {
+        mOwner = owner;
+        mDescriptor = descriptor;
+    }
+
+    @Override
+    public IInterface queryLocalInterface(String descriptor) {
+        return descriptor.equals(mDescriptor) ? mOwner : null;
+    }
+}
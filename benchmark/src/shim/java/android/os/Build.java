@@ -0,0 +1,18 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.os;
+
+/** The subset of android.os.Build that PaymentTrace uses, as on the latest Android version. */
+public class Build {
+    /** The version of the platform. */
+    public static class VERSION {
+        public static final int SDK_INT = VERSION_CODES.Q;
+    }
+
+    /** The platform versions. */
+    public static class VERSION_CODES {
+        public static final int Q = 29;
+    }
+}
@@ -0,0 +1,155 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.os;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map-backed android.os.Bundle with the typed accessors that the payment intent helpers use. Like
+ * the framework, the typed getters return null for a value of another type.
+ */
+public final class Bundle implements Parcelable {
+    public static final Bundle EMPTY = new Bundle();
+
+    /* package */ final Map<String, Object> mMap;
+
+    public Bundle() {
+        mMap = new LinkedHashMap<>();
+    }
+
+    public Bundle(Bundle b) {
+        mMap = new LinkedHashMap<>(b.mMap);
+    }
+
+    public int size() {
+        return mMap.size();
+    }
+
+    public boolean isEmpty() {
+        return mMap.isEmpty();
+    }
+
+    public Set<String> keySet() {
+        return mMap.keySet();
+    }
+
+    public boolean containsKey(String key) {
+        return mMap.containsKey(key);
+    }
+
+    public Object get(String key) {
+        return mMap.get(key);
+    }
+
+    public void remove(String key) {
+        mMap.remove(key);
+    }
+
+    public void putAll(Bundle bundle) {
+        mMap.putAll(bundle.mMap);
+    }
+
+    public void putString(String key, String value) {
+        mMap.put(key, value);
+    }
+
+    public String getString(String key) {
+        return get(key, String.class);
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = getString(key);
+        return value == null ? defaultValue : value;
+    }
+
+    public void putInt(String key, int value) {
+        mMap.put(key, value);
+    }
+
+    public int getInt(String key) {
+        return getInt(key, 0);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Integer value = get(key, Integer.class);
+        return value == null ? defaultValue : value;
+    }
+
+    public void putLong(String key, long value) {
+        mMap.put(key, value);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Long value = get(key, Long.class);
+        return value == null ? defaultValue : value;
+    }
+
+    public void putBoolean(String key, boolean value) {
+        mMap.put(key, value);
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Boolean value = get(key, Boolean.class);
+        return value == null ? defaultValue : value;
+    }
+
+    public void putBundle(String key, Bundle value) {
+        mMap.put(key, value);
+    }
+
+    public Bundle getBundle(String key) {
+        return get(key, Bundle.class);
+    }
+
+    public void putByteArray(String key, byte[] value) {
+        mMap.put(key, value);
+    }
+
+    public byte[] getByteArray(String key) {
+        return get(key, byte[].class);
+    }
+
+    public void putParcelable(String key, Parcelable value) {
+        mMap.put(key, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> T getParcelable(String key) {
+        return (T) get(key, Parcelable.class);
+    }
+
+    public void putParcelableArray(String key, Parcelable[] value) {
+        mMap.put(key, value);
+    }
+
+    public Parcelable[] getParcelableArray(String key) {
+        return get(key, Parcelable[].class);
+    }
+
+    public void putStringArrayList(String key, ArrayList<String> value) {
+        mMap.put(key, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ArrayList<String> getStringArrayList(String key) {
+        return get(key, ArrayList.class);
+    }
+
+    public void putBinder(String key, IBinder value) {
+        mMap.put(key, value);
+    }
+
+    public IBinder getBinder(String key) {
+        return get(key, IBinder.class);
+    }
+
+    private <T> T get(String key, Class<T> type) {
+        Object value = mMap.get(key);
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+}
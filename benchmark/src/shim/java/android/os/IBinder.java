@@ -0,0 +1,10 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.os;
+
+/** A marker like android.os.IBinder. Binders are only passed in process by the shims. */
+public interface IBinder {
+    IInterface queryLocalInterface(String descriptor);
+}
@@ -0,0 +1,10 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.os;
+
+/** Like android.os.IInterface. */
+public interface IInterface {
+    IBinder asBinder();
+}
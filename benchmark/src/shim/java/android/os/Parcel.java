@@ -0,0 +1,275 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.os;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pure Java android.os.Parcel that writes Bundles in the layout of the framework: 4-byte aligned
+ * little-endian words, UTF-16 strings, and a length-prefixed "BNDL" map of typed values. This keeps
+ * the sizes that the out-of-band threshold measures, and the cost of measuring them, close to a
+ * device. Binders take the size of a flat_binder_object and cannot be marshalled, as on a device.
+ */
+public final class Parcel {
+    private static final int BUNDLE_MAGIC = 0x4C444E42; // 'B' 'N' 'D' 'L'
+    private static final int FLAT_BINDER_OBJECT_SIZE = 24;
+
+    // The value types of android.os.Parcel#writeValue.
+    private static final int VAL_NULL = -1;
+    private static final int VAL_STRING = 0;
+    private static final int VAL_INTEGER = 1;
+    private static final int VAL_BUNDLE = 3;
+    private static final int VAL_PARCELABLE = 4;
+    private static final int VAL_LONG = 6;
+    private static final int VAL_BOOLEAN = 9;
+    private static final int VAL_LIST = 11;
+    private static final int VAL_BYTEARRAY = 13;
+    private static final int VAL_IBINDER = 15;
+    private static final int VAL_PARCELABLEARRAY = 16;
+
+    private static final String BUNDLE_CLASS_NAME = "android.os.Bundle";
+
+    private ByteBuffer mBuffer = newBuffer(256);
+    private final List<IBinder> mBinders = new ArrayList<>();
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    private Parcel() {}
+
+    public void recycle() {
+        mBuffer = null;
+        mBinders.clear();
+    }
+
+    public int dataSize() {
+        return mBuffer.position();
+    }
+
+    public void setDataPosition(int pos) {
+        mBuffer.position(pos);
+    }
+
+    public byte[] marshall() {
+        if (!mBinders.isEmpty()) {
+            throw new RuntimeException("Tried to marshall a Parcel that contained Binder objects.");
+        }
+        return Arrays.copyOf(mBuffer.array(), mBuffer.position());
+    }
+
+    public void unmarshall(byte[] data, int offset, int length) {
+        mBuffer = ByteBuffer.wrap(Arrays.copyOfRange(data, offset, offset + length))
+                          .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public void writeInt(int val) {
+        ensureCapacity(4);
+        mBuffer.putInt(val);
+    }
+
+    public int readInt() {
+        return mBuffer.getInt();
+    }
+
+    public void writeString(String val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        int length = val.length();
+        writeInt(length);
+        ensureCapacity(align((length + 1) * 2));
+        for (int i = 0; i < length; i++) mBuffer.putChar(val.charAt(i));
+        mBuffer.putChar((char) 0);
+        pad();
+    }
+
+    public String readString() {
+        int length = readInt();
+        if (length < 0) return null;
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) chars[i] = mBuffer.getChar();
+        mBuffer.position(mBuffer.position() + align((length + 1) * 2) - length * 2);
+        return new String(chars);
+    }
+
+    public void writeByteArray(byte[] b) {
+        if (b == null) {
+            writeInt(-1);
+            return;
+        }
+        writeInt(b.length);
+        ensureCapacity(align(b.length));
+        mBuffer.put(b);
+        pad();
+    }
+
+    public byte[] createByteArray() {
+        int length = readInt();
+        if (length < 0) return null;
+        byte[] b = new byte[length];
+        mBuffer.get(b);
+        mBuffer.position(mBuffer.position() + align(length) - length);
+        return b;
+    }
+
+    public void writeBundle(Bundle val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        int lengthPos = mBuffer.position();
+        writeInt(-1); // Patched below.
+        writeInt(BUNDLE_MAGIC);
+        int startPos = mBuffer.position();
+        writeInt(val.mMap.size());
+        for (Map.Entry<String, Object> entry : val.mMap.entrySet()) {
+            writeString(entry.getKey());
+            writeValue(entry.getValue());
+        }
+        mBuffer.putInt(lengthPos, mBuffer.position() - startPos);
+    }
+
+    public Bundle readBundle(ClassLoader loader) {
+        int length = readInt();
+        if (length < 0) return null;
+        if (readInt() != BUNDLE_MAGIC) throw new IllegalStateException("Bad magic number");
+        Bundle bundle = new Bundle();
+        int count = readInt();
+        for (int i = 0; i < count; i++) {
+            String key = readString();
+            bundle.mMap.put(key, readValue());
+        }
+        return bundle;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(Object v) {
+        if (v == null) {
+            writeInt(VAL_NULL);
+        } else if (v instanceof String) {
+            writeInt(VAL_STRING);
+            writeString((String) v);
+        } else if (v instanceof Integer) {
+            writeInt(VAL_INTEGER);
+            writeInt((Integer) v);
+        } else if (v instanceof Bundle) {
+            writeInt(VAL_BUNDLE);
+            writeBundle((Bundle) v);
+        } else if (v instanceof Long) {
+            writeInt(VAL_LONG);
+            ensureCapacity(8);
+            mBuffer.putLong((Long) v);
+        } else if (v instanceof Boolean) {
+            writeInt(VAL_BOOLEAN);
+            writeInt((Boolean) v ? 1 : 0);
+        } else if (v instanceof List) {
+            writeInt(VAL_LIST);
+            List<Object> list = (List<Object>) v;
+            writeInt(list.size());
+            for (Object item : list) writeValue(item);
+        } else if (v instanceof byte[]) {
+            writeInt(VAL_BYTEARRAY);
+            writeByteArray((byte[]) v);
+        } else if (v instanceof IBinder) {
+            writeInt(VAL_IBINDER);
+            mBinders.add((IBinder) v);
+            ensureCapacity(FLAT_BINDER_OBJECT_SIZE);
+            mBuffer.position(mBuffer.position() + FLAT_BINDER_OBJECT_SIZE);
+        } else if (v instanceof Parcelable[]) {
+            writeInt(VAL_PARCELABLEARRAY);
+            Parcelable[] array = (Parcelable[]) v;
+            writeInt(array.length);
+            for (Parcelable item : array) writeParcelable(item);
+        } else if (v instanceof Parcelable) {
+            writeInt(VAL_PARCELABLE);
+            writeParcelable((Parcelable) v);
+        } else {
+            throw new RuntimeException("Parcel: unable to marshal value " + v);
+        }
+    }
+
+    private Object readValue() {
+        int type = readInt();
+        switch (type) {
+            case VAL_NULL:
+                return null;
+            case VAL_STRING:
+                return readString();
+            case VAL_INTEGER:
+                return readInt();
+            case VAL_BUNDLE:
+                return readBundle(null);
+            case VAL_LONG:
+                return mBuffer.getLong();
+            case VAL_BOOLEAN:
+                return readInt() != 0;
+            case VAL_LIST: {
+                int size = readInt();
+                ArrayList<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) list.add(readValue());
+                return list;
+            }
+            case VAL_BYTEARRAY:
+                return createByteArray();
+            case VAL_PARCELABLEARRAY: {
+                Parcelable[] array = new Parcelable[readInt()];
+                for (int i = 0; i < array.length; i++) array[i] = readParcelable();
+                return array;
+            }
+            case VAL_PARCELABLE:
+                return readParcelable();
+            default:
+                throw new RuntimeException("Parcel: unmarshalling unknown type code " + type);
+        }
+    }
+
+    // Only Bundles are parcelled by the payment intent helpers.
+    private void writeParcelable(Parcelable p) {
+        if (p == null) {
+            writeString(null);
+            return;
+        }
+        if (!(p instanceof Bundle)) {
+            throw new RuntimeException("Parcel: unable to marshal " + p.getClass().getName());
+        }
+        writeString(BUNDLE_CLASS_NAME);
+        writeBundle((Bundle) p);
+    }
+
+    private Parcelable readParcelable() {
+        String className = readString();
+        if (className == null) return null;
+        if (!BUNDLE_CLASS_NAME.equals(className)) {
+            throw new RuntimeException("Parcel: unable to unmarshal " + className);
+        }
+        return readBundle(null);
+    }
+
+    private void pad() {
+        while ((mBuffer.position() & 3) != 0) mBuffer.put((byte) 0);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (mBuffer.remaining() >= bytes) return;
+        ByteBuffer buffer = newBuffer(Math.max(mBuffer.capacity() * 2, mBuffer.position() + bytes));
+        buffer.put(mBuffer.array(), 0, mBuffer.position());
+        mBuffer = buffer;
+    }
+
+    private static int align(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
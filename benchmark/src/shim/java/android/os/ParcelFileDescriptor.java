@@ -0,0 +1,57 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.os;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+
+/**
+ * A pipe like android.os.ParcelFileDescriptor#createPipe, backed by the piped streams of
+ * java.io, so that out-of-band payloads can be read in process.
+ */
+public class ParcelFileDescriptor {
+    private final InputStream mInput;
+    private final OutputStream mOutput;
+
+    private ParcelFileDescriptor(InputStream input, OutputStream output) {
+        mInput = input;
+        mOutput = output;
+    }
+
+    public static ParcelFileDescriptor[] createPipe() throws IOException {
+        // A pipe of the kernel buffers 64 KiB.
+        PipedInputStream input = new PipedInputStream(64 * 1024);
+        PipedOutputStream output = new PipedOutputStream(input);
+        return new ParcelFileDescriptor[] {
+                new ParcelFileDescriptor(input, null), new ParcelFileDescriptor(null, output)};
+    }
+
+    public void close() throws IOException {
+        if (mInput != null) mInput.close();
+        if (mOutput != null) mOutput.close();
+    }
+
+    /** Like ParcelFileDescriptor.AutoCloseInputStream. */
+    public static class AutoCloseInputStream extends java.io.FilterInputStream {
+        public AutoCloseInputStream(ParcelFileDescriptor pfd) {
+            super(pfd.mInput);
+        }
+    }
+
+    /** Like ParcelFileDescriptor.AutoCloseOutputStream. */
+    public static class AutoCloseOutputStream extends java.io.FilterOutputStream {
+        public AutoCloseOutputStream(ParcelFileDescriptor pfd) {
+            super(pfd.mOutput);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.os;
+
+/** A marker like android.os.Parcelable. Only Bundles are parcelled by the benchmark shims. */
+public interface Parcelable {}
@@ -0,0 +1,14 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.os;
+
+/** Like android.os.RemoteException. */
+public class RemoteException extends Exception {
+    public RemoteException() {}
+
+    public RemoteException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,22 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.os;
+
+/** The subset of android.os.Trace that PaymentTrace uses. No trace is ever captured on the JVM. */
+public final class Trace {
+    public static boolean isEnabled() {
+        return false;
+    }
+
+    public static void beginSection(String sectionName) {}
+
+    public static void endSection() {}
+
+    public static void beginAsyncSection(String methodName, int cookie) {}
+
+    public static void endAsyncSection(String methodName, int cookie) {}
+
+    private Trace() {}
+}
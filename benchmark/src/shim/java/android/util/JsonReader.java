@@ -0,0 +1,82 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package android.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * android.util.JsonReader over the streaming reader of Gson, which it was derived from and whose
+ * API and cost it shares.
+ */
+public final class JsonReader implements Closeable {
+    private final com.google.gson.stream.JsonReader mReader;
+
+    public JsonReader(Reader in) {
+        mReader = new com.google.gson.stream.JsonReader(in);
+    }
+
+    public void beginArray() throws IOException {
+        mReader.beginArray();
+    }
+
+    public void endArray() throws IOException {
+        mReader.endArray();
+    }
+
+    public void beginObject() throws IOException {
+        mReader.beginObject();
+    }
+
+    public void endObject() throws IOException {
+        mReader.endObject();
+    }
+
+    public boolean hasNext() throws IOException {
+        return mReader.hasNext();
+    }
+
+    public JsonToken peek() throws IOException {
+        return JsonToken.valueOf(mReader.peek().name());
+    }
+
+    public String nextName() throws IOException {
+        return mReader.nextName();
+    }
+
+    public String nextString() throws IOException {
+        return mReader.nextString();
+    }
+
+    public boolean nextBoolean() throws IOException {
+        return mReader.nextBoolean();
+    }
+
+    public void nextNull() throws IOException {
+        mReader.nextNull();
+    }
+
+    public double nextDouble() throws IOException {
+        return mReader.nextDouble();
+    }
+
+    public long nextLong() throws IOException {
+        return mReader.nextLong();
+    }
+
+    public int nextInt() throws IOException {
+        return mReader.nextInt();
+    }
+
+    public void skipValue() throws IOException {
+        mReader.skipValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+}
@@ -0,0 +1,38 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium;
+
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.IInterface;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
+
+/**
+ * The in-process part of the interface that aidl generates from PaymentPayloadProvider.aidl, which
+ * the benchmarks cannot run without the Android build.
+ */
+public interface PaymentPayloadProvider extends IInterface {
+    ParcelFileDescriptor openPayload() throws RemoteException;
+
+    /** Like the generated stub. Only local binders are supported. */
+    abstract class Stub extends Binder implements PaymentPayloadProvider {
+        private static final String DESCRIPTOR = "org.chromium.PaymentPayloadProvider";
+
+        public Stub() {
+            attachInterface(this, DESCRIPTOR);
+        }
+
+        public static PaymentPayloadProvider asInterface(IBinder obj) {
+            if (obj == null) return null;
+            return (PaymentPayloadProvider) obj.queryLocalInterface(DESCRIPTOR);
+        }
+
+        @Override
+        public IBinder asBinder() {
+            return this;
+        }
+    }
+}
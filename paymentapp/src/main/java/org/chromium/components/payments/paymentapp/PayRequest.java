@@ -0,0 +1,315 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.paymentapp;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Parcelable;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The typed view of a Pay intent, for the payment app's Pay activity.
+ *
+ * Each parameter is read from its current extra, and from its deprecated copy only if the browser
+ * did not send the current one. Nothing is decoded up front: the JSON of the total and the
+ * modifiers, the method data and the certificate chain are decoded on their first use, so that an
+ * activity pays only for the parameters that it reads before its first frame.
+ *
+ * If the browser sent the large parameters out of band, see {@link #isPayloadPending}, they are
+ * restored by {@link #restorePayload} on a background thread, while the other parameters are read
+ * on the main thread.
+ */
+public final class PayRequest {
+    // Modified by restorePayload(). Guarded by |this|.
+    private final Bundle mExtras;
+
+    // The lazily decoded parameters. Guarded by |this|.
+    @Nullable
+    private List<String> mMethodNames;
+    private boolean mIsTotalDecoded;
+    @Nullable
+    private Amount mTotal;
+    @Nullable
+    private List<Modifier> mModifiers;
+
+    /** A monetary amount, as sent by the merchant. */
+    public static final class Amount {
+        private final String mCurrency;
+        private final String mValue;
+
+        private Amount(String currency, String value) {
+            mCurrency = currency;
+            mValue = value;
+        }
+
+        /** @return The currency code, e.g., "USD". */
+        public String getCurrency() {
+            return mCurrency;
+        }
+
+        /** @return The decimal value, e.g., "1.50". */
+        public String getValue() {
+            return mValue;
+        }
+
+        @Nullable
+        private static Amount decode(@Nullable JSONObject amount) {
+            if (amount == null) return null;
+            String currency = amount.optString("currency", null);
+            String value = amount.optString("value", null);
+            return currency == null || value == null ? null : new Amount(currency, value);
+        }
+    }
+
+    /** A payment details modifier, which applies to some of the payment methods. */
+    public static final class Modifier {
+        private final List<String> mSupportedMethods;
+        @Nullable
+        private final Amount mTotal;
+        @Nullable
+        private final String mStringifiedData;
+
+        private Modifier(List<String> supportedMethods, @Nullable Amount total,
+                @Nullable String stringifiedData) {
+            mSupportedMethods = Collections.unmodifiableList(supportedMethods);
+            mTotal = total;
+            mStringifiedData = stringifiedData;
+        }
+
+        /** @return The payment methods that the modifier applies to. Unmodifiable. */
+        public List<String> getSupportedMethods() {
+            return mSupportedMethods;
+        }
+
+        /** @return The total for these methods, or null if it is the request's total. */
+        @Nullable
+        public Amount getTotal() {
+            return mTotal;
+        }
+
+        /** @return The merchant's stringified data for these methods, or null. */
+        @Nullable
+        public String getStringifiedData() {
+            return mStringifiedData;
+        }
+    }
+
+    /**
+     * @param payIntent The Pay intent that started the activity.
+     * @return The request. Missing extras read as missing parameters.
+     */
+    public static PayRequest from(Intent payIntent) {
+        // Intent#getExtras() copies the extras, so it is called only once.
+        Bundle extras = payIntent == null ? null : payIntent.getExtras();
+        return new PayRequest(extras == null ? new Bundle() : extras);
+    }
+
+    /**
+     * @param extras The extras of the Pay intent, which the request owns from then on: they should
+     *         be neither read nor modified by the caller, as {@link #restorePayload} modifies them.
+     *         Should not be null.
+     */
+    public PayRequest(Bundle extras) {
+        assert extras != null;
+        mExtras = extras;
+    }
+
+    /**
+     * @return Whether the browser sent the large parameters out of band, in which case the method
+     *         data, the modifiers and the certificate chain are missing until they are restored.
+     */
+    public synchronized boolean isPayloadPending() {
+        return mExtras.containsKey(PaymentIntentExtras.EXTRA_PAYLOAD_PROVIDER);
+    }
+
+    /** @return The unique identifier of the PaymentRequest, or null. */
+    @Nullable
+    public synchronized String getPaymentRequestId() {
+        return getString(PaymentIntentExtras.EXTRA_PAYMENT_REQUEST_ID,
+                PaymentIntentExtras.EXTRA_DEPRECATED_ID);
+    }
+
+    /** @return The name of the merchant, or null. */
+    @Nullable
+    public synchronized String getMerchantName() {
+        return mExtras.getString(PaymentIntentExtras.EXTRA_MERCHANT_NAME);
+    }
+
+    /** @return The schemeless origin of the top-level page, or null. */
+    @Nullable
+    public synchronized String getTopOrigin() {
+        return getString(
+                PaymentIntentExtras.EXTRA_TOP_ORIGIN, PaymentIntentExtras.EXTRA_DEPRECATED_ORIGIN);
+    }
+
+    /** @return The schemeless origin of the frame that created the PaymentRequest, or null. */
+    @Nullable
+    public synchronized String getPaymentRequestOrigin() {
+        return getString(PaymentIntentExtras.EXTRA_PAYMENT_REQUEST_ORIGIN,
+                PaymentIntentExtras.EXTRA_DEPRECATED_IFRAME_ORIGIN);
+    }
+
+    /** @return The payment method names, possibly empty. Unmodifiable. */
+    public synchronized List<String> getMethodNames() {
+        if (mMethodNames != null) return mMethodNames;
+        List<String> methodNames =
+                mExtras.getStringArrayList(PaymentIntentExtras.EXTRA_METHOD_NAMES);
+        if (methodNames == null) {
+            String methodName = mExtras.getString(PaymentIntentExtras.EXTRA_DEPRECATED_METHOD_NAME);
+            methodNames = methodName == null ? Collections.<String>emptyList()
+                                             : Collections.singletonList(methodName);
+        }
+        mMethodNames = Collections.unmodifiableList(methodNames);
+        return mMethodNames;
+    }
+
+    /**
+     * @param methodName One of the payment method names.
+     * @return The merchant's stringified data for the method, or null.
+     */
+    @Nullable
+    public synchronized String getMethodData(String methodName) {
+        Bundle methodData = mExtras.getBundle(PaymentIntentExtras.EXTRA_METHOD_DATA);
+        if (methodData == null) {
+            methodData = mExtras.getBundle(PaymentIntentExtras.EXTRA_DEPRECATED_DATA_MAP);
+        }
+        if (methodData != null) return methodData.getString(methodName);
+        // The oldest browsers sent the data of the first method only.
+        String firstMethodName =
+                mExtras.getString(PaymentIntentExtras.EXTRA_DEPRECATED_METHOD_NAME);
+        return methodName.equals(firstMethodName)
+                ? mExtras.getString(PaymentIntentExtras.EXTRA_DEPRECATED_DATA)
+                : null;
+    }
+
+    /**
+     * @return The DER certificates of the merchant's site, leaf first, or null for a secure
+     *         context without SSL, e.g., localhost.
+     */
+    @Nullable
+    public synchronized byte[][] getTopCertificateChain() {
+        Parcelable[] chain =
+                mExtras.getParcelableArray(PaymentIntentExtras.EXTRA_TOP_CERTIFICATE_CHAIN);
+        if (chain == null) {
+            chain = mExtras.getParcelableArray(
+                    PaymentIntentExtras.EXTRA_DEPRECATED_CERTIFICATE_CHAIN);
+        }
+        if (chain == null || chain.length == 0) return null;
+        byte[][] certificates = new byte[chain.length][];
+        for (int i = 0; i < chain.length; i++) {
+            if (!(chain[i] instanceof Bundle)) return null;
+            certificates[i] =
+                    ((Bundle) chain[i]).getByteArray(PaymentIntentExtras.EXTRA_CERTIFICATE);
+            if (certificates[i] == null) return null;
+        }
+        return certificates;
+    }
+
+    /** @return The total amount, or null if it is missing or malformed. */
+    @Nullable
+    public synchronized Amount getTotal() {
+        if (mIsTotalDecoded) return mTotal;
+        mIsTotalDecoded = true;
+        String total = mExtras.getString(PaymentIntentExtras.EXTRA_TOTAL);
+        try {
+            if (total != null) {
+                mTotal = Amount.decode(new JSONObject(total));
+            } else {
+                // The deprecated details are {"total":{"label":"","amount":{...}}, ...}.
+                String details = mExtras.getString(PaymentIntentExtras.EXTRA_DEPRECATED_DETAILS);
+                JSONObject item =
+                        details == null ? null : new JSONObject(details).optJSONObject("total");
+                mTotal = item == null ? null : Amount.decode(item.optJSONObject("amount"));
+            }
+        } catch (JSONException e) {
+            mTotal = null;
+        }
+        return mTotal;
+    }
+
+    /** @return The modifiers, possibly empty if they are missing or malformed. Unmodifiable. */
+    public synchronized List<Modifier> getModifiers() {
+        if (mModifiers != null) return mModifiers;
+        mModifiers = Collections.emptyList();
+        String modifiers = mExtras.getString(PaymentIntentExtras.EXTRA_MODIFIERS);
+        if (modifiers == null) return mModifiers;
+        try {
+            JSONArray array = new JSONArray(modifiers);
+            List<Modifier> result = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject modifier = array.getJSONObject(i);
+                // The supported methods were sent as an array for backward compatibility.
+                List<String> supportedMethods = new ArrayList<>();
+                JSONArray methods = modifier.optJSONArray("supportedMethods");
+                if (methods != null) {
+                    for (int j = 0; j < methods.length(); j++) {
+                        supportedMethods.add(methods.getString(j));
+                    }
+                } else if (modifier.has("supportedMethods")) {
+                    supportedMethods.add(modifier.getString("supportedMethods"));
+                }
+                JSONObject total = modifier.optJSONObject("total");
+                result.add(new Modifier(supportedMethods,
+                        total == null ? null : Amount.decode(total.optJSONObject("amount")),
+                        modifier.isNull("data") ? null : modifier.optString("data", null)));
+            }
+            mModifiers = Collections.unmodifiableList(result);
+        } catch (JSONException e) {
+            // mModifiers is left empty.
+        }
+        return mModifiers;
+    }
+
+    /**
+     * Restores the parameters that the browser sent out of band, if any, after which the method
+     * data, the modifiers and the certificate chain can be read. Blocks on the browser's binder and
+     * a pipe, so should be called on a background thread. The other parameters can be read
+     * meanwhile.
+     * @return Whether the parameters are complete, i.e., nothing was sent out of band or it was
+     *         read and verified. On false, the payment app should fail the payment.
+     */
+    public boolean restorePayload() {
+        IBinder binder;
+        int size;
+        String digest;
+        synchronized (this) {
+            binder = mExtras.getBinder(PaymentIntentExtras.EXTRA_PAYLOAD_PROVIDER);
+            if (binder == null) return true;
+            size = mExtras.getInt(PaymentIntentExtras.EXTRA_PAYLOAD_SIZE, -1);
+            digest = mExtras.getString(PaymentIntentExtras.EXTRA_PAYLOAD_DIGEST);
+        }
+        // Not under the lock, so that the blocking reads do not block the other parameters.
+        Bundle payload = PaymentPayloadReader.read(binder, size, digest);
+        if (payload == null) return false;
+        synchronized (this) {
+            // Restored by another thread in the meantime.
+            if (!mExtras.containsKey(PaymentIntentExtras.EXTRA_PAYLOAD_PROVIDER)) return true;
+            mExtras.remove(PaymentIntentExtras.EXTRA_PAYLOAD_PROVIDER);
+            mExtras.remove(PaymentIntentExtras.EXTRA_PAYLOAD_SIZE);
+            mExtras.remove(PaymentIntentExtras.EXTRA_PAYLOAD_DIGEST);
+            mExtras.putAll(payload);
+            // The modifiers that were read before are missing, so they are decoded again.
+            mModifiers = null;
+        }
+        return true;
+    }
+
+    // Called with the lock held.
+    @Nullable
+    private String getString(String key, String deprecatedKey) {
+        String value = mExtras.getString(key);
+        return value == null ? mExtras.getString(deprecatedKey) : value;
+    }
+}
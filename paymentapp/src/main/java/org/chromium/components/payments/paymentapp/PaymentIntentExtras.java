@@ -0,0 +1,50 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.paymentapp;
+
+/**
+ * The names of the extras of the Pay intent and of its response, as sent and read by the browser's
+ * WebPaymentIntentHelper. Payment apps do not link the browser's helper, so the names are repeated
+ * here and must be kept in sync with it.
+ */
+public final class PaymentIntentExtras {
+    /** The action name for the Pay Intent. */
+    public static final String ACTION_PAY = "org.chromium.intent.action.PAY";
+
+    // Freshest parameters sent to the payment app.
+    public static final String EXTRA_CERTIFICATE = "certificate";
+    public static final String EXTRA_MERCHANT_NAME = "merchantName";
+    public static final String EXTRA_METHOD_DATA = "methodData";
+    public static final String EXTRA_METHOD_NAMES = "methodNames";
+    public static final String EXTRA_MODIFIERS = "modifiers";
+    public static final String EXTRA_PAYMENT_REQUEST_ID = "paymentRequestId";
+    public static final String EXTRA_PAYMENT_REQUEST_ORIGIN = "paymentRequestOrigin";
+    public static final String EXTRA_TOP_CERTIFICATE_CHAIN = "topLevelCertificateChain";
+    public static final String EXTRA_TOP_ORIGIN = "topLevelOrigin";
+    public static final String EXTRA_TOTAL = "total";
+
+    // Deprecated parameters sent to the payment app for backward compatibility.
+    public static final String EXTRA_DEPRECATED_CERTIFICATE_CHAIN = "certificateChain";
+    public static final String EXTRA_DEPRECATED_DATA = "data";
+    public static final String EXTRA_DEPRECATED_DATA_MAP = "dataMap";
+    public static final String EXTRA_DEPRECATED_DETAILS = "details";
+    public static final String EXTRA_DEPRECATED_ID = "id";
+    public static final String EXTRA_DEPRECATED_IFRAME_ORIGIN = "iframeOrigin";
+    public static final String EXTRA_DEPRECATED_METHOD_NAME = "methodName";
+    public static final String EXTRA_DEPRECATED_ORIGIN = "origin";
+
+    // Handle to the parameters that were too large for the intent. See PayRequest#restorePayload.
+    public static final String EXTRA_PAYLOAD_DIGEST = "payloadDigest";
+    public static final String EXTRA_PAYLOAD_PROVIDER = "payloadProvider";
+    public static final String EXTRA_PAYLOAD_SIZE = "payloadSize";
+
+    // Response from the payment app.
+    public static final String EXTRA_DEPRECATED_RESPONSE_INSTRUMENT_DETAILS = "instrumentDetails";
+    public static final String EXTRA_RESPONSE_DETAILS = "details";
+    public static final String EXTRA_RESPONSE_METHOD_NAME = "methodName";
+
+    // Prevent instantiation.
+    private PaymentIntentExtras() {}
+}
@@ -0,0 +1,146 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.paymentapp;
+
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
+
+import androidx.annotation.Nullable;
+
+import org.chromium.PaymentPayloadProvider;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+
+/**
+ * Reads the large extras of a Pay intent that the browser sent out of band: a marshalled bundle
+ * that is streamed through a pipe from the browser's {@link PaymentPayloadProvider}, and verified
+ * against its size and SHA-256 digest. The format is that of the browser's PaymentPayloadTransport,
+ * and must be kept in sync with it.
+ */
+/* package */ final class PaymentPayloadReader {
+    /** Payloads larger than this are rejected. */
+    /* package */ static final int MAX_PAYLOAD_BYTES = 16 * 1024 * 1024;
+
+    // The key in the payload for the deprecated extras that were not written because of aliasing.
+    private static final String PAYLOAD_ALIASES = "aliases";
+
+    // Pairs of a deprecated extra and the extra that it copies, which the browser writes once.
+    private static final String[][] ALIASED_EXTRAS = {
+            {PaymentIntentExtras.EXTRA_DEPRECATED_CERTIFICATE_CHAIN,
+                    PaymentIntentExtras.EXTRA_TOP_CERTIFICATE_CHAIN},
+            {PaymentIntentExtras.EXTRA_DEPRECATED_DATA_MAP,
+                    PaymentIntentExtras.EXTRA_METHOD_DATA}};
+
+    /** Opens the stream of the payload that the browser's provider serves. */
+    /* package */ interface PayloadOpener {
+        /**
+         * @param provider The browser's PaymentPayloadProvider.
+         * @return The stream of the payload, or null if the provider did not serve it.
+         */
+        @Nullable
+        InputStream open(PaymentPayloadProvider provider) throws RemoteException;
+    }
+
+    // Streams the payload through the pipe that the provider opens.
+    private static final PayloadOpener PIPE_OPENER = (provider) -> {
+        ParcelFileDescriptor payloadFd = provider.openPayload();
+        return payloadFd == null ? null : new ParcelFileDescriptor.AutoCloseInputStream(payloadFd);
+    };
+
+    private static volatile PayloadOpener sOpener = PIPE_OPENER;
+
+    /**
+     * Replaces the pipe with another source of the payload, e.g., an in-memory stream, because
+     * Robolectric's pipes are backed by files that do not stream.
+     * @param opener The opener, or null to go back to the pipe.
+     */
+    /* package */ static void setOpenerForTesting(@Nullable PayloadOpener opener) {
+        sOpener = opener == null ? PIPE_OPENER : opener;
+    }
+
+    /**
+     * Reads and verifies the payload. Blocks on the browser's binder and a pipe, so should not be
+     * called on the main thread.
+     * @param binder The browser's PaymentPayloadProvider. Should not be null.
+     * @param size The size of the payload in bytes, or a negative number if it is unknown.
+     * @param digest The lowercase hex SHA-256 digest of the payload, or null if it is unknown.
+     * @return The extras in the payload, including their deprecated copies, or null if the payload
+     *         could not be read or verified.
+     */
+    @Nullable
+    /* package */ static Bundle read(IBinder binder, int size, @Nullable String digest) {
+        assert binder != null;
+        if (size < 0 || size > MAX_PAYLOAD_BYTES || digest == null) return null;
+
+        PaymentPayloadProvider provider = PaymentPayloadProvider.Stub.asInterface(binder);
+        if (provider == null) return null;
+
+        byte[] marshalledPayload = new byte[size];
+        try (InputStream input = sOpener.open(provider)) {
+            if (input == null) return null;
+            new DataInputStream(input).readFully(marshalledPayload);
+        } catch (RemoteException | IOException e) {
+            return null;
+        }
+        if (!digest.equals(computeDigest(marshalledPayload))) return null;
+
+        Bundle payload;
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(marshalledPayload, 0, marshalledPayload.length);
+            parcel.setDataPosition(0);
+            payload = parcel.readBundle(PaymentPayloadReader.class.getClassLoader());
+        } catch (RuntimeException e) {
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+        if (payload == null) return null;
+
+        ArrayList<String> aliases = payload.getStringArrayList(PAYLOAD_ALIASES);
+        payload.remove(PAYLOAD_ALIASES);
+        if (aliases != null) {
+            for (String[] alias : ALIASED_EXTRAS) {
+                if (aliases.contains(alias[0])) restoreAlias(payload, alias[0], alias[1]);
+            }
+        }
+        return payload;
+    }
+
+    private static void restoreAlias(Bundle payload, String deprecatedKey, String key) {
+        if (PaymentIntentExtras.EXTRA_DEPRECATED_CERTIFICATE_CHAIN.equals(deprecatedKey)) {
+            payload.putParcelableArray(deprecatedKey, payload.getParcelableArray(key));
+        } else {
+            payload.putParcelable(deprecatedKey, payload.getBundle(key));
+        }
+    }
+
+    private static String computeDigest(byte[] bytes) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has SHA-256.
+            throw new IllegalStateException(e);
+        }
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = Character.forDigit((digest[i] >> 4) & 0xF, 16);
+            hex[2 * i + 1] = Character.forDigit(digest[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+
+    // Prevent instantiation.
+    private PaymentPayloadReader() {}
+}
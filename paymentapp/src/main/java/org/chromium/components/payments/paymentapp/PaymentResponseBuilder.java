@@ -0,0 +1,118 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.paymentapp;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.text.TextUtils;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Builds the result intent of a Pay activity, i.e., the method name and the details that the
+ * browser resolves the merchant's PaymentRequest with. The details are validated here, so that a
+ * malformed response fails in the payment app instead of being rejected by the browser.
+ *
+ * The methods of the builder throw IllegalArgumentException for invalid arguments.
+ */
+public final class PaymentResponseBuilder {
+    /** The maximum length of the details that the browser accepts, in characters. */
+    public static final int MAX_DETAILS_LENGTH = 1024 * 1024;
+
+    private final String mMethodName;
+    @Nullable
+    private JSONObject mDetailsObject;
+    @Nullable
+    private String mDetails;
+    private boolean mIncludeDeprecatedExtras = true;
+
+    /**
+     * @param methodName The payment method that the user paid with, one of the request's method
+     *         names. Only non-empty string is allowed.
+     */
+    public PaymentResponseBuilder(String methodName) {
+        if (TextUtils.isEmpty(methodName)) {
+            throw new IllegalArgumentException("methodName should not be null or empty.");
+        }
+        mMethodName = methodName;
+    }
+
+    /**
+     * Sets the whole details, replacing any field that was put before.
+     * @param details The stringified JSON object of the method-specific details.
+     * @return This builder.
+     */
+    public PaymentResponseBuilder setDetails(String details) {
+        if (details == null) throw new IllegalArgumentException("details should not be null.");
+        try {
+            new JSONObject(details);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("details should be a JSON object.", e);
+        }
+        mDetails = details;
+        mDetailsObject = null;
+        return this;
+    }
+
+    /**
+     * Puts one top-level field of the details.
+     * @param name The name of the field. Cannot be null.
+     * @param value A String, Boolean, Integer, Long, Double, JSONObject, JSONArray or
+     *         JSONObject#NULL. Cannot be null, NaN or infinite.
+     * @return This builder.
+     */
+    public PaymentResponseBuilder putDetail(String name, Object value) {
+        if (name == null) throw new IllegalArgumentException("name should not be null.");
+        if (value == null) throw new IllegalArgumentException("value should not be null.");
+        try {
+            if (mDetailsObject == null) {
+                mDetailsObject = mDetails == null ? new JSONObject() : new JSONObject(mDetails);
+                mDetails = null;
+            }
+            mDetailsObject.put(name, value);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("value should be a finite JSON value.", e);
+        }
+        return this;
+    }
+
+    /**
+     * @param includeDeprecatedExtras Whether to also write the details under the deprecated extra,
+     *         for the browsers that read only that one. True by default.
+     * @return This builder.
+     */
+    public PaymentResponseBuilder setIncludeDeprecatedExtras(boolean includeDeprecatedExtras) {
+        mIncludeDeprecatedExtras = includeDeprecatedExtras;
+        return this;
+    }
+
+    /**
+     * @return The result intent, to be passed to Activity#setResult with Activity#RESULT_OK. The
+     *         details are an empty object if none were set.
+     */
+    public Intent build() {
+        String details = mDetailsObject != null
+                ? mDetailsObject.toString()
+                : (mDetails == null ? "{}" : mDetails);
+        if (details.length() > MAX_DETAILS_LENGTH) {
+            throw new IllegalArgumentException("details should not be longer than "
+                    + MAX_DETAILS_LENGTH + " characters.");
+        }
+
+        Bundle extras = new Bundle();
+        extras.putString(PaymentIntentExtras.EXTRA_RESPONSE_METHOD_NAME, mMethodName);
+        extras.putString(PaymentIntentExtras.EXTRA_RESPONSE_DETAILS, details);
+        if (mIncludeDeprecatedExtras) {
+            extras.putString(
+                    PaymentIntentExtras.EXTRA_DEPRECATED_RESPONSE_INSTRUMENT_DETAILS, details);
+        }
+        Intent result = new Intent();
+        result.putExtras(extras);
+        return result;
+    }
+}
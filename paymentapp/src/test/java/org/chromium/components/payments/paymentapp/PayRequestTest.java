@@ -0,0 +1,319 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.paymentapp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.ParcelFileDescriptor;
+import android.os.Parcelable;
+
+import org.chromium.PaymentPayloadProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/** Tests of {@link PayRequest}'s reading of the Pay intents that the browser sends. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PayRequestTest {
+    private static final String METHOD = "https://example.test/pay";
+    private static final byte[][] CERTIFICATE_CHAIN = {{1, 2, 3}, {4, 5, 6, 7}};
+    // The total and the modifiers as the browser encodes them.
+    private static final String TOTAL = "{\"currency\":\"USD\",\"value\":\"1.00\"}";
+    private static final String MODIFIERS = "[{\"total\":{\"label\":\"\",\"amount\":"
+            + "{\"currency\":\"USD\",\"value\":\"0.99\"}},\"supportedMethods\":[\"" + METHOD
+            + "\"],\"data\":\"{\\\"discount\\\":true}\"}]";
+
+    // The extras that the browser's PaymentPayloadTransport moves into the payload.
+    private static final String[] MOVABLE_EXTRAS = {PaymentIntentExtras.EXTRA_METHOD_DATA,
+            PaymentIntentExtras.EXTRA_MODIFIERS, PaymentIntentExtras.EXTRA_TOP_CERTIFICATE_CHAIN,
+            PaymentIntentExtras.EXTRA_DEPRECATED_CERTIFICATE_CHAIN,
+            PaymentIntentExtras.EXTRA_DEPRECATED_DATA,
+            PaymentIntentExtras.EXTRA_DEPRECATED_DATA_MAP};
+
+    // The deprecated extras that the browser lists under "aliases" rather than writing them again.
+    private static final List<String> ALIASES =
+            Arrays.asList(PaymentIntentExtras.EXTRA_DEPRECATED_CERTIFICATE_CHAIN,
+                    PaymentIntentExtras.EXTRA_DEPRECATED_DATA_MAP);
+
+    // Serves a payload from memory, because Robolectric's pipes are backed by files that do not
+    // stream.
+    private static final class InMemoryPayloadProvider extends PaymentPayloadProvider.Stub {
+        private final byte[] mPayload;
+
+        InMemoryPayloadProvider(byte[] payload) {
+            mPayload = payload;
+        }
+
+        InputStream open() {
+            return new ByteArrayInputStream(mPayload);
+        }
+
+        // PaymentPayloadProvider.Stub:
+        @Override
+        public ParcelFileDescriptor openPayload() {
+            // The opener of the test reads the payload without a pipe.
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        PaymentPayloadReader.setOpenerForTesting(
+                (provider) -> ((InMemoryPayloadProvider) provider).open());
+    }
+
+    @After
+    public void tearDown() {
+        PaymentPayloadReader.setOpenerForTesting(null);
+    }
+
+    // Builds the extras of a Pay intent as the browser does. The deprecated copies of the method
+    // data and of the certificate chain are the same objects as the extras that they copy.
+    private static Bundle createPayExtras(String methodData, boolean includeDeprecatedExtras) {
+        Bundle methodDataMap = new Bundle();
+        methodDataMap.putString(METHOD, methodData);
+        Parcelable[] certificateChain = new Parcelable[CERTIFICATE_CHAIN.length];
+        for (int i = 0; i < CERTIFICATE_CHAIN.length; i++) {
+            Bundle certificate = new Bundle();
+            certificate.putByteArray(PaymentIntentExtras.EXTRA_CERTIFICATE, CERTIFICATE_CHAIN[i]);
+            certificateChain[i] = certificate;
+        }
+
+        Bundle extras = new Bundle();
+        extras.putString(PaymentIntentExtras.EXTRA_PAYMENT_REQUEST_ID, "id");
+        extras.putString(PaymentIntentExtras.EXTRA_MERCHANT_NAME, "Merchant");
+        extras.putString(PaymentIntentExtras.EXTRA_TOP_ORIGIN, "merchant.example");
+        extras.putString(PaymentIntentExtras.EXTRA_PAYMENT_REQUEST_ORIGIN, "iframe.example");
+        extras.putParcelableArray(
+                PaymentIntentExtras.EXTRA_TOP_CERTIFICATE_CHAIN, certificateChain);
+        extras.putStringArrayList(PaymentIntentExtras.EXTRA_METHOD_NAMES,
+                new ArrayList<>(Collections.singletonList(METHOD)));
+        extras.putBundle(PaymentIntentExtras.EXTRA_METHOD_DATA, methodDataMap);
+        extras.putString(PaymentIntentExtras.EXTRA_TOTAL, TOTAL);
+        extras.putString(PaymentIntentExtras.EXTRA_MODIFIERS, MODIFIERS);
+        if (!includeDeprecatedExtras) return extras;
+
+        extras.putString(PaymentIntentExtras.EXTRA_DEPRECATED_ID, "id");
+        extras.putString(PaymentIntentExtras.EXTRA_DEPRECATED_ORIGIN, "merchant.example");
+        extras.putString(PaymentIntentExtras.EXTRA_DEPRECATED_IFRAME_ORIGIN, "iframe.example");
+        extras.putParcelableArray(
+                PaymentIntentExtras.EXTRA_DEPRECATED_CERTIFICATE_CHAIN, certificateChain);
+        extras.putString(PaymentIntentExtras.EXTRA_DEPRECATED_METHOD_NAME, METHOD);
+        extras.putString(PaymentIntentExtras.EXTRA_DEPRECATED_DATA, methodData);
+        extras.putBundle(PaymentIntentExtras.EXTRA_DEPRECATED_DATA_MAP, methodDataMap);
+        extras.putString(PaymentIntentExtras.EXTRA_DEPRECATED_DETAILS,
+                "{\"total\":{\"label\":\"\",\"amount\":" + TOTAL + "}}");
+        return extras;
+    }
+
+    // Moves the large extras into a payload in the format of the browser's PaymentPayloadTransport,
+    // and replaces them with an in-memory provider of the payload, its size and its digest.
+    private static void moveLargeExtras(Bundle extras) {
+        Bundle payload = new Bundle(extras);
+        List<String> movableExtras = Arrays.asList(MOVABLE_EXTRAS);
+        for (String key : extras.keySet()) {
+            if (!movableExtras.contains(key)) payload.remove(key);
+        }
+        ArrayList<String> aliases = new ArrayList<>();
+        for (String key : ALIASES) {
+            if (payload.containsKey(key)) aliases.add(key);
+            payload.remove(key);
+        }
+        payload.putStringArrayList("aliases", aliases);
+
+        byte[] marshalledPayload;
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeBundle(payload);
+            marshalledPayload = parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+
+        for (String key : MOVABLE_EXTRAS) extras.remove(key);
+        extras.putBinder(PaymentIntentExtras.EXTRA_PAYLOAD_PROVIDER,
+                new InMemoryPayloadProvider(marshalledPayload));
+        extras.putInt(PaymentIntentExtras.EXTRA_PAYLOAD_SIZE, marshalledPayload.length);
+        extras.putString(
+                PaymentIntentExtras.EXTRA_PAYLOAD_DIGEST, computeDigest(marshalledPayload));
+    }
+
+    private static String computeDigest(byte[] bytes) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    private static void assertParameters(PayRequest request) {
+        assertEquals("id", request.getPaymentRequestId());
+        assertEquals("Merchant", request.getMerchantName());
+        assertEquals("merchant.example", request.getTopOrigin());
+        assertEquals("iframe.example", request.getPaymentRequestOrigin());
+        assertEquals(Collections.singletonList(METHOD), request.getMethodNames());
+        assertEquals("{}", request.getMethodData(METHOD));
+        assertNull(request.getMethodData("https://other.example/pay"));
+        assertEquals("USD", request.getTotal().getCurrency());
+        assertEquals("1.00", request.getTotal().getValue());
+        assertEquals(1, request.getModifiers().size());
+        PayRequest.Modifier modifier = request.getModifiers().get(0);
+        assertEquals(Collections.singletonList(METHOD), modifier.getSupportedMethods());
+        assertEquals("0.99", modifier.getTotal().getValue());
+        assertEquals("{\"discount\":true}", modifier.getStringifiedData());
+        byte[][] certificateChain = request.getTopCertificateChain();
+        assertEquals(CERTIFICATE_CHAIN.length, certificateChain.length);
+        for (int i = 0; i < CERTIFICATE_CHAIN.length; i++) {
+            assertArrayEquals(CERTIFICATE_CHAIN[i], certificateChain[i]);
+        }
+    }
+
+    @Test
+    public void readsTheCurrentExtras() {
+        assertParameters(new PayRequest(createPayExtras("{}", /*includeDeprecatedExtras=*/false)));
+        assertParameters(new PayRequest(createPayExtras("{}", /*includeDeprecatedExtras=*/true)));
+    }
+
+    @Test
+    public void fallsBackToTheDeprecatedExtras() {
+        Bundle extras = new Bundle();
+        extras.putString(PaymentIntentExtras.EXTRA_DEPRECATED_ID, "id");
+        extras.putString(PaymentIntentExtras.EXTRA_DEPRECATED_ORIGIN, "merchant.example");
+        extras.putString(PaymentIntentExtras.EXTRA_DEPRECATED_IFRAME_ORIGIN, "iframe.example");
+        extras.putString(PaymentIntentExtras.EXTRA_DEPRECATED_METHOD_NAME, METHOD);
+        extras.putString(PaymentIntentExtras.EXTRA_DEPRECATED_DATA, "{}");
+        extras.putString(PaymentIntentExtras.EXTRA_DEPRECATED_DETAILS,
+                "{\"total\":{\"label\":\"\",\"amount\":{\"currency\":\"CAD\",\"value\":\"50\"}}}");
+        PayRequest request = new PayRequest(extras);
+
+        assertEquals("id", request.getPaymentRequestId());
+        assertEquals("merchant.example", request.getTopOrigin());
+        assertEquals("iframe.example", request.getPaymentRequestOrigin());
+        assertEquals(Collections.singletonList(METHOD), request.getMethodNames());
+        assertEquals("{}", request.getMethodData(METHOD));
+        assertEquals("CAD", request.getTotal().getCurrency());
+        assertEquals("50", request.getTotal().getValue());
+    }
+
+    @Test
+    public void readsMissingAndMalformedParametersAsMissing() {
+        PayRequest empty = PayRequest.from(new Intent());
+        assertNull(empty.getPaymentRequestId());
+        assertNull(empty.getMerchantName());
+        assertTrue(empty.getMethodNames().isEmpty());
+        assertNull(empty.getMethodData(METHOD));
+        assertNull(empty.getTotal());
+        assertTrue(empty.getModifiers().isEmpty());
+        assertNull(empty.getTopCertificateChain());
+        assertFalse(empty.isPayloadPending());
+        assertTrue(empty.restorePayload());
+
+        Bundle extras = new Bundle();
+        extras.putString(PaymentIntentExtras.EXTRA_TOTAL, "{\"currency\":");
+        extras.putString(PaymentIntentExtras.EXTRA_MODIFIERS, "[{\"total\":");
+        extras.putParcelableArray(
+                PaymentIntentExtras.EXTRA_TOP_CERTIFICATE_CHAIN, new Bundle[] {new Bundle()});
+        PayRequest malformed = new PayRequest(extras);
+        assertNull(malformed.getTotal());
+        assertTrue(malformed.getModifiers().isEmpty());
+        assertNull(malformed.getTopCertificateChain());
+    }
+
+    @Test
+    public void restoresThePayloadWhileTheOtherParametersAreRead() throws Exception {
+        char[] data = new char[20_000];
+        Arrays.fill(data, 'x');
+        String methodData = new String(data);
+        Bundle extras = createPayExtras(methodData, /*includeDeprecatedExtras=*/true);
+        moveLargeExtras(extras);
+        final PayRequest request = new PayRequest(extras);
+        assertTrue(request.isPayloadPending());
+        // Missing until the payload is restored.
+        assertTrue(request.getModifiers().isEmpty());
+        assertNull(request.getMethodData(METHOD));
+
+        ExecutorService background = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> isRestored = background.submit(request::restorePayload);
+            // Read on this thread while the payload is restored on the other.
+            for (int i = 0; i < 100; i++) {
+                assertEquals("Merchant", request.getMerchantName());
+                assertEquals("USD", request.getTotal().getCurrency());
+            }
+            assertTrue(isRestored.get(5, TimeUnit.SECONDS));
+        } finally {
+            background.shutdown();
+        }
+
+        assertFalse(request.isPayloadPending());
+        assertEquals(methodData, request.getMethodData(METHOD));
+        assertEquals(1, request.getModifiers().size());
+        assertEquals(CERTIFICATE_CHAIN.length, request.getTopCertificateChain().length);
+        // Nothing left to restore.
+        assertTrue(request.restorePayload());
+    }
+
+    @Test
+    public void restoresTheDeprecatedExtrasFromTheExtrasThatTheyAlias() {
+        Bundle extras = createPayExtras("{}", /*includeDeprecatedExtras=*/true);
+        moveLargeExtras(extras);
+        // The request is the only reader of the extras while it restores them.
+        assertTrue(new PayRequest(extras).restorePayload());
+
+        assertNull(extras.getBinder(PaymentIntentExtras.EXTRA_PAYLOAD_PROVIDER));
+        assertFalse(extras.containsKey("aliases"));
+        assertEquals("{}",
+                extras.getBundle(PaymentIntentExtras.EXTRA_DEPRECATED_DATA_MAP).getString(METHOD));
+        assertSame(extras.getParcelableArray(PaymentIntentExtras.EXTRA_TOP_CERTIFICATE_CHAIN),
+                extras.getParcelableArray(PaymentIntentExtras.EXTRA_DEPRECATED_CERTIFICATE_CHAIN));
+    }
+
+    @Test
+    public void rejectsAPayloadThatDoesNotMatchItsDigest() {
+        Bundle extras = createPayExtras("{}", /*includeDeprecatedExtras=*/true);
+        moveLargeExtras(extras);
+        extras.putString(PaymentIntentExtras.EXTRA_PAYLOAD_DIGEST, "0");
+        PayRequest request = new PayRequest(extras);
+        assertFalse(request.restorePayload());
+        assertTrue(request.isPayloadPending());
+    }
+
+    @Test
+    public void rejectsAPayloadThatIsNotServed() {
+        Bundle extras = createPayExtras("{}", /*includeDeprecatedExtras=*/true);
+        moveLargeExtras(extras);
+        PaymentPayloadReader.setOpenerForTesting((provider) -> null);
+        assertFalse(new PayRequest(extras).restorePayload());
+    }
+}
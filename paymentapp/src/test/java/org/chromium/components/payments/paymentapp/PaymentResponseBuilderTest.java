@@ -0,0 +1,88 @@
+// Copyright 2020 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+package org.chromium.components.payments.paymentapp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import android.os.Bundle;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+/** Tests of {@link PaymentResponseBuilder}'s validation and result extras. */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PaymentResponseBuilderTest {
+    private static void assertRejected(Runnable build) {
+        try {
+            build.run();
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void writesTheDetailsAndTheirDeprecatedCopy() {
+        Bundle extras = new PaymentResponseBuilder("maxPay")
+                                .putDetail("status", "success")
+                                .putDetail("amount", 50)
+                                .build()
+                                .getExtras();
+        assertEquals("maxPay", extras.getString(PaymentIntentExtras.EXTRA_RESPONSE_METHOD_NAME));
+        assertEquals("{\"status\":\"success\",\"amount\":50}",
+                extras.getString(PaymentIntentExtras.EXTRA_RESPONSE_DETAILS));
+        assertEquals("{\"status\":\"success\",\"amount\":50}",
+                extras.getString(
+                        PaymentIntentExtras.EXTRA_DEPRECATED_RESPONSE_INSTRUMENT_DETAILS));
+    }
+
+    @Test
+    public void omitsTheDeprecatedCopyOnRequest() {
+        Bundle extras = new PaymentResponseBuilder("maxPay")
+                                .setIncludeDeprecatedExtras(false)
+                                .build()
+                                .getExtras();
+        assertEquals("{}", extras.getString(PaymentIntentExtras.EXTRA_RESPONSE_DETAILS));
+        assertFalse(extras.containsKey(
+                PaymentIntentExtras.EXTRA_DEPRECATED_RESPONSE_INSTRUMENT_DETAILS));
+    }
+
+    @Test
+    public void mergesTheFieldsIntoTheSetDetails() {
+        String details = new PaymentResponseBuilder("maxPay")
+                                 .putDetail("replaced", true)
+                                 .setDetails("{\"token\":\"abc\"}")
+                                 .putDetail("status", "success")
+                                 .build()
+                                 .getExtras()
+                                 .getString(PaymentIntentExtras.EXTRA_RESPONSE_DETAILS);
+        assertEquals("{\"token\":\"abc\",\"status\":\"success\"}", details);
+    }
+
+    @Test
+    public void rejectsInvalidArguments() {
+        assertRejected(() -> new PaymentResponseBuilder(null));
+        assertRejected(() -> new PaymentResponseBuilder(""));
+        assertRejected(() -> new PaymentResponseBuilder("maxPay").setDetails(null));
+        assertRejected(() -> new PaymentResponseBuilder("maxPay").setDetails("[]"));
+        assertRejected(() -> new PaymentResponseBuilder("maxPay").setDetails("{"));
+        assertRejected(() -> new PaymentResponseBuilder("maxPay").putDetail(null, 1));
+        assertRejected(() -> new PaymentResponseBuilder("maxPay").putDetail("name", null));
+        assertRejected(() -> new PaymentResponseBuilder("maxPay").putDetail("name", Double.NaN));
+
+        char[] value = new char[PaymentResponseBuilder.MAX_DETAILS_LENGTH];
+        Arrays.fill(value, 'x');
+        assertRejected(() -> new PaymentResponseBuilder("maxPay")
+                                     .putDetail("name", new String(value))
+                                     .build());
+    }
+}